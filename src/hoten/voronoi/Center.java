@@ -1,6 +1,7 @@
 package hoten.voronoi;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 import hoten.geom.Point;
@@ -21,33 +22,107 @@ public class Center
 
     public int index;
     public Point loc;
-    public ArrayList<Corner> corners = new ArrayList<>();
-    public ArrayList<Center> neighbors = new ArrayList<>();
-    public ArrayList<Edge> borders = new ArrayList<>();
-    public boolean isBorder, isWater, isCoast;
+    // These are views of the graph's GraphCore.
+    public List<Corner> corners = Collections.emptyList();
+    public List<Center> neighbors = Collections.emptyList();
+    public List<Edge> borders = Collections.emptyList();
     public boolean isMountain;
     public boolean isHill;
     public boolean isCity;
     public boolean isSandDunes;
-    public double elevation;
-    public double moisture;
 	public Biome biome;
     public double area;
     public TectonicPlate tectonicPlate;
     public Region region;
-    // neighborsNotInSamePlateCount is only here to make GraphImpl.createTectonicPlates faster.
-    public int neighborsNotInSamePlateCount;
-    public Integer mountainRangeId;
     
 	public long treeSeed;
+	
+	// Elevation, moisture, and flags are stored in core.
+	GraphCore core;
     
     public Center() {
     }
 
-    public Center(Point loc) {
+    public Center(GraphCore core, int index, Point loc) {
+        this.core = core;
+        this.index = index;
         this.loc = loc;
     }
     
+    void setAdjacency(GraphCore core, List<Center> allCenters, List<Corner> allCorners, List<Edge> allEdges)
+    {
+    	this.core = core;
+    	corners = GraphCore.createRowView(allCorners, core.centerCornerStarts, core.centerCorners, index);
+    	neighbors = GraphCore.createRowView(allCenters, core.centerNeighborStarts, core.centerNeighbors, index);
+    	borders = GraphCore.createRowView(allEdges, core.centerBorderStarts, core.centerBorders, index);
+    }
+    
+    public double getElevation()
+    {
+    	return core.centerElevation[index];
+    }
+    
+    public void setElevation(double elevation)
+    {
+    	core.centerElevation[index] = elevation;
+    }
+    
+    public double getMoisture()
+    {
+    	return core.centerMoisture[index];
+    }
+    
+    public void setMoisture(double moisture)
+    {
+    	core.centerMoisture[index] = moisture;
+    }
+    
+    public boolean isWater()
+    {
+    	return core.centerIsWater.get(index);
+    }
+    
+    public void setWater(boolean isWater)
+    {
+    	core.centerIsWater.set(index, isWater);
+    }
+    
+    public boolean isCoast()
+    {
+    	return core.centerIsCoast.get(index);
+    }
+    
+    public void setCoast(boolean isCoast)
+    {
+    	core.centerIsCoast.set(index, isCoast);
+    }
+    
+    /**
+     * Whether the center touches the edge of the graph.
+     */
+    public boolean isBorder()
+    {
+    	return core.centerIsBorder.get(index);
+    }
+    
+    public void setBorder(boolean isBorder)
+    {
+    	core.centerIsBorder.set(index, isBorder);
+    }
+    
+    /**
+     * @return The ID of the mountain range this center is in, or -1 if it isn't in one.
+     */
+    public int getMountainRangeId()
+    {
+    	return core.centerMountainRangeId[index];
+    }
+    
+    public void setMountainRangeId(int mountainRangeId)
+    {
+    	core.centerMountainRangeId[index] = mountainRangeId;
+    }
+    
     
     public double findWidth()
     {
@@ -83,16 +158,6 @@ public class Center
 		return index;
 	}
     
-	public void updateNeighborsNotInSamePlateCount()
-	{
-		neighborsNotInSamePlateCount = 0;
- 		for (Center neighbor : neighbors)
-		{
-			if (tectonicPlate != neighbor.tectonicPlate) 
-				neighborsNotInSamePlateCount++;
-		}
-	}
-	
 	public boolean isRiver()
 	{
 		for (Edge edge : borders)
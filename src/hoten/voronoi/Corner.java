@@ -1,6 +1,7 @@
 package hoten.voronoi;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import hoten.geom.Point;
 
@@ -12,30 +13,110 @@ import hoten.geom.Point;
 public class Corner
 {
 	
-    public ArrayList<Center> touches = new ArrayList<>();
-    public ArrayList<Corner> adjacent = new ArrayList<>();
-    public ArrayList<Edge> protrudes = new ArrayList<>();
+    // These are views of the graph's GraphCore.
+    public List<Center> touches = Collections.emptyList();
+    public List<Corner> adjacent = Collections.emptyList();
+    public List<Edge> protrudes = Collections.emptyList();
     public Point loc;
     public int index;
-    public boolean border;
-    public double elevation;
-    public boolean water, ocean, coast;
     public int river;
-    public double moisture;
     
     Corner lowestNeighbor;
     boolean findingRivers = false; // to avoid infinite recursion as we wind our way to the sea
+    
+	// Elevation, moisture, and flags are stored in core.
+    GraphCore core;
+    
+    public Corner() {
+    }
+    
+    public Corner(GraphCore core, int index, Point loc) {
+    	this.core = core;
+    	this.index = index;
+    	this.loc = loc;
+    }
+    
+    void setAdjacency(GraphCore core, List<Center> allCenters, List<Corner> allCorners, List<Edge> allEdges)
+    {
+    	this.core = core;
+    	touches = GraphCore.createRowView(allCenters, core.cornerTouchStarts, core.cornerTouches, index);
+    	adjacent = GraphCore.createRowView(allCorners, core.cornerAdjacentStarts, core.cornerAdjacent, index);
+    	protrudes = GraphCore.createRowView(allEdges, core.cornerProtrudeStarts, core.cornerProtrudes, index);
+    }
+    
+    public double getElevation()
+    {
+    	return core.cornerElevation[index];
+    }
+    
+    public void setElevation(double elevation)
+    {
+    	core.cornerElevation[index] = elevation;
+    }
+    
+    public double getMoisture()
+    {
+    	return core.cornerMoisture[index];
+    }
+    
+    public void setMoisture(double moisture)
+    {
+    	core.cornerMoisture[index] = moisture;
+    }
+    
+    /**
+     * Whether the corner is on the edge of the graph.
+     */
+    public boolean isBorder()
+    {
+    	return core.cornerIsBorder.get(index);
+    }
+    
+    public void setBorder(boolean isBorder)
+    {
+    	core.cornerIsBorder.set(index, isBorder);
+    }
+    
+    public boolean isWater()
+    {
+    	return core.cornerIsWater.get(index);
+    }
+    
+    public void setWater(boolean isWater)
+    {
+    	core.cornerIsWater.set(index, isWater);
+    }
+    
+    public boolean isOcean()
+    {
+    	return core.cornerIsOcean.get(index);
+    }
+    
+    public void setOcean(boolean isOcean)
+    {
+    	core.cornerIsOcean.set(index, isOcean);
+    }
+    
+    public boolean isCoast()
+    {
+    	return core.cornerIsCoast.get(index);
+    }
+    
+    public void setCoast(boolean isCoast)
+    {
+    	core.cornerIsCoast.set(index, isCoast);
+    }
 
 	public boolean createRivers() {
 		// We need to increment flags for rivers and build lakes where they need to be by making them water and raising their elevation.
-		if (ocean || coast) return true; // no need to go any further, but rivers coming to me look good
+		if (isOcean() || isCoast()) return true; // no need to go any further, but rivers coming to me look good
 		
 		// Find the neighbor with an elevation lower than mine
 		if (lowestNeighbor == null && !findingRivers) {
 			for (Corner neighbor : adjacent) {
 				// I am not sure how, but it seems possible that one of my adjacents is me! 
 				if (!neighbor.findingRivers && (neighbor != this) && ((lowestNeighbor == null) 
-						|| (lowestNeighbor.elevation > neighbor.elevation))) {
+						|| (lowestNeighbor.getElevation() > neighbor.getElevation()))) {
 					lowestNeighbor = neighbor;
 				}
 			}
@@ -47,8 +128,8 @@ public class Corner
 			return false;
 		}
 		
-		if (lowestNeighbor.elevation >= elevation) {
-			lowestNeighbor.elevation = elevation * 0.9999; // Make it a little lower than me
+		if (lowestNeighbor.getElevation() >= getElevation()) {
+			lowestNeighbor.setElevation(getElevation() * 0.9999); // Make it a little lower than me
 		}
 
 		// recursive call
@@ -0,0 +1,99 @@
+package hoten.voronoi;
+
+import java.util.Arrays;
+
+/**
+ * A spatial hash from the grid cell a corner is in to the corner's index, which VoronoiGraph uses to merge corners that
+ * fall in the same cell. Cells are stored in open-addressed primitive arrays, so finding or adding a corner is O(1)
+ * and doesn't allocate.
+ */
+final class CornerIndex
+{
+	private static final int empty = -1;
+
+	private long[] cells;
+	private int[] cornerIndexes;
+	private int size;
+
+	CornerIndex(int expectedSize)
+	{
+		int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+		cells = new long[capacity];
+		cornerIndexes = new int[capacity];
+		Arrays.fill(cornerIndexes, empty);
+	}
+
+	/**
+	 * @return The index of the corner in the given cell, or -1 if there isn't one.
+	 */
+	int get(int cellX, int cellY)
+	{
+		long cell = toCell(cellX, cellY);
+		int mask = cells.length - 1;
+		for (int i = hash(cell) & mask; cornerIndexes[i] != empty; i = (i + 1) & mask)
+		{
+			if (cells[i] == cell)
+			{
+				return cornerIndexes[i];
+			}
+		}
+		return empty;
+	}
+
+	/**
+	 * Adds a corner to a cell that doesn't have one yet.
+	 */
+	void put(int cellX, int cellY, int cornerIndex)
+	{
+		if ((size + 1) * 2 > cells.length)
+		{
+			resize();
+		}
+		insert(toCell(cellX, cellY), cornerIndex);
+		size++;
+	}
+
+	private void insert(long cell, int cornerIndex)
+	{
+		int mask = cells.length - 1;
+		int i = hash(cell) & mask;
+		while (cornerIndexes[i] != empty)
+		{
+			i = (i + 1) & mask;
+		}
+		cells[i] = cell;
+		cornerIndexes[i] = cornerIndex;
+	}
+
+	private void resize()
+	{
+		long[] oldCells = cells;
+		int[] oldCornerIndexes = cornerIndexes;
+		cells = new long[oldCells.length * 2];
+		cornerIndexes = new int[oldCells.length * 2];
+		Arrays.fill(cornerIndexes, empty);
+		for (int i = 0; i < oldCells.length; i++)
+		{
+			if (oldCornerIndexes[i] != empty)
+			{
+				insert(oldCells[i], oldCornerIndexes[i]);
+			}
+		}
+	}
+
+	private static long toCell(int cellX, int cellY)
+	{
+		return ((long) cellX << 32) | (cellY & 0xffffffffL);
+	}
+
+	/**
+	 * Mixes the bits of a cell so that nearby cells spread out over the table.
+	 */
+	private static int hash(long cell)
+	{
+		cell ^= cell >>> 33;
+		cell *= 0xff51afd7ed558ccdL;
+		cell ^= cell >>> 33;
+		return (int) cell;
+	}
+}
@@ -64,7 +64,7 @@ public class Edge implements Comparable<Edge>
 			return false;
 		}
 		
-		return d0.isWater != d1.isWater;
+		return d0.isWater() != d1.isWater();
 	}
 	
 	public boolean isRegionBoundary()
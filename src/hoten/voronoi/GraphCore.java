@@ -0,0 +1,234 @@
+package hoten.voronoi;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Stores the adjacency and per-node values of a VoronoiGraph in arrays indexed by Center.index, Corner.index,
+ * and Edge.index. Center and Corner are views over this, so the graph doesn't need a list object per relationship
+ * per node, and passes over the whole graph can loop over arrays without following pointers or allocating.
+ *
+ * Adjacency is in compressed sparse row form. For example, the neighbors of the center with index i are
+ * centerNeighbors[centerNeighborStarts[i]] up to but not including centerNeighbors[centerNeighborStarts[i + 1]],
+ * in the same order as Center.neighbors.
+ */
+public class GraphCore
+{
+	public final int numCenters;
+	public final int numCorners;
+
+	public int[] centerNeighborStarts;
+	public int[] centerNeighbors;
+	public int[] centerCornerStarts;
+	public int[] centerCorners;
+	public int[] centerBorderStarts;
+	public int[] centerBorders;
+
+	public int[] cornerTouchStarts;
+	public int[] cornerTouches;
+	public int[] cornerAdjacentStarts;
+	public int[] cornerAdjacent;
+	public int[] cornerProtrudeStarts;
+	public int[] cornerProtrudes;
+
+	/**
+	 * The indexes of each edge's Delaunay centers and Voronoi corners, or -1 where the Edge's field is null.
+	 */
+	public int[] edgeD0, edgeD1, edgeV0, edgeV1;
+
+	public final double[] centerElevation;
+	public final double[] centerMoisture;
+	public final BitSet centerIsWater;
+	public final BitSet centerIsCoast;
+	public final BitSet centerIsBorder;
+	/**
+	 * -1 for centers not in a mountain range.
+	 */
+	public final int[] centerMountainRangeId;
+
+	public final double[] cornerElevation;
+	public final double[] cornerMoisture;
+	public final BitSet cornerIsWater;
+	public final BitSet cornerIsOcean;
+	public final BitSet cornerIsCoast;
+	public final BitSet cornerIsBorder;
+
+	/**
+	 * Creates a core with the values of the given number of centers and corners and no adjacency.
+	 */
+	public GraphCore(int numCenters, int numCorners)
+	{
+		this.numCenters = numCenters;
+		this.numCorners = numCorners;
+
+		centerElevation = new double[numCenters];
+		centerMoisture = new double[numCenters];
+		centerIsWater = new BitSet(numCenters);
+		centerIsCoast = new BitSet(numCenters);
+		centerIsBorder = new BitSet(numCenters);
+		centerMountainRangeId = new int[numCenters];
+		Arrays.fill(centerMountainRangeId, -1);
+
+		cornerElevation = new double[numCorners];
+		cornerMoisture = new double[numCorners];
+		cornerIsWater = new BitSet(numCorners);
+		cornerIsOcean = new BitSet(numCorners);
+		cornerIsCoast = new BitSet(numCorners);
+		cornerIsBorder = new BitSet(numCorners);
+
+		int[] none = new int[0];
+		centerNeighborStarts = centerCornerStarts = centerBorderStarts = new int[numCenters + 1];
+		cornerTouchStarts = cornerAdjacentStarts = cornerProtrudeStarts = new int[numCorners + 1];
+		centerNeighbors = centerCorners = centerBorders = cornerTouches = cornerAdjacent = cornerProtrudes = none;
+		edgeD0 = edgeD1 = edgeV0 = edgeV1 = none;
+	}
+
+	/**
+	 * Returns a list of the items at the indexes in row rowIndex of a compressed sparse row array. The list reads
+	 * through to the arrays, so it doesn't copy anything.
+	 */
+	static <T> List<T> createRowView(List<T> items, int[] starts, int[] values, int rowIndex)
+	{
+		return new RowView<>(items, values, starts[rowIndex], starts[rowIndex + 1]);
+	}
+
+	private static class RowView<T> extends AbstractList<T> implements RandomAccess
+	{
+		private final List<T> items;
+		private final int[] values;
+		private final int start;
+		private final int end;
+
+		private RowView(List<T> items, int[] values, int start, int end)
+		{
+			this.items = items;
+			this.values = values;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public T get(int index)
+		{
+			if (index < 0 || index >= end - start)
+			{
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (end - start));
+			}
+			return items.get(values[start + index]);
+		}
+
+		@Override
+		public int size()
+		{
+			return end - start;
+		}
+	}
+
+	/**
+	 * Builds one compressed sparse row array from values added one at a time, in any order of rows. Each row keeps its
+	 * values in the order they were added. Values are appended to flat arrays and only sorted into rows by pack(), so
+	 * adding a value is O(1) and no object is created per row.
+	 */
+	static class RowBuilder
+	{
+		private final boolean unique;
+		private int[] rows;
+		private int[] values;
+		private int size;
+
+		/**
+		 * Set by pack(). The start of each row, with one extra element at the end for the end of the last row.
+		 */
+		int[] starts;
+		/**
+		 * Set by pack(). The values of all rows.
+		 */
+		int[] packedValues;
+
+		/**
+		 * @param capacity The expected number of values.
+		 * @param unique If true, values added to a row they are already in are dropped.
+		 */
+		RowBuilder(int capacity, boolean unique)
+		{
+			this.unique = unique;
+			rows = new int[Math.max(capacity, 16)];
+			values = new int[rows.length];
+		}
+
+		void add(int rowIndex, int value)
+		{
+			if (size == rows.length)
+			{
+				rows = Arrays.copyOf(rows, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			rows[size] = rowIndex;
+			values[size] = value;
+			size++;
+		}
+
+		/**
+		 * Sorts the values added into rows, keeping the order they were added in within each row, and sets starts and
+		 * packedValues. For a unique builder, only the first of each value added to a row is kept.
+		 *
+		 * @param numValues One more than the largest value added.
+		 */
+		void pack(int numRows, int numValues)
+		{
+			// Counting sort by row. It's stable, so rows stay in the order values were added.
+			starts = new int[numRows + 1];
+			for (int i = 0; i < size; i++)
+			{
+				starts[rows[i] + 1]++;
+			}
+			for (int row = 0; row < numRows; row++)
+			{
+				starts[row + 1] += starts[row];
+			}
+			packedValues = new int[size];
+			int[] next = Arrays.copyOf(starts, numRows);
+			for (int i = 0; i < size; i++)
+			{
+				packedValues[next[rows[i]]++] = values[i];
+			}
+			rows = values = null;
+
+			if (unique)
+			{
+				removeDuplicates(numRows, numValues);
+			}
+		}
+
+		/**
+		 * Removes repeated values from each row in O(1) per value, by remembering the last row each value was seen in.
+		 */
+		private void removeDuplicates(int numRows, int numValues)
+		{
+			int[] lastRowSeen = new int[numValues];
+			Arrays.fill(lastRowSeen, -1);
+			int count = 0;
+			int rowStart = 0;
+			for (int row = 0; row < numRows; row++)
+			{
+				int rowEnd = starts[row + 1];
+				starts[row] = count;
+				for (int i = rowStart; i < rowEnd; i++)
+				{
+					int value = packedValues[i];
+					if (lastRowSeen[value] != row)
+					{
+						lastRowSeen[value] = row;
+						packedValues[count++] = value;
+					}
+				}
+				rowStart = rowEnd;
+			}
+			starts[numRows] = count;
+			packedValues = Arrays.copyOf(packedValues, count);
+		}
+	}
+}
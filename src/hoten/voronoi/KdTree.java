@@ -0,0 +1,188 @@
+package hoten.voronoi;
+
+/**
+ * A 2D k-d tree for finding the nearest of a fixed set of points in O(log n) time.
+ *
+ * The tree is stored implicitly in primitive arrays: the root of the subtree holding tree positions [start, end) is at
+ * (start + end) / 2, and the subtrees split by x at even depths and by y at odd depths. Queries don't allocate, so
+ * they're safe and cheap to run from many threads at once.
+ */
+public class KdTree
+{
+	private final double[] xs;
+	private final double[] ys;
+	private final int[] ids;
+
+	/**
+	 * @param xs
+	 *            The x coordinates of the points. This array is reordered.
+	 * @param ys
+	 *            The y coordinates of the points. This array is reordered.
+	 * @param ids
+	 *            The ID that findNearest returns for each point. This array is reordered.
+	 */
+	public KdTree(double[] xs, double[] ys, int[] ids)
+	{
+		if (xs.length != ys.length || xs.length != ids.length)
+			throw new IllegalArgumentException("The arrays of coordinates and IDs must be the same length.");
+		this.xs = xs;
+		this.ys = ys;
+		this.ids = ids;
+		build(0, ids.length, 0);
+	}
+
+	/**
+	 * Creates a tree of the locations of the given centers, with the centers' indexes as IDs.
+	 */
+	public static KdTree createFromCenters(Iterable<Center> centers, int numCenters)
+	{
+		double[] xs = new double[numCenters];
+		double[] ys = new double[numCenters];
+		int[] ids = new int[numCenters];
+		int i = 0;
+		for (Center c : centers)
+		{
+			xs[i] = c.loc.x;
+			ys[i] = c.loc.y;
+			ids[i] = c.index;
+			i++;
+		}
+		return new KdTree(xs, ys, ids);
+	}
+
+	public int size()
+	{
+		return ids.length;
+	}
+
+	/**
+	 * @return The ID of the point closest to (x, y), or -1 if the tree is empty. If more than one point is closest,
+	 *         the one with the smallest ID is returned.
+	 */
+	public int findNearest(double x, double y)
+	{
+		if (ids.length == 0)
+		{
+			return -1;
+		}
+		return ids[search(0, ids.length, 0, x, y, (ids.length - 1) >>> 1)];
+	}
+
+	/**
+	 * @return The tree position of the closest point in the subtree [start, end), or best if none is closer.
+	 */
+	private int search(int start, int end, int depth, double x, double y, int best)
+	{
+		if (start >= end)
+		{
+			return best;
+		}
+		int mid = (start + end) >>> 1;
+		if (isCloser(mid, best, x, y))
+		{
+			best = mid;
+		}
+
+		double diff = (depth & 1) == 0 ? x - xs[mid] : y - ys[mid];
+		if (diff < 0)
+		{
+			best = search(start, mid, depth + 1, x, y, best);
+			if (diff * diff <= distanceSquared(best, x, y))
+			{
+				best = search(mid + 1, end, depth + 1, x, y, best);
+			}
+		}
+		else
+		{
+			best = search(mid + 1, end, depth + 1, x, y, best);
+			if (diff * diff <= distanceSquared(best, x, y))
+			{
+				best = search(start, mid, depth + 1, x, y, best);
+			}
+		}
+		return best;
+	}
+
+	private boolean isCloser(int position, int best, double x, double y)
+	{
+		double distance = distanceSquared(position, x, y);
+		double bestDistance = distanceSquared(best, x, y);
+		return distance < bestDistance || (distance == bestDistance && ids[position] < ids[best]);
+	}
+
+	private double distanceSquared(int position, double x, double y)
+	{
+		double dx = xs[position] - x;
+		double dy = ys[position] - y;
+		return dx * dx + dy * dy;
+	}
+
+	private void build(int start, int end, int depth)
+	{
+		if (end - start <= 1)
+		{
+			return;
+		}
+		int mid = (start + end) >>> 1;
+		select(start, end - 1, mid, (depth & 1) == 0 ? xs : ys);
+		build(start, mid, depth + 1);
+		build(mid + 1, end, depth + 1);
+	}
+
+	/**
+	 * Reorders the points in [left, right] so that the point at position k has the k-th smallest coordinate, points
+	 * before it have coordinates no larger, and points after it have coordinates no smaller. This is Hoare's
+	 * quickselect.
+	 */
+	private void select(int left, int right, int k, double[] coords)
+	{
+		while (right > left)
+		{
+			double pivot = coords[(left + right) >>> 1];
+			int i = left;
+			int j = right;
+			while (i <= j)
+			{
+				while (coords[i] < pivot)
+				{
+					i++;
+				}
+				while (coords[j] > pivot)
+				{
+					j--;
+				}
+				if (i <= j)
+				{
+					swap(i, j);
+					i++;
+					j--;
+				}
+			}
+			if (k <= j)
+			{
+				right = j;
+			}
+			else if (k >= i)
+			{
+				left = i;
+			}
+			else
+			{
+				return;
+			}
+		}
+	}
+
+	private void swap(int i, int j)
+	{
+		double x = xs[i];
+		xs[i] = xs[j];
+		xs[j] = x;
+		double y = ys[i];
+		ys[i] = ys[j];
+		ys[j] = y;
+		int id = ids[i];
+		ids[i] = ids[j];
+		ids[j] = id;
+	}
+}
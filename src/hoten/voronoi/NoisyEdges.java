@@ -4,30 +4,52 @@
 
 package hoten.voronoi;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.Random;
-import java.util.TreeMap;
 
 import hoten.geom.Point;
-//import graph.*;
-//import de.polygonal.math.PM_PRNG;
-  
-public class NoisyEdges 
+import nortantis.util.ParallelRanges;
+
+/**
+ * Noisy paths for the edges of a graph. Each path is generated from its edge's noisyEdgeSeed the first time it's asked
+ * for, and is stored as a flat array of coordinates, x0, y0, x1, y1, and so on.
+ *
+ * How detailed a path is depends on the regions, water, and rivers on either side of its edge. That detail is recorded
+ * when buildNoisyEdges or buildNoisyEdgesForCenter is called, so a path comes out the same no matter when it's first
+ * asked for.
+ */
+public class NoisyEdges
 {
     final double NOISY_LINE_TRADEOFF = 0.5; // low: jagged vedge; high: jagged dedge
-    
-    public Map<Integer, List<Point>> path0; // edge index -> Vector.<Point>
-    public Map<Integer, List<Point>> path1; // edge index -> Vector.<Point>
+
+    // The minimum length of the segments of each edge's paths, or 0 if the edge doesn't have noisy paths.
+    private final int[] minLengths;
+    // Edge index -> the edge's paths, or null if they haven't been generated yet.
+    private final Paths[] paths;
 
 	private double scaleMultiplyer;
-    
-    public NoisyEdges(double scaleMultiplyer) 
+
+	/**
+	 * The two paths of an edge. The fields are final so that paths generated on one thread are safe to read from any
+	 * other.
+	 */
+	private static final class Paths
+	{
+		final double[] path0;
+		final double[] path1;
+
+		Paths(double[] path0, double[] path1)
+		{
+			this.path0 = path0;
+			this.path1 = path1;
+		}
+	}
+
+    public NoisyEdges(double scaleMultiplyer, int numEdges)
     {
        	this.scaleMultiplyer = scaleMultiplyer;
-        path0 = new TreeMap<>();
-    	path1 = new TreeMap<>();
+       	minLengths = new int[numEdges];
+       	paths = new Paths[numEdges];
     }
 
     // Build noisy line paths for each of the Voronoi edges. There are
@@ -42,94 +64,196 @@ public class NoisyEdges
 			buildNoisyEdgesForCenter(p, false);
 		}
 	}
-    
+
+	/**
+	 * Generates the paths of all edges now, in parallel, rather than when they're first asked for.
+	 */
+	public void buildAllPaths(VoronoiGraph map)
+	{
+		ParallelRanges.forEachChunk(map.edges.size(), (start, end) ->
+		{
+			for (int i = start; i < end; i++)
+			{
+				getPaths(map.edges.get(i));
+			}
+		});
+	}
+
     public void buildNoisyEdgesForCenter(Center center, boolean forceRebuild)
     {
 		for (Edge edge : center.borders)
 		{
-			if (edge.d0 != null && edge.d1 != null && edge.v0 != null && edge.v1 != null
-					&& (forceRebuild || path0.get(edge.index) == null))
+			buildNoisyEdge(edge, forceRebuild);
+		}
+    }
+
+    /**
+     * Decides how detailed the edge's paths are from the centers on either side of it. If forceRebuild is true, this
+     * replaces any paths already generated for the edge.
+     */
+    public void buildNoisyEdge(Edge edge, boolean forceRebuild)
+    {
+		if (edge.d0 != null && edge.d1 != null && edge.v0 != null && edge.v1 != null
+				&& (forceRebuild || minLengths[edge.index] == 0))
+		{
+			int minLength = 100;
+			if (((edge.d0.region == null) != (edge.d1.region == null)) || edge.d0.region != null && edge.d0.region.id != edge.d1.region.id)
+			{
+				minLength = 3;
+			}
+			if (edge.d0.isBorder() != edge.d1.isBorder())
 			{
-		    	Random rand = new Random(edge.noisyEdgeSeed);
-
-				double f = NOISY_LINE_TRADEOFF;
-				Point t = Point.interpolate(edge.v0.loc, edge.d0.loc, f);
-				Point q = Point.interpolate(edge.v0.loc, edge.d1.loc, f);
-				Point r = Point.interpolate(edge.v1.loc, edge.d0.loc, f);
-				Point s = Point.interpolate(edge.v1.loc, edge.d1.loc, f);
-
-				int minLength = 100;
-				if (((edge.d0.region == null) != (edge.d1.region == null)) || edge.d0.region != null && edge.d0.region.id != edge.d1.region.id)
-				{
-					minLength = 3;
-				}
-				if (edge.d0.isBorder != edge.d1.isBorder)
-				{
-					minLength = 3;
-				}
-				if (edge.d0.isWater != edge.d1.isWater)
-				{
-					minLength = 3;
-				}
-				if (edge.river != 0)
-				{
-					minLength = 2;
-				}
-
-				path0.put(edge.index, buildNoisyLineSegments(rand, edge.v0.loc, t, edge.midpoint, q, minLength));
-				path0.get(edge.index).add(edge.midpoint);
-				path1.put(edge.index, buildNoisyLineSegments(rand, edge.v1.loc, s, edge.midpoint, r, minLength));
-				path1.get(edge.index).add(edge.midpoint);
+				minLength = 3;
 			}
+			if (edge.d0.isWater() != edge.d1.isWater())
+			{
+				minLength = 3;
+			}
+			if (edge.river != 0)
+			{
+				minLength = 2;
+			}
+
+			minLengths[edge.index] = minLength;
+			paths[edge.index] = null;
 		}
     }
 
-    
+    /**
+     * @return The noisy path from the edge's v0 to its midpoint, as x0, y0, x1, y1, and so on, or null if the edge
+     *         doesn't have noisy paths because it's on the border of the graph.
+     */
+    public double[] getPath0(Edge edge)
+    {
+    	Paths edgePaths = getPaths(edge);
+    	return edgePaths == null ? null : edgePaths.path0;
+    }
+
+    /**
+     * @return The noisy path from the edge's v1 to its midpoint, as x0, y0, x1, y1, and so on, or null if the edge
+     *         doesn't have noisy paths because it's on the border of the graph.
+     */
+    public double[] getPath1(Edge edge)
+    {
+    	Paths edgePaths = getPaths(edge);
+    	return edgePaths == null ? null : edgePaths.path1;
+    }
+
+    private Paths getPaths(Edge edge)
+    {
+    	int minLength = minLengths[edge.index];
+    	if (minLength == 0)
+    	{
+    		return null;
+    	}
+
+    	Paths edgePaths = paths[edge.index];
+    	if (edgePaths == null)
+    	{
+    		// If two threads get here at once, they generate the same paths, so it doesn't matter which one is kept.
+			Random rand = new Random(edge.noisyEdgeSeed);
+			double f = NOISY_LINE_TRADEOFF;
+			Point t = Point.interpolate(edge.v0.loc, edge.d0.loc, f);
+			Point q = Point.interpolate(edge.v0.loc, edge.d1.loc, f);
+			Point r = Point.interpolate(edge.v1.loc, edge.d0.loc, f);
+			Point s = Point.interpolate(edge.v1.loc, edge.d1.loc, f);
+
+			double[] path0 = buildNoisyLineSegments(rand, edge.v0.loc, t, edge.midpoint, q, minLength);
+			double[] path1 = buildNoisyLineSegments(rand, edge.v1.loc, s, edge.midpoint, r, minLength);
+			edgePaths = new Paths(path0, path1);
+			paths[edge.index] = edgePaths;
+    	}
+    	return edgePaths;
+    }
+
+
 	// Helper function: build a single noisy line in a quadrilateral A-B-C-D,
-	// and store the output points in a Vector.
-	public List<Point> buildNoisyLineSegments(Random random, Point A,
+	// and return its points, ending with C.
+	private double[] buildNoisyLineSegments(Random random, Point A,
 			Point B, Point C, Point D, double minLength)
 	{
-		List<Point> points = new ArrayList<>();
+		PathBuilder points = new PathBuilder();
 
-		points.add(A);
-		subdivide(A, B, C, D, minLength, random, points);
-		return points;
+		points.add(A.x, A.y);
+		subdivide(A.x, A.y, B.x, B.y, C.x, C.y, D.x, D.y, minLength * scaleMultiplyer, random, points);
+		points.add(C.x, C.y);
+		return points.toArray();
 	}
 
-	private void subdivide(Point A, Point B, Point C, Point D, double minLength, Random random, List<Point> points)
+	/**
+	 * This does the same arithmetic as subdividing with Point.interpolate, but without allocating points.
+	 */
+	private void subdivide(double ax, double ay, double bx, double by, double cx, double cy, double dx, double dy,
+			double scaledMinLength, Random random, PathBuilder points)
 	{
-		if (A.subtract(C).length() < minLength * scaleMultiplyer 
-				|| B.subtract(D).length() < minLength * scaleMultiplyer) 
+		if (length(ax - cx, ay - cy) < scaledMinLength
+				|| length(bx - dx, by - dy) < scaledMinLength)
 		{
 			return;
 		}
         // Subdivide the quadrilateral
         double p = nextDoubleRange(random, 0.2, 0.8); // vertical (along A-D and B-C)
         double q = nextDoubleRange(random, 0.2, 0.8); // horizontal (along A-B and D-C)
- 
+
         // Midpoints
-        Point E = Point.interpolate(A, D, p);
-        Point F = Point.interpolate(B, C, p);
-        Point G = Point.interpolate(A, B, q);
-        Point I = Point.interpolate(D, C, q);
-        
+        double ex = interpolate(ax, dx, p);
+        double ey = interpolate(ay, dy, p);
+        double fx = interpolate(bx, cx, p);
+        double fy = interpolate(by, cy, p);
+        double gx = interpolate(ax, bx, q);
+        double gy = interpolate(ay, by, q);
+        double ix = interpolate(dx, cx, q);
+        double iy = interpolate(dy, cy, q);
+
         // Central point
-        Point H = Point.interpolate(E, F, q);
-        
+        double hx = interpolate(ex, fx, q);
+        double hy = interpolate(ey, fy, q);
+
         // Divide the quad into subquads, but meet at H
         double s = 1.0 - nextDoubleRange(random, -0.4, +0.4);
         double t = 1.0 - nextDoubleRange(random, -0.4, +0.4);
 
-        subdivide(A, Point.interpolate(G, B, s), H, Point.interpolate(E, D, t), minLength, random, points);
-        points.add(H);
-        subdivide(H, Point.interpolate(F, C, s), C, Point.interpolate(I, D, t), minLength, random, points);
+        subdivide(ax, ay, interpolate(gx, bx, s), interpolate(gy, by, s), hx, hy, interpolate(ex, dx, t), interpolate(ey, dy, t),
+        		scaledMinLength, random, points);
+        points.add(hx, hy);
+        subdivide(hx, hy, interpolate(fx, cx, s), interpolate(fy, cy, s), cx, cy, interpolate(ix, dx, t), interpolate(iy, dy, t),
+        		scaledMinLength, random, points);
       }
 
+	private static double interpolate(double v1, double v2, double c)
+	{
+		return c * v1 + (1 - c) * v2;
+	}
+
+	private static double length(double x, double y)
+	{
+		return Math.sqrt(x * x + y * y);
+	}
+
 	private double nextDoubleRange(Random random, double lower, double upper)
 	{
 		return (random.nextDouble() * (upper - lower)) + lower;
 	}
-	
-}
 
+	private static final class PathBuilder
+	{
+		private double[] coords = new double[32];
+		private int size;
+
+		void add(double x, double y)
+		{
+			if (size + 2 > coords.length)
+			{
+				coords = Arrays.copyOf(coords, coords.length * 2);
+			}
+			coords[size++] = x;
+			coords[size++] = y;
+		}
+
+		double[] toArray()
+		{
+			return Arrays.copyOf(coords, size);
+		}
+	}
+
+}
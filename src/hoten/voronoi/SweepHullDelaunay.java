@@ -0,0 +1,660 @@
+package hoten.voronoi;
+
+import java.util.Arrays;
+
+/**
+ * A Delaunay triangulation of points in the plane, built with a sweep-hull algorithm in O(n log n) time. This is a
+ * port of Delaunator (https://github.com/mapbox/delaunator, ISC license), which sorts the points by distance from a
+ * seed triangle and adds them one at a time to a convex hull, flipping edges to keep the triangulation Delaunay.
+ *
+ * Everything is stored in primitive arrays. Triangle t has the points triangles[3t], triangles[3t + 1], and
+ * triangles[3t + 2]. For each half-edge e (which runs from triangles[e] to triangles[nextHalfedge(e)]),
+ * halfedges[e] is the opposite half-edge in the neighboring triangle, or -1 if e is on the convex hull.
+ */
+public class SweepHullDelaunay
+{
+	private static final double epsilon = Math.pow(2, -52);
+
+	private final double[] coords;
+	/**
+	 * The point indexes of each triangle, 3 per triangle.
+	 */
+	public final int[] triangles;
+	/**
+	 * The opposite of each half-edge, or -1 for half-edges on the hull.
+	 */
+	public final int[] halfedges;
+	/**
+	 * The point indexes of the convex hull, in order.
+	 */
+	public final int[] hull;
+
+	private int[] triangleBuffer;
+	private int[] halfedgeBuffer;
+	private int trianglesLength;
+
+	private int hashSize;
+	private int[] hullPrev;
+	private int[] hullNext;
+	private int[] hullTri;
+	private int[] hullHash;
+	private int hullStart;
+	private double centerX;
+	private double centerY;
+	private final int[] edgeStack = new int[512];
+
+	/**
+	 * @param coords
+	 *            The points to triangulate, as x0, y0, x1, y1, and so on. Points that are (nearly) duplicates of
+	 *            another point aren't added to any triangles.
+	 */
+	public SweepHullDelaunay(double[] coords)
+	{
+		this.coords = coords;
+		int n = coords.length / 2;
+		int maxTriangles = Math.max(2 * n - 5, 0);
+		triangleBuffer = new int[maxTriangles * 3];
+		halfedgeBuffer = new int[maxTriangles * 3];
+
+		hull = triangulate(n);
+		triangles = Arrays.copyOf(triangleBuffer, trianglesLength);
+		halfedges = Arrays.copyOf(halfedgeBuffer, trianglesLength);
+
+		// Let the working arrays be garbage collected.
+		triangleBuffer = halfedgeBuffer = hullPrev = hullNext = hullTri = hullHash = null;
+	}
+
+	public static int nextHalfedge(int e)
+	{
+		return (e % 3 == 2) ? e - 2 : e + 1;
+	}
+
+	public static int prevHalfedge(int e)
+	{
+		return (e % 3 == 0) ? e + 2 : e - 1;
+	}
+
+	private int[] triangulate(int n)
+	{
+		if (n == 0)
+		{
+			return new int[0];
+		}
+
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		int[] ids = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			double x = coords[2 * i];
+			double y = coords[2 * i + 1];
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+			ids[i] = i;
+		}
+		double cx = (minX + maxX) / 2;
+		double cy = (minY + maxY) / 2;
+
+		// Pick a seed point close to the center, the point closest to it, and the third point that makes the smallest
+		// circumcircle with them.
+		int i0 = 0;
+		double minDist = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < n; i++)
+		{
+			double d = dist(cx, cy, coords[2 * i], coords[2 * i + 1]);
+			if (d < minDist)
+			{
+				i0 = i;
+				minDist = d;
+			}
+		}
+		double i0x = coords[2 * i0];
+		double i0y = coords[2 * i0 + 1];
+
+		int i1 = 0;
+		minDist = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < n; i++)
+		{
+			if (i == i0)
+			{
+				continue;
+			}
+			double d = dist(i0x, i0y, coords[2 * i], coords[2 * i + 1]);
+			if (d < minDist && d > 0)
+			{
+				i1 = i;
+				minDist = d;
+			}
+		}
+		double i1x = coords[2 * i1];
+		double i1y = coords[2 * i1 + 1];
+
+		int i2 = 0;
+		double minRadius = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < n; i++)
+		{
+			if (i == i0 || i == i1)
+			{
+				continue;
+			}
+			double r = circumradius(i0x, i0y, i1x, i1y, coords[2 * i], coords[2 * i + 1]);
+			if (r < minRadius)
+			{
+				i2 = i;
+				minRadius = r;
+			}
+		}
+		double i2x = coords[2 * i2];
+		double i2y = coords[2 * i2 + 1];
+
+		double[] dists = new double[n];
+		if (minRadius == Double.POSITIVE_INFINITY)
+		{
+			// The points are all on a line, so there are no triangles. Order the hull along the line.
+			for (int i = 0; i < n; i++)
+			{
+				double dx = coords[2 * i] - coords[0];
+				dists[i] = dx != 0 ? dx : coords[2 * i + 1] - coords[1];
+			}
+			quicksort(ids, dists, 0, n - 1);
+			int[] collinearHull = new int[n];
+			int j = 0;
+			double d0 = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < n; i++)
+			{
+				int id = ids[i];
+				if (dists[id] > d0)
+				{
+					collinearHull[j++] = id;
+					d0 = dists[id];
+				}
+			}
+			return Arrays.copyOf(collinearHull, j);
+		}
+
+		// Make the seed triangle wind the same way as the triangles added to it.
+		if (orient(i0x, i0y, i1x, i1y, i2x, i2y))
+		{
+			int i = i1;
+			double x = i1x;
+			double y = i1y;
+			i1 = i2;
+			i1x = i2x;
+			i1y = i2y;
+			i2 = i;
+			i2x = x;
+			i2y = y;
+		}
+
+		centerX = circumcenterX(i0x, i0y, i1x, i1y, i2x, i2y);
+		centerY = circumcenterY(i0x, i0y, i1x, i1y, i2x, i2y);
+		for (int i = 0; i < n; i++)
+		{
+			dists[i] = dist(coords[2 * i], coords[2 * i + 1], centerX, centerY);
+		}
+
+		// Sort the points by distance from the seed triangle's circumcenter, so each one added is outside the hull.
+		quicksort(ids, dists, 0, n - 1);
+
+		hashSize = (int) Math.ceil(Math.sqrt(n));
+		hullPrev = new int[n];
+		hullNext = new int[n];
+		hullTri = new int[n];
+		hullHash = new int[hashSize];
+		Arrays.fill(hullHash, -1);
+
+		hullStart = i0;
+		int hullSize = 3;
+		hullNext[i0] = hullPrev[i2] = i1;
+		hullNext[i1] = hullPrev[i0] = i2;
+		hullNext[i2] = hullPrev[i1] = i0;
+		hullTri[i0] = 0;
+		hullTri[i1] = 1;
+		hullTri[i2] = 2;
+		hullHash[hashKey(i0x, i0y)] = i0;
+		hullHash[hashKey(i1x, i1y)] = i1;
+		hullHash[hashKey(i2x, i2y)] = i2;
+
+		trianglesLength = 0;
+		addTriangle(i0, i1, i2, -1, -1, -1);
+
+		double xp = 0;
+		double yp = 0;
+		for (int k = 0; k < n; k++)
+		{
+			int i = ids[k];
+			double x = coords[2 * i];
+			double y = coords[2 * i + 1];
+
+			// Skip near-duplicate points.
+			if (k > 0 && Math.abs(x - xp) <= epsilon && Math.abs(y - yp) <= epsilon)
+			{
+				continue;
+			}
+			xp = x;
+			yp = y;
+
+			if (i == i0 || i == i1 || i == i2)
+			{
+				continue;
+			}
+
+			// Find a visible edge on the convex hull using the edge hash.
+			int start = 0;
+			int key = hashKey(x, y);
+			for (int j = 0; j < hashSize; j++)
+			{
+				start = hullHash[(key + j) % hashSize];
+				if (start != -1 && start != hullNext[start])
+				{
+					break;
+				}
+			}
+
+			start = hullPrev[start];
+			int e = start;
+			int q = hullNext[e];
+			while (!orient(x, y, coords[2 * e], coords[2 * e + 1], coords[2 * q], coords[2 * q + 1]))
+			{
+				e = q;
+				if (e == start)
+				{
+					e = -1;
+					break;
+				}
+				q = hullNext[e];
+			}
+			if (e == -1)
+			{
+				// Likely a near-duplicate point.
+				continue;
+			}
+
+			// Add the first triangle from the point.
+			int t = addTriangle(e, i, hullNext[e], -1, -1, hullTri[e]);
+
+			// Recursively flip triangles from the point until they satisfy the Delaunay condition.
+			hullTri[i] = legalize(t + 2);
+			hullTri[e] = t;
+			hullSize++;
+
+			// Walk forward through the hull, adding more triangles and flipping recursively.
+			int next = hullNext[e];
+			q = hullNext[next];
+			while (orient(x, y, coords[2 * next], coords[2 * next + 1], coords[2 * q], coords[2 * q + 1]))
+			{
+				t = addTriangle(next, i, q, hullTri[i], -1, hullTri[next]);
+				hullTri[i] = legalize(t + 2);
+				// Mark as removed.
+				hullNext[next] = next;
+				hullSize--;
+				next = q;
+				q = hullNext[next];
+			}
+
+			// Walk backward from the other side, adding more triangles and flipping.
+			if (e == start)
+			{
+				q = hullPrev[e];
+				while (orient(x, y, coords[2 * q], coords[2 * q + 1], coords[2 * e], coords[2 * e + 1]))
+				{
+					t = addTriangle(q, i, e, -1, hullTri[e], hullTri[q]);
+					legalize(t + 2);
+					hullTri[q] = t;
+					hullNext[e] = e;
+					hullSize--;
+					e = q;
+					q = hullPrev[e];
+				}
+			}
+
+			// Update the hull indices.
+			hullStart = hullPrev[i] = e;
+			hullNext[e] = hullPrev[next] = i;
+			hullNext[i] = next;
+
+			// Save the two new edges in the hash table.
+			hullHash[hashKey(x, y)] = i;
+			hullHash[hashKey(coords[2 * e], coords[2 * e + 1])] = e;
+		}
+
+		int[] result = new int[hullSize];
+		for (int i = 0, e = hullStart; i < hullSize; i++)
+		{
+			result[i] = e;
+			e = hullNext[e];
+		}
+		return result;
+	}
+
+	private int hashKey(double x, double y)
+	{
+		return (int) Math.floor(pseudoAngle(x - centerX, y - centerY) * hashSize) % hashSize;
+	}
+
+	/**
+	 * Flips the edge a and the edges around it, as needed, until the triangles around them satisfy the Delaunay
+	 * condition.
+	 *
+	 * @return The half-edge that was at a's position in its triangle before any flips.
+	 */
+	private int legalize(int a)
+	{
+		int i = 0;
+		int ar;
+
+		// Recursion is replaced by a fixed-size stack of edges to check, because the recursion can get deep.
+		while (true)
+		{
+			int b = halfedgeBuffer[a];
+
+			/*
+			 * If the pair of triangles doesn't satisfy the Delaunay condition (p1 is inside the circumcircle of
+			 * [p0, pl, pr]), flip them, then do the same check/flip recursively for the new pair of triangles.
+			 *
+			 *           pl                    pl
+			 *          /||\                  /  \
+			 *       al/ || \bl            al/    \a
+			 *        /  ||  \              /      \
+			 *       /  a||b  \    flip    /___ar___\
+			 *     p0\   ||   /p1   =>   p0\---bl---/p1
+			 *        \  ||  /              \      /
+			 *       ar\ || /br             b\    /br
+			 *          \||/                  \  /
+			 *           pr                    pr
+			 */
+			int a0 = a - a % 3;
+			ar = a0 + (a + 2) % 3;
+
+			if (b == -1)
+			{
+				// The edge is on the convex hull.
+				if (i == 0)
+				{
+					break;
+				}
+				a = edgeStack[--i];
+				continue;
+			}
+
+			int b0 = b - b % 3;
+			int al = a0 + (a + 1) % 3;
+			int bl = b0 + (b + 2) % 3;
+
+			int p0 = triangleBuffer[ar];
+			int pr = triangleBuffer[a];
+			int pl = triangleBuffer[al];
+			int p1 = triangleBuffer[bl];
+
+			boolean illegal = inCircle(coords[2 * p0], coords[2 * p0 + 1], coords[2 * pr], coords[2 * pr + 1],
+					coords[2 * pl], coords[2 * pl + 1], coords[2 * p1], coords[2 * p1 + 1]);
+
+			if (illegal)
+			{
+				triangleBuffer[a] = p1;
+				triangleBuffer[b] = p0;
+
+				int hbl = halfedgeBuffer[bl];
+
+				// The edge was swapped on the other side of the hull (rare), so fix the half-edge reference.
+				if (hbl == -1)
+				{
+					int e = hullStart;
+					do
+					{
+						if (hullTri[e] == bl)
+						{
+							hullTri[e] = a;
+							break;
+						}
+						e = hullPrev[e];
+					}
+					while (e != hullStart);
+				}
+				link(a, hbl);
+				link(b, halfedgeBuffer[ar]);
+				link(ar, bl);
+
+				int br = b0 + (b + 1) % 3;
+
+				// Don't worry about hitting the cap. It can only happen on extremely degenerate input.
+				if (i < edgeStack.length)
+				{
+					edgeStack[i++] = br;
+				}
+			}
+			else
+			{
+				if (i == 0)
+				{
+					break;
+				}
+				a = edgeStack[--i];
+			}
+		}
+
+		return ar;
+	}
+
+	private void link(int a, int b)
+	{
+		halfedgeBuffer[a] = b;
+		if (b != -1)
+		{
+			halfedgeBuffer[b] = a;
+		}
+	}
+
+	/**
+	 * Adds a triangle and links its half-edges to the given opposite half-edges.
+	 *
+	 * @return The index of the triangle's first half-edge.
+	 */
+	private int addTriangle(int i0, int i1, int i2, int a, int b, int c)
+	{
+		int t = trianglesLength;
+
+		triangleBuffer[t] = i0;
+		triangleBuffer[t + 1] = i1;
+		triangleBuffer[t + 2] = i2;
+
+		link(t, a);
+		link(t + 1, b);
+		link(t + 2, c);
+
+		trianglesLength += 3;
+
+		return t;
+	}
+
+	/**
+	 * Returns a value that increases monotonically with the angle of (dx, dy), in [0, 1].
+	 */
+	private static double pseudoAngle(double dx, double dy)
+	{
+		double p = dx / (Math.abs(dx) + Math.abs(dy));
+		// [0..1]
+		return (dy > 0 ? 3 - p : 1 + p) / 4;
+	}
+
+	private static double dist(double ax, double ay, double bx, double by)
+	{
+		double dx = ax - bx;
+		double dy = ay - by;
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * Returns the orientation of the three points if rounding error can't have changed its sign, or 0 otherwise.
+	 */
+	private static double orientIfSure(double px, double py, double rx, double ry, double qx, double qy)
+	{
+		double l = (ry - py) * (qx - px);
+		double r = (rx - px) * (qy - py);
+		return Math.abs(l - r) >= 3.3306690738754716e-16 * Math.abs(l + r) ? l - r : 0;
+	}
+
+	/**
+	 * An orientation test that gives the same answer for a triangle no matter which of its points it starts from,
+	 * which keeps it consistent in nearly degenerate cases.
+	 */
+	private static boolean orient(double rx, double ry, double qx, double qy, double px, double py)
+	{
+		double sign = orientIfSure(px, py, rx, ry, qx, qy);
+		if (sign == 0)
+		{
+			sign = orientIfSure(rx, ry, qx, qy, px, py);
+		}
+		if (sign == 0)
+		{
+			sign = orientIfSure(qx, qy, px, py, rx, ry);
+		}
+		return sign < 0;
+	}
+
+	private static boolean inCircle(double ax, double ay, double bx, double by, double cx, double cy, double px, double py)
+	{
+		double dx = ax - px;
+		double dy = ay - py;
+		double ex = bx - px;
+		double ey = by - py;
+		double fx = cx - px;
+		double fy = cy - py;
+
+		double ap = dx * dx + dy * dy;
+		double bp = ex * ex + ey * ey;
+		double cp = fx * fx + fy * fy;
+
+		return dx * (ey * cp - bp * fy) - dy * (ex * cp - bp * fx) + ap * (ex * fy - ey * fx) < 0;
+	}
+
+	private static double circumradius(double ax, double ay, double bx, double by, double cx, double cy)
+	{
+		double dx = bx - ax;
+		double dy = by - ay;
+		double ex = cx - ax;
+		double ey = cy - ay;
+
+		double bl = dx * dx + dy * dy;
+		double cl = ex * ex + ey * ey;
+		double d = 0.5 / (dx * ey - dy * ex);
+
+		double x = (ey * bl - dy * cl) * d;
+		double y = (dx * cl - ex * bl) * d;
+
+		return x * x + y * y;
+	}
+
+	static double circumcenterX(double ax, double ay, double bx, double by, double cx, double cy)
+	{
+		double dx = bx - ax;
+		double dy = by - ay;
+		double ex = cx - ax;
+		double ey = cy - ay;
+
+		double bl = dx * dx + dy * dy;
+		double cl = ex * ex + ey * ey;
+		double d = 0.5 / (dx * ey - dy * ex);
+
+		return ax + (ey * bl - dy * cl) * d;
+	}
+
+	static double circumcenterY(double ax, double ay, double bx, double by, double cx, double cy)
+	{
+		double dx = bx - ax;
+		double dy = by - ay;
+		double ex = cx - ax;
+		double ey = cy - ay;
+
+		double bl = dx * dx + dy * dy;
+		double cl = ex * ex + ey * ey;
+		double d = 0.5 / (dx * ey - dy * ex);
+
+		return ay + (dx * cl - ex * bl) * d;
+	}
+
+	/**
+	 * Sorts ids by their values in dists.
+	 */
+	private static void quicksort(int[] ids, double[] dists, int left, int right)
+	{
+		if (right - left <= 20)
+		{
+			for (int i = left + 1; i <= right; i++)
+			{
+				int temp = ids[i];
+				double tempDist = dists[temp];
+				int j = i - 1;
+				while (j >= left && dists[ids[j]] > tempDist)
+				{
+					ids[j + 1] = ids[j--];
+				}
+				ids[j + 1] = temp;
+			}
+		}
+		else
+		{
+			int median = (left + right) >> 1;
+			int i = left + 1;
+			int j = right;
+			swap(ids, median, i);
+			if (dists[ids[left]] > dists[ids[right]])
+			{
+				swap(ids, left, right);
+			}
+			if (dists[ids[i]] > dists[ids[right]])
+			{
+				swap(ids, i, right);
+			}
+			if (dists[ids[left]] > dists[ids[i]])
+			{
+				swap(ids, left, i);
+			}
+
+			int temp = ids[i];
+			double tempDist = dists[temp];
+			while (true)
+			{
+				do
+				{
+					i++;
+				}
+				while (dists[ids[i]] < tempDist);
+				do
+				{
+					j--;
+				}
+				while (dists[ids[j]] > tempDist);
+				if (j < i)
+				{
+					break;
+				}
+				swap(ids, i, j);
+			}
+			ids[left + 1] = ids[j];
+			ids[j] = temp;
+
+			if (right - i + 1 >= j - left)
+			{
+				quicksort(ids, dists, i, right);
+				quicksort(ids, dists, left, j - 1);
+			}
+			else
+			{
+				quicksort(ids, dists, left, j - 1);
+				quicksort(ids, dists, i, right);
+			}
+		}
+	}
+
+	private static void swap(int[] array, int i, int j)
+	{
+		int temp = array[i];
+		array[i] = array[j];
+		array[j] = temp;
+	}
+}
@@ -0,0 +1,459 @@
+package hoten.voronoi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import hoten.geom.Point;
+import hoten.geom.Rectangle;
+import nortantis.util.WorkerPool;
+
+/**
+ * A VoronoiDiagram built from a SweepHullDelaunay triangulation. This is much faster than the Fortune implementation
+ * in the as3delaunay package for large numbers of sites, and gives the same graph topology, but edges come out in a
+ * different order, so the same random seed gives a different map.
+ *
+ * Everything is stored in primitive arrays. Voronoi vertices are the circumcenters of the Delaunay triangles, so each
+ * Voronoi edge is computed once from the two triangles on either side of a Delaunay edge, and shared vertices are
+ * bit-for-bit equal.
+ */
+public class SweepHullVoronoi implements VoronoiDiagram
+{
+	/**
+	 * Relaxation is run on the calling thread for diagrams with fewer sites than this.
+	 */
+	private static final int minSitesToRelaxInParallel = 4096;
+
+	private final Rectangle bounds;
+	private final double[] siteCoords;
+	private final int numSites;
+
+	private final int numEdges;
+	private final int[] edgeSites;
+	/**
+	 * The clipped Voronoi edge of each edge, as x0, y0, x1, y1. NaN if no part of the edge is in bounds.
+	 */
+	private final double[] edgeVertices;
+
+	/**
+	 * Creates a diagram of random sites within a width by height rectangle. This uses the random number generator the
+	 * same way the Fortune implementation does, so both engines get the same sites from the same seed.
+	 */
+	public SweepHullVoronoi(int numSites, double maxWidth, double maxHeight, Random r)
+	{
+		this(createRandomSites(numSites, maxWidth, maxHeight, r), new Rectangle(0, 0, maxWidth, maxHeight));
+	}
+
+	/**
+	 * @param siteCoords
+	 *            The sites, as x0, y0, x1, y1, and so on. They must all be within plotBounds.
+	 */
+	public SweepHullVoronoi(double[] siteCoords, Rectangle plotBounds)
+	{
+		this.bounds = plotBounds;
+		this.siteCoords = siteCoords;
+		this.numSites = siteCoords.length / 2;
+
+		SweepHullDelaunay delaunay = new SweepHullDelaunay(siteCoords);
+		int[] triangles = delaunay.triangles;
+		int[] halfedges = delaunay.halfedges;
+
+		if (triangles.length == 0)
+		{
+			// The sites are all on a line, so each pair of neighbors along it is separated by a whole line.
+			int[] hull = delaunay.hull;
+			numEdges = Math.max(0, hull.length - 1);
+			edgeSites = new int[numEdges * 2];
+			edgeVertices = new double[numEdges * 4];
+			for (int i = 0; i < numEdges; i++)
+			{
+				int s0 = hull[i];
+				int s1 = hull[i + 1];
+				edgeSites[2 * i] = s0;
+				edgeSites[2 * i + 1] = s1;
+				double midX = (siteCoords[2 * s0] + siteCoords[2 * s1]) / 2;
+				double midY = (siteCoords[2 * s0 + 1] + siteCoords[2 * s1 + 1]) / 2;
+				double dx = -(siteCoords[2 * s1 + 1] - siteCoords[2 * s0 + 1]);
+				double dy = siteCoords[2 * s1] - siteCoords[2 * s0];
+				clip(i, midX, midY, midX + dx, midY + dy, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+			}
+			return;
+		}
+
+		int numTriangles = triangles.length / 3;
+		double[] circumcenters = new double[numTriangles * 2];
+		for (int t = 0; t < numTriangles; t++)
+		{
+			int a = triangles[3 * t];
+			int b = triangles[3 * t + 1];
+			int c = triangles[3 * t + 2];
+			double ax = siteCoords[2 * a];
+			double ay = siteCoords[2 * a + 1];
+			double bx = siteCoords[2 * b];
+			double by = siteCoords[2 * b + 1];
+			double cx = siteCoords[2 * c];
+			double cy = siteCoords[2 * c + 1];
+			circumcenters[2 * t] = SweepHullDelaunay.circumcenterX(ax, ay, bx, by, cx, cy);
+			circumcenters[2 * t + 1] = SweepHullDelaunay.circumcenterY(ax, ay, bx, by, cx, cy);
+		}
+
+		// Each Delaunay edge is two half-edges, except on the hull, so take the lower numbered one of each pair.
+		int count = 0;
+		for (int e = 0; e < triangles.length; e++)
+		{
+			if (halfedges[e] == -1 || e < halfedges[e])
+			{
+				count++;
+			}
+		}
+		numEdges = count;
+		edgeSites = new int[numEdges * 2];
+		edgeVertices = new double[numEdges * 4];
+
+		int i = 0;
+		for (int e = 0; e < triangles.length; e++)
+		{
+			int opposite = halfedges[e];
+			if (opposite != -1 && opposite < e)
+			{
+				continue;
+			}
+
+			int s0 = triangles[e];
+			int s1 = triangles[SweepHullDelaunay.nextHalfedge(e)];
+			edgeSites[2 * i] = s0;
+			edgeSites[2 * i + 1] = s1;
+
+			int t = e / 3;
+			double x0 = circumcenters[2 * t];
+			double y0 = circumcenters[2 * t + 1];
+			if (opposite != -1)
+			{
+				int ot = opposite / 3;
+				double x1 = circumcenters[2 * ot];
+				double y1 = circumcenters[2 * ot + 1];
+				clip(i, x0, y0, x1, y1, 0, 1);
+			}
+			else
+			{
+				// The edge is on the convex hull, so its Voronoi edge is a ray from the triangle's circumcenter
+				// away from the triangle's third site.
+				int s2 = triangles[SweepHullDelaunay.prevHalfedge(e)];
+				double dx = -(siteCoords[2 * s1 + 1] - siteCoords[2 * s0 + 1]);
+				double dy = siteCoords[2 * s1] - siteCoords[2 * s0];
+				if (dx * (siteCoords[2 * s2] - siteCoords[2 * s0]) + dy * (siteCoords[2 * s2 + 1] - siteCoords[2 * s0 + 1]) > 0)
+				{
+					dx = -dx;
+					dy = -dy;
+				}
+				clip(i, x0, y0, x0 + dx, y0 + dy, 0, Double.POSITIVE_INFINITY);
+			}
+			i++;
+		}
+	}
+
+	private static double[] createRandomSites(int numSites, double maxWidth, double maxHeight, Random r)
+	{
+		double[] coords = new double[numSites * 2];
+		for (int i = 0; i < numSites; i++)
+		{
+			coords[2 * i] = r.nextDouble() * maxWidth;
+			coords[2 * i + 1] = r.nextDouble() * maxHeight;
+		}
+		return coords;
+	}
+
+	/**
+	 * Clips the line (x0, y0) + t * (x1 - x0, y1 - y0) for t in [tMin, tMax] to the bounds with the Liang-Barsky
+	 * algorithm, and stores the result as the Voronoi edge of the given edge. Ends that are clipped are placed exactly
+	 * on the bounds, and ends that aren't (which can only be at t = 0 or t = 1) are exactly (x0, y0) or (x1, y1).
+	 */
+	private void clip(int edgeIndex, double x0, double y0, double x1, double y1, double tMin, double tMax)
+	{
+		double x = x0;
+		double y = y0;
+		double dx = x1 - x0;
+		double dy = y1 - y0;
+		double[] p = { -dx, dx, -dy, dy };
+		double[] q = { x - bounds.left, bounds.right - x, y - bounds.top, bounds.bottom - y };
+		int minSide = -1;
+		int maxSide = -1;
+		for (int side = 0; side < 4; side++)
+		{
+			if (p[side] == 0)
+			{
+				if (q[side] < 0)
+				{
+					setInvisible(edgeIndex);
+					return;
+				}
+			}
+			else
+			{
+				double t = q[side] / p[side];
+				if (p[side] < 0 && t > tMin)
+				{
+					tMin = t;
+					minSide = side;
+				}
+				else if (p[side] > 0 && t < tMax)
+				{
+					tMax = t;
+					maxSide = side;
+				}
+			}
+		}
+		if (tMin > tMax)
+		{
+			setInvisible(edgeIndex);
+			return;
+		}
+
+		setEnd(edgeIndex, 0, x0, y0, x1, y1, tMin, minSide);
+		setEnd(edgeIndex, 1, x0, y0, x1, y1, tMax, maxSide);
+	}
+
+	private void setEnd(int edgeIndex, int end, double x0, double y0, double x1, double y1, double t, int clippedSide)
+	{
+		double endX = x0;
+		double endY = y0;
+		if (clippedSide != -1)
+		{
+			endX = Math.max(bounds.left, Math.min(bounds.right, x0 + t * (x1 - x0)));
+			endY = Math.max(bounds.top, Math.min(bounds.bottom, y0 + t * (y1 - y0)));
+			if (clippedSide == 0)
+			{
+				endX = bounds.left;
+			}
+			else if (clippedSide == 1)
+			{
+				endX = bounds.right;
+			}
+			else if (clippedSide == 2)
+			{
+				endY = bounds.top;
+			}
+			else
+			{
+				endY = bounds.bottom;
+			}
+		}
+		else if (t != 0)
+		{
+			endX = x1;
+			endY = y1;
+		}
+		edgeVertices[4 * edgeIndex + 2 * end] = endX;
+		edgeVertices[4 * edgeIndex + 2 * end + 1] = endY;
+	}
+
+	private void setInvisible(int edgeIndex)
+	{
+		for (int i = 0; i < 4; i++)
+		{
+			edgeVertices[4 * edgeIndex + i] = Double.NaN;
+		}
+	}
+
+	@Override
+	public Rectangle getPlotBounds()
+	{
+		return bounds;
+	}
+
+	@Override
+	public ArrayList<Point> siteCoords()
+	{
+		ArrayList<Point> points = new ArrayList<>(numSites);
+		for (int i = 0; i < numSites; i++)
+		{
+			points.add(new Point(siteCoords[2 * i], siteCoords[2 * i + 1]));
+		}
+		return points;
+	}
+
+	@Override
+	public int getNumEdges()
+	{
+		return numEdges;
+	}
+
+	@Override
+	public int getEdgeSite0(int edgeIndex)
+	{
+		return edgeSites[2 * edgeIndex];
+	}
+
+	@Override
+	public int getEdgeSite1(int edgeIndex)
+	{
+		return edgeSites[2 * edgeIndex + 1];
+	}
+
+	@Override
+	public Point getEdgeVertex0(int edgeIndex)
+	{
+		return getEdgeVertex(edgeIndex, 0);
+	}
+
+	@Override
+	public Point getEdgeVertex1(int edgeIndex)
+	{
+		return getEdgeVertex(edgeIndex, 1);
+	}
+
+	private Point getEdgeVertex(int edgeIndex, int end)
+	{
+		double x = edgeVertices[4 * edgeIndex + 2 * end];
+		if (Double.isNaN(x))
+		{
+			return null;
+		}
+		return new Point(x, edgeVertices[4 * edgeIndex + 2 * end + 1]);
+	}
+
+	/**
+	 * Moves each site to the average of the vertices of its clipped Voronoi region, including any corners of the
+	 * bounds inside the region. The sites are independent of each other, so they are done in parallel.
+	 */
+	@Override
+	public SweepHullVoronoi relax()
+	{
+		// Find the edges of each site, in compressed sparse row form.
+		int[] siteEdgeStarts = new int[numSites + 1];
+		for (int i = 0; i < numEdges * 2; i++)
+		{
+			siteEdgeStarts[edgeSites[i] + 1]++;
+		}
+		for (int s = 0; s < numSites; s++)
+		{
+			siteEdgeStarts[s + 1] += siteEdgeStarts[s];
+		}
+		int[] siteEdges = new int[numEdges * 2];
+		int[] nextSlot = new int[numSites];
+		for (int i = 0; i < numEdges * 2; i++)
+		{
+			int site = edgeSites[i];
+			siteEdges[siteEdgeStarts[site] + nextSlot[site]++] = i / 2;
+		}
+
+		// Each corner of the bounds is in the region of the site closest to it.
+		double[] boundsCorners = { bounds.left, bounds.top, bounds.right, bounds.top, bounds.right, bounds.bottom, bounds.left,
+				bounds.bottom };
+		int[] boundsCornerSites = new int[4];
+		for (int c = 0; c < 4; c++)
+		{
+			boundsCornerSites[c] = findClosestSite(boundsCorners[2 * c], boundsCorners[2 * c + 1]);
+		}
+
+		double[] relaxed = new double[numSites * 2];
+		if (numSites < minSitesToRelaxInParallel)
+		{
+			relaxSites(0, numSites, siteEdgeStarts, siteEdges, boundsCorners, boundsCornerSites, relaxed);
+		}
+		else
+		{
+			int numJobs = WorkerPool.getInstance().getMaxParallelism() * 4;
+			int sitesPerJob = (numSites + numJobs - 1) / numJobs;
+			List<Runnable> jobs = new ArrayList<>();
+			for (int start = 0; start < numSites; start += sitesPerJob)
+			{
+				final int jobStart = start;
+				final int jobEnd = Math.min(numSites, start + sitesPerJob);
+				jobs.add(() -> relaxSites(jobStart, jobEnd, siteEdgeStarts, siteEdges, boundsCorners, boundsCornerSites, relaxed));
+			}
+			WorkerPool.getInstance().runAll(jobs);
+		}
+
+		return new SweepHullVoronoi(relaxed, bounds);
+	}
+
+	private void relaxSites(int start, int end, int[] siteEdgeStarts, int[] siteEdges, double[] boundsCorners, int[] boundsCornerSites,
+			double[] relaxed)
+	{
+		// Vertices of the current region, as x0, y0, x1, y1, and so on. Each edge adds at most 2, plus the corners of the bounds.
+		int maxEdges = 0;
+		for (int s = start; s < end; s++)
+		{
+			maxEdges = Math.max(maxEdges, siteEdgeStarts[s + 1] - siteEdgeStarts[s]);
+		}
+		double[] vertices = new double[(maxEdges * 2 + 4) * 2];
+		for (int s = start; s < end; s++)
+		{
+			int numVertices = 0;
+			for (int i = siteEdgeStarts[s]; i < siteEdgeStarts[s + 1]; i++)
+			{
+				int edge = siteEdges[i];
+				for (int j = 0; j < 4; j += 2)
+				{
+					double x = edgeVertices[4 * edge + j];
+					if (!Double.isNaN(x))
+					{
+						numVertices = addVertexIfAbsent(vertices, numVertices, x, edgeVertices[4 * edge + j + 1]);
+					}
+				}
+			}
+			for (int c = 0; c < 4; c++)
+			{
+				if (boundsCornerSites[c] == s)
+				{
+					numVertices = addVertexIfAbsent(vertices, numVertices, boundsCorners[2 * c], boundsCorners[2 * c + 1]);
+				}
+			}
+
+			if (numVertices == 0)
+			{
+				relaxed[2 * s] = siteCoords[2 * s];
+				relaxed[2 * s + 1] = siteCoords[2 * s + 1];
+				continue;
+			}
+			double x = 0;
+			double y = 0;
+			for (int v = 0; v < numVertices; v++)
+			{
+				x += vertices[2 * v];
+				y += vertices[2 * v + 1];
+			}
+			relaxed[2 * s] = x / numVertices;
+			relaxed[2 * s + 1] = y / numVertices;
+		}
+	}
+
+	/**
+	 * Adds (x, y) to the first numVertices vertices unless it is already there. Vertices shared by two edges of a
+	 * region are the same circumcenter, so they are exactly equal.
+	 *
+	 * @return The new number of vertices.
+	 */
+	private static int addVertexIfAbsent(double[] vertices, int numVertices, double x, double y)
+	{
+		for (int v = 0; v < numVertices; v++)
+		{
+			if (vertices[2 * v] == x && vertices[2 * v + 1] == y)
+			{
+				return numVertices;
+			}
+		}
+		vertices[2 * numVertices] = x;
+		vertices[2 * numVertices + 1] = y;
+		return numVertices + 1;
+	}
+
+	private int findClosestSite(double x, double y)
+	{
+		int closest = -1;
+		double closestDistance = Double.POSITIVE_INFINITY;
+		for (int s = 0; s < numSites; s++)
+		{
+			double dx = siteCoords[2 * s] - x;
+			double dy = siteCoords[2 * s + 1] - y;
+			double distance = dx * dx + dy * dy;
+			if (distance < closestDistance)
+			{
+				closest = s;
+				closestDistance = distance;
+			}
+		}
+		return closest;
+	}
+}
@@ -0,0 +1,53 @@
+package hoten.voronoi;
+
+import java.util.ArrayList;
+
+import hoten.geom.Point;
+import hoten.geom.Rectangle;
+
+/**
+ * A Voronoi diagram of a set of sites, clipped to a rectangle. VoronoiGraph builds its centers, corners, and edges
+ * from this, so any triangulation engine that implements it produces the same kind of graph.
+ *
+ * Each edge is a pair of neighboring sites (an edge of the Delaunay triangulation) together with the part of the
+ * Voronoi edge between them that lies within the plot bounds.
+ */
+public interface VoronoiDiagram
+{
+	Rectangle getPlotBounds();
+
+	/**
+	 * @return The sites. VoronoiGraph gives centers their indexes in this order.
+	 */
+	ArrayList<Point> siteCoords();
+
+	int getNumEdges();
+
+	/**
+	 * @return The index in siteCoords() of one of the two sites the given edge separates.
+	 */
+	int getEdgeSite0(int edgeIndex);
+
+	/**
+	 * @return The index in siteCoords() of the other site the given edge separates.
+	 */
+	int getEdgeSite1(int edgeIndex);
+
+	/**
+	 * @return One end of the given edge's Voronoi edge, clipped to the plot bounds, or null if no part of the
+	 *         Voronoi edge is within the bounds.
+	 */
+	Point getEdgeVertex0(int edgeIndex);
+
+	/**
+	 * @return The other end of the given edge's clipped Voronoi edge, or null if no part of it is within the bounds.
+	 */
+	Point getEdgeVertex1(int edgeIndex);
+
+	/**
+	 * Performs one step of Lloyd relaxation.
+	 *
+	 * @return A new diagram with each site moved to the average of the vertices of its clipped Voronoi region.
+	 */
+	VoronoiDiagram relax();
+}
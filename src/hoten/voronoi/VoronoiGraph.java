@@ -9,23 +9,20 @@ import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
-import java.util.TreeMap;
 import java.util.function.Function;
 
 import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
 
 import hoten.geom.Point;
 import hoten.geom.Rectangle;
-import hoten.voronoi.nodename.as3delaunay.LineSegment;
-import hoten.voronoi.nodename.as3delaunay.Voronoi;
 import nortantis.Biome;
+import nortantis.util.ParallelRanges;
 import nortantis.util.Range;
 
 /**
@@ -38,6 +35,10 @@ public abstract class VoronoiGraph {
     final public ArrayList<Edge> edges = new ArrayList<>();
     final public ArrayList<Corner> corners = new ArrayList<>();
     final public ArrayList<Center> centers = new ArrayList<>();
+    /**
+     * The adjacency, elevation, moisture, and flags of centers and corners. Created by buildGraph.
+     */
+    public GraphCore core;
     public Rectangle bounds;
     final protected Random rand;
     public BufferedImage img;
@@ -62,25 +63,11 @@ public abstract class VoronoiGraph {
         dipWidth = r.nextDouble() * .5 + .2;
    }
     
-    public void initVoronoiGraph(Voronoi v, int numLloydRelaxations, boolean createElevationRiversAndBiomes)
+    public void initVoronoiGraph(VoronoiDiagram v, int numLloydRelaxations, boolean createElevationRiversAndBiomes)
     {
-        bounds = v.get_plotBounds();
-         for (int i = 0; i < numLloydRelaxations; i++) {
-            ArrayList<Point> points = v.siteCoords();
-            for (Point p : points) {
-                ArrayList<Point> region = v.region(p);
-                double x = 0;
-                double y = 0;
-                for (Point c : region) {
-                    x += c.x;
-                    y += c.y;
-                }
-                x /= region.size();
-                y /= region.size();
-                p.x = x;
-                p.y = y;
-            }
-            v = new Voronoi(points, null, v.get_plotBounds());
+        bounds = v.getPlotBounds();
+        for (int i = 0; i < numLloydRelaxations; i++) {
+            v = v.relax();
         }
         buildGraph(v);
         improveCorners();
@@ -101,6 +88,7 @@ public abstract class VoronoiGraph {
         // Joseph note: I moved noisy edge building code to GraphImpl because it now depends on the political regions.
     }
     
+    // This is called for many centers at once from different threads, so it must only read the graph.
     abstract protected Biome getBiome(Center p);
 
     abstract protected Color getColor(Biome biome);
@@ -108,28 +96,34 @@ public abstract class VoronoiGraph {
 
     /* an additional smoothing method across corners */
     private void improveCorners() {
-        Point[] newP = new Point[corners.size()];
-        for (Corner c : corners) {
-            if (c.border) {
-                newP[c.index] = c.loc;
-            } else {
-                double x = 0;
-                double y = 0;
-                for (Center center : c.touches) {
-                    x += center.loc.x;
-                    y += center.loc.y;
+        final Point[] newP = new Point[corners.size()];
+        ParallelRanges.forEachChunk(corners.size(), (start, end) -> {
+            for (int i = start; i < end; i++) {
+                Corner c = corners.get(i);
+                if (c.isBorder()) {
+                    newP[c.index] = c.loc;
+                } else {
+                    double x = 0;
+                    double y = 0;
+                    for (Center center : c.touches) {
+                        x += center.loc.x;
+                        y += center.loc.y;
+                    }
+                    newP[c.index] = new Point(x / c.touches.size(), y / c.touches.size());
                 }
-                newP[c.index] = new Point(x / c.touches.size(), y / c.touches.size());
             }
-        }
+        });
         for (Corner c : corners) {
             c.loc = newP[c.index];
         }
-        for (Edge e : edges) {
-            if (e.v0 != null && e.v1 != null) {
-                e.setVornoi(e.v0, e.v1);
+        ParallelRanges.forEachChunk(edges.size(), (start, end) -> {
+            for (int i = start; i < end; i++) {
+                Edge e = edges.get(i);
+                if (e.v0 != null && e.v1 != null) {
+                    e.setVornoi(e.v0, e.v1);
+                }
             }
-        }
+        });
     }
 
     private Edge edgeWithCenters(Center c1, Center c2) 
@@ -157,9 +151,9 @@ public abstract class VoronoiGraph {
     
     private static void drawTriangleElevation(Graphics2D g, Corner c1, Corner c2, Center center) 
     {
-    	Vector3D v1 = new Vector3D(c1.loc.x, c1.loc.y, c1.elevation);
-    	Vector3D v2 = new Vector3D(c2.loc.x, c2.loc.y, c2.elevation);
-    	Vector3D v3 = new Vector3D(center.loc.x, center.loc.y, center.elevation);
+    	Vector3D v1 = new Vector3D(c1.loc.x, c1.loc.y, c1.getElevation());
+    	Vector3D v2 = new Vector3D(c2.loc.x, c2.loc.y, c2.getElevation());
+    	Vector3D v3 = new Vector3D(center.loc.x, center.loc.y, center.getElevation());
     	
     	// Normal of the plane containing the triangle
     	Vector3D N = v2.subtract(v1).crossProduct(v3.subtract(v1));
@@ -175,7 +169,7 @@ public abstract class VoronoiGraph {
        			&& Math.abs(G.getY()) < verySmall || Double.isInfinite(G.getY()) || Double.isNaN(G.getY()))
     	{
        		// The triangle is either flat or vertical. 
-    		int grayLevel = (int)(255 * center.elevation);
+    		int grayLevel = (int)(255 * center.getElevation());
     		g.setColor(new Color(grayLevel, grayLevel, grayLevel));
         	drawTriangle(g, c1, c2, center);
         	return;
@@ -236,14 +230,15 @@ public abstract class VoronoiGraph {
     private static void drawTriangleElevationWithXAndYGradientTest()
     {
     	BufferedImage image = new BufferedImage(101,101, BufferedImage.TYPE_INT_RGB);
-    	Corner corner1 = new Corner();
+    	GraphCore core = new GraphCore(1, 2);
+    	Corner corner1 = new Corner(core, 0, null);
     	corner1.loc = new Point(0, 0);
-    	corner1.elevation = 0.0;
-    	Corner corner2 = new Corner();
-    	corner2.elevation = 0.5;
+    	corner1.setElevation(0.0);
+    	Corner corner2 = new Corner(core, 1, null);
+    	corner2.setElevation(0.5);
     	corner2.loc = new Point(100, 0);
-    	Center center = new Center(new Point(100, 100));
-    	center.elevation = 1.0;
+    	Center center = new Center(core, 0, new Point(100, 100));
+    	center.setElevation(1.0);
     	Graphics2D g = image.createGraphics();
     	drawTriangleElevation(g, corner1, corner2, center);
         assertEquals(
@@ -260,46 +255,48 @@ public abstract class VoronoiGraph {
     private static void drawTriangleElevationZeroXGradientTest()
     {
     	BufferedImage image = new BufferedImage(101,101, BufferedImage.TYPE_INT_RGB);
-    	Corner corner1 = new Corner();
+    	GraphCore core = new GraphCore(1, 2);
+    	Corner corner1 = new Corner(core, 0, null);
     	corner1.loc = new Point(0, 0);
-    	corner1.elevation = 0.5;
-    	Corner corner2 = new Corner();
-    	corner2.elevation = 0.5;
+    	corner1.setElevation(0.5);
+    	Corner corner2 = new Corner(core, 1, null);
+    	corner2.setElevation(0.5);
     	corner2.loc = new Point(50, 0);
-    	Center center = new Center(new Point(50, 100));
-    	center.elevation = 1.0;
+    	Center center = new Center(core, 0, new Point(50, 100));
+    	center.setElevation(1.0);
     	Graphics2D g = image.createGraphics();
     	drawTriangleElevation(g, corner1, corner2, center);
     	assertEquals(
-    			(int)(corner1.elevation * 255),
+    			(int)(corner1.getElevation() * 255),
     			new Color(image.getRGB((int)corner1.loc.x, (int)corner1.loc.y)).getBlue());
     	assertEquals(
-    			(int)(corner2.elevation * 255),
+    			(int)(corner2.getElevation() * 255),
     			new Color(image.getRGB((int)corner2.loc.x - 1, (int)corner2.loc.y)).getBlue());
-    	assertEquals((int)(center.elevation * 253),
+    	assertEquals((int)(center.getElevation() * 253),
     			new Color(image.getRGB((int)center.loc.x - 1, (int)center.loc.y - 2)).getBlue());
     }
 
     private static void drawTriangleElevationZeroYGradientTest()
     {
     	BufferedImage image = new BufferedImage(101,101, BufferedImage.TYPE_INT_RGB);
-    	Corner corner1 = new Corner();
+    	GraphCore core = new GraphCore(1, 2);
+    	Corner corner1 = new Corner(core, 0, null);
     	corner1.loc = new Point(0, 0);
-    	corner1.elevation = 0.0;
-    	Corner corner2 = new Corner();
-    	corner2.elevation = 0.0;
+    	corner1.setElevation(0.0);
+    	Corner corner2 = new Corner(core, 1, null);
+    	corner2.setElevation(0.0);
     	corner2.loc = new Point(0, 100);
-    	Center center = new Center(new Point(50, 100));
-    	center.elevation = 1.0;
+    	Center center = new Center(core, 0, new Point(50, 100));
+    	center.setElevation(1.0);
     	Graphics2D g = image.createGraphics();
     	drawTriangleElevation(g, corner1, corner2, center);
     	assertEquals(
-    			(int)(corner1.elevation * 255), 
+    			(int)(corner1.getElevation() * 255), 
     			new Color(image.getRGB((int)corner1.loc.x, (int)corner1.loc.y)).getBlue());
     	assertEquals(
-    			(int)(corner2.elevation * 255),
+    			(int)(corner2.getElevation() * 255),
     			new Color(image.getRGB((int)corner2.loc.x, (int)corner2.loc.y)).getBlue());
-    	assertEquals((int)(center.elevation * 249),
+    	assertEquals((int)(center.getElevation() * 249),
     			new Color(image.getRGB((int)center.loc.x - 1, (int)center.loc.y-1)).getBlue());
     }
 
@@ -380,7 +377,7 @@ public abstract class VoronoiGraph {
         	g.setColor(Color.black);
         	g.fillRect(0, 0, (int)bounds.width, (int)bounds.height);
         	g.setColor(Color.white);
-        	Function <Edge, Boolean> shouldDraw = edge -> edge.d0.isWater != edge.d1.isWater;
+        	Function <Edge, Boolean> shouldDraw = edge -> edge.d0.isWater() != edge.d1.isWater();
         	drawSpecifiedEdges(g, Math.max(1, (int) widthMultipierForMasks), shouldDraw);
         	return;
         }
@@ -389,7 +386,7 @@ public abstract class VoronoiGraph {
         {
 	        for (Center c : centers) 
 	        {
-            	float grayLevel = (float) (float)c.elevation;
+            	float grayLevel = (float) (float)c.getElevation();
             	g.setColor(new Color(grayLevel, grayLevel, grayLevel));	            
 	            drawUsingTriangles(g, c, true);
 	        }
@@ -473,7 +470,7 @@ public abstract class VoronoiGraph {
 			{
 				public Color apply(Center c)
 				{
-					return c.isWater ? Color.black : Color.white;
+					return c.isWater() ? Color.black : Color.white;
 				}
 			});
 		
@@ -512,8 +509,8 @@ public abstract class VoronoiGraph {
         	{
         		int width = Math.max(1, (int)(riverWidthScale + Math.sqrt(e.river * 0.1)));
                 g.setStroke(new BasicStroke(width));
-                drawPath(g, noisyEdges.path0.get(e.index));
-                drawPath(g, noisyEdges.path1.get(e.index));
+                drawPath(g, noisyEdges.getPath0(e));
+                drawPath(g, noisyEdges.getPath1(e));
         	}
         }
     }
@@ -544,7 +541,7 @@ public abstract class VoronoiGraph {
             
             for (Corner cornerWithOneAdjacent : Arrays.asList(e.v0, e.v1))
             {
-	            if (cornerWithOneAdjacent.border) 
+	            if (cornerWithOneAdjacent.isBorder()) 
 	            {
             		if (edgeCorners == null)
             		{
@@ -663,7 +660,7 @@ public abstract class VoronoiGraph {
 						if (drawElevation)
 						{
 							// I really should break the polygon into triangles and call drawElevationOfTriangle on each, but for now I'm just doing this.
-				           	float grayLevel = (float) (float)c.elevation;
+				           	float grayLevel = (float) (float)c.getElevation();
 			            	g.setColor(new Color(grayLevel, grayLevel, grayLevel));	            
 						}
 						g.fillPolygon(x, y, 4);
@@ -675,18 +672,17 @@ public abstract class VoronoiGraph {
 
     }
     
-    private void drawPath(Graphics2D g, List<Point> path)
+    private void drawPath(Graphics2D g, double[] path)
     {
-        for (int i = 1; i < path.size(); i++)
+        for (int i = 2; i + 1 < path.length; i += 2)
         {
-        	g.drawLine((int)path.get(i-1).x, (int)path.get(i-1).y, (int)path.get(i).x, 
-        			(int)path.get(i).y);
+        	g.drawLine((int)path[i - 2], (int)path[i - 1], (int)path[i], (int)path[i + 1]);
         }    	
     }
     
     public void drawCoastline(Graphics2D g, double width)
     {
-    	drawSpecifiedEdges(g, Math.max(1, (int) width), edge -> edge.d0.isWater != edge.d1.isWater);
+    	drawSpecifiedEdges(g, Math.max(1, (int) width), edge -> edge.d0.isWater() != edge.d1.isWater());
     }
 
     public void drawRegionBorders(Graphics2D g, double width, boolean ignoreRiverEdges)
@@ -726,40 +722,29 @@ public abstract class VoronoiGraph {
 	
 	public void drawEdge(Graphics2D g, Edge edge)
 	{
-		if (noisyEdges.path0.get(edge.index) == null
-				|| noisyEdges.path1.get(edge.index) == null)
+		double[] path0 = noisyEdges.getPath0(edge);
+		if (path0 == null)
 		{
 			// It's at the edge of the map, where we don't have
 			// the noisy edges computed. 
 			return;
 		}
 
-		// Draw path0.
-		{
-			List<Point> path = noisyEdges.path0.get(edge.index);
-			int[] xPoints = new int[path.size()];
-			int[] yPoints = new int[path.size()];
-			for (int i : new Range(path.size()))
-			{
-				xPoints[i] = (int) path.get(i).x;
-				yPoints[i] = (int) path.get(i).y;
-			}
-			g.drawPolyline(xPoints, yPoints, xPoints.length);
-		}
-
-		// Draw path1.
+		drawPolyline(g, path0);
+		drawPolyline(g, noisyEdges.getPath1(edge));
+	}
+	
+	private void drawPolyline(Graphics2D g, double[] path)
+	{
+		int numPoints = path.length / 2;
+		int[] xPoints = new int[numPoints];
+		int[] yPoints = new int[numPoints];
+		for (int i = 0; i < numPoints; i++)
 		{
-			List<Point> path = noisyEdges.path1.get(edge.index);
-			int[] xPoints = new int[path.size()];
-			int[] yPoints = new int[path.size()];
-			for (int i : new Range(path.size()))
-			{
-				xPoints[i] = (int) path.get(i).x;
-				yPoints[i] = (int) path.get(i).y;
-			}
-			g.drawPolyline(xPoints, yPoints, xPoints.length);
+			xPoints[i] = (int) path[2 * i];
+			yPoints[i] = (int) path[2 * i + 1];
 		}
-
+		g.drawPolyline(xPoints, yPoints, numPoints);
 	}
     
     /**
@@ -778,7 +763,7 @@ public abstract class VoronoiGraph {
     	// First I must draw border polygons without noisy edges because the noisy edges don't exist on the borders.
     	for (Center c : centersToRender)
     	{
-    		if (c.isBorder)
+    		if (c.isBorder())
     		{
 				Color color = colorChooser.apply(c);
 				if (color != null)
@@ -800,7 +785,7 @@ public abstract class VoronoiGraph {
 				if (color != null)
 				{
 					g.setColor(color);
-					if (noisyEdges == null || noisyEdges.path0.get(edge.index) == null || noisyEdges.path1.get(edge.index) == null)
+					if (noisyEdges == null || noisyEdges.getPath0(edge) == null)
 					{
 						// This can happen if noisy edges haven't been created yet or if the polygon is on the border.
 						drawPieceWithoutNoisyEdges(g, edge, c);
@@ -828,30 +813,19 @@ public abstract class VoronoiGraph {
     
     private void dawPieceUsingNoisyEdges(Graphics2D g, Edge edge, Center c)
     {
-		// Draw path0.
-		{
-			List<Point> path = noisyEdges.path0.get(edge.index);
-			java.awt.Polygon shape = new java.awt.Polygon();
-			shape.addPoint((int) c.loc.x, (int) c.loc.y);
-			for (Point point : path)
-			{
-				shape.addPoint((int) point.x, (int) point.y);
-			}
-			g.fillPolygon(shape);
-		}
-
-		// Draw path1.
+		fillPiece(g, noisyEdges.getPath0(edge), c);
+		fillPiece(g, noisyEdges.getPath1(edge), c);
+    }
+    
+    private void fillPiece(Graphics2D g, double[] path, Center c)
+    {
+		java.awt.Polygon shape = new java.awt.Polygon();
+		shape.addPoint((int) c.loc.x, (int) c.loc.y);
+		for (int i = 0; i + 1 < path.length; i += 2)
 		{
-			List<Point> path = noisyEdges.path1.get(edge.index);
-			java.awt.Polygon shape = new java.awt.Polygon();
-			shape.addPoint((int) c.loc.x, (int) c.loc.y);
-			for (Point point : path)
-			{
-				shape.addPoint((int) point.x, (int) point.y);
-			}
-			g.fillPolygon(shape);
+			shape.addPoint((int) path[i], (int) path[i + 1]);
 		}
-
+		g.fillPolygon(shape);
     }
 
 	// Look up a Voronoi Edge object given two adjacent Voronoi
@@ -867,102 +841,139 @@ public abstract class VoronoiGraph {
 	}
 
 
-    private void buildGraph(Voronoi v) {
-        final HashMap<Point, Center> pointCenterMap = new HashMap<>();
+    private void buildGraph(VoronoiDiagram v) {
         final ArrayList<Point> points = v.siteCoords();
         for (Point p : points) {
             Center c = new Center();
             c.loc = p;
             c.index = centers.size();
             centers.add(c);
-            pointCenterMap.put(p, c);
         }
 
-        //bug fix
-        for (Center c : centers) {
-            v.region(c.loc);
-        }
-
-        final ArrayList<hoten.voronoi.nodename.as3delaunay.Edge> libedges = v.edges();
-        final TreeMap<Point, Corner> pointCornerMap = new TreeMap<>();
-
-        for (hoten.voronoi.nodename.as3delaunay.Edge libedge : libedges) {
-            final LineSegment vEdge = libedge.voronoiEdge();
-            final LineSegment dEdge = libedge.delaunayLine();
-
+        final int numEdges = v.getNumEdges();
+        final CornerIndex cornerIndex = new CornerIndex(2 * centers.size());
+        final BitSet cornerIsBorder = new BitSet();
+
+        // Adjacency is collected in the order it's found, and then packed into the GraphCore. The builders for
+        // relationships that may be found more than once drop the repeats, keeping the first.
+        final GraphCore.RowBuilder centerNeighbors = new GraphCore.RowBuilder(2 * numEdges, true);
+        final GraphCore.RowBuilder centerCorners = new GraphCore.RowBuilder(4 * numEdges, true);
+        final GraphCore.RowBuilder centerBorders = new GraphCore.RowBuilder(2 * numEdges, false);
+        final GraphCore.RowBuilder cornerTouches = new GraphCore.RowBuilder(4 * numEdges, true);
+        final GraphCore.RowBuilder cornerAdjacent = new GraphCore.RowBuilder(2 * numEdges, true);
+        final GraphCore.RowBuilder cornerProtrudes = new GraphCore.RowBuilder(2 * numEdges, false);
+        final int[] edgeD0 = new int[numEdges];
+        final int[] edgeD1 = new int[numEdges];
+        final int[] edgeV0 = new int[numEdges];
+        final int[] edgeV1 = new int[numEdges];
+
+        for (int i = 0; i < numEdges; i++) {
             final Edge edge = new Edge();
             edge.index = edges.size();
             edges.add(edge);
 
-            edge.v0 = makeCorner(pointCornerMap, vEdge.p0);
-            edge.v1 = makeCorner(pointCornerMap, vEdge.p1);
-            edge.d0 = pointCenterMap.get(dEdge.p0);
-            edge.d1 = pointCenterMap.get(dEdge.p1);
+            edge.v0 = makeCorner(cornerIndex, cornerIsBorder, v.getEdgeVertex0(i));
+            edge.v1 = makeCorner(cornerIndex, cornerIsBorder, v.getEdgeVertex1(i));
+            final int d0 = v.getEdgeSite0(i);
+            final int d1 = v.getEdgeSite1(i);
+            edge.d0 = d0 == -1 ? null : centers.get(d0);
+            edge.d1 = d1 == -1 ? null : centers.get(d1);
+
+            final int v0 = edge.v0 == null ? -1 : edge.v0.index;
+            final int v1 = edge.v1 == null ? -1 : edge.v1.index;
+            edgeD0[edge.index] = d0;
+            edgeD1[edge.index] = d1;
+            edgeV0[edge.index] = v0;
+            edgeV1[edge.index] = v1;
 
             // Centers point to edges. Corners point to edges.
-            if (edge.d0 != null) {
-                edge.d0.borders.add(edge);
+            if (d0 != -1) {
+                centerBorders.add(d0, edge.index);
             }
-            if (edge.d1 != null) {
-                edge.d1.borders.add(edge);
+            if (d1 != -1) {
+                centerBorders.add(d1, edge.index);
             }
-            if (edge.v0 != null) {
-                edge.v0.protrudes.add(edge);
+            if (v0 != -1) {
+                cornerProtrudes.add(v0, edge.index);
             }
-            if (edge.v1 != null) {
-                edge.v1.protrudes.add(edge);
+            if (v1 != -1) {
+                cornerProtrudes.add(v1, edge.index);
             }
 
             // Centers point to centers.
-            if (edge.d0 != null && edge.d1 != null) {
-                addToCenterList(edge.d0.neighbors, edge.d1);
-                addToCenterList(edge.d1.neighbors, edge.d0);
+            if (d0 != -1 && d1 != -1) {
+                centerNeighbors.add(d0, d1);
+                centerNeighbors.add(d1, d0);
             }
 
             // Corners point to corners
-            if (edge.v0 != null && edge.v1 != null) {
-                addToCornerList(edge.v0.adjacent, edge.v1);
-                addToCornerList(edge.v1.adjacent, edge.v0);
+            if (v0 != -1 && v1 != -1) {
+                cornerAdjacent.add(v0, v1);
+                cornerAdjacent.add(v1, v0);
             }
 
             // Centers point to corners
-            if (edge.d0 != null) {
-                addToCornerList(edge.d0.corners, edge.v0);
-                addToCornerList(edge.d0.corners, edge.v1);
+            if (d0 != -1) {
+                addIfNotNull(centerCorners, d0, v0);
+                addIfNotNull(centerCorners, d0, v1);
             }
-            if (edge.d1 != null) {
-                addToCornerList(edge.d1.corners, edge.v0);
-                addToCornerList(edge.d1.corners, edge.v1);
+            if (d1 != -1) {
+                addIfNotNull(centerCorners, d1, v0);
+                addIfNotNull(centerCorners, d1, v1);
             }
 
             // Corners point to centers
-            if (edge.v0 != null) {
-                addToCenterList(edge.v0.touches, edge.d0);
-                addToCenterList(edge.v0.touches, edge.d1);
+            if (v0 != -1) {
+                addIfNotNull(cornerTouches, v0, d0);
+                addIfNotNull(cornerTouches, v0, d1);
             }
-            if (edge.v1 != null) {
-                addToCenterList(edge.v1.touches, edge.d0);
-                addToCenterList(edge.v1.touches, edge.d1);
+            if (v1 != -1) {
+                addIfNotNull(cornerTouches, v1, d0);
+                addIfNotNull(cornerTouches, v1, d1);
             }
         }
-    }
 
-    // Helper functions for the following for loop; ideally these
-    // would be inlined
-    private void addToCornerList(ArrayList<Corner> list, Corner c) {
-        if (c != null && !list.contains(c)) {
-            list.add(c);
+        core = new GraphCore(centers.size(), corners.size());
+        centerNeighbors.pack(centers.size(), centers.size());
+        core.centerNeighborStarts = centerNeighbors.starts;
+        core.centerNeighbors = centerNeighbors.packedValues;
+        centerCorners.pack(centers.size(), corners.size());
+        core.centerCornerStarts = centerCorners.starts;
+        core.centerCorners = centerCorners.packedValues;
+        centerBorders.pack(centers.size(), edges.size());
+        core.centerBorderStarts = centerBorders.starts;
+        core.centerBorders = centerBorders.packedValues;
+        cornerTouches.pack(corners.size(), centers.size());
+        core.cornerTouchStarts = cornerTouches.starts;
+        core.cornerTouches = cornerTouches.packedValues;
+        cornerAdjacent.pack(corners.size(), corners.size());
+        core.cornerAdjacentStarts = cornerAdjacent.starts;
+        core.cornerAdjacent = cornerAdjacent.packedValues;
+        cornerProtrudes.pack(corners.size(), edges.size());
+        core.cornerProtrudeStarts = cornerProtrudes.starts;
+        core.cornerProtrudes = cornerProtrudes.packedValues;
+        core.edgeD0 = edgeD0;
+        core.edgeD1 = edgeD1;
+        core.edgeV0 = edgeV0;
+        core.edgeV1 = edgeV1;
+        core.cornerIsBorder.or(cornerIsBorder);
+
+        for (Center c : centers) {
+            c.setAdjacency(core, centers, corners, edges);
+        }
+        for (Corner c : corners) {
+            c.setAdjacency(core, centers, corners, edges);
         }
     }
 
-    private void addToCenterList(ArrayList<Center> list, Center c) {
-        if (c != null && !list.contains(c)) {
-            list.add(c);
+    private static void addIfNotNull(GraphCore.RowBuilder rows, int rowIndex, int index) {
+        if (index != -1) {
+            rows.add(rowIndex, index);
         }
     }
 
     //ensures that each corner is represented by only one corner object
-    private Corner makeCorner(TreeMap<Point, Corner> pointCornerMap, Point p) {
+    private Corner makeCorner(CornerIndex cornerIndex, BitSet cornerIsBorder, Point p) {
         if (p == null) {
             return null;
         }
@@ -973,16 +984,20 @@ public abstract class VoronoiGraph {
         // where corners on the border of the graph which were needed to draw the polygons on the border were disappearing,
         // causing the background color to be shown in triangular a
         final double pointKeyScale = 10.0;
-        Point key = new Point((int)((p.x / scaleMultiplyer) * pointKeyScale), (int)((p.y / scaleMultiplyer)) * pointKeyScale);
-        Corner c = pointCornerMap.get(key);
-        if (c == null) {
-            c = new Corner();
-            c.loc = p;
-            c.border = bounds.liesOnAxes(p, scaleMultiplyer);
-            c.index = corners.size();
-            corners.add(c);
-            pointCornerMap.put(key, c);
+        // The cells are pointKeyScale times taller than they are wide. That's how the original TreeMap keys were
+        // rounded, and changing it would change which corners are merged, and so change existing maps.
+        final int cellX = (int)((p.x / scaleMultiplyer) * pointKeyScale);
+        final int cellY = (int)(p.y / scaleMultiplyer);
+        final int index = cornerIndex.get(cellX, cellY);
+        if (index != -1) {
+            return corners.get(index);
         }
+        Corner c = new Corner();
+        c.loc = p;
+        c.index = corners.size();
+        cornerIsBorder.set(c.index, bounds.liesOnAxes(p, scaleMultiplyer));
+        corners.add(c);
+        cornerIndex.put(cellX, cellY, c.index);
         return c;
     }
 
@@ -1000,7 +1015,7 @@ public abstract class VoronoiGraph {
     private ArrayList<Corner> landCorners() {
         final ArrayList<Corner> list = new ArrayList<>();
         for (Corner c : corners) {
-            if (!c.ocean && !c.coast) {
+            if (!c.isOcean() && !c.isCoast()) {
                 list.add(c);
             }
         }
@@ -1010,17 +1025,30 @@ public abstract class VoronoiGraph {
     protected double maxElevation = 0.0;
 
     private void assignPolygonElevations() {
-        for (Center center : centers) {
-            double total = 0;
-            for (Corner c : center.corners) {
-                total += c.elevation;
-            }
-            center.elevation = total / center.corners.size();
-            if (center.elevation > maxElevation) {
-            	maxElevation = center.elevation;
+        averageCornerValues(core.cornerElevation, core.centerElevation);
+        for (double elevation : core.centerElevation) {
+            if (elevation > maxElevation) {
+            	maxElevation = elevation;
             }
         }
     }
+    
+    /**
+     * Sets each center's value to the average of the values of its corners.
+     */
+    private void averageCornerValues(double[] cornerValues, double[] centerValues) {
+        final int[] starts = core.centerCornerStarts;
+        final int[] centerCorners = core.centerCorners;
+        ParallelRanges.forEachChunk(core.numCenters, (start, end) -> {
+            for (int i = start; i < end; i++) {
+                double total = 0;
+                for (int j = starts[i]; j < starts[i + 1]; j++) {
+                    total += cornerValues[centerCorners[j]];
+                }
+                centerValues[i] = total / (starts[i + 1] - starts[i]);
+            }
+        });
+    }
 
     private void createRivers() {    	
          for (int i = 0; i < corners.size() * riverDensity ; i++) {
@@ -1031,31 +1059,43 @@ public abstract class VoronoiGraph {
     }
 
     private void assignCornerMoisture() {
-        LinkedList<Corner> queue = new LinkedList<>();
+        final double[] moisture = core.cornerMoisture;
+        // A queue of corner indexes. Corners can be added more than once, so it grows when full.
+        int[] queue = new int[corners.size()];
+        int head = 0;
+        int tail = 0;
         for (Corner c : corners) {
-            if ((c.water || c.river > 2) && !c.ocean) {
-                c.moisture = c.river > 2 ? Math.min(3.0, (0.05 * c.river)) : 1.0;
-                queue.push(c);
+            if ((c.isWater() || c.river > 2) && !c.isOcean()) {
+                moisture[c.index] = c.river > 2 ? Math.min(3.0, (0.05 * c.river)) : 1.0;
+                queue[tail++] = c.index;
             } else {
-                c.moisture = 0.0;
+                moisture[c.index] = 0.0;
             }
         }
 
-        while (!queue.isEmpty()) {
-            Corner c = queue.pop();
-            for (Corner a : c.adjacent) {
-                double newM = .9 * c.moisture;
-                if (newM > a.moisture) {
-                    a.moisture = newM;
-                    queue.add(a);
+        final int[] starts = core.cornerAdjacentStarts;
+        final int[] adjacent = core.cornerAdjacent;
+        while (head < tail) {
+            int c = queue[head++];
+            for (int j = starts[c]; j < starts[c + 1]; j++) {
+                int a = adjacent[j];
+                double newM = .9 * moisture[c];
+                if (newM > moisture[a]) {
+                    moisture[a] = newM;
+                    if (tail == queue.length) {
+                        queue = Arrays.copyOfRange(queue, head, head + Math.max(corners.size(), 2 * (tail - head)));
+                        tail -= head;
+                        head = 0;
+                    }
+                    queue[tail++] = a;
                 }
             }
         }
 
         // Salt water
         for (Corner c : corners) {
-            if (c.ocean || c.coast) {
-                c.moisture = 1.0;
+            if (c.isOcean() || c.isCoast()) {
+                moisture[c.index] = 1.0;
             }
         }
     }
@@ -1064,32 +1104,29 @@ public abstract class VoronoiGraph {
         Collections.sort(landCorners, new Comparator<Corner>() {
             @Override
             public int compare(Corner o1, Corner o2) {
-                if (o1.moisture > o2.moisture) {
+                if (o1.getMoisture() > o2.getMoisture()) {
                     return 1;
-                } else if (o1.moisture < o2.moisture) {
+                } else if (o1.getMoisture() < o2.getMoisture()) {
                     return -1;
                 }
                 return 0;
             }
         });
         for (int i = 0; i < landCorners.size(); i++) {
-            landCorners.get(i).moisture = (double) i / landCorners.size();
+            landCorners.get(i).setMoisture((double) i / landCorners.size());
         }
     }
 
     private void assignPolygonMoisture() {
-        for (Center center : centers) {
-            double total = 0;
-            for (Corner c : center.corners) {
-                total += c.moisture;
-            }
-            center.moisture = total / center.corners.size();
-        }
+        averageCornerValues(core.cornerMoisture, core.centerMoisture);
     }
 
     private void assignBiomes() {
-        for (Center center : centers) {
-            center.biome = getBiome(center);
-        }
+        ParallelRanges.forEachChunk(centers.size(), (start, end) -> {
+            for (int i = start; i < end; i++) {
+                Center center = centers.get(i);
+                center.biome = getBiome(center);
+            }
+        });
     }
 }
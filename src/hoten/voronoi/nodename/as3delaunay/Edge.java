@@ -64,9 +64,13 @@ public final class Edge {
     }
 
     private static Edge create() {
-        Edge edge;
-        if (_pool.size() > 0) {
-            edge = _pool.pop();
+        Edge edge = null;
+        synchronized (_pool) {
+            if (!_pool.isEmpty()) {
+                edge = _pool.pop();
+            }
+        }
+        if (edge != null) {
             edge.init();
         } else {
             edge = new Edge();
@@ -9,8 +9,14 @@ public final class Halfedge {
     private static Stack<Halfedge> _pool = new Stack<Halfedge>();
 
     public static Halfedge create(Edge edge, LR lr) {
-        if (_pool.size() > 0) {
-            return _pool.pop().init(edge, lr);
+        Halfedge pooled = null;
+        synchronized (_pool) {
+            if (!_pool.isEmpty()) {
+                pooled = _pool.pop();
+            }
+        }
+        if (pooled != null) {
+            return pooled.init(edge, lr);
         } else {
             return new Halfedge(edge, lr);
         }
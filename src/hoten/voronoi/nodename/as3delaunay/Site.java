@@ -14,8 +14,14 @@ public final class Site implements ICoord {
     private static Stack<Site> _pool = new Stack<Site>();
 
     public static Site create(Point p, int index, double weight, Color color) {
-        if (_pool.size() > 0) {
-            return _pool.pop().init(p, index, weight, color);
+        Site pooled = null;
+        synchronized (_pool) {
+            if (!_pool.isEmpty()) {
+                pooled = _pool.pop();
+            }
+        }
+        if (pooled != null) {
+            return pooled.init(p, index, weight, color);
         } else {
             return new Site(p, index, weight, color);
         }
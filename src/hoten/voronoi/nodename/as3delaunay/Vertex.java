@@ -14,9 +14,14 @@ final class Vertex extends Object implements ICoord {
         if (Double.isNaN(x) || Double.isNaN(y)) {
             return VERTEX_AT_INFINITY;
         }
-        if (_pool.size() > 0) {
-
-            return _pool.pop().init(x, y);
+        Vertex pooled = null;
+        synchronized (_pool) {
+            if (!_pool.isEmpty()) {
+                pooled = _pool.pop();
+            }
+        }
+        if (pooled != null) {
+            return pooled.init(x, y);
         } else {
             return new Vertex(x, y);
         }
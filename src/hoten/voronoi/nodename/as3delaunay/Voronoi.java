@@ -34,8 +34,9 @@ import java.util.Random;
  */
 import hoten.geom.Point;
 import hoten.geom.Rectangle;
+import hoten.voronoi.VoronoiDiagram;
 
-public final class Voronoi {
+public final class Voronoi implements VoronoiDiagram {
 
     private SiteList _sites;
     private HashMap<Point, Site> _sitesIndexedByLocation;
@@ -44,11 +45,18 @@ public final class Voronoi {
     // TODOO generalize this so it doesn't have to be a rectangle;
     // then we can make the fractal voronois-within-voronois
     private Rectangle _plotBounds;
+    // Indexes of the sites in siteCoords(), created the first time an edge is asked for its sites.
+    private HashMap<Point, Integer> _siteIndexesByLocation;
 
     public Rectangle get_plotBounds() {
         return _plotBounds;
     }
 
+    @Override
+    public Rectangle getPlotBounds() {
+        return _plotBounds;
+    }
+
     public void dispose() {
         int i, n;
         if (_sites != null) {
@@ -73,6 +81,7 @@ public final class Voronoi {
         }
         _plotBounds = null;
         _sitesIndexedByLocation = null;
+        _siteIndexesByLocation = null;
     }
 
     public Voronoi(ArrayList<Point> points, ArrayList<Color> colors, Rectangle plotBounds) {
@@ -127,6 +136,81 @@ public final class Voronoi {
         return _edges;
     }
 
+    @Override
+    public int getNumEdges() {
+        return _edges.size();
+    }
+
+    @Override
+    public int getEdgeSite0(int edgeIndex) {
+        return getSiteIndex(_edges.get(edgeIndex).get_leftSite().get_coord());
+    }
+
+    @Override
+    public int getEdgeSite1(int edgeIndex) {
+        return getSiteIndex(_edges.get(edgeIndex).get_rightSite().get_coord());
+    }
+
+    @Override
+    public Point getEdgeVertex0(int edgeIndex) {
+        return getClippedEnd(edgeIndex, LR.LEFT);
+    }
+
+    @Override
+    public Point getEdgeVertex1(int edgeIndex) {
+        return getClippedEnd(edgeIndex, LR.RIGHT);
+    }
+
+    private int getSiteIndex(Point coord) {
+        createSiteIndexes();
+        Integer index = _siteIndexesByLocation.get(coord);
+        return index == null ? -1 : index;
+    }
+
+    private Point getClippedEnd(int edgeIndex, LR leftRight) {
+        createSiteIndexes();
+        Edge edge = _edges.get(edgeIndex);
+        if (!edge.get_visible()) {
+            return null;
+        }
+        return edge.get_clippedEnds().get(leftRight);
+    }
+
+    private void createSiteIndexes() {
+        if (_siteIndexesByLocation != null) {
+            return;
+        }
+        _siteIndexesByLocation = new HashMap<>();
+        ArrayList<Point> points = siteCoords();
+        for (int i = 0; i < points.size(); i++) {
+            _siteIndexesByLocation.put(points.get(i), i);
+        }
+
+        // Edges are only clipped to the bounds while finding the regions of the sites they border.
+        for (Point p : points) {
+            region(p);
+        }
+    }
+
+    @Override
+    public Voronoi relax() {
+        ArrayList<Point> points = siteCoords();
+        for (Point p : points) {
+            ArrayList<Point> region = region(p);
+            double x = 0;
+            double y = 0;
+            for (Point c : region) {
+                x += c.x;
+                y += c.y;
+            }
+            x /= region.size();
+            y /= region.size();
+            p.x = x;
+            p.y = y;
+        }
+        return new Voronoi(points, null, _plotBounds);
+    }
+
     public ArrayList<Point> region(Point p) {
         Site site = _sitesIndexedByLocation.get(p);
         if (site == null) {
@@ -24,7 +24,8 @@ public class Background
 	private boolean backgroundFromFilesNotGenerated;
 	boolean shouldDrawRegionColors;
 	private ImageHelper.ColorifyAlgorithm landColorifyAlgorithm;
-	// regionIndexes is a gray scale image where the level of each pixel is the index of the region it is in.
+	// regionIndexes is a gray scale image where the level of each pixel is the index of the region it is in. It's 16 bit
+	// when there are more than 256 regions.
 	BufferedImage regionIndexes;
 	private int borderWidthScaled;
 	
@@ -311,9 +312,7 @@ public class Background
 		{
 			// The image "land" is generated but doesn't yet have colors.
 			
-			regionIndexes = new BufferedImage(land.getWidth(), land.getHeight(), 
-					BufferedImage.TYPE_BYTE_GRAY);
-			graph.drawRegionIndexes(regionIndexes.createGraphics());
+			regionIndexes = graph.createRegionIndexes(land.getWidth(), land.getHeight());
 			
 			land = drawRegionColors(graph, landBeforeRegionColoring, regionIndexes, landColorifyAlgorithm);
 		}
@@ -6,6 +6,8 @@ import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.awt.image.Raster;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 import nortantis.util.ImageHelper;
@@ -45,8 +47,8 @@ public class BackgroundGenerator
 			texture = scaleTextureLargerIfNeeded(texture, targetRows, targetCols);
 		}
 
-		int rows = ImageHelper.getPowerOf2EqualOrLargerThan(Math.max( texture.getHeight(), targetRows));
-		int cols = ImageHelper.getPowerOf2EqualOrLargerThan(Math.max(texture.getWidth(), targetCols));
+		int rows = ImageHelper.getFFTSizeEqualOrLargerThan(Math.max( texture.getHeight(), targetRows));
+		int cols = ImageHelper.getFFTSizeEqualOrLargerThan(Math.max(texture.getWidth(), targetCols));
 		
 		
 		float alpha = 0.5f;
@@ -77,6 +79,8 @@ public class BackgroundGenerator
 		BufferedImage randomImage = ImageHelper.arrayToImage(ImageHelper.genWhiteNoise(rand, rows, cols), randomImageType);
 		
 
+		// Create the kernels of all channels first so that the random image only needs to be transformed once.
+		List<float[][]> kernels = new ArrayList<>(numberOfColorChannels);
 		for (int channel : new Range(numberOfColorChannels))
 		{
 			float[][] kernel = new float[rows][cols];
@@ -122,10 +126,15 @@ public class BackgroundGenerator
 					}
 				}
 			}
-			
-			BufferedImage grayImage = ImageHelper.convolveGrayscale(randomImage, kernel, true);
-			kernel = null;
-			
+			kernels.add(kernel);
+		}
+		
+		List<BufferedImage> grayImages = ImageHelper.convolveGrayscale(randomImage, kernels, true);
+		kernels = null;
+		
+		for (int channel : new Range(numberOfColorChannels))
+		{
+			BufferedImage grayImage = grayImages.get(channel);
 			if (numberOfColorChannels == 1)
 			{
 				allChannels = grayImage;
@@ -0,0 +1,457 @@
+package nortantis;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FilenameUtils;
+
+import nortantis.util.ImageHelper;
+import nortantis.util.Logger;
+import nortantis.util.WorkerPool;
+
+/**
+ * Renders maps from many settings files without a GUI. All maps are rendered in one JVM so that
+ * images in ImageCache and the book name lists used by TextDrawer stay loaded between maps.
+ *
+ * Usage: BatchRenderer [-threads n] [-workerThreads n] [-mapParallelism n] [-tileSize n] [-voronoi Fortune|SweepHull] [-plates Sampled|Frontier] [-iconScaling Resize|Atlas] [-updateEditedCoasts] [-imageCacheMB n] [-out folder] [-profile json|csv] (file.properties | folder)...
+ *
+ * -threads is the number of maps rendered at the same time. -workerThreads is the size of the WorkerPool shared by all
+ * maps for parallel work. -mapParallelism is the most threads one map may use at a time, and defaults to
+ * workerThreads / threads so that the maps together don't oversubscribe the pool. -tileSize draws the coastline effects
+ * and frayed border in tiles of that many pixels on a side, which lowers the peak memory use of large maps. -voronoi
+ * picks the engine graphs are built with. SweepHull is faster for large world sizes but draws different maps than the
+ * default, Fortune. -plates picks how tectonic plates are grown. Frontier is faster for large world sizes but draws
+ * different maps than the default, Sampled. -iconScaling picks how icons are scaled. Atlas is faster, especially for
+ * maps with many mountains and hills, but icons look slightly different than with the default, Resize.
+ * -updateEditedCoasts recomputes the coast flags around land and water edits, so generated icons are placed along the
+ * edited coastline rather than the generated one, which changes how maps with such edits draw. -imageCacheMB
+ * is the most megabytes of images ImageCache keeps, which defaults to a quarter of the maximum heap size. The cache's
+ * hit and eviction counts, and the size of the icon atlas kept beside it, are printed at the end so it can be sized for
+ * the machine.
+ */
+public class BatchRenderer
+{
+	private final int numThreads;
+	private final Path outputFolder;
+	/**
+	 * The most threads from the WorkerPool that one map may use at a time.
+	 */
+	private int mapParallelism;
+	/**
+	 * If not null, the MapProfile of each map is written next to it with this file extension.
+	 */
+	private String profileFormat;
+	/**
+	 * Passed to MapCreator.setTileSize. 0 means don't tile.
+	 */
+	private int tileSize;
+	/**
+	 * Passed to MapCreator.setVoronoiAlgorithm.
+	 */
+	private GraphCreator.VoronoiAlgorithm voronoiAlgorithm = GraphCreator.VoronoiAlgorithm.Fortune;
+	/**
+	 * Passed to MapCreator.setTectonicPlateAlgorithm.
+	 */
+	private GraphCreator.TectonicPlateAlgorithm tectonicPlateAlgorithm = GraphCreator.TectonicPlateAlgorithm.Sampled;
+	/**
+	 * Passed to MapCreator.setIconScalingAlgorithm.
+	 */
+	private IconDrawer.IconScalingAlgorithm iconScalingAlgorithm = IconDrawer.IconScalingAlgorithm.Resize;
+	/**
+	 * Passed to MapCreator.setUpdateCoastsAfterEdits.
+	 */
+	private boolean updateCoastsAfterEdits;
+
+	/**
+	 * @param numThreads The maximum number of maps to render at the same time.
+	 * @param outputFolder Where to write the rendered maps. If null, each map is written next to its settings file.
+	 */
+	public BatchRenderer(int numThreads, Path outputFolder)
+	{
+		if (numThreads < 1)
+			throw new IllegalArgumentException("The number of threads must be at least 1, but was " + numThreads + ".");
+		this.numThreads = numThreads;
+		this.outputFolder = outputFolder;
+		this.mapParallelism = Math.max(1, WorkerPool.getInstance().getNumThreads() / numThreads);
+	}
+	
+	/**
+	 * @param mapParallelism The most threads from the WorkerPool that one map may use at a time, counting the thread rendering it.
+	 */
+	public void setMapParallelism(int mapParallelism)
+	{
+		if (mapParallelism < 1)
+			throw new IllegalArgumentException("The map parallelism must be at least 1, but was " + mapParallelism + ".");
+		this.mapParallelism = mapParallelism;
+	}
+	
+	/**
+	 * @param tileSize The size of the tiles that coastline effects and the frayed border are drawn in, or 0 to not tile.
+	 */
+	public void setTileSize(int tileSize)
+	{
+		if (tileSize < 0)
+			throw new IllegalArgumentException("The tile size must not be negative, but was " + tileSize + ".");
+		this.tileSize = tileSize;
+	}
+	
+	public void setVoronoiAlgorithm(GraphCreator.VoronoiAlgorithm voronoiAlgorithm)
+	{
+		this.voronoiAlgorithm = voronoiAlgorithm;
+	}
+	
+	public void setTectonicPlateAlgorithm(GraphCreator.TectonicPlateAlgorithm tectonicPlateAlgorithm)
+	{
+		this.tectonicPlateAlgorithm = tectonicPlateAlgorithm;
+	}
+	
+	public void setIconScalingAlgorithm(IconDrawer.IconScalingAlgorithm iconScalingAlgorithm)
+	{
+		this.iconScalingAlgorithm = iconScalingAlgorithm;
+	}
+	
+	public void setUpdateCoastsAfterEdits(boolean updateCoastsAfterEdits)
+	{
+		this.updateCoastsAfterEdits = updateCoastsAfterEdits;
+	}
+	
+	/**
+	 * @param profileFormat "json" or "csv" to write the stage timings of each map next to the map, or null to not write them.
+	 */
+	public void setProfileFormat(String profileFormat)
+	{
+		if (profileFormat != null && !profileFormat.equals("json") && !profileFormat.equals("csv"))
+			throw new IllegalArgumentException("Unrecognized profile format: " + profileFormat);
+		this.profileFormat = profileFormat;
+	}
+
+	/**
+	 * Renders each of the given settings files and writes the maps as PNG images. A failure in one map
+	 * is recorded in its result rather than stopping the other maps.
+	 * @return One result per settings file, in the same order as settingsFiles.
+	 */
+	public List<RenderResult> renderAll(List<Path> settingsFiles)
+	{
+		resetPeakHeapUsage();
+
+		List<Future<RenderResult>> futures = new ArrayList<>();
+		ExecutorService exService = Executors.newFixedThreadPool(numThreads);
+		try
+		{
+			for (final Path settingsFile : settingsFiles)
+			{
+				futures.add(exService.submit(new Callable<RenderResult>()
+				{
+					@Override
+					public RenderResult call()
+					{
+						return render(settingsFile);
+					}
+				}));
+			}
+
+			List<RenderResult> results = new ArrayList<>();
+			for (Future<RenderResult> future : futures)
+			{
+				try
+				{
+					results.add(future.get());
+				}
+				catch (ExecutionException | InterruptedException e)
+				{
+					throw new RuntimeException(e);
+				}
+			}
+			return results;
+		}
+		finally
+		{
+			exService.shutdown();
+		}
+	}
+
+	private RenderResult render(Path settingsFile)
+	{
+		RenderResult result = new RenderResult(settingsFile);
+		StopWatch stopWatch = new StopWatch();
+		try
+		{
+			MapSettings settings = new MapSettings(settingsFile.toString());
+			MapCreator creator = new MapCreator();
+			creator.setTileSize(tileSize);
+			creator.setVoronoiAlgorithm(voronoiAlgorithm);
+			creator.setTectonicPlateAlgorithm(tectonicPlateAlgorithm);
+			creator.setIconScalingAlgorithm(iconScalingAlgorithm);
+			creator.setUpdateCoastsAfterEdits(updateCoastsAfterEdits);
+			BufferedImage map = WorkerPool.callWithMaxParallelism(mapParallelism, () -> creator.createMap(settings, null, null));
+			result.profile = creator.getProfile();
+
+			Path folder = outputFolder != null ? outputFolder : settingsFile.toAbsolutePath().getParent();
+			result.outputFile = Paths.get(folder.toString(), FilenameUtils.getBaseName(settingsFile.toString()) + ".png");
+			ImageHelper.write(map, result.outputFile.toString());
+			if (profileFormat != null)
+			{
+				result.profile.write(Paths.get(folder.toString(), FilenameUtils.getBaseName(settingsFile.toString()) + "_profile." + profileFormat).toString());
+			}
+			result.heapUsedAtEnd = getUsedHeap();
+		}
+		catch (Exception | OutOfMemoryError e)
+		{
+			result.error = e;
+		}
+		result.elapsedSeconds = stopWatch.getElapsedSeconds();
+		return result;
+	}
+
+	/**
+	 * Expands the given paths into a list of settings files. Folders are replaced by the .properties files
+	 * directly inside them, sorted by name.
+	 */
+	public static List<Path> findSettingsFiles(List<String> paths)
+	{
+		List<Path> result = new ArrayList<>();
+		for (String pathStr : paths)
+		{
+			Path path = Paths.get(pathStr);
+			if (Files.isDirectory(path))
+			{
+				File[] files = path.toFile().listFiles(file -> file.isFile() && file.getName().endsWith(".properties"));
+				Arrays.sort(files);
+				for (File file : files)
+				{
+					result.add(file.toPath());
+				}
+			}
+			else if (Files.exists(path))
+			{
+				result.add(path);
+			}
+			else
+			{
+				throw new IllegalArgumentException("The settings file or folder " + path + " does not exist.");
+			}
+		}
+		return result;
+	}
+
+	private static List<MemoryPoolMXBean> getHeapPools()
+	{
+		List<MemoryPoolMXBean> result = new ArrayList<>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() == MemoryType.HEAP && pool.isValid())
+			{
+				result.add(pool);
+			}
+		}
+		return result;
+	}
+
+	private static void resetPeakHeapUsage()
+	{
+		for (MemoryPoolMXBean pool : getHeapPools())
+		{
+			pool.resetPeakUsage();
+		}
+	}
+
+	/**
+	 * The sum of the peak usage of each heap memory pool since the last call to resetPeakHeapUsage.
+	 * Pools peak at different times, so this is an upper bound on the true peak.
+	 */
+	private static long getPeakHeap()
+	{
+		long sum = 0;
+		for (MemoryPoolMXBean pool : getHeapPools())
+		{
+			sum += pool.getPeakUsage().getUsed();
+		}
+		return sum;
+	}
+
+	private static long getUsedHeap()
+	{
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private static String toMegabytes(long bytes)
+	{
+		return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+	}
+
+	public static void printSummary(List<RenderResult> results, double totalSeconds)
+	{
+		Logger.println();
+		Logger.println("Batch render summary:");
+		int failures = 0;
+		for (RenderResult result : results)
+		{
+			if (result.error == null)
+			{
+				Logger.println(String.format("  %s: %.2f seconds, heap in use when done: %s, written to %s", result.settingsFile,
+						result.elapsedSeconds, toMegabytes(result.heapUsedAtEnd), result.outputFile));
+			}
+			else
+			{
+				failures++;
+				Logger.println(String.format("  %s: FAILED after %.2f seconds: %s", result.settingsFile, result.elapsedSeconds, result.error));
+			}
+		}
+		Logger.println(WorkerPool.getInstance().toString());
+		Logger.println(ImageCache.getInstance().toString());
+		Logger.println(String.format("Rendered %d of %d maps in %.2f seconds. Peak heap: %s. Max heap: %s.", results.size() - failures,
+				results.size(), totalSeconds, toMegabytes(getPeakHeap()), toMegabytes(Runtime.getRuntime().maxMemory())));
+	}
+
+	public static class RenderResult
+	{
+		public final Path settingsFile;
+		public Path outputFile;
+		public double elapsedSeconds;
+		public long heapUsedAtEnd;
+		public MapProfile profile;
+		/**
+		 * Null if the map rendered successfully.
+		 */
+		public Throwable error;
+
+		public RenderResult(Path settingsFile)
+		{
+			this.settingsFile = settingsFile;
+		}
+	}
+
+	private static void printUsage()
+	{
+		Logger.println("usage: BatchRenderer [-threads n] [-workerThreads n] [-mapParallelism n] [-tileSize n] [-voronoi Fortune|SweepHull] [-plates Sampled|Frontier] [-iconScaling Resize|Atlas] [-updateEditedCoasts] [-imageCacheMB n] [-out folder] [-profile json|csv] (file.properties | folder)...");
+	}
+
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+
+		int numThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+		Path outputFolder = null;
+		String profileFormat = null;
+		Integer mapParallelism = null;
+		int tileSize = 0;
+		GraphCreator.VoronoiAlgorithm voronoiAlgorithm = GraphCreator.VoronoiAlgorithm.Fortune;
+		GraphCreator.TectonicPlateAlgorithm tectonicPlateAlgorithm = GraphCreator.TectonicPlateAlgorithm.Sampled;
+		IconDrawer.IconScalingAlgorithm iconScalingAlgorithm = IconDrawer.IconScalingAlgorithm.Resize;
+		boolean updateCoastsAfterEdits = false;
+		Long imageCacheBytes = null;
+		List<String> paths = new ArrayList<>();
+		for (int i = 0; i < args.length; i++)
+		{
+			if (args[i].equals("-threads") && i + 1 < args.length)
+			{
+				numThreads = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-workerThreads") && i + 1 < args.length)
+			{
+				WorkerPool.getInstance().setNumThreads(Integer.parseInt(args[++i]));
+			}
+			else if (args[i].equals("-mapParallelism") && i + 1 < args.length)
+			{
+				mapParallelism = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-tileSize") && i + 1 < args.length)
+			{
+				tileSize = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-voronoi") && i + 1 < args.length)
+			{
+				voronoiAlgorithm = GraphCreator.VoronoiAlgorithm.valueOf(args[++i]);
+			}
+			else if (args[i].equals("-plates") && i + 1 < args.length)
+			{
+				tectonicPlateAlgorithm = GraphCreator.TectonicPlateAlgorithm.valueOf(args[++i]);
+			}
+			else if (args[i].equals("-iconScaling") && i + 1 < args.length)
+			{
+				iconScalingAlgorithm = IconDrawer.IconScalingAlgorithm.valueOf(args[++i]);
+			}
+			else if (args[i].equals("-updateEditedCoasts"))
+			{
+				updateCoastsAfterEdits = true;
+			}
+			else if (args[i].equals("-imageCacheMB") && i + 1 < args.length)
+			{
+				imageCacheBytes = Long.parseLong(args[++i]) * 1024 * 1024;
+			}
+			else if (args[i].equals("-out") && i + 1 < args.length)
+			{
+				outputFolder = Paths.get(args[++i]);
+			}
+			else if (args[i].equals("-profile") && i + 1 < args.length)
+			{
+				profileFormat = args[++i];
+			}
+			else if (args[i].startsWith("-"))
+			{
+				printUsage();
+				System.exit(1);
+			}
+			else
+			{
+				paths.add(args[i]);
+			}
+		}
+		if (paths.isEmpty())
+		{
+			printUsage();
+			System.exit(1);
+		}
+
+		try
+		{
+			if (outputFolder != null)
+			{
+				Files.createDirectories(outputFolder);
+			}
+			if (imageCacheBytes != null)
+			{
+				ImageCache.getInstance().setMaxBytes(imageCacheBytes);
+			}
+			List<Path> settingsFiles = findSettingsFiles(paths);
+			Logger.println("Rendering " + settingsFiles.size() + " maps using " + numThreads + " threads.");
+			StopWatch stopWatch = new StopWatch();
+			BatchRenderer renderer = new BatchRenderer(numThreads, outputFolder);
+			renderer.setProfileFormat(profileFormat);
+			renderer.setTileSize(tileSize);
+			renderer.setVoronoiAlgorithm(voronoiAlgorithm);
+			renderer.setTectonicPlateAlgorithm(tectonicPlateAlgorithm);
+			renderer.setIconScalingAlgorithm(iconScalingAlgorithm);
+			renderer.setUpdateCoastsAfterEdits(updateCoastsAfterEdits);
+			if (mapParallelism != null)
+			{
+				renderer.setMapParallelism(mapParallelism);
+			}
+			List<RenderResult> results = renderer.renderAll(settingsFiles);
+			printSummary(results, stopWatch.getElapsedSeconds());
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			System.exit(1);
+		}
+		finally
+		{
+			ImageHelper.shutdownThreadPool();
+		}
+	}
+}
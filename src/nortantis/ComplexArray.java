@@ -18,6 +18,14 @@ public class ComplexArray
 		array = new float[height][width * 2];
 	}
 	
+	/**
+	 * Wraps an existing array that is in JTransform's format, such as one from FFTCache.borrowBuffer.
+	 */
+	public ComplexArray(float[][] array)
+	{
+		this.array = array;
+	}
+	
 	/**
 	 * Does complex multiplication of this by other and stores the result into this.
 	 */
@@ -9,8 +9,7 @@ import java.util.Random;
 
 import javax.imageio.ImageIO;
 
-import org.jtransforms.fft.FloatFFT_2D;
-
+import nortantis.util.FFTCache;
 import nortantis.util.ImageHelper;
 
 public class FractalBGGenerator
@@ -26,18 +25,16 @@ public class FractalBGGenerator
 	 */
 	public static BufferedImage generate(Random rand, float p, int width, int height, float contrast)
 	{
-		int cols = ImageHelper.getPowerOf2EqualOrLargerThan(width);
-		int rows = ImageHelper.getPowerOf2EqualOrLargerThan(height);
-		// For some reason this algorithm only works for creating a square result.
-		if (cols < rows)
-			cols = rows;
-		else if (rows < cols)
-			rows = cols;
+		int cols = ImageHelper.getFFTSizeEqualOrLargerThan(width);
+		int rows = ImageHelper.getFFTSizeEqualOrLargerThan(height);
+		// Frequencies are measured in cycles across the larger dimension, so that the noise isn't stretched along the
+		// smaller one when the result isn't square.
+		float rowFrequencyScale = Math.max(rows, cols) / (float) rows;
+		float colFrequencyScale = Math.max(rows, cols) / (float) cols;
 
 		// Generate white noise and convert the input to the format required by JTransforms.
-		float[][] data = new float[rows][2 * cols];
+		float[][] data = FFTCache.borrowBuffer(rows, cols);
 		
-		FloatFFT_2D fft = new FloatFFT_2D(rows, cols);
 		{
 			for (int r = 0; r < rows; r++)
 				for (int c = 0; c < cols; c++)
@@ -47,7 +44,7 @@ public class FractalBGGenerator
 	
 
 			// Do the forward FFT.
-			fft.realForwardFull(data);
+			FFTCache.realForwardFull(data);
 		}
 								
 		// Multiply by 1/(f^p) in the frequency domain.
@@ -57,8 +54,8 @@ public class FractalBGGenerator
 				float dataR = data[r][c*2];
 				float dataI = data[r][c*2 + 1];
 				
-				float rF = Math.min(r, rows - r);
-				float cF = Math.min(c, cols - c);
+				float rF = Math.min(r, rows - r) * rowFrequencyScale;
+				float cF = Math.min(c, cols - c) * colFrequencyScale;
 				float f = (float)Math.sqrt(rF * rF + cF * cF);
 				float real;
 				float imaginary;
@@ -80,7 +77,7 @@ public class FractalBGGenerator
 		//ImageIO.write(ImageHelper.arrayToImage(data), "png", new File("frequencies.png"));
 		
 //		 Do the inverse DFT on the product.
-		fft.complexInverse(data, true);
+		FFTCache.complexInverse(data, true);
 		ImageHelper.moveRealToLeftSide(data);
 		ImageHelper.swapQuadrantsOfLeftSideInPlace(data);
 		
@@ -88,6 +85,7 @@ public class FractalBGGenerator
 		ImageHelper.setContrast(data, 0.5f - contrast/2f, 0.5f + contrast/2f);
 				
 		BufferedImage result = ImageHelper.arrayToImage(data, 0, height, 0, width, BufferedImage.TYPE_BYTE_GRAY);
+		FFTCache.releaseBuffer(data);
 		return result;
 
 	}
@@ -0,0 +1,26 @@
+package nortantis;
+
+import java.util.BitSet;
+
+import hoten.voronoi.Center;
+import hoten.voronoi.Edge;
+
+/**
+ * Records which centers and edges of a graph have been changed by edits since GraphImpl.updateChangedNeighborhoods was
+ * last called, so that only the neighborhoods of those changes need to be recomputed.
+ */
+class GraphChanges
+{
+	final BitSet centers = new BitSet();
+	final BitSet edges = new BitSet();
+
+	void addCenter(Center center)
+	{
+		centers.set(center.index);
+	}
+
+	void addEdge(Edge edge)
+	{
+		edges.set(edge.index);
+	}
+}
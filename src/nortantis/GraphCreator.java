@@ -8,10 +8,13 @@ import java.awt.image.WritableRaster;
 import java.nio.file.Paths;
 import java.util.Random;
 
+import hoten.voronoi.SweepHullVoronoi;
+import hoten.voronoi.VoronoiDiagram;
 import hoten.voronoi.nodename.as3delaunay.Voronoi;
 import nortantis.util.AssetsPath;
 import nortantis.util.ImageHelper;
 import nortantis.util.Logger;
+import nortantis.util.ParallelRows;
 
 /**
  * TestDriver.java
@@ -24,18 +27,67 @@ public class GraphCreator
     private static final int numLloydRelaxations = 0;
     // Higher values will make larger plates, but fewer of them.
 	private static final int tectonicPlateIterationMultiplier = 30;
+
+	/**
+	 * The engine used to build the Voronoi diagram that a graph is made from.
+	 */
+	public enum VoronoiAlgorithm
+	{
+		/**
+		 * Fortune's algorithm. This is the default, because it's what maps have always been made with, so the same seed
+		 * gives the same map.
+		 */
+		Fortune,
+		/**
+		 * A sweep-hull Delaunay triangulation stored in primitive arrays. This gives the same kind of graph much faster 
+		 * for large world sizes, but its edges are in a different order, so the same seed gives a different map.
+		 */
+		SweepHull
+	}
+	
+	/**
+	 * How tectonic plates are grown when creating a graph.
+	 */
+	public enum TectonicPlateAlgorithm
+	{
+		/**
+		 * Each step samples centers from the whole graph. This is the default, because it's what maps have always been
+		 * made with, so the same seed gives the same map.
+		 */
+		Sampled,
+		/**
+		 * Each step only samples centers on a plate boundary, so fewer samples are needed. This is faster for large
+		 * world sizes and gives plates of about the same sizes and shapes, but the same seed gives a different map.
+		 */
+		Frontier
+	}
 	
     public static GraphImpl createGraph(double width, double height, int numSites, double borderPlateContinentalProbability,
     		double nonBorderPlateContinentalProbability, Random r, double sizeMultiplyer)
+    {
+    	return createGraph(width, height, numSites, borderPlateContinentalProbability, nonBorderPlateContinentalProbability, r, 
+    			sizeMultiplyer, VoronoiAlgorithm.Fortune);
+    }
+	
+    public static GraphImpl createGraph(double width, double height, int numSites, double borderPlateContinentalProbability,
+    		double nonBorderPlateContinentalProbability, Random r, double sizeMultiplyer, VoronoiAlgorithm algorithm)
+    {
+    	return createGraph(width, height, numSites, borderPlateContinentalProbability, nonBorderPlateContinentalProbability, r, 
+    			sizeMultiplyer, algorithm, TectonicPlateAlgorithm.Sampled);
+    }
+	
+    public static GraphImpl createGraph(double width, double height, int numSites, double borderPlateContinentalProbability,
+    		double nonBorderPlateContinentalProbability, Random r, double sizeMultiplyer, VoronoiAlgorithm algorithm,
+    		TectonicPlateAlgorithm plateAlgorithm)
     {
 		double startTime = System.currentTimeMillis();
         
         //make the initial underlying voronoi structure
-        final Voronoi v = new Voronoi(numSites, width, height, r, null);
+        final VoronoiDiagram v = createVoronoiDiagram(algorithm, numSites, width, height, r);
 
          //assemble the voronoi structure into a usable graph object representing a map
         final GraphImpl graph = new GraphImpl(v, numLloydRelaxations, r, numSites * tectonicPlateIterationMultiplier,
-    		   nonBorderPlateContinentalProbability, borderPlateContinentalProbability, sizeMultiplyer);
+    		   nonBorderPlateContinentalProbability, borderPlateContinentalProbability, sizeMultiplyer, plateAlgorithm);
         
 		double elapsedTime = System.currentTimeMillis() - startTime;
 		Logger.println("Time to generate graph (in seconds): " + elapsedTime
@@ -94,46 +146,67 @@ public class GraphCreator
         Raster textureRaster = texture.getRaster();
 		WritableRaster out = image.getRaster();
 		float maxPixelValue = (float)ImageHelper.getMaxPixelValue(image);
-		for (int y = 0; y < image.getHeight(); y++)
+		ParallelRows.forEachBand(image.getHeight(), image.getWidth(), (startRow, endRow) ->
 		{
-			for (int x = 0; x < image.getWidth(); x++)
+			for (int y = startRow; y < endRow; y++)
 			{
-				float elevation = out.getSample(x, y, 0);
-				float scale;
-				if (elevation > GraphImpl.seaLevel*maxPixelValue)
+				for (int x = 0; x < image.getWidth(); x++)
 				{
-					scale = Math.abs(elevation - GraphImpl.seaLevel*maxPixelValue) / maxPixelValue;
-				}
-				else
-				{
-					scale = 0f;
-				}
+					float elevation = out.getSample(x, y, 0);
+					float scale;
+					if (elevation > GraphImpl.seaLevel*maxPixelValue)
+					{
+						scale = Math.abs(elevation - GraphImpl.seaLevel*maxPixelValue) / maxPixelValue;
+					}
+					else
+					{
+						scale = 0f;
+					}
 
-				float tValue = maxPixelValue - textureRaster.getSample(x, y, 0);
-				int newValue = (int)((elevation - scale * (tValue)));
-				if (newValue < 0)
-				{
-					newValue = 0;
+					float tValue = maxPixelValue - textureRaster.getSample(x, y, 0);
+					int newValue = (int)((elevation - scale * (tValue)));
+					if (newValue < 0)
+					{
+						newValue = 0;
+					}
+					out.setSample(x, y, 0, newValue);
 				}
-				out.setSample(x, y, 0, newValue);
 			}
-		}
+		});
 
     }
     
     public static GraphImpl createSimpleGraph(double width, double height, int numSites, Random r, double sizeMultiplyer)
+    {
+    	return createSimpleGraph(width, height, numSites, r, sizeMultiplyer, VoronoiAlgorithm.Fortune);
+    }
+    
+    public static GraphImpl createSimpleGraph(double width, double height, int numSites, Random r, double sizeMultiplyer,
+    		VoronoiAlgorithm algorithm)
     {
         // Zero is most random. Higher values make the polygons more uniform shaped.
         final int numLloydRelaxations = 0;
  
         //make the initial underlying voronoi structure
-        final Voronoi v = new Voronoi(numSites, width, height, r, null);
+        final VoronoiDiagram v = createVoronoiDiagram(algorithm, numSites, width, height, r);
 
          //assemble the voronoi structure into a usable graph object representing a map
         final GraphImpl graph = new GraphImpl(v, numLloydRelaxations, r, sizeMultiplyer);
         
         return graph;
     }
+    
+    /**
+     * Creates a diagram of numSites random sites in a width by height rectangle. Both algorithms use r the same way.
+     */
+    private static VoronoiDiagram createVoronoiDiagram(VoronoiAlgorithm algorithm, int numSites, double width, double height, Random r)
+    {
+    	if (algorithm == VoronoiAlgorithm.SweepHull)
+    	{
+    		return new SweepHullVoronoi(numSites, width, height, r);
+    	}
+    	return new Voronoi(numSites, width, height, r, null);
+    }
 
 
 }
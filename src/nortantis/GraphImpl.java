@@ -5,16 +5,24 @@ import java.awt.Graphics2D;
 import java.awt.Polygon;
 import java.awt.geom.Area;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.function.Function;
 
 import org.apache.commons.math3.distribution.BetaDistribution;
@@ -25,11 +33,14 @@ import hoten.geom.Point;
 import hoten.voronoi.Center;
 import hoten.voronoi.Corner;
 import hoten.voronoi.Edge;
+import hoten.voronoi.KdTree;
 import hoten.voronoi.NoisyEdges;
+import hoten.voronoi.VoronoiDiagram;
 import hoten.voronoi.VoronoiGraph;
-import hoten.voronoi.nodename.as3delaunay.Voronoi;
-import nortantis.util.Helper;
+import nortantis.util.ParallelRanges;
 import nortantis.util.Range;
+import nortantis.util.UnionFind;
+import nortantis.util.WorkerPool;
 
 /**
  * TestGraphImpl.java
@@ -49,10 +60,15 @@ public class GraphImpl extends VoronoiGraph
 	public static final float oceanPlateLevel = 0.2f;
 	final double continentalPlateLevel = 0.45;
    	public static final float seaLevel = 0.39f;
+   	// Bits of the flags assignOceanCoastAndLand finds for each corner.
+   	private static final byte cornerOceanFlag = 1;
+   	private static final byte cornerCoastFlag = 2;
+   	private static final byte cornerWaterFlag = 4;
    	// This field must be set before creating instance of GraphImpl. This is necessary because it must be set
    	// before calling VoronoiGraph's constructor, which Java requires to be the first call in GraphImpl's
    	// constructor.
 	int numIterationsForTectonicPlateCreation;
+	GraphCreator.TectonicPlateAlgorithm tectonicPlateAlgorithm;
 	// The probability that a plate not touching the border will be continental.
    	double nonBorderPlateContinentalProbability;
    	// The probability that a plate touching the border will be continental.
@@ -67,16 +83,30 @@ public class GraphImpl extends VoronoiGraph
    // Maps plate ids to plates.
     Set<TectonicPlate> plates;
     public List<Region> regions;
+    // Edits made through setWater, setRegion, and setRiver since updateChangedNeighborhoods was last called.
+    private GraphChanges changes = new GraphChanges();
+    // Path finders not currently in use by findPath, and the corner locations they share.
+    private final ConcurrentLinkedQueue<RiverPathFinder> idlePathFinders = new ConcurrentLinkedQueue<>();
+    private double[] cornerXs;
+    private double[] cornerYs;
 
-    public GraphImpl(Voronoi v, int numLloydRelaxations, Random r, int numIterationsForTectonicPlateCreation,
+    public GraphImpl(VoronoiDiagram v, int numLloydRelaxations, Random r, int numIterationsForTectonicPlateCreation,
     		double nonBorderPlateContinentalProbability, double borderPlateContinentalProbability,
     		double sizeMultiplyer) 
+    {
+    	this(v, numLloydRelaxations, r, numIterationsForTectonicPlateCreation, nonBorderPlateContinentalProbability,
+    			borderPlateContinentalProbability, sizeMultiplyer, GraphCreator.TectonicPlateAlgorithm.Sampled);
+    }
+
+    public GraphImpl(VoronoiDiagram v, int numLloydRelaxations, Random r, int numIterationsForTectonicPlateCreation,
+    		double nonBorderPlateContinentalProbability, double borderPlateContinentalProbability,
+    		double sizeMultiplyer, GraphCreator.TectonicPlateAlgorithm tectonicPlateAlgorithm) 
     {
         super(r, sizeMultiplyer);
         this.numIterationsForTectonicPlateCreation = numIterationsForTectonicPlateCreation;
+        this.tectonicPlateAlgorithm = tectonicPlateAlgorithm;
         this.nonBorderPlateContinentalProbability = nonBorderPlateContinentalProbability;
         this. borderPlateContinentalProbability = borderPlateContinentalProbability;
-        TectonicPlate.resetIds();
         initVoronoiGraph(v, numLloydRelaxations, true);
         setupColors();
         createPoliticalRegions();
@@ -88,7 +118,7 @@ public class GraphImpl extends VoronoiGraph
     /**
      * This constructor doens't create tectonic plates or elevation.
       */
-    public GraphImpl(Voronoi v, int numLloydRelaxations, Random r, double sizeMultiplyer) 
+    public GraphImpl(VoronoiDiagram v, int numLloydRelaxations, Random r, double sizeMultiplyer) 
     {
         super(r, sizeMultiplyer);
         initVoronoiGraph(v, numLloydRelaxations, false);
@@ -126,13 +156,121 @@ public class GraphImpl extends VoronoiGraph
     	noisyEdges.buildNoisyEdgesForCenter(center, true);
     }
     
+    /**
+     * Makes the center water or land, and records the change if there is one.
+     */
+    public void setWater(Center center, boolean isWater)
+    {
+    	if (center.isWater() != isWater)
+    	{
+    		center.setWater(isWater);
+    		changes.addCenter(center);
+    	}
+    }
+    
+    /**
+     * Moves the center to the given region, or out of any region if region is null, and records the change if there is 
+     * one.
+     */
+    public void setRegion(Center center, Region region)
+    {
+    	if (center.region == region)
+    	{
+    		return;
+    	}
+    	if (center.region != null)
+    	{
+    		center.region.remove(center);
+    	}
+    	if (region != null)
+    	{
+    		region.addAndSetRegion(center);
+    	}
+    	changes.addCenter(center);
+    }
+    
+    public void setRiver(Edge edge, int river)
+    {
+    	if (edge.river != river)
+    	{
+    		edge.river = river;
+    		changes.addEdge(edge);
+    	}
+    }
+    
+    /**
+     * Rebuilds the noisy edges of the centers and edges changed since the last call. Work done here is proportional to
+     * the number of changes rather than to the size of the graph.
+     * 
+     * @param updateCoasts If true, also recomputes the coast flags of the changed centers and their neighbors, and the
+     *        ocean and coast flags of the changed centers' corners. Earlier versions left those as they were when the
+     *        graph was created, and generated icons are placed using them, so false keeps maps with land and water 
+     *        edits drawing the same as before.
+     */
+    public void updateChangedNeighborhoods(boolean updateCoasts)
+    {
+    	GraphChanges applied = changes;
+    	changes = new GraphChanges();
+    	
+    	BitSet changedCenters = applied.centers;
+    	for (int i = changedCenters.nextSetBit(0); i >= 0; i = changedCenters.nextSetBit(i + 1))
+    	{
+    		noisyEdges.buildNoisyEdgesForCenter(centers.get(i), true);
+    	}
+    	if (updateCoasts)
+    	{
+	    	BitSet coastCenters = new BitSet(centers.size());
+	    	BitSet coastCorners = new BitSet(corners.size());
+	    	for (int i = changedCenters.nextSetBit(0); i >= 0; i = changedCenters.nextSetBit(i + 1))
+	    	{
+	    		Center center = centers.get(i);
+	    		coastCenters.set(i);
+	    		for (Center neighbor : center.neighbors)
+	    		{
+	    			coastCenters.set(neighbor.index);
+	    		}
+	    		for (Corner corner : center.corners)
+	    		{
+	    			coastCorners.set(corner.index);
+	    		}
+	    	}
+	    	for (int i = coastCenters.nextSetBit(0); i >= 0; i = coastCenters.nextSetBit(i + 1))
+	    	{
+	    		updateCoast(centers.get(i));
+	    	}
+	    	for (int i = coastCorners.nextSetBit(0); i >= 0; i = coastCorners.nextSetBit(i + 1))
+	    	{
+	    		updateCornerOceanAndCoast(i);
+	    	}
+    	}
+    	
+    	BitSet changedEdges = applied.edges;
+    	for (int i = changedEdges.nextSetBit(0); i >= 0; i = changedEdges.nextSetBit(i + 1))
+    	{
+    		noisyEdges.buildNoisyEdge(edges.get(i), true);
+    	}
+    }
+    
+    /**
+     * Decides how detailed each edge's noisy paths are. The paths themselves are generated the first time they're drawn,
+     * or by buildAllNoisyEdgePaths.
+     */
     public void buildNoisyEdges()
     {
-        noisyEdges = new NoisyEdges(scaleMultiplyer);  
+        noisyEdges = new NoisyEdges(scaleMultiplyer, edges.size());  
         noisyEdges.buildNoisyEdges(this);	
 
     }
     
+    /**
+     * Generates the noisy paths of all edges now, in parallel. This is faster than letting them be generated one at a
+     * time as they're drawn, when most of them will be drawn.
+     */
+    public void buildAllNoisyEdgePaths()
+    {
+    	noisyEdges.buildAllPaths(this);
+    }
+    
 
     @SuppressWarnings("unused")
 	private void testPoliticalRegions()
@@ -141,7 +279,7 @@ public class GraphImpl extends VoronoiGraph
         {
         	for (Center c : region.getCenters())
         	{
-        		assert !c.isWater;
+        		assert !c.isWater();
         		assert c.region == region;
         	}
         	
@@ -150,7 +288,7 @@ public class GraphImpl extends VoronoiGraph
         assert new HashSet<>(regions).size() == regions.size();
         for (Center c : centers)
         {
-        	if (!c.isWater)
+        	if (!c.isWater())
         	{
         		assert c.region != null;
         	}
@@ -168,9 +306,54 @@ public class GraphImpl extends VoronoiGraph
         		+ centers.stream().filter(c -> c.region == null).count() == centers.size();   	
     }
     
-	public void drawRegionIndexes(Graphics2D g)
-	{       
-       	renderPolygons(g, c -> c.region == null ? Color.black : new Color(c.region.id, c.region.id, c.region.id));
+	/**
+	 * Creates an image in which the level of each pixel is the id of the region it's in, or 0 where there's no region.
+	 * The image is TYPE_BYTE_GRAY if all region ids fit in 8 bits, and TYPE_USHORT_GRAY otherwise, so maps can have
+	 * up to 65536 regions.
+	 */
+	public BufferedImage createRegionIndexes(int width, int height)
+	{
+		int maxRegionId = regions.stream().mapToInt(region -> region.id).max().orElse(0);
+		if (maxRegionId <= 255)
+		{
+			return drawRegionIdBytes(width, height, 0);
+		}
+		if (maxRegionId > 65535)
+		{
+			throw new IllegalStateException("Region ids must be at most 65535, but the largest is " + maxRegionId + ".");
+		}
+		
+		// Graphics2D only draws 8 bits of gray, so draw the low and high bytes of the ids separately and combine them.
+		byte[] lowBytes = ((DataBufferByte) drawRegionIdBytes(width, height, 0).getRaster().getDataBuffer()).getData();
+		byte[] highBytes = ((DataBufferByte) drawRegionIdBytes(width, height, 8).getRaster().getDataBuffer()).getData();
+		BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_USHORT_GRAY);
+		short[] ids = ((DataBufferUShort) result.getRaster().getDataBuffer()).getData();
+		ParallelRanges.forEachChunk(ids.length, (start, end) ->
+		{
+			for (int i = start; i < end; i++)
+			{
+				ids[i] = (short) (((highBytes[i] & 0xff) << 8) | (lowBytes[i] & 0xff));
+			}
+		});
+		return result;
+	}
+	
+	/**
+	 * Draws one byte of each center's region id, starting at the given bit, as a TYPE_BYTE_GRAY image.
+	 */
+	private BufferedImage drawRegionIdBytes(int width, int height, int shift)
+	{
+		Color[] grayLevels = new Color[256];
+		for (int level = 0; level < grayLevels.length; level++)
+		{
+			grayLevels[level] = new Color(level, level, level);
+		}
+		
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		Graphics2D g = image.createGraphics();
+		renderPolygons(g, c -> c.region == null ? Color.black : grayLevels[(c.region.id >> shift) & 0xff]);
+		g.dispose();
+		return image;
 	}
     
     /**
@@ -186,23 +369,30 @@ public class GraphImpl extends VoronoiGraph
     		if (plate.type == PlateType.Continental)
     		{
     			Region region = new Region();	
-    			plate.centers.stream().filter(c -> !c.isWater).forEach(c -> region.addAndSetRegion(c));
+    			plate.centers.stream().filter(c -> !c.isWater()).forEach(c -> region.addAndSetRegion(c));
     			regions.add(region);
     		}
     	}
-    	    	    	
+
+    	// Land centers connected by land in the same region, or connected by land with no region, are in the same set.
+    	UnionFind landMasses = new UnionFind(centers.size());
+    	for (Center center : centers)
+    	{
+    		joinToNeighborsInSameRegion(center, landMasses);
+    	}
+    	
        	for (Region region : regions)
     	{
     		// For each region, divide it by land masses separated by water.
-    		List<Set<Center>> dividedRegion = divideRegionByLand(region);
+    		List<List<Center>> dividedRegion = divideRegionByLand(region, landMasses);
     		
         	if (dividedRegion.size() > 1)
 	    	{
 	    		// The region gets to keep only the largest land mass.
-	    		Set<Center> biggest = dividedRegion.stream().max((l1, l2) -> Integer.compare(l1.size(), l2.size())).get();
+	    		List<Center> biggest = dividedRegion.stream().max((l1, l2) -> Integer.compare(l1.size(), l2.size())).get();
 	    		
     			// then for each small land mass:
-    			for (Set<Center> regionPart : dividedRegion)
+    			for (List<Center> regionPart : dividedRegion)
     			{
     				if (regionPart == biggest)
     					continue;
@@ -213,22 +403,20 @@ public class GraphImpl extends VoronoiGraph
 	    				assert region != touchingRegion;
 	    	        	region.removeAll(regionPart);
 	    				touchingRegion.addAll(regionPart);
+	    				for (Center center : regionPart)
+	    				{
+	    					joinToNeighborsInSameRegion(center, landMasses);
+	    				}
 	    			}
 		        	//Else leave it in this region
  	    		}
 	    	}
     	}
        	
-    	// Add to smallLandMasses any land which is not in a region.
-    	List<Set<Center>> smallLandMasses = new ArrayList<>(); // stores small pieces of land not in a region.
-       	for (Center center : centers)
-       	{
-       		if (!center.isWater && center.region == null)
-       		{
-       			Set<Center> landMass = breadthFirstSearch(c -> !c.isWater && c.region == null, center);
-       			smallLandMasses.add(landMass);
-       		}
-       	}
+    	// Add to smallLandMasses any land which is not in a region. Moving land masses between regions above never
+       	// changes which land has no region, so landMasses still groups it correctly.
+    	List<List<Center>> smallLandMasses = groupByLandMass(centers.stream().filter(c -> !c.isWater() && c.region == null).iterator(),
+    			landMasses); // stores small pieces of land not in a region.
        	
     	// For each region, if region is smaller than minPoliticalRegionSize, make it not a region and add it to smallLandMasses.
     	List<Integer> toRemove = new ArrayList<>();
@@ -237,7 +425,8 @@ public class GraphImpl extends VoronoiGraph
     		if (regions.get(i).size() < minPoliticalRegionSize)
     		{
     			toRemove.add(i);
-    			Set<Center> smallLandMass = new HashSet<>(regions.get(i).getCenters());
+    			List<Center> smallLandMass = new ArrayList<>(regions.get(i).getCenters());
+    			smallLandMass.sort((c1, c2) -> Integer.compare(c1.index, c2.index));
     			smallLandMasses.add(smallLandMass);
     		}
     	}
@@ -249,10 +438,11 @@ public class GraphImpl extends VoronoiGraph
     	}
 
     	// For each land mass in smallLandMasses, add it to the region nearest its centroid.
-    	for (Set<Center> landMass : smallLandMasses)
+    	CentersInRegions centersInRegions = new CentersInRegions();
+    	for (List<Center> landMass : smallLandMasses)
     	{
     		Point centroid = GraphImpl.findCentroid(landMass);
-    		Region closest = findClosestRegion(centroid);
+    		Region closest = centersInRegions.findClosestRegion(centroid);
     		if (closest != null)
     		{
     			closest.addAll(landMass);
@@ -264,6 +454,7 @@ public class GraphImpl extends VoronoiGraph
     			region.addAll(landMass);
     			regions.add(region);
     		}
+    		centersInRegions.addAll(landMass);
     	}
     	
     	// Set the id of each region.
@@ -274,21 +465,84 @@ public class GraphImpl extends VoronoiGraph
 	}
     
     /**
-     * Finds the region closest (in terms of Cartesian distance) to the given point.
+     * The centers which are in a region, for finding the region closest (in terms of Cartesian distance) to a point
+     * while centers are being added to regions.
+     * 
+     * Centers which were in a region when this was created are searched with a k-d tree, and centers added since then
+     * are searched linearly until there are enough of them that it's worth rebuilding the tree.
      */
-    private Region findClosestRegion(Point point)
+    private class CentersInRegions
     {
-    	Optional<Center> opt = centers.stream().filter(c -> c.region != null)
-    		.min((c1, c2) -> Double.compare(c1.loc.distanceTo(point), c2.loc.distanceTo(point)));
+    	private final int maxCentersToSearchLinearly = 1024;
+    	private final List<Center> inTree = new ArrayList<>();
+    	private final List<Center> added = new ArrayList<>();
+    	private KdTree tree;
     	
-    	if (opt.isPresent())
+    	public CentersInRegions()
     	{
-    		assert opt.get().region != null;
-    		return opt.get().region;
+    		for (Center center : centers)
+    		{
+    			if (center.region != null)
+    			{
+    				inTree.add(center);
+    			}
+    		}
+    		tree = KdTree.createFromCenters(inTree, inTree.size());
     	}
     	
-    	// This could only happen if there are no regions on the graph.
-    	return null;
+    	/**
+    	 * Records that the given centers have been added to a region.
+    	 */
+    	public void addAll(Collection<Center> toAdd)
+    	{
+    		added.addAll(toAdd);
+    		if (added.size() > maxCentersToSearchLinearly)
+    		{
+    			inTree.addAll(added);
+    			added.clear();
+    			tree = KdTree.createFromCenters(inTree, inTree.size());
+    		}
+    	}
+    	
+    	/**
+    	 * Finds the region of the center closest to the given point. If more than one center is closest, the one with
+    	 * the smallest index is used.
+    	 * 
+    	 * @return The region, or null if no centers are in a region.
+    	 */
+    	public Region findClosestRegion(Point point)
+    	{
+    		int closestIndex = tree.findNearest(point.x, point.y);
+    		Center closest = closestIndex == -1 ? null : centers.get(closestIndex);
+    		for (Center center : added)
+    		{
+    			if (closest == null)
+    			{
+    				closest = center;
+    				continue;
+    			}
+    			int comp = Double.compare(distanceSquared(center.loc, point), distanceSquared(closest.loc, point));
+    			if (comp < 0 || (comp == 0 && center.index < closest.index))
+    			{
+    				closest = center;
+    			}
+    		}
+    		
+    		if (closest == null)
+    		{
+    			// This could only happen if there are no regions on the graph.
+    			return null;
+    		}
+    		assert closest.region != null;
+    		return closest.region;
+    	}
+    	
+    	private double distanceSquared(Point p1, Point p2)
+    	{
+    		double dx = p1.x - p2.x;
+    		double dy = p1.y - p2.y;
+    		return dx * dx + dy * dy;
+    	}
     }
     
     public Center findClosestCenter(double x, double y) 
@@ -305,28 +559,53 @@ public class GraphImpl extends VoronoiGraph
     {    	
     	if (point.x < getWidth() && point.y < getHeight() && point.x >= 0 && point.y >= 0)
     	{
-    		Color color;
-    		try
+    		if (centerLookupTable16 != null)
     		{
-    			color = new Color(centerLookupTable.getRGB((int)point.x, (int)point.y));
+    			return centers.get(centerLookupTable16[(int)point.y * centerLookupTableWidth + (int)point.x] & 0xffff);
     		}
-    		catch(IndexOutOfBoundsException e)
+    		if (centerLookupTable32 != null)
     		{
-    			color = null; 
+    			return centers.get(centerLookupTable32[(int)point.y * centerLookupTableWidth + (int)point.x] & 0xffffff);
     		}
-    		int index = color.getRed() | (color.getGreen() << 8) | (color.getBlue() << 16);
-    		return centers.get(index);
+    		return centers.get(getCenterTree().findNearest(point.x, point.y));
     	}
     	else if (!returnNullIfNotOnMap)
     	{
-        	Optional<Center> opt = centers.stream().filter(c -> c.isBorder)
-            		.min((c1, c2) -> Double.compare(c1.loc.distanceTo(point), c2.loc.distanceTo(point)));
-        	return opt.get();
-        	
+    		return centers.get(getBorderCenterTree().findNearest(point.x, point.y));
     	}
     	return null;
     }
     
+    private KdTree getCenterTree()
+    {
+    	KdTree tree = centerTree;
+    	if (tree == null)
+    	{
+    		tree = KdTree.createFromCenters(centers, centers.size());
+    		centerTree = tree;
+    	}
+    	return tree;
+    }
+    
+    private KdTree getBorderCenterTree()
+    {
+    	KdTree tree = borderCenterTree;
+    	if (tree == null)
+    	{
+    		List<Center> borderCenters = new ArrayList<>();
+    		for (Center c : centers)
+    		{
+    			if (c.isBorder())
+    			{
+    				borderCenters.add(c);
+    			}
+    		}
+    		tree = KdTree.createFromCenters(borderCenters, borderCenters.size());
+    		borderCenterTree = tree;
+    	}
+    	return tree;
+    }
+    
     public Corner findClosestCorner(Point point)
     {
     	Center closestCenter = findClosestCenter(point);  	
@@ -339,35 +618,87 @@ public class GraphImpl extends VoronoiGraph
     	return findClosestCenter(new Point(x, y)).tectonicPlate;
     }
     
-    private BufferedImage centerLookupTable;
     /**
-     * Calling this makes subsequent calls to getCenterAt much faster, but requires memory to store
-     * a lookup table, and is a little less accurate due to rounding errors.
+     * The index of the center drawn at each pixel, row by row. Only one of these is set. The 16 bit table is used when
+     * the indexes fit in it, which halves its size.
+     */
+    private short[] centerLookupTable16;
+    private int[] centerLookupTable32;
+    private int centerLookupTableWidth;
+    /**
+     * K-d trees of the locations of all centers and of the border centers, created the first time they're needed.
+     * Creating one twice at the same time from different threads is harmless.
+     */
+    private volatile KdTree centerTree;
+    private volatile KdTree borderCenterTree;
+
+    /**
+     * Calling this makes findClosestCenter return the center whose polygon is drawn at a point, rather than the center
+     * closest to the point, and makes it a little faster, but requires 2 or 4 bytes per pixel to store a lookup table.
      */
     public void buildCenterLookupTableIfNotBuilt()
     {
-    	if (centerLookupTable == null)
+    	if (centerLookupTable16 == null && centerLookupTable32 == null)
     	{
-	    	centerLookupTable = new BufferedImage((int)bounds.width, (int)bounds.height, BufferedImage.TYPE_INT_RGB);
-	    	Graphics2D g = centerLookupTable.createGraphics();
-	       	renderPolygons(g, new Function<Center, Color>()
+    		buildCenterLookupTable(centers.size() <= 0x10000);
+    	}
+    }
+
+    /**
+     * Builds the lookup table buildCenterLookupTableIfNotBuilt does, replacing any already built. 
+     * 
+     * @param use16Bits Whether to store the table in 2 bytes per pixel rather than 4. This needs the center indexes to 
+     *        fit in 16 bits. buildCenterLookupTableIfNotBuilt uses 16 bits whenever they fit, and both give the same
+     *        lookups.
+     * 
+     * Polygons are drawn with noisy edges once those are built, so a table built after that can differ slightly from
+     * the one the constructor builds.
+     */
+    public void buildCenterLookupTable(boolean use16Bits)
+    {
+    	if (use16Bits && centers.size() > 0x10000)
+    		throw new IllegalArgumentException("A 16 bit lookup table can't hold the indexes of " + centers.size() + " centers.");
+
+		// Draw each center in the color whose pixel value is its index, so lookups read indexes straight out of the raster.
+    	BufferedImage table = new BufferedImage((int)bounds.width, (int)bounds.height, 
+    			use16Bits ? BufferedImage.TYPE_USHORT_565_RGB : BufferedImage.TYPE_INT_RGB);
+    	Graphics2D g = table.createGraphics();
+       	renderPolygons(g, new Function<Center, Color>()
+			{
+				public Color apply(Center c)
 				{
-					public Color apply(Center c)
+					if (use16Bits)
 					{
-						return new Color(c.index & 0xff, (c.index & 0xff00) >> 8, (c.index & 0xff0000) >> 16);
+						// The low bits of each channel are set to the middle of the range that maps to the
+						// channel's 5 or 6 bits, so that it doesn't matter whether they're truncated or rounded.
+						return new Color(((c.index >> 11) << 3) | 4, (((c.index >> 5) & 0x3f) << 2) | 2, ((c.index & 0x1f) << 3) | 4);
 					}
-				});  
-    	}
+					return new Color((c.index >> 16) & 0xff, (c.index >> 8) & 0xff, c.index & 0xff);
+				}
+			});
+       	g.dispose();
+       	
+       	centerLookupTableWidth = table.getWidth();
+       	if (use16Bits)
+       	{
+       		centerLookupTable16 = ((DataBufferUShort)table.getRaster().getDataBuffer()).getData();
+       		centerLookupTable32 = null;
+       	}
+       	else
+       	{
+       		centerLookupTable16 = null;
+       		centerLookupTable32 = ((DataBufferInt)table.getRaster().getDataBuffer()).getData();
+       	}
    }
 
     
     /**
      * Searches for any region touching and polygon in landMass and returns it if found.
-     * Otherwise returns null.
+     * Otherwise returns null. Centers are searched in the order they're in landMass.
      * 
      * Assumes all Centers in landMass either all have the same region, or are all null.
      */
-    private Region findRegionTouching(Set<Center> landMass)
+    private Region findRegionTouching(List<Center> landMass)
     {
     	for (Center center : landMass)
     	{
@@ -382,27 +713,52 @@ public class GraphImpl extends VoronoiGraph
     	return null;
     }
     
+    /**
+     * Adds the given center to the set in landMasses of each land neighbor that's in the same region as it, or that
+     * also has no region.
+     */
+    private void joinToNeighborsInSameRegion(Center center, UnionFind landMasses)
+    {
+    	if (center.isWater())
+    	{
+    		return;
+    	}
+    	for (Center n : center.neighbors)
+    	{
+    		if (!n.isWater() && n.region == center.region)
+    		{
+    			landMasses.union(center.index, n.index);
+    		}
+    	}
+    }
+    
     /**
      * Splits apart a region by parts connect by land (not including land from another region).
      * @param region
-     * @return
+     * @param landMasses Land centers connected by land in the same region must be in the same set.
+     * @return The parts, each sorted by center index, in order of their first center's index.
      */
-    private List<Set<Center>> divideRegionByLand(Region region)
+    private List<List<Center>> divideRegionByLand(Region region, UnionFind landMasses)
     {
-    	Set<Center> remaining = new HashSet<>(region.getCenters());
-    	List<Set<Center>> dividedRegion = new ArrayList<>();
-    	
-    	// Start with the first center. Do a breadth-first search adding all connected
-    	// centers which are of the same region and are not ocean.
-    	while(!remaining.isEmpty())
+    	List<Center> regionCenters = new ArrayList<>(region.getCenters());
+    	regionCenters.sort((c1, c2) -> Integer.compare(c1.index, c2.index));
+    	return groupByLandMass(regionCenters.iterator(), landMasses);
+    }
+    
+    /**
+     * Groups centers by which set in landMasses they're in.
+     * @param centersToGroup Centers in order by index.
+     * @return The groups, each sorted by center index, in order of their first center's index.
+     */
+    private List<List<Center>> groupByLandMass(Iterator<Center> centersToGroup, UnionFind landMasses)
+    {
+    	Map<Integer, List<Center>> groups = new LinkedHashMap<>();
+    	while (centersToGroup.hasNext())
     	{
-    		Set<Center> landMass = breadthFirstSearch(c -> !c.isWater && c.region == region, 
-	    			remaining.iterator().next());
-	    	dividedRegion.add(landMass);
-	    	remaining.removeAll(landMass);
+    		Center center = centersToGroup.next();
+    		groups.computeIfAbsent(landMasses.find(center.index), root -> new ArrayList<>()).add(center);
     	}
-    	
-    	return dividedRegion;
+    	return new ArrayList<>(groups.values());
     }
     
     public Set<Center> breadthFirstSearch(Function<Center, Boolean> accept, Center start)
@@ -454,7 +810,7 @@ public class GraphImpl extends VoronoiGraph
     {
         for (Center c : centers) 
         {
-         	if (c.isBorder)
+         	if (c.isBorder())
                 g.setColor(Color.white);
          	else
          		g.setColor(Color.BLACK);
@@ -462,7 +818,7 @@ public class GraphImpl extends VoronoiGraph
             drawUsingTriangles(g, c, false);
         } 	
         
-        renderPolygons(g, c -> c.isBorder ? Color.white : Color.black);
+        renderPolygons(g, c -> c.isBorder() ? Color.white : Color.black);
     }
     
     public int getWidth()
@@ -482,13 +838,13 @@ public class GraphImpl extends VoronoiGraph
 
     @Override
     protected Biome getBiome(Center p) {
-    	double elevation = Math.sqrt((p.elevation - seaLevel) / (maxElevation - seaLevel));
+    	double elevation = Math.sqrt((p.getElevation() - seaLevel) / (maxElevation - seaLevel));
     	
-		if (p.isWater)
+		if (p.isWater())
 		{
 			return Biome.OCEAN;
 		}
-		else if (p.isWater)
+		else if (p.isWater())
 		{
 			if (elevation < 0.1)
 			{
@@ -500,21 +856,21 @@ public class GraphImpl extends VoronoiGraph
 			}
 			return Biome.LAKE;
 		}
-		else if (p.isCoast)
+		else if (p.isCoast())
 		{
 			return Biome.BEACH;
 		}
 		else if (elevation > 0.8)
 		{
-			if (p.moisture > 0.50)
+			if (p.getMoisture() > 0.50)
 			{
 				return Biome.SNOW;
 			}
-			else if (p.moisture > 0.33)
+			else if (p.getMoisture() > 0.33)
 			{
 				return Biome.TUNDRA;
 			}
-			else if (p.moisture > 0.16)
+			else if (p.getMoisture() > 0.16)
 			{
 				return Biome.BARE;
 			}
@@ -525,11 +881,11 @@ public class GraphImpl extends VoronoiGraph
 		}
 		else if (elevation > 0.6)
 		{
-			if (p.moisture > 0.66)
+			if (p.getMoisture() > 0.66)
 			{
 				return Biome.TAIGA;
 			}
-			else if (p.moisture > 0.33)
+			else if (p.getMoisture() > 0.33)
 			{
 				return Biome.SHRUBLAND;
 			}
@@ -541,15 +897,15 @@ public class GraphImpl extends VoronoiGraph
 		else if (elevation > 0.45)
 		{
 			// Note: I added this else if case. It is not in Red Blob's blog.
-			if (p.moisture > 0.83)
+			if (p.getMoisture() > 0.83)
 			{
 				return Biome.TEMPERATE_RAIN_FOREST;
 			}
-			else if (p.moisture > 0.50)
+			else if (p.getMoisture() > 0.50)
 			{
 				return Biome.HIGH_TEMPERATE_DECIDUOUS_FOREST;
 			}
-			else if (p.moisture > 0.16)
+			else if (p.getMoisture() > 0.16)
 			{
 				return Biome.GRASSLAND;
 			}
@@ -560,15 +916,15 @@ public class GraphImpl extends VoronoiGraph
 		}
 		else if (elevation > 0.3)
 		{
-			if (p.moisture > 0.83)
+			if (p.getMoisture() > 0.83)
 			{
 				return Biome.TEMPERATE_RAIN_FOREST;
 			}
-			else if (p.moisture > 0.50)
+			else if (p.getMoisture() > 0.50)
 			{
 				return Biome.TEMPERATE_DECIDUOUS_FOREST;
 			}
-			else if (p.moisture > 0.16)
+			else if (p.getMoisture() > 0.16)
 			{
 				return Biome.GRASSLAND;
 			}
@@ -579,15 +935,15 @@ public class GraphImpl extends VoronoiGraph
 		}
 		else
 		{
-			if (p.moisture > 0.66)
+			if (p.getMoisture() > 0.66)
 			{
 				return Biome.TROPICAL_RAIN_FOREST;
 			}
-			else if (p.moisture > 0.33)
+			else if (p.getMoisture() > 0.33)
 			{
 				return Biome.TROPICAL_SEASONAL_FOREST;
 			}
-			else if (p.moisture > 0.16)
+			else if (p.getMoisture() > 0.16)
 			{
 				return Biome.GRASSLAND;
 			}
@@ -610,73 +966,92 @@ public class GraphImpl extends VoronoiGraph
     private void assignPlateCornerElivations()
     {    	
 //    	long startTime = System.currentTimeMillis();
-    	    	
+    	
+    	// Each plate's centroid and boundary edges are found once up front rather than once per edge and once per
+    	// plate. The edges stay in graph order so that corners are visited in the same order as before.
+    	Map<TectonicPlate, Point> centroids = new HashMap<>();
+    	Map<TectonicPlate, List<Edge>> boundaryEdges = new HashMap<>();
+     	for (TectonicPlate plate : plates)
+     	{
+     		centroids.put(plate, plate.findCentroid());
+     		boundaryEdges.put(plate, new ArrayList<>());
+     	}
+        for (Edge e : edges) 
+        {
+            if (e.d0.tectonicPlate != e.d1.tectonicPlate && e.v0 != null && e.v1 != null)
+            {
+            	boundaryEdges.get(e.d0.tectonicPlate).add(e);
+            }
+        }
+    	
+        // Membership in explored, exploredThisIteration, and plateBoundaryCorners is also tracked by corner index
+        // because checking a bit is much faster than a hash set lookup. The hash sets are still used to decide the order
+        // corners are visited in.
+    	BitSet isExplored = new BitSet(corners.size());
+    	// Once an explored corner has been searched from, all of its neighbors that can be explored have been, so 
+    	// searching from it again would do nothing.
+    	BitSet isSearchedFrom = new BitSet(corners.size());
+    	BitSet isExploredThisIteration = new BitSet(corners.size());
+    	BitSet isPlateBoundaryCorner = new BitSet(corners.size());
      	for (final TectonicPlate plate : plates)
     	{    		
+     		isExplored.clear();
+     		isSearchedFrom.clear();
+     		isPlateBoundaryCorner.clear();
      		
     		Set<Corner> explored = new HashSet<>();
     		
     		// Find all corners along plate boundaries.
-    		Set<Corner> plateBoundaryCorners = new HashSet<>();
-            for (Edge e : edges) 
+            for (Edge e : boundaryEdges.get(plate)) 
             {
-                if (e.d0.tectonicPlate == plate
-                		&& e.d0.tectonicPlate != e.d1.tectonicPlate
-                		&& e.v0 != null && e.v1 != null)
-                {
-                	if (e.v0 != null)
-                		plateBoundaryCorners.add(e.v0);
-                	if (e.v1 != null)
-                		plateBoundaryCorners.add(e.v1);
-                }
+            	isPlateBoundaryCorner.set(e.v0.index);
+            	isPlateBoundaryCorner.set(e.v1.index);
             }
     		    	
             // Simulate tectonic plate collisions.
-            for (Edge e : edges) 
+            for (Edge e : boundaryEdges.get(plate)) 
             {
-                if (e.d0.tectonicPlate == plate 
-                		&& e.d0.tectonicPlate != e.d1.tectonicPlate
-                		&& e.v0 != null && e.v1 != null)
-                {
-                	double d0ConvergeLevel = calcLevelOfConvergence(e.d0.tectonicPlate.findCentroid(), e.d0.tectonicPlate.velocity, e.d1.tectonicPlate.findCentroid(),
+            	double d0ConvergeLevel = calcLevelOfConvergence(centroids.get(e.d0.tectonicPlate), e.d0.tectonicPlate.velocity, 
+            			centroids.get(e.d1.tectonicPlate), e.d1.tectonicPlate.velocity);
+            	
+            	// If the plates are converging, rough them up a bit by calculating divergence per
+            	// polygon. This brakes up long snake like islands.
+            	if (d0ConvergeLevel > 0)
+            	{
+                	d0ConvergeLevel =  calcLevelOfConvergence(e.d0.loc, e.d0.tectonicPlate.velocity, e.d1.loc,
                 			e.d1.tectonicPlate.velocity);
-                	
-                	// If the plates are converging, rough them up a bit by calculating divergence per
-                	// polygon. This brakes up long snake like islands.
-                	if (d0ConvergeLevel > 0)
-                	{
-	                	d0ConvergeLevel =  calcLevelOfConvergence(e.d0.loc, e.d0.tectonicPlate.velocity, e.d1.loc,
-	                			e.d1.tectonicPlate.velocity);
-                	}
-                	
-                	
-                 	e.v0.elevation += d0ConvergeLevel * collisionScale;
-                	e.v1.elevation += d0ConvergeLevel * collisionScale;
-                	explored.add(e.v0);
-                	explored.add(e.v1);
-                	
-                	// Make sure the corner elevations don't go out of range.
-                	e.v0.elevation = Math.min(e.v0.elevation, 1.0);
-                   	e.v0.elevation = Math.max(e.v0.elevation, 0.0);
-                	e.v1.elevation = Math.min(e.v1.elevation, 1.0);
-                   	e.v1.elevation = Math.max(e.v1.elevation, 0.0);
-                   	                   	
-                	// Handle subduction of an ocean plate under a continental one.
-                   	if (d0ConvergeLevel > 0 && e.d0.tectonicPlate.type == PlateType.Oceanic
-                   			 && e.d1.tectonicPlate.type == PlateType.Continental)
-                   	{
-                   		for (Corner corner : e.d0.corners)
-                   		{
-                   			if (!plateBoundaryCorners.contains(corner))
-                   			{
-                   				corner.elevation -= d0ConvergeLevel * collisionScale;
-                   				corner.elevation = Math.min(corner.elevation, 1.0);
-                   				corner.elevation = Math.max(corner.elevation, 0.0);
-                   				explored.add(corner);
-                   			}
-                   		}
-                   	}
-               }           	
+            	}
+            	
+            	
+             	e.v0.setElevation(e.v0.getElevation() + d0ConvergeLevel * collisionScale);
+            	e.v1.setElevation(e.v1.getElevation() + d0ConvergeLevel * collisionScale);
+            	explored.add(e.v0);
+            	explored.add(e.v1);
+            	isExplored.set(e.v0.index);
+            	isExplored.set(e.v1.index);
+            	
+            	// Make sure the corner elevations don't go out of range.
+            	e.v0.setElevation(Math.min(e.v0.getElevation(), 1.0));
+               	e.v0.setElevation(Math.max(e.v0.getElevation(), 0.0));
+            	e.v1.setElevation(Math.min(e.v1.getElevation(), 1.0));
+               	e.v1.setElevation(Math.max(e.v1.getElevation(), 0.0));
+               	                   	
+            	// Handle subduction of an ocean plate under a continental one.
+               	if (d0ConvergeLevel > 0 && e.d0.tectonicPlate.type == PlateType.Oceanic
+               			 && e.d1.tectonicPlate.type == PlateType.Continental)
+               	{
+               		for (Corner corner : e.d0.corners)
+               		{
+               			if (!isPlateBoundaryCorner.get(corner.index))
+               			{
+               				corner.setElevation(corner.getElevation() - d0ConvergeLevel * collisionScale);
+               				corner.setElevation(Math.min(corner.getElevation(), 1.0));
+               				corner.setElevation(Math.max(corner.getElevation(), 0.0));
+               				explored.add(corner);
+               				isExplored.set(corner.index);
+               			}
+               		}
+               	}
             }
 
             // Do a search starting at the corners along the borders. At each step, assign each corner's
@@ -687,12 +1062,19 @@ public class GraphImpl extends VoronoiGraph
             {
    		    	cornerFound = false;
    		    	explored.addAll(exploredThisIteration);
+   		    	isExplored.or(isExploredThisIteration);
    		    	exploredThisIteration.clear();
+   		    	isExploredThisIteration.clear();
     			for (Corner exCorner : explored)
 	    		{
+	    			if (isSearchedFrom.get(exCorner.index))
+	    			{
+	    				continue;
+	    			}
+	    			isSearchedFrom.set(exCorner.index);
 	    			for (Corner corner : exCorner.adjacent)
 	    			{
-	    				if (!explored.contains(corner) && !exploredThisIteration.contains(corner))
+	    				if (!isExplored.get(corner.index) && !isExploredThisIteration.get(corner.index))
 	    				{
 		    				
 		    				for (Center center : corner.touches)
@@ -700,17 +1082,18 @@ public class GraphImpl extends VoronoiGraph
 		    					{
 		    						// Set the corner's elevation to the average of its self and its
 		    						// explored neighbors.
-		    						double sum = corner.elevation;
+		    						double sum = corner.getElevation();
 		    						double count = 1;
 		    						for (Corner a : corner.adjacent)
-		    							if (explored.contains(a) || exploredThisIteration.contains(a))
+		    							if (isExplored.get(a.index) || isExploredThisIteration.get(a.index))
 		    							{
-		    								sum += a.elevation;
+		    								sum += a.getElevation();
 		    								count++;
 		    							}
-		    						corner.elevation = sum / count;
+		    						corner.setElevation(sum / count);
 		    						
 		    						exploredThisIteration.add(corner);
+		    						isExploredThisIteration.set(corner.index);
 		    						cornerFound = true;
 		    						continue;
 		    					}
@@ -729,78 +1112,152 @@ public class GraphImpl extends VoronoiGraph
      */ 
     private void lowerOceanPlates()
     {
-        for (Corner corner : corners) {
-            int numOceanic = 0;
-            for (Center center : corner.touches) 
-            {
-            	if (center.tectonicPlate.type == PlateType.Oceanic)
-            		numOceanic++;
-            }
-            double oceanicRatio = ((double)numOceanic)/corner.touches.size();
-            corner.elevation = oceanicRatio*oceanPlateLevel + (1.0 - oceanicRatio)*continentalPlateLevel;
-       }
+    	ParallelRanges.forEachChunk(corners.size(), (start, end) ->
+    	{
+	        for (int i = start; i < end; i++) {
+	        	Corner corner = corners.get(i);
+	            int numOceanic = 0;
+	            for (Center center : corner.touches) 
+	            {
+	            	if (center.tectonicPlate.type == PlateType.Oceanic)
+	            		numOceanic++;
+	            }
+	            double oceanicRatio = ((double)numOceanic)/corner.touches.size();
+	            corner.setElevation(oceanicRatio*oceanPlateLevel + (1.0 - oceanicRatio)*continentalPlateLevel);
+	       }
+    	});
     }
        
     @Override
     protected void assignOceanCoastAndLand()
     {
-		for (Center c1 : centers)
-		{
-			c1.isWater = c1.elevation < seaLevel;
-		}
+    	// The flags are stored in BitSets, which aren't safe to update from more than one thread at once, so each pass
+    	// finds its flags in parallel into an array and then copies them into the BitSets on this thread.
+    	boolean[] isWater = new boolean[centers.size()];
+    	ParallelRanges.forEachChunk(centers.size(), (start, end) ->
+    	{
+			for (int i = start; i < end; i++)
+			{
+				isWater[i] = centers.get(i).getElevation() < seaLevel;
+			}
+    	});
+    	for (int i = 0; i < centers.size(); i++)
+    	{
+    		centers.get(i).setWater(isWater[i]);
+    	}
 		
 		assignBorderToCorners();
 
 		// Copied from super.assignOceanCoastAndLand()
 		// Determine if each corner is coast or water.
-		for (Center c : centers)
-		{
-			updateCoast(c);
-		}
+    	boolean[] isCoast = new boolean[centers.size()];
+    	ParallelRanges.forEachChunk(centers.size(), (start, end) ->
+    	{
+			for (int i = start; i < end; i++)
+			{
+				isCoast[i] = isCoast(centers.get(i));
+			}
+    	});
+    	for (int i = 0; i < centers.size(); i++)
+    	{
+    		centers.get(i).setCoast(isCoast[i]);
+    	}
 
 		// Copied from super.assignOceanCoastAndLand()
 		// Determine if each corner is ocean, coast, or water.
-		for (Corner c : corners)
-		{
-			int numOcean = 0;
-			int numLand = 0;
-			for (Center center : c.touches)
+    	byte[] cornerFlags = new byte[core.numCorners];
+    	ParallelRanges.forEachChunk(core.numCorners, (start, end) ->
+    	{
+			for (int i = start; i < end; i++)
 			{
-				numOcean += center.isWater ? 1 : 0;
-				numLand += !center.isWater ? 1 : 0;
+				cornerFlags[i] = findCornerOceanAndCoastFlags(i);
 			}
-			c.ocean = numOcean == c.touches.size();
-			c.coast = numOcean > 0 && numLand > 0;
-			c.water = (numLand != c.touches.size()) && !c.coast;
+    	});
+    	for (int i = 0; i < core.numCorners; i++)
+    	{
+    		setCornerOceanAndCoastFlags(i, cornerFlags[i]);
+    	}
+    }
+    
+    private void updateCornerOceanAndCoast(int cornerIndex)
+    {
+    	setCornerOceanAndCoastFlags(cornerIndex, findCornerOceanAndCoastFlags(cornerIndex));
+    }
+    
+    /**
+     * @return Whether the corner is ocean, coast, and water, as a combination of cornerOceanFlag, cornerCoastFlag, and
+     *         cornerWaterFlag.
+     */
+    private byte findCornerOceanAndCoastFlags(int cornerIndex)
+    {
+		final int[] starts = core.cornerTouchStarts;
+		final int[] touches = core.cornerTouches;
+		int numOcean = 0;
+		for (int j = starts[cornerIndex]; j < starts[cornerIndex + 1]; j++)
+		{
+			numOcean += core.centerIsWater.get(touches[j]) ? 1 : 0;
 		}
+		int numTouches = starts[cornerIndex + 1] - starts[cornerIndex];
+		int numLand = numTouches - numOcean;
+		boolean isCoast = numOcean > 0 && numLand > 0;
+		byte flags = 0;
+		if (numOcean == numTouches)
+			flags |= cornerOceanFlag;
+		if (isCoast)
+			flags |= cornerCoastFlag;
+		if ((numLand != numTouches) && !isCoast)
+			flags |= cornerWaterFlag;
+		return flags;
+    }
+    
+    private void setCornerOceanAndCoastFlags(int cornerIndex, byte flags)
+    {
+		core.cornerIsOcean.set(cornerIndex, (flags & cornerOceanFlag) != 0);
+		core.cornerIsCoast.set(cornerIndex, (flags & cornerCoastFlag) != 0);
+		core.cornerIsWater.set(cornerIndex, (flags & cornerWaterFlag) != 0);
     }
     
     public void updateCoast(Center c)
+    {
+		c.setCoast(isCoast(c));
+    }
+    
+    private static boolean isCoast(Center c)
     {
 		int numOcean = 0;
 		int numLand = 0;
 		for (Center center : c.neighbors)
 		{
-			numOcean += center.isWater ? 1 : 0;
-			numLand += !center.isWater ? 1 : 0;
+			numOcean += center.isWater() ? 1 : 0;
+			numLand += !center.isWater() ? 1 : 0;
 		}
-		c.isCoast = numOcean > 0 && numLand > 0;
+		return numOcean > 0 && numLand > 0;
     }
     
     private void assignBorderToCorners()
     {
-		for (Center c1 : centers)
-		{
-			for (final Corner corner : c1.corners)
+    	boolean[] isBorder = new boolean[centers.size()];
+    	ParallelRanges.forEachChunk(centers.size(), (start, end) ->
+    	{
+			for (int i = start; i < end; i++)
 			{
-				if (corner.border)
+				for (final Corner corner : centers.get(i).corners)
 				{
-					c1.isBorder = true;
-					break;
+					if (corner.isBorder())
+					{
+						isBorder[i] = true;
+						break;
+					}
 				}
 			}
-		}
-
+    	});
+    	for (int i = 0; i < centers.size(); i++)
+    	{
+    		if (isBorder[i])
+    		{
+    			centers.get(i).setBorder(true);
+    		}
+    	}
     }
     	
     private void assignOceanAndContinentalPlates()
@@ -822,7 +1279,7 @@ public class GraphImpl extends VoronoiGraph
     	for (Center c : centers)
     	{
     		for (Corner corner : c.corners)
-	    		if (corner.border)
+	    		if (corner.isBorder())
 	    		{
 	    			borderPlates.add(c.tectonicPlate);
 		    			continue;
@@ -847,64 +1304,27 @@ public class GraphImpl extends VoronoiGraph
     	// with high growth probabilities and many with low growth probabilities. This makes plate creation
     	// faster and creates a larger variety of plate sizes than a uniform distribution would.
 		BetaDistribution betaDist = new BetaDistribution(randomData, 1, 3, BetaDistribution.DEFAULT_INVERSE_ABSOLUTE_ACCURACY);
+		TectonicPlate[] startingPlates = new TectonicPlate[centers.size()];
+		double[] growthProbabilities = new double[centers.size()];
     	for (Center c : centers)
     	{
-    		c.tectonicPlate = new TectonicPlate(betaDist.sample(), centers);
+    		startingPlates[c.index] = new TectonicPlate(c.index, betaDist.sample(), centers);
+    		growthProbabilities[c.index] = startingPlates[c.index].growthProbability;
        	}
     	
-   		for (Center c : centers)
-   		{
-			c.updateNeighborsNotInSamePlateCount();
-   		}
-
-    	
-     	for (int curIteration = 0; curIteration < numIterationsForTectonicPlateCreation; curIteration++)
+    	TectonicPlateGrower grower = new TectonicPlateGrower(core, growthProbabilities);
+    	if (tectonicPlateAlgorithm == GraphCreator.TectonicPlateAlgorithm.Frontier)
     	{
-     		// Sample some centers and choose the one with the least number of neighbors which
-     		// are not on this plate (greater than 0). This makes the plate boundaries more smooth.
-      		Center least = null;
-     		for (int i = 0; i < plateBoundarySmoothness; i++)
-     		{
-        		final Center cTemp = centers.get(rand.nextInt(centers.size()));
-           		if (cTemp.neighborsNotInSamePlateCount == 0)
-        			continue;
-          		
-          		if (least == null || cTemp.neighborsNotInSamePlateCount < least.neighborsNotInSamePlateCount)
-          		{
-          			least = cTemp;
-          		}
-        		
-    		}
-     		if (least == null)
-     		{
-     			continue;
-     		}
-     		final Center c = least;
-     		
-    		// Keep the merge with probability equal to the score of the new tectonic plate.
-    		if (rand.nextDouble() < c.tectonicPlate.growthProbability)
-    		{
-    			// Choose a center at random.
-	    		// Choose one of it's neighbors not in the same plate.
-	    		List<Center> neighborsNotInSamePlate = Helper.filter(c.neighbors, new nortantis.util.Function<Center, Boolean>()
-	    				{
-							public Boolean apply(Center otherC) 
-							{
-								return c.tectonicPlate != otherC.tectonicPlate;
-							}
-	    				});
-	    		Center neighbor = neighborsNotInSamePlate.get(rand.nextInt(neighborsNotInSamePlate.size()));
-    		
-     		
-    	   		// Merge the neighbor into c's plate.
-        		neighbor.tectonicPlate = c.tectonicPlate;
-        		c.updateNeighborsNotInSamePlateCount();
-        		for (Center n : c.neighbors)
-        			n.updateNeighborsNotInSamePlateCount();
-        		neighbor.updateNeighborsNotInSamePlateCount();
-        		for (Center n : neighbor.neighbors)
-        			n.updateNeighborsNotInSamePlateCount();
-     		}
+    		grower.growFromFrontier(numIterationsForTectonicPlateCreation, plateBoundarySmoothness, rand);
+    	}
+    	else
+    	{
+    		grower.growBySampling(numIterationsForTectonicPlateCreation, plateBoundarySmoothness, rand);
+    	}
+    	int[] plateIndexes = grower.getPlateIndexes();
+    	for (Center c : centers)
+    	{
+    		c.tectonicPlate = startingPlates[plateIndexes[c.index]];
     	}
  
      	// Find the plates still on the map.
@@ -990,7 +1410,7 @@ public class GraphImpl extends VoronoiGraph
     	return result;
     }
     
-	public static Point findCentroid(Set<Center> centers)
+	public static Point findCentroid(Collection<Center> centers)
 	{
 		Point centroid = new Point(0, 0);
 		for (Center c : centers)
@@ -1075,123 +1495,101 @@ public class GraphImpl extends VoronoiGraph
 	 * Greedily finds a path between the 2 given corners.
 	 * @param riverStart
 	 * @param end
+	 * @return The edges on the path, or an empty set if there is no path.
 	 */
 	public Set<Edge> findPath(Corner riverStart, Corner end)
 	{
-		if (riverStart.equals(end))
-		{
-			return new HashSet<>();
-		}
-				
-		Set<SearchNode> explored = new HashSet<>();
-		SearchNode startNode = new SearchNode(riverStart, null);
-		explored.add(startNode);
-		SortedSet<SearchNode> frontier = new TreeSet<>(new Comparator<SearchNode>()
-		{
-			@Override
-			public int compare(SearchNode n1, SearchNode n2)
-			{
-				int distanceComp = Double.compare(end.loc.distanceTo(n1.corner.loc), end.loc.distanceTo(n2.corner.loc));
-				if (distanceComp == 0)
-				{
-					// This ensures corners which are the same distance to the target don't clober eachother in the set.
-					return Integer.compare(n1.corner.index, n2.corner.index);
-				}
-				assert n1.corner.index != n2.corner.index;
-				return distanceComp;
-			}
-		});
-		
-		expandFrontier(startNode, frontier, explored);
-		
-		SearchNode endNode = null;
-		while (true)
-		{
-			SearchNode closest = frontier.first();
-			frontier.remove(closest);
-			explored.add(closest);
-			
-			if (closest.corner.equals(end))
-			{
-				endNode = closest;
-				break;
-			}
-			
-			expandFrontier(closest, frontier, explored);
-		}
-		
-		return createPathFromBackPointers(endNode);
+		return findPath(riverStart, end, false);
 	}
 	
-	private void expandFrontier(SearchNode node, Set<SearchNode> frontier, Set<SearchNode> explored)
+	/**
+	 * Finds the shortest path between the 2 given corners. This explores more of the graph than findPath does.
+	 * @param riverStart
+	 * @param end
+	 * @return The edges on the path, or an empty set if there is no path.
+	 */
+	public Set<Edge> findShortestPath(Corner riverStart, Corner end)
 	{
-		// Expand the frontier
-		for (Corner c : node.corner.adjacent)
-		{
-			SearchNode otherNode = new SearchNode(c, node);
-			if (!explored.contains(otherNode) && !frontier.contains(otherNode))
-			{
-				frontier.add(otherNode);
-			}
-		}
+		return findPath(riverStart, end, true);
 	}
 	
-	private Edge findConnectingEdge(Corner c1, Corner c2)
+	/**
+	 * Finds a path between each pair of corners, routing the paths in parallel.
+	 * @param starts
+	 * @param ends
+	 *            The end corner of each path, in the same order as starts.
+	 * @param shortest
+	 *            Whether to find the shortest paths, like findShortestPath, or greedy paths, like findPath.
+	 * @return The edges on each path, in the same order as starts.
+	 */
+	public List<Set<Edge>> findPaths(List<Corner> starts, List<Corner> ends, boolean shortest)
 	{
-		for (Edge edge : c1.protrudes)
+		if (starts.size() != ends.size())
 		{
-			if (edge.v1 != null && edge.v1.equals(c2))
-			{
-				return edge;
-			}
-			if (edge.v0 != null && edge.v0.equals(c2))
-			{
-				return edge;
-			}
+			throw new IllegalArgumentException("The number of start corners (" + starts.size() + ") must equal the number of end corners ("
+					+ ends.size() + ").");
 		}
-		return null;
+		
+		List<Callable<Set<Edge>>> jobs = new ArrayList<>(starts.size());
+		for (int i = 0; i < starts.size(); i++)
+		{
+			final Corner start = starts.get(i);
+			final Corner end = ends.get(i);
+			jobs.add(() -> findPath(start, end, shortest));
+		}
+		return WorkerPool.getInstance().runAllAndGetResults(jobs);
 	}
 	
-	private Set<Edge> createPathFromBackPointers(SearchNode end)
-	{	
-		Set<Edge> path = new HashSet<>();
-		if (end == null)
+	private Set<Edge> findPath(Corner start, Corner end, boolean shortest)
+	{
+		RiverPathFinder finder = acquirePathFinder();
+		try
 		{
-			return path;
+			return toEdgeSet(finder.findPath(start.index, end.index, shortest));
 		}
-		
-		SearchNode curNode = end;
-		while (curNode.cameFrom != null)
+		finally
 		{
-			Edge edge = findConnectingEdge(curNode.corner, curNode.cameFrom.corner);
-			assert edge != null;
-			path.add(edge);
-			curNode = curNode.cameFrom;
+			idlePathFinders.add(finder);
 		}
-		return path;
 	}
 	
-	private class SearchNode
+	/**
+	 * Path finders hold arrays the size of the graph, so they're kept and reused. Each thread finding a path takes one
+	 * out of this queue, or creates one if it's empty, and puts it back when done.
+	 */
+	private RiverPathFinder acquirePathFinder()
 	{
-		public Corner corner;
-		public SearchNode cameFrom;
-		
-		public SearchNode(Corner corner, SearchNode cameFrom)
+		RiverPathFinder finder = idlePathFinders.poll();
+		if (finder != null)
 		{
-			this.corner = corner;
-			this.cameFrom = cameFrom;
+			return finder;
 		}
 		
-		@Override
-		public int hashCode()
+		synchronized (idlePathFinders)
 		{
-			return corner.hashCode();
+			if (cornerXs == null)
+			{
+				double[] xs = new double[corners.size()];
+				double[] ys = new double[corners.size()];
+				for (Corner corner : corners)
+				{
+					xs[corner.index] = corner.loc.x;
+					ys[corner.index] = corner.loc.y;
+				}
+				cornerXs = xs;
+				cornerYs = ys;
+			}
+			return new RiverPathFinder(core, cornerXs, cornerYs);
 		}
-		
-		@Override
-		public boolean equals(Object other)
+	}
+	
+	private Set<Edge> toEdgeSet(int[] edgeIndexes)
+	{
+		Set<Edge> path = new HashSet<>();
+		for (int edgeIndex : edgeIndexes)
 		{
-			return corner.equals(((SearchNode)other).corner);
+			path.add(edges.get(edgeIndex));
 		}
+		return path;
 	}
 }
@@ -0,0 +1,423 @@
+package nortantis;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import nortantis.util.Tuple2;
+
+/**
+ * Scales icons and their masks to any width quickly, for drawing the same icons at many different sizes.
+ *
+ * The first time an icon is scaled, a mipmap of it is made: the icon at full size, then at half that, then at half
+ * that, and so on down to 1 pixel, averaging 2x2 blocks of pixels each time. Colors are stored with premultiplied alpha
+ * so that averaging doesn't bleed the colors of transparent pixels into the icon's edges. Icons are then scaled from the
+ * smallest level at least as wide as the requested width, with bilinear filtering, which never has to shrink a level by
+ * more than half.
+ *
+ * The levels of each icon are packed into one array, rather than stored as an image per level. The atlas holds at most
+ * a given number of bytes of mipmaps, evicting the least recently used when it would go over. Icons are only weakly
+ * referenced, so the mipmaps of icons that have been collected, such as icons evicted from ImageCache, are dropped
+ * rather than kept until they're evicted.
+ */
+public class IconAtlas
+{
+	private long maxBytes;
+	// Kept in access order, so that iteration starts at the least recently used mipmap.
+	private final LinkedHashMap<IconKey, Mipmap> mipmaps = new LinkedHashMap<>(16, 0.75f, true);
+	private final ReferenceQueue<BufferedImage> collectedImages = new ReferenceQueue<>();
+	private long sizeInBytes;
+
+	/**
+	 * The key of an icon and its mask, which are compared by identity. They're only weakly referenced, so that the atlas
+	 * doesn't keep them in memory.
+	 */
+	private static final class IconKey
+	{
+		final KeyedWeakReference icon;
+		final KeyedWeakReference mask;
+		final int hashCode;
+
+		/**
+		 * @param queue
+		 *            Where to enqueue the key's references when the icon or mask is collected, or null for keys that are
+		 *            only used to look up mipmaps.
+		 */
+		IconKey(BufferedImage icon, BufferedImage mask, ReferenceQueue<BufferedImage> queue)
+		{
+			this.icon = new KeyedWeakReference(this, icon, queue);
+			this.mask = new KeyedWeakReference(this, mask, queue);
+			this.hashCode = System.identityHashCode(icon) * 31 + System.identityHashCode(mask);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object other)
+		{
+			if (this == other)
+			{
+				return true;
+			}
+			if (!(other instanceof IconKey))
+			{
+				return false;
+			}
+			BufferedImage icon = this.icon.get();
+			BufferedImage mask = this.mask.get();
+			return icon != null && mask != null && icon == ((IconKey) other).icon.get() && mask == ((IconKey) other).mask.get();
+		}
+	}
+
+	private static final class KeyedWeakReference extends WeakReference<BufferedImage>
+	{
+		final IconKey key;
+
+		KeyedWeakReference(IconKey key, BufferedImage image, ReferenceQueue<BufferedImage> queue)
+		{
+			super(image, queue);
+			this.key = key;
+		}
+	}
+
+	/**
+	 * @param maxBytes
+	 *            The most bytes of mipmaps to hold.
+	 */
+	public IconAtlas(long maxBytes)
+	{
+		setMaxBytes(maxBytes);
+	}
+
+	/**
+	 * The levels of one icon. Level i is levelWidths[i] by levelHeights[i] pixels, stored one row after another starting
+	 * at levelOffsets[i] in colors and coverages.
+	 */
+	private static final class Mipmap
+	{
+		final int[] colors;
+		final byte[] coverages;
+		final int[] levelOffsets;
+		final int[] levelWidths;
+		final int[] levelHeights;
+
+		Mipmap(int[] colors, byte[] coverages, int[] levelOffsets, int[] levelWidths, int[] levelHeights)
+		{
+			this.colors = colors;
+			this.coverages = coverages;
+			this.levelOffsets = levelOffsets;
+			this.levelWidths = levelWidths;
+			this.levelHeights = levelHeights;
+		}
+
+		long getSizeInBytes()
+		{
+			// An int of color and a byte of coverage per pixel.
+			return ((long) colors.length) * (Integer.BYTES + 1);
+		}
+	}
+
+	/**
+	 * Scales an icon and its mask to about the given width, preserving the aspect ratio. The scaled size is the same as
+	 * ImageHelper.scaleByWidth gives.
+	 *
+	 * @param mask
+	 *            A TYPE_BYTE_BINARY image the same size as icon.
+	 * @return The scaled icon, as TYPE_INT_ARGB, and the scaled mask, as TYPE_BYTE_BINARY.
+	 */
+	public Tuple2<BufferedImage, BufferedImage> getScaled(BufferedImage icon, BufferedImage mask, int width)
+	{
+		if (mask.getWidth() != icon.getWidth() || mask.getHeight() != icon.getHeight())
+			throw new IllegalArgumentException("The given mask's size does not match the icon's size.");
+
+		// This matches the size that Scalr.resize, which ImageHelper.scaleByWidth uses, fits the icon to.
+		int height = (int) (width * (((double) icon.getHeight()) / icon.getWidth()));
+		if (height == 0)
+			height = 1;
+		float ratio = ((float) icon.getHeight()) / icon.getWidth();
+		if (ratio <= 1f)
+		{
+			height = Math.round(width * ratio);
+		}
+		else
+		{
+			width = Math.round(height / ratio);
+		}
+
+		Mipmap mipmap = get(icon, mask);
+		if (mipmap == null)
+		{
+			// If two threads scale the same new icon at once, both make its mipmap, which only duplicates work.
+			mipmap = createMipmap(icon, mask);
+			put(icon, mask, mipmap);
+		}
+
+		int level = 0;
+		while (level + 1 < mipmap.levelWidths.length && mipmap.levelWidths[level + 1] >= width
+				&& mipmap.levelHeights[level + 1] >= height)
+		{
+			level++;
+		}
+		return resample(mipmap, level, width, height);
+	}
+
+	/**
+	 * @return How many bytes the mipmaps held take.
+	 */
+	public synchronized long getSizeInBytes()
+	{
+		removeCollectedKeys();
+		return sizeInBytes;
+	}
+
+	/**
+	 * Sets the most bytes of mipmaps to hold, evicting the least recently used if the atlas already holds more than
+	 * that.
+	 */
+	public synchronized void setMaxBytes(long maxBytes)
+	{
+		if (maxBytes < 0)
+			throw new IllegalArgumentException("The maximum number of bytes must not be negative, but was " + maxBytes + ".");
+		this.maxBytes = maxBytes;
+		evictToBudget();
+	}
+
+	public synchronized long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	private synchronized Mipmap get(BufferedImage icon, BufferedImage mask)
+	{
+		removeCollectedKeys();
+		return mipmaps.get(new IconKey(icon, mask, null));
+	}
+
+	/**
+	 * Adds a mipmap, and evicts the least recently used mipmaps if needed to stay within the byte budget. A mipmap larger
+	 * than the whole budget isn't kept.
+	 */
+	private synchronized void put(BufferedImage icon, BufferedImage mask, Mipmap mipmap)
+	{
+		removeCollectedKeys();
+		long size = mipmap.getSizeInBytes();
+		if (size > maxBytes)
+		{
+			return;
+		}
+		Mipmap old = mipmaps.put(new IconKey(icon, mask, collectedImages), mipmap);
+		if (old != null)
+		{
+			sizeInBytes -= old.getSizeInBytes();
+		}
+		sizeInBytes += size;
+		evictToBudget();
+	}
+
+	private void evictToBudget()
+	{
+		Iterator<Map.Entry<IconKey, Mipmap>> iterator = mipmaps.entrySet().iterator();
+		while (sizeInBytes > maxBytes && iterator.hasNext())
+		{
+			Map.Entry<IconKey, Mipmap> entry = iterator.next();
+			iterator.remove();
+			sizeInBytes -= entry.getValue().getSizeInBytes();
+		}
+	}
+
+	private void removeCollectedKeys()
+	{
+		Object reference;
+		while ((reference = collectedImages.poll()) != null)
+		{
+			IconKey key = ((KeyedWeakReference) reference).key;
+			// The icon's and mask's references are both enqueued if both are collected, and the key may have been
+			// evicted already.
+			Mipmap mipmap = mipmaps.remove(key);
+			if (mipmap != null)
+			{
+				sizeInBytes -= mipmap.getSizeInBytes();
+			}
+		}
+	}
+
+	private static Mipmap createMipmap(BufferedImage icon, BufferedImage mask)
+	{
+		List<Integer> widths = new ArrayList<>();
+		List<Integer> heights = new ArrayList<>();
+		int levelWidth = icon.getWidth();
+		int levelHeight = icon.getHeight();
+		int totalPixels = 0;
+		while (true)
+		{
+			widths.add(levelWidth);
+			heights.add(levelHeight);
+			totalPixels += levelWidth * levelHeight;
+			if (levelWidth == 1 && levelHeight == 1)
+			{
+				break;
+			}
+			levelWidth = Math.max(1, levelWidth / 2);
+			levelHeight = Math.max(1, levelHeight / 2);
+		}
+
+		int[] colors = new int[totalPixels];
+		byte[] coverages = new byte[totalPixels];
+		int[] levelOffsets = new int[widths.size()];
+		int[] levelWidths = widths.stream().mapToInt(Integer::intValue).toArray();
+		int[] levelHeights = heights.stream().mapToInt(Integer::intValue).toArray();
+		writeFirstLevel(icon, mask, colors, coverages, 0);
+		for (int level = 1; level < levelOffsets.length; level++)
+		{
+			levelOffsets[level] = levelOffsets[level - 1] + levelWidths[level - 1] * levelHeights[level - 1];
+			writeHalfSizeLevel(colors, coverages, levelOffsets[level - 1], levelWidths[level - 1], levelHeights[level - 1],
+					levelOffsets[level], levelWidths[level], levelHeights[level]);
+		}
+		return new Mipmap(colors, coverages, levelOffsets, levelWidths, levelHeights);
+	}
+
+	/**
+	 * Writes the icon with premultiplied alpha, and its mask as coverage from 0 to 255.
+	 */
+	private static void writeFirstLevel(BufferedImage icon, BufferedImage mask, int[] colors, byte[] coverages, int offset)
+	{
+		int width = icon.getWidth();
+		int height = icon.getHeight();
+		int[] argb = icon.getRGB(0, 0, width, height, null, 0, width);
+		Raster maskRaster = mask.getRaster();
+		int[] maskLevels = maskRaster.getSamples(maskRaster.getMinX(), maskRaster.getMinY(), width, height, 0, (int[]) null);
+		for (int i = 0; i < argb.length; i++)
+		{
+			int a = argb[i] >>> 24;
+			int r = ((argb[i] >> 16) & 0xff) * a;
+			int g = ((argb[i] >> 8) & 0xff) * a;
+			int b = (argb[i] & 0xff) * a;
+			colors[offset + i] = (a << 24) | (((r + 127) / 255) << 16) | (((g + 127) / 255) << 8) | ((b + 127) / 255);
+			coverages[offset + i] = (byte) (maskLevels[i] == 0 ? 0 : 255);
+		}
+	}
+
+	/**
+	 * Averages blocks of 2x2 pixels of the source level into the destination level. The last row or column of a source
+	 * level with an odd size is averaged into the last row or column of the destination.
+	 */
+	private static void writeHalfSizeLevel(int[] colors, byte[] coverages, int sourceOffset, int sourceWidth, int sourceHeight,
+			int destOffset, int destWidth, int destHeight)
+	{
+		for (int y = 0; y < destHeight; y++)
+		{
+			int sourceYStart = y * sourceHeight / destHeight;
+			int sourceYEnd = (y + 1) * sourceHeight / destHeight;
+			for (int x = 0; x < destWidth; x++)
+			{
+				int sourceXStart = x * sourceWidth / destWidth;
+				int sourceXEnd = (x + 1) * sourceWidth / destWidth;
+				int a = 0, r = 0, g = 0, b = 0, coverage = 0, count = 0;
+				for (int sy = sourceYStart; sy < sourceYEnd; sy++)
+				{
+					for (int sx = sourceXStart; sx < sourceXEnd; sx++)
+					{
+						int i = sourceOffset + sy * sourceWidth + sx;
+						int color = colors[i];
+						a += color >>> 24;
+						r += (color >> 16) & 0xff;
+						g += (color >> 8) & 0xff;
+						b += color & 0xff;
+						coverage += coverages[i] & 0xff;
+						count++;
+					}
+				}
+				int half = count / 2;
+				colors[destOffset + y * destWidth + x] = (((a + half) / count) << 24) | (((r + half) / count) << 16)
+						| (((g + half) / count) << 8) | ((b + half) / count);
+				coverages[destOffset + y * destWidth + x] = (byte) ((coverage + half) / count);
+			}
+		}
+	}
+
+	/**
+	 * Scales a level to the given size with bilinear filtering, and converts it back to straight alpha. Mask pixels are
+	 * on where the filtered coverage is at least half.
+	 */
+	private static Tuple2<BufferedImage, BufferedImage> resample(Mipmap mipmap, int level, int width, int height)
+	{
+		int[] colors = mipmap.colors;
+		byte[] coverages = mipmap.coverages;
+		int offset = mipmap.levelOffsets[level];
+		int levelWidth = mipmap.levelWidths[level];
+		int levelHeight = mipmap.levelHeights[level];
+		double xScale = ((double) levelWidth) / width;
+		double yScale = ((double) levelHeight) / height;
+
+		BufferedImage icon = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		BufferedImage mask = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+		int[] iconRow = new int[width];
+		int[] maskRow = new int[width];
+		WritableRaster maskRaster = mask.getRaster();
+		for (int y = 0; y < height; y++)
+		{
+			double sourceY = Math.min(levelHeight - 1, Math.max(0, (y + 0.5) * yScale - 0.5));
+			int y0 = (int) sourceY;
+			int y1 = Math.min(levelHeight - 1, y0 + 1);
+			double yWeight = sourceY - y0;
+			for (int x = 0; x < width; x++)
+			{
+				double sourceX = Math.min(levelWidth - 1, Math.max(0, (x + 0.5) * xScale - 0.5));
+				int x0 = (int) sourceX;
+				int x1 = Math.min(levelWidth - 1, x0 + 1);
+				double xWeight = sourceX - x0;
+
+				int i00 = offset + y0 * levelWidth + x0;
+				int i10 = offset + y0 * levelWidth + x1;
+				int i01 = offset + y1 * levelWidth + x0;
+				int i11 = offset + y1 * levelWidth + x1;
+				double w00 = (1 - xWeight) * (1 - yWeight);
+				double w10 = xWeight * (1 - yWeight);
+				double w01 = (1 - xWeight) * yWeight;
+				double w11 = xWeight * yWeight;
+
+				int a = interpolate(colors, 24, i00, i10, i01, i11, w00, w10, w01, w11);
+				int argb = 0;
+				if (a > 0)
+				{
+					int r = unpremultiply(interpolate(colors, 16, i00, i10, i01, i11, w00, w10, w01, w11), a);
+					int g = unpremultiply(interpolate(colors, 8, i00, i10, i01, i11, w00, w10, w01, w11), a);
+					int b = unpremultiply(interpolate(colors, 0, i00, i10, i01, i11, w00, w10, w01, w11), a);
+					argb = (a << 24) | (r << 16) | (g << 8) | b;
+				}
+				iconRow[x] = argb;
+
+				double coverage = w00 * (coverages[i00] & 0xff) + w10 * (coverages[i10] & 0xff) + w01 * (coverages[i01] & 0xff)
+						+ w11 * (coverages[i11] & 0xff);
+				maskRow[x] = coverage >= 127.5 ? 1 : 0;
+			}
+			icon.setRGB(0, y, width, 1, iconRow, 0, width);
+			maskRaster.setSamples(0, y, width, 1, 0, maskRow);
+		}
+		return new Tuple2<>(icon, mask);
+	}
+
+	private static int interpolate(int[] colors, int shift, int i00, int i10, int i01, int i11, double w00, double w10, double w01,
+			double w11)
+	{
+		double value = w00 * ((colors[i00] >>> shift) & 0xff) + w10 * ((colors[i10] >>> shift) & 0xff)
+				+ w01 * ((colors[i01] >>> shift) & 0xff) + w11 * ((colors[i11] >>> shift) & 0xff);
+		return (int) (value + 0.5);
+	}
+
+	private static int unpremultiply(int channel, int alpha)
+	{
+		return Math.min(255, (channel * 255 + alpha / 2) / alpha);
+	}
+}
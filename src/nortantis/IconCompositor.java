@@ -0,0 +1,237 @@
+package nortantis;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import nortantis.util.ImageHelper;
+import nortantis.util.WorkerPool;
+
+/**
+ * Draws icons onto a map, in the order they're added, blending each icon's transparent parts with either the map or a
+ * background image according to the icon's mask.
+ *
+ * The map is split into square tiles, and each tile keeps the icons that overlap it in the order they were added.
+ * Tiles don't share pixels, so they're drawn in parallel, and since each pixel still has the icons over it drawn in
+ * order, the result is the same as drawing the icons one after another.
+ *
+ * Many icons share the same image, so each distinct icon image and mask is read into an array once, when it's added.
+ */
+public class IconCompositor
+{
+	private static final int tileSize = 256;
+
+	private final BufferedImage map;
+	private final BufferedImage background;
+	private final List<Icon> icons = new ArrayList<>();
+	// Icon image -> its pixels in the default RGB color model, one row after another.
+	private final Map<BufferedImage, int[]> iconPixels = new IdentityHashMap<>();
+	// Mask -> its levels, one row after another.
+	private final Map<BufferedImage, int[]> maskLevels = new IdentityHashMap<>();
+
+	private static final class Icon
+	{
+		final int[] pixels;
+		final int[] maskLevels;
+		final int width;
+		final int height;
+		final int xLeft;
+		final int yTop;
+
+		Icon(int[] pixels, int[] maskLevels, int width, int height, int xLeft, int yTop)
+		{
+			this.pixels = pixels;
+			this.maskLevels = maskLevels;
+			this.width = width;
+			this.height = height;
+			this.xLeft = xLeft;
+			this.yTop = yTop;
+		}
+	}
+
+	/**
+	 * @param map
+	 *            The image to draw icons onto.
+	 * @param background
+	 *            What to draw where an icon's mask is white and the icon is transparent. It must be the same size as
+	 *            map.
+	 */
+	public IconCompositor(BufferedImage map, BufferedImage background)
+	{
+		if (map.getWidth() != background.getWidth())
+			throw new IllegalArgumentException();
+		if (map.getHeight() != background.getHeight())
+			throw new IllegalArgumentException();
+
+		this.map = map;
+		this.background = background;
+	}
+
+	/**
+	 * Adds an icon to draw, in front of the icons added before it.
+	 *
+	 * @param mask
+	 *            A gray scale image which is white where the background should be drawn, and black where the map should
+	 *            be drawn instead of the background. This is necessary so that when I draw an icon that is transparent
+	 *            (such as a hand drawn mountain), I cannot see other mountains through it.
+	 */
+	public void add(BufferedImage icon, BufferedImage mask, int xCenter, int yCenter)
+	{
+		if (mask.getWidth() != icon.getWidth())
+			throw new IllegalArgumentException("The given mask's width does not match the icon' width.");
+		if (mask.getHeight() != icon.getHeight())
+			throw new IllegalArgumentException("The given mask's height does not match the icon' height.");
+
+		int width = icon.getWidth();
+		int height = icon.getHeight();
+		int[] pixels = iconPixels.computeIfAbsent(icon, image -> image.getRGB(0, 0, width, height, null, 0, width));
+		int[] levels = maskLevels.computeIfAbsent(mask, image ->
+		{
+			Raster raster = image.getRaster();
+			return raster.getSamples(raster.getMinX(), raster.getMinY(), width, height, 0, (int[]) null);
+		});
+		icons.add(new Icon(pixels, levels, width, height, xCenter - width / 2, yCenter - height / 2));
+	}
+
+	/**
+	 * Draws all added icons onto the map.
+	 */
+	public void drawAll()
+	{
+		int tilesWide = (map.getWidth() + tileSize - 1) / tileSize;
+		int tilesHigh = (map.getHeight() + tileSize - 1) / tileSize;
+		List<List<Icon>> iconsByTile = new ArrayList<>(tilesWide * tilesHigh);
+		for (int i = 0; i < tilesWide * tilesHigh; i++)
+		{
+			iconsByTile.add(new ArrayList<>());
+		}
+
+		for (Icon icon : icons)
+		{
+			int xStart = Math.max(0, icon.xLeft);
+			int yStart = Math.max(0, icon.yTop);
+			int xEnd = Math.min(map.getWidth(), icon.xLeft + icon.width);
+			int yEnd = Math.min(map.getHeight(), icon.yTop + icon.height);
+			if (xStart >= xEnd || yStart >= yEnd)
+			{
+				continue;
+			}
+			for (int tileY = yStart / tileSize; tileY <= (yEnd - 1) / tileSize; tileY++)
+			{
+				for (int tileX = xStart / tileSize; tileX <= (xEnd - 1) / tileSize; tileX++)
+				{
+					iconsByTile.get(tileY * tilesWide + tileX).add(icon);
+				}
+			}
+		}
+
+		List<Runnable> jobs = new ArrayList<>();
+		for (int tileY = 0; tileY < tilesHigh; tileY++)
+		{
+			for (int tileX = 0; tileX < tilesWide; tileX++)
+			{
+				List<Icon> tileIcons = iconsByTile.get(tileY * tilesWide + tileX);
+				if (!tileIcons.isEmpty())
+				{
+					int x = tileX * tileSize;
+					int y = tileY * tileSize;
+					int width = Math.min(tileSize, map.getWidth() - x);
+					int height = Math.min(tileSize, map.getHeight() - y);
+					jobs.add(() -> drawTile(tileIcons, x, y, width, height));
+				}
+			}
+		}
+		WorkerPool.getInstance().runAll(jobs);
+	}
+
+	private void drawTile(List<Icon> tileIcons, int tileX, int tileY, int tileWidth, int tileHeight)
+	{
+		int[] mapPixels = readTile(map, tileX, tileY, tileWidth, tileHeight);
+		int[] backgroundPixels = readTile(background, tileX, tileY, tileWidth, tileHeight);
+
+		for (Icon icon : tileIcons)
+		{
+			// The part of the icon in this tile, in map coordinates.
+			int xStart = Math.max(tileX, icon.xLeft);
+			int yStart = Math.max(tileY, icon.yTop);
+			int xEnd = Math.min(tileX + tileWidth, icon.xLeft + icon.width);
+			int yEnd = Math.min(tileY + tileHeight, icon.yTop + icon.height);
+			int count = xEnd - xStart;
+			if (count <= 0 || yStart >= yEnd)
+			{
+				continue;
+			}
+
+			for (int y = yStart; y < yEnd; y++)
+			{
+				int iconOffset = (y - icon.yTop) * icon.width + (xStart - icon.xLeft);
+				int offset = (y - tileY) * tileWidth + (xStart - tileX);
+				for (int i = 0; i < count; i++)
+				{
+					int iconColor = icon.pixels[iconOffset + i];
+					double alpha = (iconColor >>> 24) / 255.0;
+					// grey level of mask at the corresponding pixel in mask.
+					double maskLevel = icon.maskLevels[iconOffset + i];
+					int bgColor = backgroundPixels[offset + i];
+					int mapColor = mapPixels[offset + i];
+
+					int red = (int) (alpha * ((iconColor >> 16) & 0xff)
+							+ (1 - alpha) * (maskLevel * ((bgColor >> 16) & 0xff) + (1 - maskLevel) * ((mapColor >> 16) & 0xff)));
+					int green = (int) (alpha * ((iconColor >> 8) & 0xff)
+							+ (1 - alpha) * (maskLevel * ((bgColor >> 8) & 0xff) + (1 - maskLevel) * ((mapColor >> 8) & 0xff)));
+					int blue = (int) (alpha * (iconColor & 0xff)
+							+ (1 - alpha) * (maskLevel * (bgColor & 0xff) + (1 - maskLevel) * (mapColor & 0xff)));
+
+					mapPixels[offset + i] = 0xff000000 | (red << 16) | (green << 8) | blue;
+				}
+			}
+		}
+
+		writeTile(map, tileX, tileY, tileWidth, tileHeight, mapPixels);
+	}
+
+	/**
+	 * Reads part of an image in the default RGB color model, copying directly from the image's pixel array when it has
+	 * one.
+	 */
+	private static int[] readTile(BufferedImage image, int x, int y, int width, int height)
+	{
+		int[] pixels = ImageHelper.getIntPixels(image);
+		if (pixels == null)
+		{
+			return image.getRGB(x, y, width, height, null, 0, width);
+		}
+
+		int[] tile = new int[width * height];
+		for (int row = 0; row < height; row++)
+		{
+			System.arraycopy(pixels, (y + row) * image.getWidth() + x, tile, row * width, width);
+		}
+		return tile;
+	}
+
+	private static void writeTile(BufferedImage image, int x, int y, int width, int height, int[] tile)
+	{
+		int[] pixels = ImageHelper.getIntPixels(image);
+		if (pixels == null)
+		{
+			image.setRGB(x, y, width, height, tile, 0, width);
+			return;
+		}
+
+		// TYPE_INT_RGB pixels don't store alpha.
+		int mask = image.getType() == BufferedImage.TYPE_INT_RGB ? 0x00ffffff : 0xffffffff;
+		for (int row = 0; row < height; row++)
+		{
+			int tileOffset = row * width;
+			int imageOffset = (y + row) * image.getWidth() + x;
+			for (int i = 0; i < width; i++)
+			{
+				pixels[imageOffset + i] = tile[tileOffset + i] & mask;
+			}
+		}
+	}
+}
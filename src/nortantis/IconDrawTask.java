@@ -4,6 +4,7 @@ import java.awt.geom.Area;
 import java.awt.image.BufferedImage;
 
 import hoten.geom.Point;
+import nortantis.util.Tuple2;
 
 /**
  * Stores things needed to draw an icon onto the map.
@@ -37,9 +38,15 @@ class IconDrawTask implements Comparable<IconDrawTask>
        	this.ignoreMaxSize = ignoreMaxSize;
 	}
 	
-	public void scaleIcon()
+	public void scaleIcon(IconDrawer.IconScalingAlgorithm algorithm)
 	{
-		if (needsScale)
+		if (needsScale && algorithm == IconDrawer.IconScalingAlgorithm.Atlas)
+		{
+			Tuple2<BufferedImage, BufferedImage> scaled = ImageCache.getInstance().getIconAtlas().getScaled(icon, mask, scaledWidth);
+			icon = scaled.getFirst();
+			mask = scaled.getSecond();
+		}
+		else if (needsScale)
 		{
 	       	icon = ImageCache.getInstance().getScaledImage(icon, scaledWidth);
 	      	mask = ImageCache.getInstance().getScaledImage(mask, scaledWidth);
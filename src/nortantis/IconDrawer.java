@@ -77,6 +77,25 @@ public class IconDrawer
 	 */
 	public Map<Integer, CenterIcon> centerIcons;
 	public Map<Integer, CenterTrees> trees;
+	private IconScalingAlgorithm iconScalingAlgorithm = IconScalingAlgorithm.Resize;
+
+	/**
+	 * How icons are scaled to the sizes they're drawn at.
+	 */
+	public enum IconScalingAlgorithm
+	{
+		/**
+		 * Each icon is resized from its full size image for every width it's drawn at, and cached by width. This is the
+		 * default, because it's what maps have always been drawn with.
+		 */
+		Resize,
+		/**
+		 * Icons are scaled from a mipmap built once per icon by IconAtlas. This is much faster when icons are drawn at many
+		 * different widths, as mountains and hills are, and the scaled icons aren't cached, but the icons look slightly
+		 * different.
+		 */
+		Atlas
+	}
 
 	public IconDrawer(GraphImpl graph, Random rand)
 	{
@@ -90,6 +109,14 @@ public class IconDrawer
 		trees = new HashMap<>();
 	}
 
+	/**
+	 * Sets how icons are scaled to the sizes they're drawn at. The default is Resize.
+	 */
+	public void setIconScalingAlgorithm(IconScalingAlgorithm iconScalingAlgorithm)
+	{
+		this.iconScalingAlgorithm = iconScalingAlgorithm;
+	}
+
 	public static double findMeanPolygonWidth(GraphImpl graph)
 	{
 		double widthSum = 0;
@@ -112,8 +139,8 @@ public class IconDrawer
 	{
 		for (Center c : graph.centers)
 		{
-			if (c.elevation > mountainElevationThreshold
-					&& !c.isCoast && !c.isBorder && c.findWidth() < maxSizeToDrawIcon)
+			if (c.getElevation() > mountainElevationThreshold
+					&& !c.isCoast() && !c.isBorder() && c.findWidth() < maxSizeToDrawIcon)
 			{
 				c.isMountain = true;
 			}
@@ -124,8 +151,8 @@ public class IconDrawer
 	{
 		for (Center c : graph.centers)
 		{
-			if (c.elevation < mountainElevationThreshold && c.elevation > hillElevationThreshold
-					&& !c.isCoast && c.findWidth() < maxSizeToDrawIcon)
+			if (c.getElevation() < mountainElevationThreshold && c.getElevation() > hillElevationThreshold
+					&& !c.isCoast() && c.findWidth() < maxSizeToDrawIcon)
 				
 			{
 				c.isHill = true;
@@ -141,13 +168,13 @@ public class IconDrawer
 		for (Center c : graph.centers)
 		{
 			// TODO figure out how to make the cities draw on coasts and not draw right on top of rivers.
-			if (!c.isMountain && !c.isHill && !c.isWater)
+			if (!c.isMountain && !c.isHill && !c.isWater())
 			{
 				if (c.isRiver() && rand.nextDouble() <= cityProbability*2)
 				{
 					c.isCity = true;
 				}
-				else if (c.isCoast && rand.nextDouble() <= cityProbability*2)
+				else if (c.isCoast() && rand.nextDouble() <= cityProbability*2)
 				{
 					c.isCity = true;
 				}
@@ -169,7 +196,7 @@ public class IconDrawer
 //				rivers.add(c);
 //			}
 //			
-//			if (c.isCoast)
+//			if (c.isCoast())
 //			{
 //				coast.add(c);
 //			}
@@ -203,7 +230,7 @@ public class IconDrawer
 		{
 			for (Center c : group)
 			{
-				c.mountainRangeId = curId;
+				c.setMountainRangeId(curId);
 			}
 			curId++;
 		}
@@ -376,63 +403,6 @@ public class IconDrawer
 	}
 
 
-	/**
-	 * 
-=	 * @param mask A gray scale image which is white where the background should be drawn, and
-	 * black where the map should be drawn instead of the background. This is necessary so that
-	 * when I draw an icon that is transparent (such as a hand drawn mountain), I cannot see
-	 * other mountains through it.
-	 */
-	private void drawIconWithBackgroundAndMask(BufferedImage map, BufferedImage icon, 
-			BufferedImage mask, BufferedImage background, int xCenter, int yCenter, boolean ignoreMaxSize)
-	{   	
-    	if (map.getWidth() != background.getWidth())
-    		throw new IllegalArgumentException();
-       	if (map.getHeight() != background.getHeight())
-    		throw new IllegalArgumentException();
-       	if (mask.getWidth() != icon.getWidth())
-       		throw new IllegalArgumentException("The given mask's width does not match the icon' width.");
-       	if (mask.getHeight() != icon.getHeight())
-       		throw new IllegalArgumentException("The given mask's height does not match the icon' height.");
-       	
-       	if (!ignoreMaxSize && icon.getWidth() > maxSizeToDrawIcon)
-       		return;
-       	       	      	
-      	int xLeft = xCenter - icon.getWidth()/2;
-      	int yBottom = yCenter - icon.getHeight()/2;
-      	
-		Raster maskRaster = mask.getRaster();
-		for (int x : new Range(icon.getWidth()))
-			for (int y : new Range(icon.getHeight()))
-			{
-				Color iconColor = new Color(icon.getRGB(x, y), true);
-				double alpha = iconColor.getAlpha() / 255.0;
-				// grey level of mask at the corresponding pixel in mask.
-				double maskLevel = maskRaster.getSampleDouble(x, y, 0);
-				Color bgColor;
-				Color mapColor;
-				// Find the location on the background and map where this pixel will be drawn.
-				int xLoc = xLeft + x;
-				int yLoc = yBottom + y;
-				try
-				{
-					bgColor = new Color(background.getRGB(xLoc, yLoc));
-					mapColor = new Color(map.getRGB(xLoc, yLoc));
-				}
-				catch (IndexOutOfBoundsException e)
-				{
-					// Skip this pixel.
-					continue;
-				}
-				
-				int red = (int)(alpha * (iconColor.getRed()) + (1 - alpha) * (maskLevel * bgColor.getRed() + (1 - maskLevel) * mapColor.getRed()));
-				int green = (int)(alpha * (iconColor.getGreen()) + (1 - alpha) * (maskLevel * bgColor.getGreen() + (1 - maskLevel) * mapColor.getGreen()));
-				int blue = (int)(alpha * (iconColor.getBlue()) + (1 - alpha) * (maskLevel * bgColor.getBlue() + (1 - maskLevel) * mapColor.getBlue()));
-				
-				map.setRGB(xLoc, yLoc, new Color(red, green, blue).getRGB());
-			}
-	}
-
 	/**
 	 * Draws all icons in iconsToDraw. I draw all the icons at once this way so that I can sort
 	 * the icons by the y-coordinate of the base of each icon. This way icons lower on the map
@@ -443,7 +413,7 @@ public class IconDrawer
 		List<IconDrawTask> tasks = new ArrayList<IconDrawTask>(iconsToDraw.size());
 		for (Map.Entry<Center, List<IconDrawTask>> entry : iconsToDraw.entrySet())
 		{
-			if (!entry.getKey().isWater)
+			if (!entry.getKey().isWater())
 			{
 				tasks.addAll(entry.getValue());
 			}
@@ -451,29 +421,34 @@ public class IconDrawer
 		Collections.sort(tasks);
 		
 
-		// Scale the icons in parallel.
+		// Scale the icons, and check which are touching water, in parallel.
+		boolean[] isTouchingWater = new boolean[tasks.size()];
 		List<Runnable> jobs = new ArrayList<>();
-		for (final IconDrawTask task : tasks)
+		for (int i : new Range(tasks.size()))
 		{
+			final IconDrawTask task = tasks.get(i);
 			jobs.add(new Runnable()
 			{
 				@Override
 				public void run()
 				{
-			       	task.scaleIcon();
+			       	task.scaleIcon(iconScalingAlgorithm);
+			       	isTouchingWater[i] = isIconTouchingWater(task);
 				}			
 			});
 		}
 		Helper.processInParallel(jobs);
 		
-		for (final IconDrawTask task : tasks)
+		IconCompositor compositor = new IconCompositor(map, background);
+		for (int i : new Range(tasks.size()))
 		{
-			if (!isIconTouchingWater(task))
+			IconDrawTask task = tasks.get(i);
+			if (!isTouchingWater[i] && (task.ignoreMaxSize || task.icon.getWidth() <= maxSizeToDrawIcon))
 			{
-				drawIconWithBackgroundAndMask(map, task.icon, task.mask, background, (int)task.centerLoc.x,
-						(int)task.centerLoc.y, task.ignoreMaxSize);
+				compositor.add(task.icon, task.mask, (int)task.centerLoc.x, (int)task.centerLoc.y);
 			}
-		}		
+		}
+		compositor.drawAll();
 	}
 	
 	/**
@@ -559,12 +534,12 @@ public class IconDrawer
         {
         	for (Center c : group)
         	{	
-	        	String filenameRangeId = rangeMap.get(c.mountainRangeId);
+	        	String filenameRangeId = rangeMap.get(c.getMountainRangeId());
 	        	if ((filenameRangeId == null))
 	        	{
 	        		filenameRangeId =  new ArrayList<>(mountainImagesById.keySet()).get(
 	        				rand.nextInt(mountainImagesById.keySet().size()));
-	        		rangeMap.put(c.mountainRangeId, filenameRangeId);
+	        		rangeMap.put(c.getMountainRangeId(), filenameRangeId);
 	        	}
 
 	        	if (c.isMountain)
@@ -776,7 +751,7 @@ public class IconDrawer
 	
 	private boolean canGenerateTreesOnCenter(Center c)
 	{
-		return c.elevation < mountainElevationThreshold && !c.isWater && !c.isCoast;
+		return c.getElevation() < mountainElevationThreshold && !c.isWater() && !c.isCoast();
 	}
 	
 	/**
@@ -938,7 +913,7 @@ public class IconDrawer
        		{
        			Center center = graph.findClosestCenter(imageUpperLeftX + (int)(iconTask.scaledWidth * (x/precision)), 
        					(imageUpperLeftY - (int)(iconTask.scaledHeight * (y/precision))));
-       	       	if (center.isWater)
+       	       	if (center.isWater())
        	       		return true;
        		}
        	}
@@ -1,82 +1,224 @@
 package nortantis;
 
 import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
 import java.nio.file.Path;
 import java.util.function.Supplier;
 
-import nortantis.util.ConcurrentHashMapF;
+import nortantis.util.BoundedImageCache;
 import nortantis.util.ImageHelper;
 
 /**
  * Caches icons in memory to avoid recreating or reloading them.
+ *
+ * Scaled, loaded, and generated images share one budget of bytes of pixel data. When it's full, the least recently used
+ * images are evicted, and kept through soft references until the garbage collector needs their memory. The budget
+ * defaults to a quarter of the maximum heap size. The icon atlas's mipmaps have a budget of their own, which defaults to
+ * a sixteenth of the maximum heap size, so the two together hold at most the sum of their budgets.
  */
 public class ImageCache
 {
 	private static ImageCache instance;
-	
+
 	/**
-	 * Maps original images, to scaled width, to scaled images.
+	 * Maps keys made by scaledImageKey, fileKey, and generatedImageKey to images.
 	 */
-	private ConcurrentHashMapF<BufferedImage, ConcurrentHashMapF<Integer, BufferedImage>> scaledCache; 
-	
+	private final BoundedImageCache<Object> cache;
+
 	/**
-	 * Maps file path (or any string key) to images.
+	 * Mipmaps of icons, for IconDrawer.IconScalingAlgorithm.Atlas.
 	 */
-	private ConcurrentHashMapF<String, BufferedImage> fileCache;
+	private volatile IconAtlas iconAtlas;
 
 	/**
-	 * Maps string keys to images generated (not loaded directly from files).
+	 * The key of an image scaled to a width. Original images are compared by identity, since comparing their pixels
+	 * would be too slow.
+	 *
+	 * The original image is only weakly referenced, so that a cached scaled copy doesn't keep its full size original in
+	 * memory, outside of the cache's budget. Once the original is collected, the key no longer matches anything, and
+	 * its scaled image is evicted when it becomes the least recently used.
 	 */
-	private ConcurrentHashMapF<String, BufferedImage> generatedImageCache;
+	private static final class ScaledImageKey
+	{
+		final WeakReference<BufferedImage> image;
+		final int imageHashCode;
+		final int width;
+
+		ScaledImageKey(BufferedImage image, int width)
+		{
+			this.image = new WeakReference<>(image);
+			this.imageHashCode = System.identityHashCode(image);
+			this.width = width;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return imageHashCode * 31 + width;
+		}
+
+		@Override
+		public boolean equals(Object other)
+		{
+			if (this == other)
+			{
+				return true;
+			}
+			if (!(other instanceof ScaledImageKey) || ((ScaledImageKey) other).width != width)
+			{
+				return false;
+			}
+			BufferedImage original = image.get();
+			return original != null && original == ((ScaledImageKey) other).image.get();
+		}
+	}
 
 	/**
 	 * Singleton
 	 */
 	private ImageCache()
 	{
-		scaledCache = new ConcurrentHashMapF<>();
-		fileCache = new ConcurrentHashMapF<>();
-		generatedImageCache = new ConcurrentHashMapF<>();
+		cache = new BoundedImageCache<>(Runtime.getRuntime().maxMemory() / 4, true);
+		iconAtlas = new IconAtlas(Runtime.getRuntime().maxMemory() / 16);
 	}
-	
+
 	public synchronized static ImageCache getInstance()
 	{
 		if (instance == null)
 			instance = new ImageCache();
 		return instance;
 	}
-	
+
 	public BufferedImage getScaledImage(BufferedImage icon, int width)
 	{
-		// There is a small chance the 2 different threads might both add the same image at the same time, 
+		// There is a small chance the 2 different threads might both add the same image at the same time,
 		// but if that did happen it would only results in a little bit of duplicated work, not a functional
 		// problem.
-		return scaledCache.getOrCreate(icon, () -> new ConcurrentHashMapF<>()).getOrCreate(width, 
-				() -> ImageHelper.scaleByWidth(icon, width));
+		return cache.getOrCreate(new ScaledImageKey(icon, width), () -> ImageHelper.scaleByWidth(icon, width));
 	}
-	
+
+	public IconAtlas getIconAtlas()
+	{
+		return iconAtlas;
+	}
+
 	public BufferedImage getImageFromFile(Path path)
 	{
-		return fileCache.getOrCreate(path.toString(), () -> ImageHelper.read(path.toString()));
+		return cache.getOrCreate(fileKey(path), () -> ImageHelper.read(path.toString()));
 	}
-	
+
 	public boolean containsImageFile(Path path)
 	{
-		return fileCache.containsKey(path.toString());
+		return cache.containsKey(fileKey(path));
 	}
-	
+
 	/**
 	 * Get an image from cache or create it using createFun.
 	 */
 	public BufferedImage getOrCreateImage(String key, Supplier<BufferedImage> createFun)
 	{
-		return generatedImageCache.getOrCreate(key.toString(), createFun);
+		return cache.getOrCreate(generatedImageKey(key), createFun);
+	}
+
+	private static String fileKey(Path path)
+	{
+		return "file " + path.toString();
+	}
+
+	private static String generatedImageKey(String key)
+	{
+		return "generated " + key;
+	}
+
+	/**
+	 * Sets the most bytes of pixel data to keep cached, evicting the least recently used images if more than that is
+	 * cached already.
+	 */
+	public void setMaxBytes(long maxBytes)
+	{
+		cache.setMaxBytes(maxBytes);
+	}
+
+	public long getMaxBytes()
+	{
+		return cache.getMaxBytes();
+	}
+
+	/**
+	 * Sets whether evicted images are kept through soft references, so that they can be found again until the garbage
+	 * collector needs their memory. This is on by default.
+	 */
+	public void setSoftReferenceSpillover(boolean softReferenceSpillover)
+	{
+		cache.setSoftReferenceSpillover(softReferenceSpillover);
+	}
+
+	/**
+	 * @return The bytes of pixel data cached, not counting images only kept through soft references.
+	 */
+	public long getResidentBytes()
+	{
+		return cache.getResidentBytes();
+	}
+
+	public long getHitCount()
+	{
+		return cache.getHitCount();
+	}
+
+	/**
+	 * @return The number of times an image was found after being evicted, through a soft reference.
+	 */
+	public long getSoftHitCount()
+	{
+		return cache.getSoftHitCount();
+	}
+
+	public long getMissCount()
+	{
+		return cache.getMissCount();
+	}
+
+	public long getEvictionCount()
+	{
+		return cache.getEvictionCount();
 	}
-	
+
+	/**
+	 * @return The bytes the icon atlas's mipmaps take. They're counted toward the atlas's maximum bytes rather than the
+	 *         cache's.
+	 */
+	public long getIconAtlasBytes()
+	{
+		return iconAtlas.getSizeInBytes();
+	}
+
+	/**
+	 * Sets the most bytes of mipmaps the icon atlas holds, evicting the least recently used if it already holds more
+	 * than that.
+	 */
+	public void setIconAtlasMaxBytes(long maxBytes)
+	{
+		iconAtlas.setMaxBytes(maxBytes);
+	}
+
+	public long getIconAtlasMaxBytes()
+	{
+		return iconAtlas.getMaxBytes();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Image cache: " + cache.size() + " images, " + getResidentBytes() / (1024 * 1024) + " of " + getMaxBytes() / (1024 * 1024)
+				+ " MB, " + getHitCount() + " hits, " + getSoftHitCount() + " soft reference hits, " + getMissCount() + " misses, "
+				+ getEvictionCount() + " evictions, plus " + getIconAtlasBytes() / (1024 * 1024) + " of " + getIconAtlasMaxBytes() / (1024 * 1024)
+				+ " MB of icon atlas mipmaps";
+	}
+
 	public static void clear()
 	{
-		getInstance().scaledCache.clear();
-		getInstance().fileCache.clear();
-		getInstance().generatedImageCache.clear();
+		getInstance().cache.clear();
+		getInstance().iconAtlas = new IconAtlas(getInstance().getIconAtlasMaxBytes());
 	}
 }
@@ -4,6 +4,7 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.geom.Area;
 import java.awt.image.BufferedImage;
 import java.awt.image.Raster;
@@ -15,10 +16,13 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 import hoten.voronoi.Center;
@@ -28,6 +32,7 @@ import nortantis.editor.EdgeEdit;
 import nortantis.editor.MapEdits;
 import nortantis.editor.RegionEdit;
 import nortantis.util.AssetsPath;
+import nortantis.util.ConvolutionPlanner;
 import nortantis.util.ImageHelper;
 import nortantis.util.Logger;
 import nortantis.util.Pair;
@@ -40,6 +45,12 @@ public class MapCreator
 	
 	
 	private Random r;
+	private MapProfile profile;
+	private int tileSize;
+	private GraphCreator.VoronoiAlgorithm voronoiAlgorithm = GraphCreator.VoronoiAlgorithm.Fortune;
+	private GraphCreator.TectonicPlateAlgorithm tectonicPlateAlgorithm = GraphCreator.TectonicPlateAlgorithm.Sampled;
+	private IconDrawer.IconScalingAlgorithm iconScalingAlgorithm = IconDrawer.IconScalingAlgorithm.Resize;
+	private boolean updateCoastsAfterEdits;
 	// This is a base width for determining how large to draw text and effects.
 	private static final double baseResolution = 1536;
 	
@@ -47,6 +58,56 @@ public class MapCreator
 	{
 	}
 
+	/**
+	 * Sets the size of the tiles that the coastline effects and frayed border are blurred and applied in. When tiling, 
+	 * those effects never hold a blurred copy of the whole map or an FFT of it in memory, which is what limits how big 
+	 * a map can be drawn. The result is the same as without tiling apart from rounding. 0, the default, turns tiling off.
+	 */
+	public void setTileSize(int tileSize)
+	{
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * Sets the engine used to build the Voronoi diagrams that the map's graph and frayed border are made from. The default,
+	 * Fortune, draws the same map as earlier versions from the same settings. SweepHull is faster for large world sizes, 
+	 * but draws a different map.
+	 */
+	public void setVoronoiAlgorithm(GraphCreator.VoronoiAlgorithm voronoiAlgorithm)
+	{
+		this.voronoiAlgorithm = voronoiAlgorithm;
+	}
+
+	/**
+	 * Sets how the map's tectonic plates are grown. The default, Sampled, draws the same map as earlier versions from the
+	 * same settings. Frontier is faster for large world sizes, but draws a different map.
+	 */
+	public void setTectonicPlateAlgorithm(GraphCreator.TectonicPlateAlgorithm tectonicPlateAlgorithm)
+	{
+		this.tectonicPlateAlgorithm = tectonicPlateAlgorithm;
+	}
+
+	/**
+	 * Sets how icons are scaled to the sizes they're drawn at. The default, Resize, draws the same map as earlier versions
+	 * from the same settings. Atlas is faster, especially for maps with many mountains and hills, but icons look slightly
+	 * different.
+	 */
+	public void setIconScalingAlgorithm(IconDrawer.IconScalingAlgorithm iconScalingAlgorithm)
+	{
+		this.iconScalingAlgorithm = iconScalingAlgorithm;
+	}
+
+	/**
+	 * Sets whether the coast flags around centers changed from land to water or back by edits are recomputed. Those 
+	 * flags decide where generated icons such as cities are placed. The default, false, leaves them as they were when 
+	 * the graph was created, which draws the same map as earlier versions from the same settings. true places generated
+	 * icons using the edited coastline.
+	 */
+	public void setUpdateCoastsAfterEdits(boolean updateCoastsAfterEdits)
+	{
+		this.updateCoastsAfterEdits = updateCoastsAfterEdits;
+	}
+
 	/**
 	 * Draws a map.
 	 * 
@@ -55,7 +116,7 @@ public class MapCreator
 	 * This is needed for creating previews. null means draw at normal resolution. Warning: If 
 	 * maxDimensions is specified, then settings.resolution will be modified to fit that size.
 	 * @param mapParts If not null, then parts of the map created while generating will be stored in it.
-	 * @return
+	 * @return The map. Timing and memory use of each stage of creating it is available afterwards from getProfile().
 	 */
 	public BufferedImage createMap(final MapSettings settings, Dimension maxDimensions, MapParts mapParts)
 			throws IOException
@@ -67,9 +128,11 @@ public class MapCreator
 			throw new IllegalArgumentException("Ocean background image file does not exists: " + settings.oceanBackgroundImage);
 		
 		double startTime = System.currentTimeMillis();				
+		profile = new MapProfile();
 						
         r = new Random(settings.randomSeed);        
 		
+		profile.startStage("background");
         Background background;
         if (mapParts != null && mapParts.background != null)
         {
@@ -91,8 +154,9 @@ public class MapCreator
         {
         	mapParts.sizeMultiplyer = sizeMultiplyer;
         }
+		profile.endStage(background.land, background.ocean, background.borderBackground);
 		
-		
+		profile.startStage("text");
 		TextDrawer textDrawer = null;
 		if (settings.drawText || settings.alwaysCreateTextDrawerAndUpdateLandBackgroundWithOcean)
 		{
@@ -110,11 +174,14 @@ public class MapCreator
 				textDrawer = mapParts.textDrawer;
 			}
 		}
+		profile.endStage();
 		
+		profile.startStage("graph");
         GraphImpl graph;
 		if (mapParts == null || mapParts.graph == null)
 		{
-			graph = createGraph(settings, background.mapBounds.getWidth(), background.mapBounds.getHeight(), r, sizeMultiplyer);
+			graph = createGraph(settings, background.mapBounds.getWidth(), background.mapBounds.getHeight(), r, sizeMultiplyer, voronoiAlgorithm,
+					tectonicPlateAlgorithm);
 			if (mapParts != null)
 			{
 				mapParts.graph = graph;
@@ -127,13 +194,20 @@ public class MapCreator
 		applyRegionEdits(graph, settings.edits);
 		applyCenterEdits(graph, settings.edits);
 		applyEdgeEdits(graph, settings.edits);
+		graph.updateChangedNeighborhoods(updateCoastsAfterEdits);
+		// Almost every edge is drawn, so generate their noisy paths in parallel now instead of one at a time while drawing.
+		graph.buildAllNoisyEdgePaths();
+		profile.endStage();
  		
+		profile.startStage("background");
 		background.doSetupThatNeedsGraph(settings, graph);
 		if (mapParts == null)
 		{
 			background.landBeforeRegionColoring = null;
 		}
+		profile.endStage(background.land, background.ocean, background.regionIndexes);
 		
+		profile.startStage("icons");
 		IconDrawer iconDrawer;
 		boolean needToAddIcons;
 		if (mapParts == null || mapParts.iconDrawer == null)
@@ -152,6 +226,7 @@ public class MapCreator
 			needToAddIcons = false; // The icon drawer is from cache, so it already knows what icons to draw.
 			r.nextLong(); // Use the random number generator the same as if I had created the icon drawer.
 		}
+		iconDrawer.setIconScalingAlgorithm(iconScalingAlgorithm);
 
 		iconDrawer.markMountains();
 		iconDrawer.markHills();
@@ -171,8 +246,10 @@ public class MapCreator
 		{
 			iconDrawer.clearAndAddIconsFromEdits(settings.edits, sizeMultiplyer);
 		}
+		profile.endStage();
 		
 		// Draw mask for land vs ocean.
+		profile.startStage("land mask");
 		Logger.println("Adding land.");
 		BufferedImage landMask = new BufferedImage(graph.getWidth(),
 				graph.getHeight(), BufferedImage.TYPE_BYTE_BINARY); 
@@ -203,11 +280,16 @@ public class MapCreator
 				graph.paint(g, false, false, false, false, true, false, sizeMultiplyer);
 			}
 		}
+		profile.endStage(map, landMask, coastlineMask);
 		
 		
 		// Darken the land next to coast lines and optionally region borders.
+		profile.startStage("land blur");
+		BufferedImage landBlur = null;
+		// The ocean effects blur coastlineMask too. When the land blur also uses coastlineMask, both are done here
+		// so that coastlineMask is only transformed once.
+		BufferedImage oceanBlur = null;
 		{
-			BufferedImage landBlur;
 			int blurLevel = (int) (settings.landBlur * sizeMultiplyer);
 			if (blurLevel > 0)
 			{
@@ -220,18 +302,53 @@ public class MapCreator
 					Graphics2D g = coastlineAndRegionBorders.createGraphics();
 					g.setColor(Color.white);
 					graph.drawRegionBorders(g, sizeMultiplyer, false);
-					landBlur = ImageHelper.convolveGrayscale(coastlineAndRegionBorders, kernel, true);
-					// Remove the land blur from the ocean side of the borders and color the blur
-					// according to each region's blur color.
-					landBlur = ImageHelper.maskWithColor(landBlur, Color.black, landMask, false);
 					Color[] colors = graph.regions.stream().map(reg -> new Color((int)(reg.backgroundColor.getRed() * regionBlurColorScale), 
 							(int)(reg.backgroundColor.getGreen() * regionBlurColorScale), (int)(reg.backgroundColor.getBlue() * regionBlurColorScale)))
 							.toArray(size -> new Color[size]);
-					map = ImageHelper.maskWithMultipleColors(map, colors, background.regionIndexes, landBlur, true);
+					if (tileSize > 0)
+					{
+						BufferedImage mapToBlur = map;
+						BufferedImage regionIndexes = background.regionIndexes;
+						convolveInTiles(coastlineAndRegionBorders, kernel, (bounds, blurTile) ->
+						{
+							blurTile = ImageHelper.maskWithColor(blurTile, Color.black, getTile(landMask, bounds), false);
+							setTile(mapToBlur, bounds, ImageHelper.maskWithMultipleColors(getTile(mapToBlur, bounds), colors, 
+									getTile(regionIndexes, bounds), blurTile, true));
+						});
+					}
+					else
+					{
+						landBlur = ImageHelper.convolveGrayscale(coastlineAndRegionBorders, kernel, true);
+						// Remove the land blur from the ocean side of the borders and color the blur
+						// according to each region's blur color.
+						landBlur = ImageHelper.maskWithColor(landBlur, Color.black, landMask, false);
+						map = ImageHelper.maskWithMultipleColors(map, colors, background.regionIndexes, landBlur, true);
+					}
+				}
+				else if (tileSize > 0)
+				{
+					// The ocean effects are done in their own tiles later, since combining them would only save work when
+					// both use FFTs.
+					BufferedImage mapToBlur = map;
+					convolveInTiles(coastlineMask, kernel, (bounds, blurTile) ->
+					{
+						blurTile = ImageHelper.maskWithColor(blurTile, Color.black, getTile(landMask, bounds), false);
+						setTile(mapToBlur, bounds, ImageHelper.maskWithColor(getTile(mapToBlur, bounds), settings.landBlurColor, blurTile, true));
+					});
 				}
 				else
 				{
-					landBlur = ImageHelper.convolveGrayscale(coastlineMask, kernel, true);
+					float[][] oceanEffectsKernel = createOceanEffectsKernel(settings, sizeMultiplyer);
+					if (oceanEffectsKernel == null)
+					{
+						landBlur = ImageHelper.convolveGrayscale(coastlineMask, kernel, true);
+					}
+					else
+					{
+						List<BufferedImage> blurs = ImageHelper.convolveGrayscale(coastlineMask, Arrays.asList(kernel, oceanEffectsKernel), true);
+						landBlur = blurs.get(0);
+						oceanBlur = blurs.get(1);
+					}
 					// Remove the land blur from the ocean side of the borders.
 					landBlur = ImageHelper.maskWithColor(landBlur, Color.black, landMask, false);
 					map = ImageHelper.maskWithColor(map, settings.landBlurColor, landBlur, true);
@@ -248,14 +365,19 @@ public class MapCreator
 			g.setColor(settings.coastlineColor);
 			graph.drawRegionBorders(g, sizeMultiplyer, true);
 		}
+		profile.endStage(map, landBackground, landBlur, landMask, coastlineMask);
+		landBlur = null;
 
+		profile.startStage("rivers");
 		if (settings.drawRivers)
 		{
 		// Add rivers.
 			Logger.println("Adding rivers.");
 			drawRivers(settings, graph, map, sizeMultiplyer);
 		}
+		profile.endStage(map, landBackground);
 
+		profile.startStage("icons");
 		List<IconDrawTask> cities;
 		if (needToAddIcons)
 		{
@@ -291,7 +413,9 @@ public class MapCreator
 			Logger.println("Drawing all icons.");
 			iconDrawer.drawAllIcons(map, landBackground);
 		}
+		profile.endStage(map, landBackground);
 		
+		profile.startStage("ocean");
 		Logger.println("Drawing ocean.");
 		{
 			if (background.ocean.getWidth() != graph.getWidth() || background.ocean.getHeight() != graph.getHeight())
@@ -308,37 +432,48 @@ public class MapCreator
 			}
 			
 			map = ImageHelper.maskWithImage(map, background.ocean, landMask);
+			profile.endStage(map, landBackground, background.ocean, landMask);
 			if (mapParts == null)
 			{
 				background.ocean = null;
 			}
 		}
 		
+		profile.startStage("ocean effects");
 		Logger.println("Adding effects to ocean along coastlines.");
 		{
-			BufferedImage oceanBlur;
-			int blurLevel = (int) (settings.oceanEffects * sizeMultiplyer);
-			if (blurLevel > 0)
+			float[][] kernel = createOceanEffectsKernel(settings, sizeMultiplyer);
+			if (kernel != null && tileSize > 0)
 			{
-				float[][] kernel;
-				if (settings.addWavesToOcean)
+				BufferedImage mapToBlur = map;
+				BufferedImage landBackgroundToBlur = landBackground;
+				convolveInTiles(coastlineMask, kernel, (bounds, blurTile) ->
 				{
-					kernel = ImageHelper.createPositiveSincKernel(blurLevel, 1.0 / sizeMultiplyer);
-				} else
+					blurTile = ImageHelper.maskWithColor(blurTile, Color.black, getTile(landMask, bounds), true);
+					setTile(mapToBlur, bounds, ImageHelper.maskWithColor(getTile(mapToBlur, bounds), settings.oceanEffectsColor, blurTile, true));
+					setTile(landBackgroundToBlur, bounds, ImageHelper.maskWithColor(getTile(landBackgroundToBlur, bounds), 
+							settings.oceanEffectsColor, blurTile, true));
+				});
+			}
+			else if (kernel != null)
+			{
+				if (oceanBlur == null)
 				{
-					kernel = ImageHelper.createGaussianKernel((int) (settings.oceanEffects * sizeMultiplyer));
+					oceanBlur = ImageHelper.convolveGrayscale(coastlineMask, kernel, true);
 				}
-				oceanBlur = ImageHelper.convolveGrayscale(coastlineMask, kernel, true);
 				// Remove the ocean blur from the land side of the borders.
 				oceanBlur = ImageHelper.maskWithColor(oceanBlur, Color.black, landMask, true);
 
 				map = ImageHelper.maskWithColor(map, settings.oceanEffectsColor, oceanBlur, true);
 				landBackground = ImageHelper.maskWithColor(landBackground, settings.oceanEffectsColor, oceanBlur, true);
 			}	
+			profile.endStage(map, landBackground, oceanBlur, coastlineMask);
 		}
+		oceanBlur = null;
 		coastlineMask = null;
 		
 		// Draw coast lines.
+		profile.startStage("coastline");
 		{
 			Graphics2D g = map.createGraphics();
 			g.setColor(settings.coastlineColor);
@@ -357,10 +492,12 @@ public class MapCreator
 		{
 			drawRivers(settings, graph, landBackground, sizeMultiplyer);
 		}
+		profile.endStage(map, landBackground);
 		
 		if (mapParts != null)
 			mapParts.landBackground = landBackground;
 		
+		profile.startStage("text");
 		if (settings.drawText)
 		{
 			Logger.println("Adding text.");
@@ -374,8 +511,10 @@ public class MapCreator
 						
 			textDrawer.drawText(graph, map, landBackground, mountainGroups, cities);
 		}
+		profile.endStage(map, landBackground);
 		landBackground = null;
 		
+		profile.startStage("border");
 		if (settings.drawBorder)
 		{
 			Logger.println("Adding border.");
@@ -385,12 +524,14 @@ public class MapCreator
 				background.borderBackground = null;
 			}
 		}
+		profile.endStage(map);
 
+		profile.startStage("frayed edges");
 		if (settings.frayedBorder)
 		{
 			Logger.println("Adding frayed edges.");
 			GraphImpl frayGraph = GraphCreator.createSimpleGraph(background.borderBounds.getWidth(), 
-					background.borderBounds.getHeight(), settings.frayedBorderSize, new Random(r.nextLong()), sizeMultiplyer);
+					background.borderBounds.getHeight(), settings.frayedBorderSize, new Random(r.nextLong()), sizeMultiplyer, voronoiAlgorithm);
 			BufferedImage borderMask = new BufferedImage(frayGraph.getWidth(),
 					frayGraph.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
 			frayGraph.drawBorderWhite(borderMask.createGraphics());
@@ -399,26 +540,38 @@ public class MapCreator
 			if (blurLevel > 0)
 			{
 				float[][] kernel = ImageHelper.createGaussianKernel(blurLevel);
-				BufferedImage borderBlur = ImageHelper.convolveGrayscale(borderMask, kernel, true);
-			
-				map = ImageHelper.maskWithColor(map, settings.frayedBorderColor, borderBlur, true);
+				if (tileSize > 0)
+				{
+					BufferedImage mapToBlur = map;
+					convolveInTiles(borderMask, kernel, (bounds, blurTile) -> setTile(mapToBlur, bounds, 
+							ImageHelper.maskWithColor(getTile(mapToBlur, bounds), settings.frayedBorderColor, blurTile, true)));
+				}
+				else
+				{
+					BufferedImage borderBlur = ImageHelper.convolveGrayscale(borderMask, kernel, true);
+					map = ImageHelper.maskWithColor(map, settings.frayedBorderColor, borderBlur, true);
+				}
 
 			}
 			map = ImageHelper.setAlphaFromMask(map, borderMask, true);
+			profile.endStage(map, borderMask);
 		}
 		else
 		{
 			// Use the random number generator the same whether or not we draw a frayed border.
 			r.nextLong();
+			profile.endStage();
 		}
 		background = null;
 		
+		profile.startStage("grunge");
+		BufferedImage clouds = null;
 		if (settings.grungeWidth > 0)
 		{
 			Logger.println("Adding grunge.");
 			// 104567 is an arbitrary number added so that the grung is not the same pattern as
 			// the background.
-			BufferedImage clouds = FractalBGGenerator.generate(
+			clouds = FractalBGGenerator.generate(
 					new Random(settings.backgroundRandomSeed + 104567), settings.fractalPower, 
 					(int)map.getWidth(), (int)map.getHeight(), 0.75f);
 			// Whiten the middle of clouds.
@@ -427,6 +580,8 @@ public class MapCreator
 			// Add the cloud mask to the map.
 			map = ImageHelper.maskWithColor(map, settings.frayedBorderColor, clouds, true);
 		}
+		profile.endStage(map, clouds);
+		clouds = null;
 		
 		double elapsedTime = System.currentTimeMillis() - startTime;
 		Logger.println("Total time to generate map (in seconds): " + elapsedTime / 1000.0);
@@ -437,6 +592,56 @@ public class MapCreator
 		return map;
 	}
 	
+	/**
+	 * Timing and memory use of each stage of the last call to createMap, or null if createMap has not been called.
+	 */
+	public MapProfile getProfile()
+	{
+		return profile;
+	}
+	
+	/**
+	 * Convolves a grayscale mask with contrast maximized, the same as ImageHelper.convolveGrayscale does, but one tile 
+	 * at a time. Each tile is passed to tileHandler as an image the size of the tile. Tiles are handled in parallel,
+	 * and tiles don't overlap, so tileHandler may update the same tile of other images.
+	 */
+	private void convolveInTiles(BufferedImage mask, float[][] kernel, BiConsumer<Rectangle, BufferedImage> tileHandler)
+	{
+		int resultType = mask.getType() == BufferedImage.TYPE_USHORT_GRAY ? BufferedImage.TYPE_USHORT_GRAY : BufferedImage.TYPE_BYTE_GRAY;
+		ConvolutionPlanner.convolveInTiles(mask, kernel, true, tileSize, 
+				(bounds, values) -> tileHandler.accept(bounds, ImageHelper.arrayToImage(values, resultType)));
+	}
+
+	private static BufferedImage getTile(BufferedImage image, Rectangle bounds)
+	{
+		return image.getSubimage(bounds.x, bounds.y, bounds.width, bounds.height);
+	}
+
+	private static void setTile(BufferedImage image, Rectangle bounds, BufferedImage tile)
+	{
+		image.getRaster().setRect(bounds.x, bounds.y, tile.getRaster());
+	}
+
+	/**
+	 * Creates the kernel used to blur the coastlines for the ocean effects, or returns null if there are no ocean effects.
+	 */
+	private static float[][] createOceanEffectsKernel(MapSettings settings, double sizeMultiplyer)
+	{
+		int blurLevel = (int) (settings.oceanEffects * sizeMultiplyer);
+		if (blurLevel <= 0)
+		{
+			return null;
+		}
+		if (settings.addWavesToOcean)
+		{
+			return ImageHelper.createPositiveSincKernel(blurLevel, 1.0 / sizeMultiplyer);
+		}
+		else
+		{
+			return ImageHelper.createGaussianKernel((int) (settings.oceanEffects * sizeMultiplyer));
+		}
+	}
+	
 	private static void assignRandomRegionColors(GraphImpl graph, MapSettings settings)
 	{
 		
@@ -479,12 +684,13 @@ public class MapCreator
 		return generateRegionColor(rand, hsb, hueRange, saturationRange, brightnessRange);
 	}
 	
-	private static GraphImpl createGraph(MapSettings settings, double width, double height, Random r, double sizeMultiplyer)
+	private static GraphImpl createGraph(MapSettings settings, double width, double height, Random r, double sizeMultiplyer,
+			GraphCreator.VoronoiAlgorithm voronoiAlgorithm, GraphCreator.TectonicPlateAlgorithm tectonicPlateAlgorithm)
 	{
 		GraphImpl graph = GraphCreator.createGraph(width, height,
 				settings.worldSize, settings.edgeLandToWaterProbability, settings.centerLandToWaterProbability,
 				new Random(r.nextLong()),
-				sizeMultiplyer);	
+				sizeMultiplyer, voronoiAlgorithm, tectonicPlateAlgorithm);	
 		
 		// Setup region colors even if settings.drawRegionColors = false because edits need them in case someone edits a map without region colors, then later enables region colors.
 		assignRandomRegionColors(graph, settings);
@@ -521,6 +727,11 @@ public class MapCreator
 		}
 	}
 	
+	/**
+	 * Applies the center edits to the graph. When the graph is reused between draws, as it is while editing, only the
+	 * centers whose edits differ from the graph are changed, and the graph records those changes so that
+	 * GraphImpl.updateChangedNeighborhoods only updates the area around them.
+	 */
 	private static void applyCenterEdits(GraphImpl graph, MapEdits edits)
 	{
 		if (edits == null || edits.centerEdits.isEmpty())
@@ -533,46 +744,32 @@ public class MapCreator
 			throw new IllegalArgumentException("The map edits have " + edits.centerEdits.size() + " polygons, but the world size is " + graph.centers.size());
 		}
 		
+		Map<Integer, Region> regionsById = new HashMap<>();
+		for (Region region : graph.regions)
+		{
+			regionsById.put(region.id, region);
+		}
+		
 		for (int i : new Range(edits.centerEdits.size()))
 		{
 			Center center = graph.centers.get(i);
 			CenterEdit cEdit = edits.centerEdits.get(i);
-			boolean needsRebuild = center.isWater != cEdit.isWater;
-			center.isWater = cEdit.isWater;
+			graph.setWater(center, cEdit.isWater);
 			
 			Integer regionId = cEdit.regionId;
 			if (regionId != null)
 			{
-				Region region = graph.findRegionById(regionId);
+				Region region = regionsById.get(regionId);
 				// region can be null if the map is edited while drawing it. If that happens, then the region color of this center will be updated the next time the map draws.
 				if (region != null)
 				{
-					if (center.region != null && center.region.id != region.id)
-					{
-						needsRebuild = true;
-					}
-					region.addAndSetRegion(center);
-					// We don't know which region the center came from, so remove it from of them except the one it is in.
-					for (Region r : graph.regions)
-					{
-						if (r.id != region.id)
-						{
-							r.remove(center);
-						}
-					}
+					graph.setRegion(center, region);
 				}
 			}
 			
-			if (center.isWater && center.region != null)
+			if (center.isWater() && center.region != null)
 			{
-				center.region.remove(center);
-				center.region = null;
-				needsRebuild = true;
-			}
-			
-			if (needsRebuild)
-			{
-				graph.rebuildNoisyEdgesForCenter(center);
+				graph.setRegion(center, null);
 			}
 			
 			if (cEdit.icon != null && cEdit.icon.iconType == CenterIconType.Mountain)
@@ -596,17 +793,7 @@ public class MapCreator
 		
 		for (EdgeEdit eEdit : edits.edgeEdits)
 		{				
-			Edge edge = graph.edges.get(eEdit.index);
-			boolean needsRebuild = false;
-			if (eEdit.riverLevel != edge.river && edge.d0 != null)
-			{
-				needsRebuild = true;
-			}
-			graph.edges.get(eEdit.index).river = eEdit.riverLevel;
-			if (needsRebuild)
-			{
-				graph.rebuildNoisyEdgesForCenter(edge.d0);
-			}
+			graph.setRiver(graph.edges.get(eEdit.index), eEdit.riverLevel);
 		}
 	}
 	
@@ -1057,7 +1244,8 @@ public class MapCreator
 		r = new Random(settings.randomSeed);
         DimensionDouble mapBounds = new Background(settings, null).calcMapBoundsAndAdjustResolutionIfNeeded(settings, null);
 		double sizeMultiplyer = calcSizeMultiplyer(mapBounds.getWidth());
-		GraphImpl graph = createGraph(settings, mapBounds.getWidth(), mapBounds.getHeight(), r, sizeMultiplyer);
+		GraphImpl graph = createGraph(settings, mapBounds.getWidth(), mapBounds.getHeight(), r, sizeMultiplyer, voronoiAlgorithm,
+				tectonicPlateAlgorithm);
 		return GraphCreator.createHeightMap(graph, new Random(settings.randomSeed));
 	}
 
@@ -0,0 +1,227 @@
+package nortantis;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import nortantis.util.Helper;
+
+/**
+ * Records how long each stage of MapCreator.createMap took and how much memory it used.
+ *
+ * CPU time and allocated bytes are measured on the thread that called createMap, so work that a stage hands
+ * off to other threads (such as FFTs and icon scaling) shows up in wall time only.
+ */
+public class MapProfile
+{
+	private Map<String, Stage> stages;
+	private Stage current;
+	private long currentStartNanos;
+	private long currentStartCpuNanos;
+	private long currentStartAllocatedBytes;
+
+	public MapProfile()
+	{
+		stages = new LinkedHashMap<>();
+	}
+
+	/**
+	 * Starts timing a stage. If a stage with the same name was already recorded, the new measurements are
+	 * added to it. Any stage that is still running is ended first.
+	 */
+	public void startStage(String name)
+	{
+		if (current != null)
+		{
+			endStage();
+		}
+
+		current = stages.get(name);
+		if (current == null)
+		{
+			current = new Stage(name);
+			stages.put(name, current);
+		}
+		currentStartNanos = System.nanoTime();
+		currentStartCpuNanos = getCurrentThreadCpuTime();
+		currentStartAllocatedBytes = getCurrentThreadAllocatedBytes();
+	}
+
+	/**
+	 * Ends the current stage.
+	 * @param liveImages Images held by the map creator at the end of the stage. The largest is recorded.
+	 * Null entries are ignored.
+	 */
+	public void endStage(BufferedImage... liveImages)
+	{
+		if (current == null)
+		{
+			throw new IllegalStateException("No stage has been started.");
+		}
+
+		current.wallNanos += System.nanoTime() - currentStartNanos;
+		long cpuNanos = getCurrentThreadCpuTime();
+		if (cpuNanos >= 0 && currentStartCpuNanos >= 0)
+		{
+			current.cpuNanos += cpuNanos - currentStartCpuNanos;
+		}
+		long allocatedBytes = getCurrentThreadAllocatedBytes();
+		if (allocatedBytes >= 0 && currentStartAllocatedBytes >= 0)
+		{
+			current.allocatedBytes += allocatedBytes - currentStartAllocatedBytes;
+		}
+		for (BufferedImage image : liveImages)
+		{
+			if (image != null)
+			{
+				current.largestImageBytes = Math.max(current.largestImageBytes, getImageBytes(image));
+			}
+		}
+		current = null;
+	}
+
+	public List<Stage> getStages()
+	{
+		return Collections.unmodifiableList(new ArrayList<>(stages.values()));
+	}
+
+	public double getTotalWallSeconds()
+	{
+		long sum = 0;
+		for (Stage stage : stages.values())
+		{
+			sum += stage.wallNanos;
+		}
+		return sum / 1e9;
+	}
+
+	/**
+	 * The number of bytes used by the pixels of the given image.
+	 */
+	public static long getImageBytes(BufferedImage image)
+	{
+		DataBuffer buffer = image.getRaster().getDataBuffer();
+		return ((long) buffer.getSize()) * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+	}
+
+	private static long getCurrentThreadCpuTime()
+	{
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!bean.isCurrentThreadCpuTimeSupported())
+		{
+			return -1;
+		}
+		return bean.getCurrentThreadCpuTime();
+	}
+
+	private static long getCurrentThreadAllocatedBytes()
+	{
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+		{
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+			if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled())
+			{
+				return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	@SuppressWarnings("unchecked")
+	public String toJson()
+	{
+		JSONArray list = new JSONArray();
+		for (Stage stage : stages.values())
+		{
+			JSONObject stageObj = new JSONObject();
+			stageObj.put("stage", stage.name);
+			stageObj.put("wallSeconds", stage.getWallSeconds());
+			stageObj.put("cpuSeconds", stage.getCpuSeconds());
+			stageObj.put("allocatedBytes", stage.allocatedBytes);
+			stageObj.put("largestImageBytes", stage.largestImageBytes);
+			list.add(stageObj);
+		}
+		return list.toJSONString();
+	}
+
+	public String toCsv()
+	{
+		StringBuilder b = new StringBuilder();
+		b.append("stage,wallSeconds,cpuSeconds,allocatedBytes,largestImageBytes\n");
+		for (Stage stage : stages.values())
+		{
+			b.append(stage.name).append(",").append(stage.getWallSeconds()).append(",").append(stage.getCpuSeconds()).append(",")
+					.append(stage.allocatedBytes).append(",").append(stage.largestImageBytes).append("\n");
+		}
+		return b.toString();
+	}
+
+	/**
+	 * Writes the profile as CSV if fileName ends with ".csv", and as JSON otherwise.
+	 */
+	public void write(String fileName)
+	{
+		Helper.writeToFile(fileName, fileName.toLowerCase().endsWith(".csv") ? toCsv() : toJson());
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder b = new StringBuilder();
+		for (Stage stage : stages.values())
+		{
+			b.append(stage).append("\n");
+		}
+		return b.toString();
+	}
+
+	public static class Stage
+	{
+		public final String name;
+		public long wallNanos;
+		/**
+		 * CPU time used by the thread that ran the stage.
+		 */
+		public long cpuNanos;
+		/**
+		 * Bytes allocated by the thread that ran the stage.
+		 */
+		public long allocatedBytes;
+		/**
+		 * Size of the pixel data of the largest image passed to endStage for this stage.
+		 */
+		public long largestImageBytes;
+
+		private Stage(String name)
+		{
+			this.name = name;
+		}
+
+		public double getWallSeconds()
+		{
+			return wallNanos / 1e9;
+		}
+
+		public double getCpuSeconds()
+		{
+			return cpuNanos / 1e9;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%-15s wall: %8.3fs  cpu: %8.3fs  allocated: %8.1f MB  largest image: %8.1f MB", name, getWallSeconds(),
+					getCpuSeconds(), allocatedBytes / (1024.0 * 1024.0), largestImageBytes / (1024.0 * 1024.0));
+		}
+	}
+}
@@ -8,6 +8,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
@@ -38,29 +39,15 @@ public class NameCompiler
 		r.setSeed(seed);
 	}
 	private Set<String> dict;
+	/**
+	 * The word dictionary is the same for every map, so it is only loaded once per process.
+	 */
+	private static Set<String> cachedDict;
 
 	public NameCompiler(Random r, List<Pair<String>> nounAdjectivePairs, 
 			List<Pair<String>> nounVerbPairs)
 	{		
-		// Load the word dictionary.
-		List<String> lines;
-		try
-		{
-			lines = Files.readAllLines(Paths.get(AssetsPath.get(), "internal/en_GB.dic"), Charset.defaultCharset());
-		} catch (IOException e)
-		{
-			throw new RuntimeException("Unable to read word dictionary file.", e);
-		}
-		dict = new TreeSet<>();
-		for (String line : lines)
-		{
-			String[] parts = line.split("[\\s0-9/]");
-			if (parts.length == 0)
-				continue;
-			String word = parts[0];
-			word = word.trim();
-			dict.add(word);
-		}
+		dict = loadDictionary();
 
 		this.nounVerbPairs = convertToPresentTense(nounVerbPairs);
 		nounVerbPairs = null;
@@ -79,6 +66,35 @@ public class NameCompiler
 		
 	}
 	
+	private synchronized static Set<String> loadDictionary()
+	{
+		if (cachedDict != null)
+		{
+			return cachedDict;
+		}
+		
+		List<String> lines;
+		try
+		{
+			lines = Files.readAllLines(Paths.get(AssetsPath.get(), "internal/en_GB.dic"), Charset.defaultCharset());
+		} catch (IOException e)
+		{
+			throw new RuntimeException("Unable to read word dictionary file.", e);
+		}
+		Set<String> result = new TreeSet<>();
+		for (String line : lines)
+		{
+			String[] parts = line.split("[\\s0-9/]");
+			if (parts.length == 0)
+				continue;
+			String word = parts[0];
+			word = word.trim();
+			result.add(word);
+		}
+		cachedDict = Collections.unmodifiableSet(result);
+		return cachedDict;
+	}
+	
 	private List<Pair<String>> convertToPresentTense(List<Pair<String>> verbPairs)
 	{
 		// Convert verbs to present tense.
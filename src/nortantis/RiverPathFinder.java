@@ -0,0 +1,242 @@
+package nortantis;
+
+import java.util.Arrays;
+
+import hoten.voronoi.GraphCore;
+
+/**
+ * Finds paths along Voronoi edges between two corners of a graph, either the shortest path using A* with the
+ * straight-line distance to the end corner as the heuristic, or a greedy path which always extends from the explored
+ * corner closest to the end corner.
+ *
+ * Search state is stored in arrays indexed by corner index, and the open set is a binary heap which knows the position
+ * of each corner in it, so a corner's priority can be lowered in place. The arrays are allocated once and reused by
+ * every search, so a search only touches the corners it explores. A finder must only be used by one thread at a time.
+ */
+final class RiverPathFinder
+{
+	private final int[] protrudeStarts;
+	private final int[] protrudes;
+	private final int[] edgeV0;
+	private final int[] edgeV1;
+	private final double[] cornerXs;
+	private final double[] cornerYs;
+
+	// The search that last set each corner's gScore, cameFromEdge, and heapPosition. Values from other searches are
+	// stale, which saves clearing the arrays between searches.
+	private final int[] searchIds;
+	private int searchId;
+	private final double[] gScores;
+	private final double[] fScores;
+	// The edge a corner was reached by on the best path found to it so far, or -1 for the start corner.
+	private final int[] cameFromEdges;
+	// A corner's index in heap, or -1 once it has been removed from the heap to be explored.
+	private final int[] heapPositions;
+	private final int[] heap;
+	private int heapSize;
+	private double gWeight;
+
+	/**
+	 * @param cornerXs
+	 *            The x coordinate of each corner, indexed by corner index. This is not copied, so it may be shared by
+	 *            several finders.
+	 * @param cornerYs
+	 *            The y coordinate of each corner, indexed by corner index.
+	 */
+	RiverPathFinder(GraphCore core, double[] cornerXs, double[] cornerYs)
+	{
+		this.protrudeStarts = core.cornerProtrudeStarts;
+		this.protrudes = core.cornerProtrudes;
+		this.edgeV0 = core.edgeV0;
+		this.edgeV1 = core.edgeV1;
+		this.cornerXs = cornerXs;
+		this.cornerYs = cornerYs;
+
+		int numCorners = core.numCorners;
+		searchIds = new int[numCorners];
+		gScores = new double[numCorners];
+		fScores = new double[numCorners];
+		cameFromEdges = new int[numCorners];
+		heapPositions = new int[numCorners];
+		heap = new int[numCorners];
+	}
+
+	/**
+	 * @param shortest
+	 *            If true, the path found is the shortest. If false, the search is greedy, which explores far fewer
+	 *            corners and usually finds a path close to the shortest.
+	 * @return The indexes of the edges on the path from the start corner to the end corner, in order from the end back
+	 *         to the start. This is empty if start and end are the same or if there is no path between them.
+	 */
+	int[] findPath(int start, int end, boolean shortest)
+	{
+		if (start == end)
+		{
+			return new int[0];
+		}
+
+		startNewSearch();
+		heapSize = 0;
+		// A greedy search ignores the length of the path so far when choosing which corner to explore next.
+		gWeight = shortest ? 1.0 : 0.0;
+		visit(start, -1, 0.0, end);
+
+		while (heapSize > 0)
+		{
+			int corner = removeFirst();
+			if (corner == end)
+			{
+				return createPathFromCameFromEdges(end);
+			}
+
+			double g = gScores[corner];
+			for (int i = protrudeStarts[corner]; i < protrudeStarts[corner + 1]; i++)
+			{
+				int edge = protrudes[i];
+				int other = edgeV0[edge] == corner ? edgeV1[edge] : edgeV0[edge];
+				if (other == -1)
+				{
+					continue;
+				}
+
+				double newG = g + distance(corner, other);
+				if (searchIds[other] != searchId)
+				{
+					visit(other, edge, newG, end);
+				}
+				else if (shortest && heapPositions[other] != -1 && newG < gScores[other])
+				{
+					gScores[other] = newG;
+					fScores[other] = newG + distance(other, end);
+					cameFromEdges[other] = edge;
+					siftUp(heapPositions[other]);
+				}
+			}
+		}
+
+		return new int[0];
+	}
+
+	private void startNewSearch()
+	{
+		searchId++;
+		if (searchId == 0)
+		{
+			// The ids wrapped around, so ids from old searches could look current.
+			Arrays.fill(searchIds, 0);
+			searchId = 1;
+		}
+	}
+
+	private void visit(int corner, int cameFromEdge, double g, int end)
+	{
+		searchIds[corner] = searchId;
+		gScores[corner] = g;
+		fScores[corner] = gWeight * g + distance(corner, end);
+		cameFromEdges[corner] = cameFromEdge;
+		heap[heapSize] = corner;
+		heapPositions[corner] = heapSize;
+		heapSize++;
+		siftUp(heapSize - 1);
+	}
+
+	private int[] createPathFromCameFromEdges(int end)
+	{
+		int length = 0;
+		for (int corner = end; cameFromEdges[corner] != -1; corner = previousCorner(corner))
+		{
+			length++;
+		}
+
+		int[] path = new int[length];
+		int i = 0;
+		for (int corner = end; cameFromEdges[corner] != -1; corner = previousCorner(corner))
+		{
+			path[i++] = cameFromEdges[corner];
+		}
+		return path;
+	}
+
+	private int previousCorner(int corner)
+	{
+		int edge = cameFromEdges[corner];
+		return edgeV0[edge] == corner ? edgeV1[edge] : edgeV0[edge];
+	}
+
+	private double distance(int corner1, int corner2)
+	{
+		double dx = cornerXs[corner1] - cornerXs[corner2];
+		double dy = cornerYs[corner1] - cornerYs[corner2];
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Corners with equal f scores are ordered by index so that paths don't depend on the order corners were added in.
+	 */
+	private boolean isBefore(int corner1, int corner2)
+	{
+		int comp = Double.compare(fScores[corner1], fScores[corner2]);
+		return comp < 0 || (comp == 0 && corner1 < corner2);
+	}
+
+	private int removeFirst()
+	{
+		int first = heap[0];
+		heapPositions[first] = -1;
+		heapSize--;
+		if (heapSize > 0)
+		{
+			int last = heap[heapSize];
+			heap[0] = last;
+			heapPositions[last] = 0;
+			siftDown(0);
+		}
+		return first;
+	}
+
+	private void siftUp(int position)
+	{
+		int corner = heap[position];
+		while (position > 0)
+		{
+			int parentPosition = (position - 1) / 2;
+			int parent = heap[parentPosition];
+			if (!isBefore(corner, parent))
+			{
+				break;
+			}
+			heap[position] = parent;
+			heapPositions[parent] = position;
+			position = parentPosition;
+		}
+		heap[position] = corner;
+		heapPositions[corner] = position;
+	}
+
+	private void siftDown(int position)
+	{
+		int corner = heap[position];
+		while (true)
+		{
+			int childPosition = 2 * position + 1;
+			if (childPosition >= heapSize)
+			{
+				break;
+			}
+			if (childPosition + 1 < heapSize && isBefore(heap[childPosition + 1], heap[childPosition]))
+			{
+				childPosition++;
+			}
+			int child = heap[childPosition];
+			if (!isBefore(child, corner))
+			{
+				break;
+			}
+			heap[position] = child;
+			heapPositions[child] = position;
+			position = childPosition;
+		}
+		heap[position] = corner;
+		heapPositions[corner] = position;
+	}
+}
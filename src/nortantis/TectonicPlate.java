@@ -17,17 +17,14 @@ public class TectonicPlate
 	// This is needed to give the object a deterministic hash code. If I use the object's address as the hash
 	// code, it may change from one run to the next, and so HashSet iterates over the objects in a different
 	// order sometimes.
+	// The id is assigned by the graph rather than from a static counter so that graphs created at the same 
+	// time on different threads get the same ids they would get if created one at a time.
 	private int id;
-	static int nextID = 0;
-	public static void resetIds()
-	{
-		nextID = 0;
-	}
 	
-	public TectonicPlate(double growthProbability, List<Center> allCenters)
+	public TectonicPlate(int id, double growthProbability, List<Center> allCenters)
 	{
 		this.growthProbability = growthProbability;
-		this.id = nextID++;
+		this.id = id;
 		centers = new HashSet<>();
 	}
 	
@@ -0,0 +1,255 @@
+package nortantis;
+
+import java.util.Random;
+
+import hoten.voronoi.GraphCore;
+
+/**
+ * Grows tectonic plates over a graph's centers. Every center starts out as its own plate, and then plates repeatedly
+ * take a center from a neighboring plate.
+ *
+ * Plate membership is stored as a plate index per center, and each center's count of neighbors on other plates is
+ * updated incrementally when a center changes plates, so growing a plate by one center costs O(number of neighbors)
+ * and doesn't allocate.
+ */
+public final class TectonicPlateGrower
+{
+	private final int[] neighborStarts;
+	private final int[] neighbors;
+	private final double[] growthProbabilities;
+	private final int numCenters;
+
+	private final int[] plateIndexes;
+	private final int[] neighborsNotInSamePlateCounts;
+
+	// The frontier: the centers with at least one neighbor on another plate, stored so that adding, removing, and
+	// choosing a random one are all O(1).
+	private final int[] frontier;
+	private final int[] frontierPositions;
+	private int frontierSize;
+
+	/**
+	 * @param core
+	 *            The graph whose centers to group into plates.
+	 * @param growthProbabilities
+	 *            The probability that each center's starting plate keeps a center it takes from a neighbor, indexed
+	 *            by center index.
+	 */
+	public TectonicPlateGrower(GraphCore core, double[] growthProbabilities)
+	{
+		this.neighborStarts = core.centerNeighborStarts;
+		this.neighbors = core.centerNeighbors;
+		this.growthProbabilities = growthProbabilities;
+		this.numCenters = core.numCenters;
+
+		plateIndexes = new int[numCenters];
+		neighborsNotInSamePlateCounts = new int[numCenters];
+		frontier = new int[numCenters];
+		frontierPositions = new int[numCenters];
+		for (int i = 0; i < numCenters; i++)
+		{
+			plateIndexes[i] = i;
+			neighborsNotInSamePlateCounts[i] = neighborStarts[i + 1] - neighborStarts[i];
+			frontierPositions[i] = -1;
+			if (neighborsNotInSamePlateCounts[i] > 0)
+			{
+				addToFrontier(i);
+			}
+		}
+	}
+
+	/**
+	 * @return The index of the center whose starting plate each center ended up in, indexed by center index.
+	 */
+	public int[] getPlateIndexes()
+	{
+		return plateIndexes;
+	}
+
+	/**
+	 * @return The number of the given center's neighbors that are on a different plate than it.
+	 */
+	public int getNeighborsNotInSamePlateCount(int center)
+	{
+		return neighborsNotInSamePlateCounts[center];
+	}
+
+	/**
+	 * @return Whether the given center is in the frontier, which should be exactly when it has a neighbor on another
+	 *         plate.
+	 */
+	public boolean isOnFrontier(int center)
+	{
+		int position = frontierPositions[center];
+		return position >= 0 && position < frontierSize && frontier[position] == center;
+	}
+
+	public int getFrontierSize()
+	{
+		return frontierSize;
+	}
+
+	/**
+	 * Each iteration samples centers from the whole graph, and the one with the fewest neighbors on other plates (but
+	 * more than zero) takes a random one of those neighbors into its plate. Preferring centers with few such neighbors
+	 * makes plate boundaries smoother.
+	 *
+	 * This makes the same random calls, in the same order, that GraphImpl has always made to create plates, so it
+	 * gives the same plates for the same seed.
+	 */
+	public void growBySampling(int numIterations, int smoothness, Random rand)
+	{
+		for (int iteration = 0; iteration < numIterations; iteration++)
+		{
+			int least = -1;
+			for (int i = 0; i < smoothness; i++)
+			{
+				int sample = rand.nextInt(numCenters);
+				int count = neighborsNotInSamePlateCounts[sample];
+				if (count != 0 && (least == -1 || count < neighborsNotInSamePlateCounts[least]))
+				{
+					least = sample;
+				}
+			}
+			if (least != -1)
+			{
+				tryToGrow(least, rand);
+			}
+		}
+	}
+
+	/**
+	 * Like growBySampling, except that centers are only sampled from the frontier, so no samples are wasted on centers
+	 * in the middle of plates. The number of samples each iteration is drawn from the distribution of how many of
+	 * growBySampling's samples would have been on the frontier, so plates come out about the same in size, number, and
+	 * smoothness.
+	 *
+	 * This gives different plates than growBySampling for the same seed.
+	 */
+	public void growFromFrontier(int numIterations, int smoothness, Random rand)
+	{
+		for (int iteration = 0; iteration < numIterations && frontierSize > 0; iteration++)
+		{
+			int numSamples = sampleBinomial(smoothness, (double) frontierSize / numCenters, rand.nextDouble());
+			if (numSamples == 0)
+			{
+				continue;
+			}
+			int least = -1;
+			for (int i = 0; i < numSamples; i++)
+			{
+				int sample = frontier[rand.nextInt(frontierSize)];
+				if (least == -1 || neighborsNotInSamePlateCounts[sample] < neighborsNotInSamePlateCounts[least])
+				{
+					least = sample;
+				}
+			}
+			tryToGrow(least, rand);
+		}
+	}
+
+	/**
+	 * Returns the number of successes in the given number of trials which each succeed with the given probability,
+	 * using one uniform random number, u, in [0, 1).
+	 */
+	public static int sampleBinomial(int trials, double probability, double u)
+	{
+		if (probability >= 1.0)
+		{
+			return trials;
+		}
+		double odds = probability / (1.0 - probability);
+		double probabilityOfK = Math.pow(1.0 - probability, trials);
+		double cumulative = probabilityOfK;
+		int k = 0;
+		while (u >= cumulative && k < trials)
+		{
+			probabilityOfK *= odds * (trials - k) / (k + 1);
+			k++;
+			cumulative += probabilityOfK;
+		}
+		return k;
+	}
+
+	/**
+	 * With the growth probability of the given center's plate, moves a random neighbor on another plate into that
+	 * plate.
+	 */
+	private void tryToGrow(int center, Random rand)
+	{
+		int plate = plateIndexes[center];
+		if (rand.nextDouble() >= growthProbabilities[plate])
+		{
+			return;
+		}
+
+		// Choose a random neighbor not in the same plate, in the order neighbors are stored.
+		int remaining = rand.nextInt(neighborsNotInSamePlateCounts[center]);
+		int neighbor = -1;
+		for (int i = neighborStarts[center]; i < neighborStarts[center + 1]; i++)
+		{
+			if (plateIndexes[neighbors[i]] != plate)
+			{
+				if (remaining == 0)
+				{
+					neighbor = neighbors[i];
+					break;
+				}
+				remaining--;
+			}
+		}
+
+		moveToPlate(neighbor, plate);
+	}
+
+	private void moveToPlate(int center, int newPlate)
+	{
+		int oldPlate = plateIndexes[center];
+		plateIndexes[center] = newPlate;
+		for (int i = neighborStarts[center]; i < neighborStarts[center + 1]; i++)
+		{
+			int neighbor = neighbors[i];
+			int neighborPlate = plateIndexes[neighbor];
+			if (neighborPlate == oldPlate)
+			{
+				// The neighbor was on the same plate as the center and now isn't.
+				incrementCount(neighbor, 1);
+				incrementCount(center, 1);
+			}
+			else if (neighborPlate == newPlate)
+			{
+				incrementCount(neighbor, -1);
+				incrementCount(center, -1);
+			}
+		}
+	}
+
+	private void incrementCount(int center, int amount)
+	{
+		int count = neighborsNotInSamePlateCounts[center] + amount;
+		neighborsNotInSamePlateCounts[center] = count;
+		if (count == 0)
+		{
+			removeFromFrontier(center);
+		}
+		else if (count == amount)
+		{
+			addToFrontier(center);
+		}
+	}
+
+	private void addToFrontier(int center)
+	{
+		frontierPositions[center] = frontierSize;
+		frontier[frontierSize++] = center;
+	}
+
+	private void removeFromFrontier(int center)
+	{
+		int position = frontierPositions[center];
+		int last = frontier[--frontierSize];
+		frontier[position] = last;
+		frontierPositions[last] = position;
+		frontierPositions[center] = -1;
+	}
+}
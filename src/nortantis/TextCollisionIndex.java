@@ -0,0 +1,297 @@
+package nortantis;
+
+import java.awt.geom.Area;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Finds whether an area overlaps the areas of text or cities already on the map, without intersecting it with every
+ * one of them.
+ *
+ * Areas are stored in a uniform grid of square cells, in each cell their bounding box touches. A query only looks at
+ * areas in the cells its own bounding box touches, and only intersects Areas that pass two cheap tests first: their
+ * bounding boxes must overlap, and, when both are convex quadrilaterals such as rotated rectangles, they must not be
+ * separated along the direction perpendicular to any of their sides. Those tests only rule out areas that can't
+ * overlap, so the result is the same as intersecting with every area.
+ *
+ * This is not thread safe.
+ */
+public class TextCollisionIndex
+{
+	// Areas closer than this are left for Area.intersect to decide, so that rounding can't change the result.
+	private static final double epsilon = 1e-6;
+
+	private final double cellSize;
+	private final int cellsWide;
+	private final int cellsHigh;
+	private final List<List<Entry>> cells;
+	// Text -> the entries of its areas.
+	private final Map<MapText, List<Entry>> textEntries = new IdentityHashMap<>();
+	private int queryId;
+
+	private static final class Entry
+	{
+		final Area area;
+		final Rectangle2D bounds;
+		// The corners of the area if it's a convex quadrilateral, such as a rotated rectangle, as x0, y0, x1, y1, and so
+		// on. Null otherwise.
+		final double[] corners;
+		// The text this is an area of, or null for a city.
+		final MapText text;
+		// The last query that looked at this entry, to look at each entry once even if it's in many cells.
+		int lastQueryId;
+
+		Entry(Area area, MapText text)
+		{
+			this.area = area;
+			this.bounds = area.getBounds2D();
+			this.corners = findQuadrilateralCorners(area);
+			this.text = text;
+		}
+	}
+
+	/**
+	 * @param width
+	 *            The width of the map. Areas beyond the map's edges are stored in the cells on the edges.
+	 * @param height
+	 *            The height of the map.
+	 * @param cellSize
+	 *            The width and height of the cells in the grid. About the height of a line of text works well.
+	 */
+	public TextCollisionIndex(double width, double height, double cellSize)
+	{
+		this.cellSize = cellSize;
+		cellsWide = Math.max(1, (int) Math.ceil(width / cellSize));
+		cellsHigh = Math.max(1, (int) Math.ceil(height / cellSize));
+		cells = new ArrayList<>(cellsWide * cellsHigh);
+		for (int i = 0; i < cellsWide * cellsHigh; i++)
+		{
+			cells.add(new ArrayList<>(0));
+		}
+	}
+
+	public void addCity(Area area)
+	{
+		addEntry(new Entry(area, null));
+	}
+
+	/**
+	 * Adds the areas of a text, or replaces them if the text was already added. Text whose value is empty is ignored by
+	 * queries, even if its value changes after it's added.
+	 */
+	public void addOrUpdateText(MapText text)
+	{
+		removeText(text);
+		List<Entry> entries = new ArrayList<>(text.areas == null ? 0 : text.areas.size());
+		if (text.areas != null)
+		{
+			for (Area area : text.areas)
+			{
+				Entry entry = new Entry(area, text);
+				addEntry(entry);
+				entries.add(entry);
+			}
+		}
+		textEntries.put(text, entries);
+	}
+
+	public boolean containsText(MapText text)
+	{
+		return textEntries.containsKey(text);
+	}
+
+	public void removeText(MapText text)
+	{
+		List<Entry> entries = textEntries.remove(text);
+		if (entries == null)
+		{
+			return;
+		}
+		for (Entry entry : entries)
+		{
+			forEachCell(entry.bounds, cell -> cell.remove(entry));
+		}
+	}
+
+	/**
+	 * @return True if the given area intersects a city's area or the area of a non-empty text.
+	 */
+	public boolean overlaps(Area area)
+	{
+		Entry query = new Entry(area, null);
+		if (query.bounds.isEmpty())
+		{
+			return false;
+		}
+		queryId++;
+		int xStart = toCellX(query.bounds.getMinX());
+		int xEnd = toCellX(query.bounds.getMaxX());
+		int yStart = toCellY(query.bounds.getMinY());
+		int yEnd = toCellY(query.bounds.getMaxY());
+		for (int y = yStart; y <= yEnd; y++)
+		{
+			for (int x = xStart; x <= xEnd; x++)
+			{
+				for (Entry entry : cells.get(y * cellsWide + x))
+				{
+					if (entry.lastQueryId == queryId)
+					{
+						continue;
+					}
+					entry.lastQueryId = queryId;
+					if (entry.text != null && entry.text.value.length() == 0)
+					{
+						continue;
+					}
+					if (mayOverlap(query, entry))
+					{
+						Area copy = new Area(entry.area);
+						copy.intersect(area);
+						if (!copy.isEmpty())
+						{
+							return true;
+						}
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private void addEntry(Entry entry)
+	{
+		forEachCell(entry.bounds, cell -> cell.add(entry));
+	}
+
+	private void forEachCell(Rectangle2D bounds, Consumer<List<Entry>> action)
+	{
+		if (bounds.isEmpty())
+		{
+			// An empty area can't overlap anything.
+			return;
+		}
+		for (int y = toCellY(bounds.getMinY()); y <= toCellY(bounds.getMaxY()); y++)
+		{
+			for (int x = toCellX(bounds.getMinX()); x <= toCellX(bounds.getMaxX()); x++)
+			{
+				action.accept(cells.get(y * cellsWide + x));
+			}
+		}
+	}
+
+	private int toCellX(double x)
+	{
+		return Math.max(0, Math.min(cellsWide - 1, (int) Math.floor(x / cellSize)));
+	}
+
+	private int toCellY(double y)
+	{
+		return Math.max(0, Math.min(cellsHigh - 1, (int) Math.floor(y / cellSize)));
+	}
+
+	private static boolean mayOverlap(Entry entry1, Entry entry2)
+	{
+		Rectangle2D b1 = entry1.bounds;
+		Rectangle2D b2 = entry2.bounds;
+		if (b1.getMaxX() < b2.getMinX() - epsilon || b2.getMaxX() < b1.getMinX() - epsilon || b1.getMaxY() < b2.getMinY() - epsilon
+				|| b2.getMaxY() < b1.getMinY() - epsilon)
+		{
+			return false;
+		}
+		if (entry1.corners == null || entry2.corners == null)
+		{
+			return true;
+		}
+		return !isSeparatedAlongSides(entry1.corners, entry2.corners) && !isSeparatedAlongSides(entry2.corners, entry1.corners);
+	}
+
+	/**
+	 * The separating axis test for two convex quadrilaterals: they don't overlap if, along the direction perpendicular to
+	 * one of their sides, their projections don't overlap.
+	 */
+	private static boolean isSeparatedAlongSides(double[] corners, double[] otherCorners)
+	{
+		for (int side = 0; side < 4; side++)
+		{
+			int next = (side + 1) % 4;
+			double axisX = -(corners[2 * next + 1] - corners[2 * side + 1]);
+			double axisY = corners[2 * next] - corners[2 * side];
+			double length = Math.sqrt(axisX * axisX + axisY * axisY);
+			if (length == 0)
+			{
+				continue;
+			}
+			axisX /= length;
+			axisY /= length;
+
+			double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+			double otherMin = Double.POSITIVE_INFINITY, otherMax = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < 8; i += 2)
+			{
+				double projection = corners[i] * axisX + corners[i + 1] * axisY;
+				min = Math.min(min, projection);
+				max = Math.max(max, projection);
+				double otherProjection = otherCorners[i] * axisX + otherCorners[i + 1] * axisY;
+				otherMin = Math.min(otherMin, otherProjection);
+				otherMax = Math.max(otherMax, otherProjection);
+			}
+			if (max < otherMin - epsilon || otherMax < min - epsilon)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return The corners of the area in order around it if it's a single convex polygon with 4 corners, such as a
+	 *         rotated rectangle, else null.
+	 */
+	private static double[] findQuadrilateralCorners(Area area)
+	{
+		double[] corners = new double[8];
+		double[] coords = new double[6];
+		int count = 0;
+		for (PathIterator iterator = area.getPathIterator(null); !iterator.isDone(); iterator.next())
+		{
+			int type = iterator.currentSegment(coords);
+			if (type == PathIterator.SEG_CLOSE)
+			{
+				continue;
+			}
+			if ((type == PathIterator.SEG_MOVETO) != (count == 0) || type == PathIterator.SEG_QUADTO || type == PathIterator.SEG_CUBICTO
+					|| count == 4)
+			{
+				return null;
+			}
+			corners[2 * count] = coords[0];
+			corners[2 * count + 1] = coords[1];
+			count++;
+		}
+		if (count != 4)
+		{
+			return null;
+		}
+
+		// The separating axis test only works for convex shapes, so check that the corners all turn the same way.
+		boolean turnsLeft = false;
+		for (int i = 0; i < 4; i++)
+		{
+			int previous = (i + 3) % 4;
+			int next = (i + 1) % 4;
+			double turn = (corners[2 * i] - corners[2 * previous]) * (corners[2 * next + 1] - corners[2 * i + 1])
+					- (corners[2 * i + 1] - corners[2 * previous + 1]) * (corners[2 * next] - corners[2 * i]);
+			if (turn == 0 || (i > 0 && (turn > 0) != turnsLeft))
+			{
+				return null;
+			}
+			turnsLeft = turn > 0;
+		}
+		return corners;
+	}
+}
@@ -33,6 +33,7 @@ import hoten.voronoi.Center;
 import hoten.voronoi.Corner;
 import hoten.voronoi.Edge;
 import nortantis.util.AssetsPath;
+import nortantis.util.ConcurrentHashMapF;
 import nortantis.util.Function0;
 import nortantis.util.Helper;
 import nortantis.util.ImageHelper;
@@ -62,6 +63,10 @@ public class TextDrawer
 	private BufferedImage landAndOceanBackground;
 	private CopyOnWriteArrayList<MapText> mapTexts;
 	private List<Area> cityAreas;
+	// The areas of cities and of text drawn so far, for finding where new text would overlap them.
+	private TextCollisionIndex collisionIndex;
+	// The size of the cells of collisionIndex, before multiplying by sizeMultiplyer.
+	private final double collisionIndexCellSize = 100;
 	Random r;
 	long originalSeed;
 	private NameGenerator placeNameGenerator;
@@ -76,6 +81,13 @@ public class TextDrawer
 	private Font riverFontScaled;
 	Set<String> namesGenerated;
 	
+	/**
+	 * Maps book file names to their contents so that books are only read from disk once per process.
+	 * Callers must copy the lists before modifying them.
+	 */
+	private static ConcurrentHashMapF<String, List<String>> nameListCache = new ConcurrentHashMapF<>();
+	private static ConcurrentHashMapF<String, List<Pair<String>>> stringPairsCache = new ConcurrentHashMapF<>();
+	
 	/**
 	 * 
 	 * @param settings The map settings to use. Some of these settings are for text drawing.
@@ -99,10 +111,15 @@ public class TextDrawer
 		List<Pair<String>> nounVerbPairs = new ArrayList<>();
 		for (String book : settings.books)
 		{
-			placeNames = readNameList(AssetsPath.get() + "/books/" + book + "_place_names.txt");
-			personNames = readNameList(AssetsPath.get() + "/books/" + book + "_person_names.txt");
-			nounAdjectivePairs.addAll(readStringPairs(AssetsPath.get() + "/books/" + book + "_noun_adjective_pairs.txt"));
-			nounVerbPairs.addAll(readStringPairs(AssetsPath.get() + "/books/" + book + "_noun_verb_pairs.txt"));
+			// NameGenerator modifies the lists it is given, so copy them out of the cache.
+			placeNames = new ArrayList<>(nameListCache.getOrCreate(AssetsPath.get() + "/books/" + book + "_place_names.txt", 
+					() -> readNameList(AssetsPath.get() + "/books/" + book + "_place_names.txt")));
+			personNames = new ArrayList<>(nameListCache.getOrCreate(AssetsPath.get() + "/books/" + book + "_person_names.txt", 
+					() -> readNameList(AssetsPath.get() + "/books/" + book + "_person_names.txt")));
+			nounAdjectivePairs.addAll(stringPairsCache.getOrCreate(AssetsPath.get() + "/books/" + book + "_noun_adjective_pairs.txt", 
+					() -> readStringPairs(AssetsPath.get() + "/books/" + book + "_noun_adjective_pairs.txt")));
+			nounVerbPairs.addAll(stringPairsCache.getOrCreate(AssetsPath.get() + "/books/" + book + "_noun_verb_pairs.txt", 
+					() -> readStringPairs(AssetsPath.get() + "/books/" + book + "_noun_verb_pairs.txt")));
 		}
 				
 		placeNameGenerator = new NameGenerator(r, placeNames, maxWordLengthComparedToAverage);
@@ -123,7 +140,7 @@ public class TextDrawer
 
 	}
 	
-	private List<Pair<String>> readStringPairs(String filename)
+	private static List<Pair<String>> readStringPairs(String filename)
 	{
 		List<Pair<String>> result = new ArrayList<>();
 		try(BufferedReader br = new BufferedReader(new FileReader(new File(filename)))) 
@@ -158,7 +175,7 @@ public class TextDrawer
 		return result;
 	}
 	
-	private List<String> readNameList(String filename)
+	private static List<String> readNameList(String filename)
 	{
 		List<String> result = new ArrayList<>();
 		try(BufferedReader br = new BufferedReader(new FileReader(new File(filename)))) 
@@ -185,6 +202,15 @@ public class TextDrawer
 	{				
 		this.landAndOceanBackground = landAndOceanBackground;
 		cityAreas = cityDrawTasks.stream().map(drawTask -> drawTask.createArea()).collect(Collectors.toList());;
+		collisionIndex = new TextCollisionIndex(graph.getWidth(), graph.getHeight(), collisionIndexCellSize * sizeMultiplyer);
+		for (Area area : cityAreas)
+		{
+			collisionIndex.addCity(area);
+		}
+		for (MapText text : mapTexts)
+		{
+			collisionIndex.addOrUpdateText(text);
+		}
 
 		if (settings.edits.text.size() > 0)
 		{
@@ -262,7 +288,7 @@ public class TextDrawer
 						MapText text = createMapText(generateNameOfType(TextType.Other_mountains, OtherMountainsType.TwinPeaks, true), location, 0.0, TextType.Other_mountains);
 						if (drawNameRotated(map, g, mountainGroupYOffset * settings.resolution, true, text))
 						{
-							mapTexts.add(text);
+							addMapText(text);
 						}
 					}
 					else
@@ -278,7 +304,7 @@ public class TextDrawer
 					MapText text = createMapText(generateNameOfType(TextType.Other_mountains, OtherMountainsType.Peak, true), location, 0.0, TextType.Other_mountains);
 					if (drawNameRotated(map, g, mountainGroupYOffset * settings.resolution, true, text))
 					{
-						mapTexts.add(text);
+						addMapText(text);
 					}
 				}
 			}
@@ -336,7 +362,7 @@ public class TextDrawer
 				g.setFont(regionFontScaled);
 				Center center = graph.findClosestCenter(textLocation.x, textLocation.y);
 				Set<Center> plateCenters;
-				if (center.isWater)
+				if (center.isWater())
 				{
 					plateCenters = findPlateCentersWaterOnly(graph, center.tectonicPlate);
 				}
@@ -918,26 +944,39 @@ public class TextDrawer
 	 * Draws the given name to the map with the area around the name drawn from landAndOceanBackground
 	 * to make it readable when the name is drawn on top of mountains or trees.
 	 */
-	private void drawBackgroundBlending(BufferedImage map, Graphics2D g, int width, int height,
+	private void drawBackgroundBlending(BufferedImage map, int width, int height,
 			Point upperLeftCorner, double angle)
 	{		
 		int kernelSize = (int)(backGroundBlendKernelBaseSize * sizeMultiplyer);
 		int padding = kernelSize/2;
 		
-		BufferedImage textBG = new BufferedImage(width + padding*2, height + padding*2, 
-				BufferedImage.TYPE_BYTE_GRAY);
-				
-		Graphics2D bG = textBG.createGraphics();
-		bG.setFont(g.getFont());
-		bG.setColor(Color.white);
-		bG.fillRect(padding, padding, width, height);
-		
-		// Use convolution to make a hazy background for the text.
-		BufferedImage haze = ImageHelper.convolveGrayscale(textBG, ImageHelper.createGaussianKernel(kernelSize), true);
+		BufferedImage haze = getBackgroundBlendingHaze(width, height, kernelSize);
 		
 		ImageHelper.combineImagesWithMaskInRegion(map, landAndOceanBackground, haze, 
 				((int)upperLeftCorner.x) - padding, (int)(upperLeftCorner.y) - padding, angle);
 	}
+	
+	/**
+	 * Creates a hazy white rectangle of the given size on a black background, padded by half the kernel size on each 
+	 * side, for blending the background under text. Labels share a few heights and many widths, so the hazes are cached 
+	 * in ImageCache by size rather than blurred again for every label. Hazes in the cache must not be modified.
+	 */
+	private static BufferedImage getBackgroundBlendingHaze(int width, int height, int kernelSize)
+	{
+		return ImageCache.getInstance().getOrCreateImage("text haze " + width + "x" + height + " kernel " + kernelSize, () ->
+		{
+			int padding = kernelSize/2;
+			BufferedImage textBG = new BufferedImage(width + padding*2, height + padding*2, 
+					BufferedImage.TYPE_BYTE_GRAY);
+					
+			Graphics2D bG = textBG.createGraphics();
+			bG.setColor(Color.white);
+			bG.fillRect(padding, padding, width, height);
+			
+			// Use convolution to make a hazy background for the text.
+			return ImageHelper.convolveGrayscale(textBG, ImageHelper.createGaussianKernel(kernelSize), true);
+		});
+	}
 
 	private void drawNameHorizontalAtPoint(Graphics2D g, String name, Point location, boolean boldBackground)
 	{	
@@ -993,7 +1032,7 @@ public class TextDrawer
 		MapText text = createMapText(name, centroid, 0.0, textType);
 		if (drawNameHorizontal(map, g, locations, graph, boldBackground, enableBoundsChecking, text))
 		{
-			mapTexts.add(text);
+			addMapText(text);
 			return true;
 		}
 		if (locations.size() > 0)
@@ -1014,7 +1053,7 @@ public class TextDrawer
 				text = createMapText(name, loc, 0.0, textType);
 				if (drawNameHorizontal(map, g, locations, graph, boldBackground, enableBoundsChecking, text))
 				{
-					mapTexts.add(text);
+					addMapText(text);
 					return true;
 				}
 			}
@@ -1084,13 +1123,13 @@ public class TextDrawer
 			{
 				return false;
 			}
-			text.areas = Arrays.asList(area1, area2);
+			setAreas(text, Arrays.asList(area1, area2));
 
-			drawBackgroundBlending(map, g, (int)bounds1.getWidth(), (int)bounds1.getHeight(), ulCorner1, 0);
+			drawBackgroundBlending(map, (int)bounds1.getWidth(), (int)bounds1.getHeight(), ulCorner1, 0);
 			drawNameHorizontalAtPoint(g, nameLine1, new Point(ulCorner1.x, 
 					ulCorner1.y + metrics.getAscent()), boldBackground);
 			
-			drawBackgroundBlending(map, g, (int)bounds2.getWidth(), (int)bounds2.getHeight(), ulCorner2, 0);
+			drawBackgroundBlending(map, (int)bounds2.getWidth(), (int)bounds2.getHeight(), ulCorner2, 0);
 			drawNameHorizontalAtPoint(g, nameLine2, new Point(ulCorner2.x, 
 					ulCorner2.y + metrics.getAscent()), boldBackground);
 		}
@@ -1106,11 +1145,11 @@ public class TextDrawer
 				return false;
 			}
 			
-			text.areas = Collections.singletonList(area);
+			setAreas(text, Collections.singletonList(area));
 			
 			Point boundsLocation = new Point(bounds.getLocation().x, bounds.getLocation().y);
 			
-			drawBackgroundBlending(map, g, width, height, boundsLocation, 0);
+			drawBackgroundBlending(map, width, height, boundsLocation, 0);
 			
 			drawNameHorizontalAtPoint(g, text.value, new Point(boundsLocation.x, 
 					boundsLocation.y + metrics.getAscent()), boldBackground);
@@ -1178,7 +1217,7 @@ public class TextDrawer
 		MapText text = createMapText(name, centroid, angle, type);
 		if (drawNameRotated(map, g, riseOffset, enableBoundsChecking, text))
 		{
-			mapTexts.add(text);
+			addMapText(text);
 		}
 	}
 	
@@ -1232,13 +1271,13 @@ public class TextDrawer
 				return false;
 			}
 		}
-		text.areas = Collections.singletonList(area);
+		setAreas(text, Collections.singletonList(area));
 		// Update the text location with the offset.
 		text.location = new Point(pivot.x / settings.resolution, pivot.y / settings.resolution);
 		
 		Point boundsLocation = new Point(bounds.getLocation().x, bounds.getLocation().y);
 		
-		drawBackgroundBlending(map, g, (int)bounds.getWidth(), (int)bounds.getHeight(), 
+		drawBackgroundBlending(map, (int)bounds.getWidth(), (int)bounds.getHeight(), 
 				boundsLocation, text.angle);
 		
 		//g.drawRect(bounds.x, bounds.y, bounds.width, bounds.height);
@@ -1254,7 +1293,7 @@ public class TextDrawer
 		Set<Center> plateCenters = new HashSet<Center>();
 		for (Center c : plate.centers)
 		{
-			if (c.isWater)
+			if (c.isWater())
 				plateCenters.add(c);
 		}
 		return plateCenters;
@@ -1276,30 +1315,32 @@ public class TextDrawer
 	
 	private boolean overlapsExistingTextOrCityOrIsOffMap(Area bounds)
 	{
-		for (MapText mp : mapTexts)
+		// Empty text, which is text the user deleted, is ignored by the index.
+		if (collisionIndex.overlaps(bounds))
+			return true;
+		
+		return !graphBounds.contains(bounds.getBounds2D());
+	}
+	
+	private void addMapText(MapText text)
+	{
+		mapTexts.add(text);
+		if (collisionIndex != null)
 		{
-			// Ignore empty text and ignore edited text.
-			if (mp.value.length() > 0)
-			{
-				for (Area a : mp.areas)
-				{
-					Area aCopy = new Area(a);
-					aCopy.intersect(bounds);
-					if (!aCopy.isEmpty())
-						return true;
-				}
-			}
+			collisionIndex.addOrUpdateText(text);
 		}
-		
-		for (Area a : cityAreas)
+	}
+	
+	/**
+	 * Sets the areas of text that was drawn, moving it in collisionIndex if it's already there.
+	 */
+	private void setAreas(MapText text, List<Area> areas)
+	{
+		text.areas = areas;
+		if (collisionIndex != null && collisionIndex.containsText(text))
 		{
-			Area aCopy = new Area(a);
-			aCopy.intersect(bounds);
-			if (!aCopy.isEmpty())
-				return true;
+			collisionIndex.addOrUpdateText(text);
 		}
-		
-		return !graphBounds.contains(bounds.getBounds2D());
 	}
 	
 	/**
@@ -1357,6 +1398,8 @@ public class TextDrawer
 	public void setMapTexts(CopyOnWriteArrayList<MapText> text)
 	{
 		this.mapTexts = text;
+		// drawText builds a new index from the new text.
+		collisionIndex = null;
 	}
 	
 }
@@ -0,0 +1,176 @@
+package nortantis.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import nortantis.util.Helper;
+
+/**
+ * A minimal micro-benchmark harness. Each benchmark is run for some warm-up iterations so the JIT can compile it,
+ * then timed over some measurement iterations.
+ *
+ * Each operation returns its result, and the results are folded into a field that is written after the measurement,
+ * so that the JIT can't remove an operation whose result would otherwise be unused.
+ *
+ * Allocations are summed over all live threads, so work done in thread pools (such as the JTransforms FFTs) is
+ * included. Allocations by threads that exit during a measurement are not counted.
+ */
+public class Benchmark
+{
+	private final int warmupIterations;
+	private final int measurementIterations;
+	/**
+	 * The identity hash codes of all results, combined. Writing this after each run keeps the results alive.
+	 */
+	private volatile long blackhole;
+
+	public Benchmark(int warmupIterations, int measurementIterations)
+	{
+		if (measurementIterations < 1)
+			throw new IllegalArgumentException("There must be at least one measurement iteration.");
+		this.warmupIterations = warmupIterations;
+		this.measurementIterations = measurementIterations;
+	}
+
+	public Result run(String name, Supplier<?> operation)
+	{
+		long sink = 0;
+		for (int i = 0; i < warmupIterations; i++)
+		{
+			sink = sink * 31 + System.identityHashCode(operation.get());
+		}
+		blackhole = sink;
+		System.gc();
+
+		long allocatedBefore = getAllocatedBytesOfAllThreads();
+		long startNanos = System.nanoTime();
+		for (int i = 0; i < measurementIterations; i++)
+		{
+			sink = sink * 31 + System.identityHashCode(operation.get());
+		}
+		long elapsedNanos = System.nanoTime() - startNanos;
+		long allocatedAfter = getAllocatedBytesOfAllThreads();
+		blackhole = sink;
+
+		Result result = new Result(name);
+		result.secondsPerOp = (elapsedNanos / 1e9) / measurementIterations;
+		if (allocatedBefore >= 0 && allocatedAfter >= 0)
+		{
+			result.allocatedBytesPerOp = (allocatedAfter - allocatedBefore) / measurementIterations;
+		}
+		else
+		{
+			result.allocatedBytesPerOp = -1;
+		}
+		return result;
+	}
+
+	/**
+	 * @return A value combined from the results of every operation run so far. It means nothing, but reading it shows the
+	 *         results were used.
+	 */
+	public long getBlackhole()
+	{
+		return blackhole;
+	}
+
+	/**
+	 * Writes results to a CSV file, one row per result, after a header row.
+	 */
+	public static void writeCsv(String file, List<Result> results)
+	{
+		StringBuilder b = new StringBuilder(Result.getCsvHeader()).append("\n");
+		for (Result result : results)
+		{
+			b.append(result.toCsv()).append("\n");
+		}
+		Helper.writeToFile(file, b.toString());
+	}
+
+	/**
+	 * Parses a comma separated list of integers from a command line option, such as "1024,4096".
+	 */
+	public static List<Integer> parseIntList(String str)
+	{
+		List<Integer> result = new ArrayList<>();
+		for (String part : str.split(","))
+		{
+			result.add(Integer.parseInt(part.trim()));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns -1 if the JVM can't measure allocations.
+	 */
+	private static long getAllocatedBytesOfAllThreads()
+	{
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+		{
+			return -1;
+		}
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+		if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled())
+		{
+			return -1;
+		}
+
+		long sum = 0;
+		for (long allocated : sunBean.getThreadAllocatedBytes(bean.getAllThreadIds()))
+		{
+			// -1 means the thread exited before it could be measured.
+			if (allocated > 0)
+			{
+				sum += allocated;
+			}
+		}
+		return sum;
+	}
+
+	public static class Result
+	{
+		public final String name;
+		public double secondsPerOp;
+		/**
+		 * -1 if allocations couldn't be measured.
+		 */
+		public long allocatedBytesPerOp;
+
+		public Result(String name)
+		{
+			this.name = name;
+		}
+
+		public double getOpsPerSecond()
+		{
+			return 1.0 / secondsPerOp;
+		}
+
+		public double getAllocationRateMBPerSecond()
+		{
+			return (allocatedBytesPerOp / (1024.0 * 1024.0)) / secondsPerOp;
+		}
+
+		public static String getCsvHeader()
+		{
+			return "benchmark,opsPerSecond,millisecondsPerOp,allocatedMBPerOp,allocationRateMBPerSecond";
+		}
+
+		public String toCsv()
+		{
+			return name + "," + getOpsPerSecond() + "," + (secondsPerOp * 1000.0) + "," + (allocatedBytesPerOp / (1024.0 * 1024.0)) + ","
+					+ getAllocationRateMBPerSecond();
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%-60s %10.3f ops/s %12.3f ms/op %12.1f MB/op %12.1f MB/s", name, getOpsPerSecond(), secondsPerOp * 1000.0,
+					allocatedBytesPerOp / (1024.0 * 1024.0), getAllocationRateMBPerSecond());
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package nortantis.benchmark;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import hoten.voronoi.Center;
+import hoten.voronoi.SweepHullVoronoi;
+import hoten.voronoi.VoronoiDiagram;
+import hoten.voronoi.VoronoiGraph;
+import hoten.voronoi.nodename.as3delaunay.Voronoi;
+import nortantis.Biome;
+import nortantis.util.Logger;
+
+/**
+ * Measures throughput and allocation rate of building the Voronoi graph that maps are made from, at several numbers of
+ * sites.
+ *
+ * Usage: GraphBenchmark [-sites 10000,50000,200000] [-cases voronoiFortune,voronoiSweepHull,assembleGraph] [-warmup n]
+ * [-iterations n] [-csv file]
+ *
+ * voronoiFortune and voronoiSweepHull time creating the Voronoi diagram with each engine. assembleGraph times turning
+ * a diagram into Centers, Corners, and Edges, which is where corners are merged and adjacency is built.
+ */
+public class GraphBenchmark
+{
+	private static final long seed = 42;
+	private static final double width = 4096;
+	private static final double height = 4096;
+
+	private static Map<String, IntFunction<Supplier<?>>> createCases()
+	{
+		Map<String, IntFunction<Supplier<?>>> cases = new LinkedHashMap<>();
+
+		cases.put("voronoiFortune", numSites -> () -> new Voronoi(numSites, width, height, new Random(seed), null).getEdgeVertex0(0));
+
+		cases.put("voronoiSweepHull", numSites -> () -> new SweepHullVoronoi(numSites, width, height, new Random(seed)));
+
+		cases.put("assembleGraph", numSites ->
+		{
+			VoronoiDiagram diagram = new Voronoi(numSites, width, height, new Random(seed), null);
+			// Make the diagram clip its edges now so that it isn't part of the first measurement.
+			diagram.getEdgeVertex0(0);
+			return () ->
+			{
+				AssemblyOnlyGraph graph = new AssemblyOnlyGraph();
+				graph.initVoronoiGraph(diagram, 0, false);
+				return graph;
+			};
+		});
+
+		return cases;
+	}
+
+	/**
+	 * A graph that only does the steps of VoronoiGraph.initVoronoiGraph which don't depend on elevation or biomes.
+	 */
+	private static class AssemblyOnlyGraph extends VoronoiGraph
+	{
+		AssemblyOnlyGraph()
+		{
+			super(new Random(seed), 1.0);
+		}
+
+		@Override
+		protected Biome getBiome(Center p)
+		{
+			return Biome.OCEAN;
+		}
+
+		@Override
+		protected Color getColor(Biome biome)
+		{
+			return Color.black;
+		}
+
+		@Override
+		protected void assignCornerElevations()
+		{
+		}
+
+		@Override
+		protected void assignOceanCoastAndLand()
+		{
+		}
+	}
+
+	public static List<Benchmark.Result> runAll(List<String> caseNames, List<Integer> siteCounts, Benchmark benchmark)
+	{
+		Map<String, IntFunction<Supplier<?>>> cases = createCases();
+		List<Benchmark.Result> results = new ArrayList<>();
+		for (String caseName : caseNames)
+		{
+			IntFunction<Supplier<?>> graphCase = cases.get(caseName);
+			if (graphCase == null)
+				throw new IllegalArgumentException("Unrecognized case: " + caseName + ". Options are: " + cases.keySet());
+
+			for (int numSites : siteCounts)
+			{
+				String name = caseName + " " + numSites + " sites";
+				Benchmark.Result result;
+				try
+				{
+					result = benchmark.run(name, graphCase.apply(numSites));
+				}
+				catch (OutOfMemoryError e)
+				{
+					Logger.println(name + ": out of memory. Skipping.");
+					continue;
+				}
+				Logger.println(result.toString());
+				results.add(result);
+			}
+		}
+		return results;
+	}
+
+	public static void main(String[] args)
+	{
+		List<Integer> siteCounts = Arrays.asList(10000, 50000, 200000);
+		List<String> caseNames = new ArrayList<>(createCases().keySet());
+		int warmupIterations = 2;
+		int measurementIterations = 5;
+		String csvFile = null;
+
+		for (int i = 0; i + 1 < args.length; i += 2)
+		{
+			switch (args[i])
+			{
+			case "-sites":
+				siteCounts = Benchmark.parseIntList(args[i + 1]);
+				break;
+			case "-cases":
+				caseNames = Arrays.asList(args[i + 1].split(","));
+				break;
+			case "-warmup":
+				warmupIterations = Integer.parseInt(args[i + 1]);
+				break;
+			case "-iterations":
+				measurementIterations = Integer.parseInt(args[i + 1]);
+				break;
+			case "-csv":
+				csvFile = args[i + 1];
+				break;
+			default:
+				throw new IllegalArgumentException("Unrecognized option: " + args[i]);
+			}
+		}
+
+		List<Benchmark.Result> results = runAll(caseNames, siteCounts, new Benchmark(warmupIterations, measurementIterations));
+		if (csvFile != null)
+		{
+			Benchmark.writeCsv(csvFile, results);
+		}
+	}
+}
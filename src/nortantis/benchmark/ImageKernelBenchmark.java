@@ -0,0 +1,351 @@
+package nortantis.benchmark;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import nortantis.BackgroundGenerator;
+import nortantis.FractalBGGenerator;
+import nortantis.util.ConvolutionPlanner;
+import nortantis.util.Helper;
+import nortantis.util.ImageHelper;
+import nortantis.util.ImageHelper.ColorifyAlgorithm;
+import nortantis.util.Logger;
+
+/**
+ * Measures throughput and allocation rate of the image kernels that dominate map creation time, at several
+ * resolutions and image types.
+ *
+ * Usage: ImageKernelBenchmark [-sizes 1024,4096,8192] [-types TYPE_BYTE_GRAY,TYPE_INT_RGB,...]
+ * [-kernels convolveGrayscale,maskWithColor,...] [-warmup n] [-iterations n] [-csv file]
+ *
+ * Kernels only run for the image types they accept. For example, colorifyMulti is only run for TYPE_BYTE_GRAY.
+ */
+public class ImageKernelBenchmark
+{
+	private static final long seed = 42;
+	private static final int blurLevel = 30;
+	private static final int numColors = 16;
+
+	private interface KernelCase
+	{
+		boolean supportsType(int imageType);
+
+		/**
+		 * Creates the inputs for one size and type, and returns the operation to time.
+		 */
+		Supplier<?> create(int size, int imageType);
+	}
+
+	private static Map<String, KernelCase> createKernelCases()
+	{
+		Map<String, KernelCase> cases = new LinkedHashMap<>();
+
+		cases.put("convolveGrayscale", new KernelCase()
+		{
+			public boolean supportsType(int imageType)
+			{
+				return imageType == BufferedImage.TYPE_BYTE_GRAY || imageType == BufferedImage.TYPE_USHORT_GRAY;
+			}
+
+			public Supplier<?> create(int size, int imageType)
+			{
+				BufferedImage image = createRandomImage(size, size, imageType);
+				float[][] kernel = ImageHelper.createGaussianKernel(blurLevel);
+				return () -> ImageHelper.convolveGrayscale(image, kernel, true);
+			}
+		});
+
+		// The same convolution as above, but always done with FFTs, to compare with the method ConvolutionPlanner chooses.
+		cases.put("convolveGrayscaleFFT", new KernelCase()
+		{
+			public boolean supportsType(int imageType)
+			{
+				return imageType == BufferedImage.TYPE_BYTE_GRAY || imageType == BufferedImage.TYPE_USHORT_GRAY;
+			}
+
+			public Supplier<?> create(int size, int imageType)
+			{
+				BufferedImage image = createRandomImage(size, size, imageType);
+				float[][] kernel = ImageHelper.createGaussianKernel(blurLevel);
+				return () -> ImageHelper.convolveGrayscale(image, kernel, true, ConvolutionPlanner.Method.FFT);
+			}
+		});
+
+		cases.put("maskWithColor", new KernelCase()
+		{
+			public boolean supportsType(int imageType)
+			{
+				return true;
+			}
+
+			public Supplier<?> create(int size, int imageType)
+			{
+				BufferedImage image = createRandomImage(size, size, imageType);
+				BufferedImage mask = createRandomImage(size, size, BufferedImage.TYPE_BYTE_GRAY);
+				return () -> ImageHelper.maskWithColor(image, Color.black, mask, false);
+			}
+		});
+
+		cases.put("maskWithMultipleColors", new KernelCase()
+		{
+			public boolean supportsType(int imageType)
+			{
+				return true;
+			}
+
+			public Supplier<?> create(int size, int imageType)
+			{
+				BufferedImage image = createRandomImage(size, size, imageType);
+				BufferedImage mask = createRandomImage(size, size, BufferedImage.TYPE_BYTE_GRAY);
+				BufferedImage colorIndexes = createRandomIndexImage(size, size, numColors);
+				Color[] colors = createRandomColors(numColors);
+				return () -> ImageHelper.maskWithMultipleColors(image, colors, colorIndexes, mask, true);
+			}
+		});
+
+		cases.put("maskWithImage", new KernelCase()
+		{
+			public boolean supportsType(int imageType)
+			{
+				return true;
+			}
+
+			public Supplier<?> create(int size, int imageType)
+			{
+				BufferedImage image1 = createRandomImage(size, size, imageType);
+				BufferedImage image2 = createRandomImage(size, size, imageType);
+				BufferedImage mask = createRandomImage(size, size, BufferedImage.TYPE_BYTE_GRAY);
+				return () -> ImageHelper.maskWithImage(image1, image2, mask);
+			}
+		});
+
+		cases.put("colorifyMulti", new KernelCase()
+		{
+			public boolean supportsType(int imageType)
+			{
+				return imageType == BufferedImage.TYPE_BYTE_GRAY;
+			}
+
+			public Supplier<?> create(int size, int imageType)
+			{
+				BufferedImage image = createRandomImage(size, size, imageType);
+				BufferedImage colorIndexes = createRandomIndexImage(size, size, numColors);
+				Color[] colors = createRandomColors(numColors);
+				return () -> ImageHelper.colorifyMulti(image, colors, colorIndexes, ColorifyAlgorithm.algorithm3);
+			}
+		});
+
+		cases.put("matchHistogram", new KernelCase()
+		{
+			public boolean supportsType(int imageType)
+			{
+				return true;
+			}
+
+			public Supplier<?> create(int size, int imageType)
+			{
+				BufferedImage target = createRandomImage(size, size, imageType);
+				BufferedImage source = createRandomImage(size, size, imageType);
+				return () -> ImageHelper.matchHistogram(target, source);
+			}
+		});
+
+		cases.put("FractalBGGenerator.generate", new KernelCase()
+		{
+			public boolean supportsType(int imageType)
+			{
+				// The generator always creates TYPE_BYTE_GRAY images.
+				return imageType == BufferedImage.TYPE_BYTE_GRAY;
+			}
+
+			public Supplier<?> create(int size, int imageType)
+			{
+				return () -> FractalBGGenerator.generate(new Random(seed), 1.3f, size, size, 0.75f);
+			}
+		});
+
+		cases.put("BackgroundGenerator.generateUsingWhiteNoiseConvolution", new KernelCase()
+		{
+			public boolean supportsType(int imageType)
+			{
+				return imageType == BufferedImage.TYPE_BYTE_GRAY || imageType == BufferedImage.TYPE_USHORT_GRAY
+						|| imageType == BufferedImage.TYPE_INT_RGB;
+			}
+
+			public Supplier<?> create(int size, int imageType)
+			{
+				BufferedImage texture = createRandomImage(Math.min(size, 512), Math.min(size, 512), imageType);
+				return () -> BackgroundGenerator.generateUsingWhiteNoiseConvolution(new Random(seed), texture, size, size);
+			}
+		});
+
+		return cases;
+	}
+
+	private static BufferedImage createRandomImage(int width, int height, int imageType)
+	{
+		Random rand = new Random(seed);
+		BufferedImage image = new BufferedImage(width, height, imageType);
+		if (ImageHelper.isSupportedGrayscaleType(image))
+		{
+			WritableRaster raster = image.getRaster();
+			int maxPixelValue = ImageHelper.getMaxPixelValue(image);
+			for (int y = 0; y < height; y++)
+				for (int x = 0; x < width; x++)
+				{
+					raster.setSample(x, y, 0, rand.nextInt(maxPixelValue + 1));
+				}
+		}
+		else
+		{
+			for (int y = 0; y < height; y++)
+				for (int x = 0; x < width; x++)
+				{
+					image.setRGB(x, y, rand.nextInt());
+				}
+		}
+		return image;
+	}
+
+	private static BufferedImage createRandomIndexImage(int width, int height, int numIndexes)
+	{
+		Random rand = new Random(seed);
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		WritableRaster raster = image.getRaster();
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+			{
+				raster.setSample(x, y, 0, rand.nextInt(numIndexes));
+			}
+		return image;
+	}
+
+	private static Color[] createRandomColors(int count)
+	{
+		Random rand = new Random(seed);
+		Color[] colors = new Color[count];
+		for (int i = 0; i < count; i++)
+		{
+			colors[i] = new Color(rand.nextInt(256), rand.nextInt(256), rand.nextInt(256));
+		}
+		return colors;
+	}
+
+	private static int parseImageType(String name)
+	{
+		switch (name)
+		{
+		case "TYPE_BYTE_GRAY":
+			return BufferedImage.TYPE_BYTE_GRAY;
+		case "TYPE_USHORT_GRAY":
+			return BufferedImage.TYPE_USHORT_GRAY;
+		case "TYPE_INT_RGB":
+			return BufferedImage.TYPE_INT_RGB;
+		case "TYPE_INT_ARGB":
+			return BufferedImage.TYPE_INT_ARGB;
+		default:
+			throw new IllegalArgumentException("Unsupported image type: " + name);
+		}
+	}
+
+	public static List<Benchmark.Result> runAll(List<String> kernelNames, List<Integer> sizes, List<Integer> imageTypes, Benchmark benchmark)
+	{
+		Map<String, KernelCase> cases = createKernelCases();
+		List<Benchmark.Result> results = new ArrayList<>();
+		for (String kernelName : kernelNames)
+		{
+			KernelCase kernelCase = cases.get(kernelName);
+			if (kernelCase == null)
+				throw new IllegalArgumentException("Unrecognized kernel: " + kernelName + ". Options are: " + cases.keySet());
+
+			for (int size : sizes)
+			{
+				for (int imageType : imageTypes)
+				{
+					if (!kernelCase.supportsType(imageType))
+					{
+						continue;
+					}
+
+					String name = kernelName + " " + size + "x" + size + " " + ImageHelper.bufferedImageTypeToString(imageType);
+					Benchmark.Result result;
+					try
+					{
+						result = benchmark.run(name, kernelCase.create(size, imageType));
+					}
+					catch (OutOfMemoryError e)
+					{
+						Logger.println(name + ": out of memory. Skipping.");
+						continue;
+					}
+					Logger.println(result.toString());
+					results.add(result);
+				}
+			}
+		}
+		return results;
+	}
+
+	public static void main(String[] args)
+	{
+		List<Integer> sizes = Arrays.asList(1024, 4096, 8192);
+		List<Integer> imageTypes = Arrays.asList(BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_GRAY, BufferedImage.TYPE_INT_RGB,
+				BufferedImage.TYPE_INT_ARGB);
+		List<String> kernelNames = new ArrayList<>(createKernelCases().keySet());
+		int warmupIterations = 2;
+		int measurementIterations = 5;
+		String csvFile = null;
+
+		for (int i = 0; i + 1 < args.length; i += 2)
+		{
+			switch (args[i])
+			{
+			case "-sizes":
+				sizes = Benchmark.parseIntList(args[i + 1]);
+				break;
+			case "-types":
+				imageTypes = new ArrayList<>();
+				for (String name : args[i + 1].split(","))
+				{
+					imageTypes.add(parseImageType(name.trim()));
+				}
+				break;
+			case "-kernels":
+				kernelNames = Arrays.asList(args[i + 1].split(","));
+				break;
+			case "-warmup":
+				warmupIterations = Integer.parseInt(args[i + 1]);
+				break;
+			case "-iterations":
+				measurementIterations = Integer.parseInt(args[i + 1]);
+				break;
+			case "-csv":
+				csvFile = args[i + 1];
+				break;
+			default:
+				throw new IllegalArgumentException("Unrecognized option: " + args[i]);
+			}
+		}
+
+		try
+		{
+			List<Benchmark.Result> results = runAll(kernelNames, sizes, imageTypes, new Benchmark(warmupIterations, measurementIterations));
+			if (csvFile != null)
+			{
+				Benchmark.writeCsv(csvFile, results);
+			}
+		}
+		finally
+		{
+			ImageHelper.shutdownThreadPool();
+		}
+	}
+}
@@ -507,7 +507,7 @@ public class IconTool extends EditorTool
 	private Set<Center> getSelectedLandCenters(java.awt.Point point)
 	{
 		Set<Center> selected = getSelectedCenters(point);
-		return selected.stream().filter(c -> !c.isWater).collect(Collectors.toSet());
+		return selected.stream().filter(c -> !c.isWater()).collect(Collectors.toSet());
 	}
 
 	@Override
@@ -554,7 +554,7 @@ public class IconTool extends EditorTool
 	
 	private Set<Edge> filterOutOceanAndCoastEdges(Set<Edge> edges)
 	{
-		return edges.stream().filter(e -> (e.d0 == null || !e.d0.isWater ) && (e.d1 == null || !e.d1.isWater)).collect(Collectors.toSet());
+		return edges.stream().filter(e -> (e.d0 == null || !e.d0.isWater() ) && (e.d1 == null || !e.d1.isWater())).collect(Collectors.toSet());
 	}
 
 	@Override
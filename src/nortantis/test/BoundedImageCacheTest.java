@@ -0,0 +1,98 @@
+package nortantis.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+import nortantis.util.BoundedImageCache;
+
+public class BoundedImageCacheTest
+{
+	@Test
+	public void evictsLeastRecentlyUsedImages()
+	{
+		// Each image is 10 * 10 * 4 = 400 bytes.
+		BufferedImage a = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+		BufferedImage b = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+		BufferedImage c = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+		assertEquals(400, BoundedImageCache.getSizeInBytes(a));
+
+		BoundedImageCache<String> cache = new BoundedImageCache<>(800, false);
+		cache.put("a", a);
+		cache.put("b", b);
+		assertSame(a, cache.get("a"));
+		cache.put("c", c);
+
+		// b was used least recently.
+		assertFalse(cache.containsKey("b"));
+		assertNull(cache.get("b"));
+		assertSame(a, cache.get("a"));
+		assertSame(c, cache.get("c"));
+		assertEquals(800, cache.getResidentBytes());
+		assertEquals(3, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getEvictionCount());
+
+		assertSame(b, cache.getOrCreate("b", () -> b));
+		assertEquals(800, cache.getResidentBytes());
+		assertEquals(2, cache.size());
+
+		cache.setMaxBytes(0);
+		assertEquals(0, cache.getResidentBytes());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void imagesLargerThanTheBudgetDontEvictOthers()
+	{
+		BufferedImage a = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+		BufferedImage big = new BufferedImage(20, 20, BufferedImage.TYPE_INT_ARGB);
+		BoundedImageCache<String> cache = new BoundedImageCache<>(800, false);
+		cache.put("a", a);
+		cache.put("big", big);
+		assertSame(a, cache.get("a"));
+		assertFalse(cache.containsKey("big"));
+		assertEquals(400, cache.getResidentBytes());
+		assertEquals(0, cache.getEvictionCount());
+
+		// Replacing an image with one too big for the budget drops the old one.
+		cache.put("a", big);
+		assertFalse(cache.containsKey("a"));
+		assertEquals(0, cache.getResidentBytes());
+
+		BoundedImageCache<String> spilling = new BoundedImageCache<>(800, true);
+		spilling.put("a", a);
+		spilling.put("big", big);
+		assertEquals(400, spilling.getResidentBytes());
+		// big is strongly reachable from this test, so its soft reference can't have been cleared.
+		assertSame(big, spilling.get("big"));
+		assertSame(a, spilling.get("a"));
+		assertEquals(0, spilling.getEvictionCount());
+	}
+
+	@Test
+	public void evictedImagesAreFoundThroughSoftReferences()
+	{
+		BufferedImage a = new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY);
+		BufferedImage b = new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY);
+		BoundedImageCache<String> cache = new BoundedImageCache<>(100, true);
+		cache.put("a", a);
+		cache.put("b", b);
+		assertEquals(1, cache.getEvictionCount());
+
+		// a is strongly reachable from this test, so its soft reference can't have been cleared.
+		assertTrue(cache.containsKey("a"));
+		assertSame(a, cache.get("a"));
+		assertEquals(1, cache.getSoftHitCount());
+		// Bringing a back evicted b.
+		assertEquals(100, cache.getResidentBytes());
+		assertSame(b, cache.get("b"));
+		assertEquals(2, cache.getSoftHitCount());
+	}
+}
@@ -0,0 +1,150 @@
+package nortantis.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+import org.junit.Test;
+
+import nortantis.util.ConvolutionPlanner;
+import nortantis.util.ConvolutionPlanner.Method;
+import nortantis.util.ImageHelper;
+
+public class ConvolutionPlannerTest
+{
+	@Test
+	public void separableMatchesFFT()
+	{
+		// The 4th case has a kernel bigger than the padding, so it wraps around. The last case pads to a size that isn't a power of 2.
+		int[][] cases = { { 64, 64, 3 }, { 101, 37, 5 }, { 50, 90, 12 }, { 20, 13, 20 }, { 1030, 20, 4 } };
+		for (int[] c : cases)
+		{
+			BufferedImage image = createRandomImage(c[0], c[1], BufferedImage.TYPE_USHORT_GRAY, 1);
+			float[][] kernel = ImageHelper.createGaussianKernel(c[2]);
+			assertMatchesFFT(image, kernel, Method.Separable, false);
+			assertMatchesFFT(image, kernel, Method.Separable, true);
+		}
+	}
+
+	@Test
+	public void directMatchesFFT()
+	{
+		int[][] cases = { { 64, 64, 3, 3 }, { 101, 37, 4, 7 }, { 33, 60, 9, 2 }, { 17, 11, 24, 15 }, { 20, 1030, 3, 5 } };
+		for (int[] c : cases)
+		{
+			BufferedImage image = createRandomImage(c[0], c[1], BufferedImage.TYPE_BYTE_GRAY, 2);
+			float[][] kernel = createRandomKernel(c[2], c[3], 3);
+			assertMatchesFFT(image, kernel, Method.Direct, false);
+			assertMatchesFFT(image, kernel, Method.Direct, true);
+		}
+	}
+
+	@Test
+	public void gaussianKernelsAreSeparable()
+	{
+		assertEquals(Method.Separable, ConvolutionPlanner.chooseMethod(1024, 1024, ImageHelper.createGaussianKernel(20)));
+		// A kernel that isn't separable and is nearly as big as the image is faster with an FFT.
+		assertEquals(Method.FFT, ConvolutionPlanner.chooseMethod(1024, 1024, createRandomKernel(200, 200, 4)));
+		assertEquals(Method.Direct, ConvolutionPlanner.chooseMethod(1024, 1024, createRandomKernel(3, 3, 5)));
+	}
+
+	@Test
+	public void fftSizesAreFast()
+	{
+		assertEquals(1024, ImageHelper.getFFTSizeEqualOrLargerThan(1000));
+		assertEquals(1050, ImageHelper.getFFTSizeEqualOrLargerThan(1030));
+		assertEquals(4200, ImageHelper.getFFTSizeEqualOrLargerThan(4200));
+		assertEquals(2, ImageHelper.getFFTSizeEqualOrLargerThan(1));
+		for (int size = 1; size < 5000; size++)
+		{
+			int fftSize = ImageHelper.getFFTSizeEqualOrLargerThan(size);
+			assertTrue(fftSize >= size && fftSize % 2 == 0);
+		}
+	}
+
+	@Test
+	public void tilesMatchWholeImage()
+	{
+		// Separable, direct, and FFT tiles, with tiles that don't divide the image evenly and tiles smaller than the kernel.
+		float[][][] kernels = { ImageHelper.createGaussianKernel(6), createRandomKernel(3, 4, 6), createRandomKernel(40, 30, 7) };
+		Method[] methods = { Method.Separable, Method.Direct, Method.FFT };
+		int[] tileSizes = { 10, 23, 45 };
+		BufferedImage image = createRandomImage(97, 71, BufferedImage.TYPE_BYTE_GRAY, 8);
+		for (int i = 0; i < kernels.length; i++)
+		{
+			assertEquals(methods[i], ConvolutionPlanner.chooseTileMethod(tileSizes[i], tileSizes[i], kernels[i]));
+			for (boolean maximizeContrast : new boolean[] { false, true })
+			{
+				BufferedImage expected = ImageHelper.convolveGrayscale(image, kernels[i], maximizeContrast);
+				BufferedImage actual = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+				ConvolutionPlanner.convolveInTiles(image, kernels[i], maximizeContrast, tileSizes[i], (bounds, values) -> 
+				{
+					synchronized (actual)
+					{
+						actual.getRaster().setRect(bounds.x, bounds.y, ImageHelper.arrayToImage(values, BufferedImage.TYPE_BYTE_GRAY).getRaster());
+					}
+				});
+				assertImagesMatch(expected, actual, "Tiles of size " + tileSizes[i]);
+			}
+		}
+	}
+
+	private static void assertMatchesFFT(BufferedImage image, float[][] kernel, Method method, boolean maximizeContrast)
+	{
+		BufferedImage expected = ImageHelper.convolveGrayscale(image, kernel, maximizeContrast, Method.FFT);
+		BufferedImage actual = ImageHelper.convolveGrayscale(image, kernel, maximizeContrast, method);
+		assertImagesMatch(expected, actual, method + " for a " + image.getWidth() + "x" + image.getHeight() + " image and " 
+				+ kernel[0].length + "x" + kernel.length + " kernel");
+	}
+
+	private static void assertImagesMatch(BufferedImage expected, BufferedImage actual, String description)
+	{
+		assertEquals(expected.getType(), actual.getType());
+		Raster expectedRaster = expected.getRaster();
+		Raster actualRaster = actual.getRaster();
+		for (int y = 0; y < expected.getHeight(); y++)
+		{
+			for (int x = 0; x < expected.getWidth(); x++)
+			{
+				int diff = Math.abs(expectedRaster.getSample(x, y, 0) - actualRaster.getSample(x, y, 0));
+				// Allow for rounding to land on either side of a level.
+				assertTrue(description + " differs by " + diff + " at " + x + ", " + y + ".", diff <= 1);
+			}
+		}
+	}
+
+	private static BufferedImage createRandomImage(int width, int height, int type, long seed)
+	{
+		Random rand = new Random(seed);
+		BufferedImage image = new BufferedImage(width, height, type);
+		WritableRaster raster = image.getRaster();
+		int maxPixelValue = ImageHelper.getMaxPixelValue(type);
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				raster.setSample(x, y, 0, rand.nextInt(maxPixelValue + 1));
+			}
+		}
+		return image;
+	}
+
+	private static float[][] createRandomKernel(int width, int height, long seed)
+	{
+		Random rand = new Random(seed);
+		float[][] kernel = new float[height][width];
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				kernel[y][x] = rand.nextFloat();
+			}
+		}
+		ImageHelper.normalize(kernel);
+		return kernel;
+	}
+}
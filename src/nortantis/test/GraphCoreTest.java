@@ -0,0 +1,72 @@
+package nortantis.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import hoten.voronoi.Center;
+import hoten.voronoi.Corner;
+import hoten.voronoi.Edge;
+import hoten.voronoi.GraphCore;
+import nortantis.GraphCreator;
+import nortantis.GraphImpl;
+
+public class GraphCoreTest
+{
+	@Test
+	public void viewsMatchCore()
+	{
+		GraphImpl graph = GraphCreator.createSimpleGraph(300, 200, 150, new Random(3), 1.0);
+		GraphCore core = graph.core;
+		assertEquals(graph.centers.size(), core.numCenters);
+		assertEquals(graph.corners.size(), core.numCorners);
+
+		for (Center c : graph.centers)
+		{
+			assertEquals(core.centerNeighborStarts[c.index + 1] - core.centerNeighborStarts[c.index], c.neighbors.size());
+			for (int i = 0; i < c.neighbors.size(); i++)
+			{
+				Center neighbor = c.neighbors.get(i);
+				assertEquals(core.centerNeighbors[core.centerNeighborStarts[c.index] + i], neighbor.index);
+				assertTrue(neighbor.neighbors.contains(c));
+			}
+			for (Corner corner : c.corners)
+			{
+				assertTrue(corner.touches.contains(c));
+			}
+			for (Edge e : c.borders)
+			{
+				assertTrue(e.d0 == c || e.d1 == c);
+			}
+		}
+
+		for (Corner c : graph.corners)
+		{
+			for (Corner adjacent : c.adjacent)
+			{
+				assertTrue(adjacent.adjacent.contains(c));
+			}
+			for (Edge e : c.protrudes)
+			{
+				assertTrue(e.v0 == c || e.v1 == c);
+			}
+		}
+
+		for (Edge e : graph.edges)
+		{
+			assertEquals(e.d0 == null ? -1 : e.d0.index, core.edgeD0[e.index]);
+			assertEquals(e.d1 == null ? -1 : e.d1.index, core.edgeD1[e.index]);
+			assertEquals(e.v0 == null ? -1 : e.v0.index, core.edgeV0[e.index]);
+			assertEquals(e.v1 == null ? -1 : e.v1.index, core.edgeV1[e.index]);
+		}
+
+		Center center = graph.centers.get(0);
+		center.setElevation(0.75);
+		assertEquals(0.75, core.centerElevation[center.index], 0.0);
+		center.setWater(true);
+		assertTrue(core.centerIsWater.get(center.index));
+	}
+}
@@ -1,13 +1,30 @@
 package nortantis.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 import org.junit.Test;
 
 import hoten.geom.Point;
+import hoten.voronoi.Center;
+import hoten.voronoi.Corner;
+import hoten.voronoi.Edge;
+import nortantis.GraphCreator;
 import nortantis.GraphImpl;
 import nortantis.PolarCoordinate;
+import nortantis.Region;
+import nortantis.util.WorkerPool;
 
 public class GraphImplTest 
 {	
@@ -113,5 +130,324 @@ public class GraphImplTest
 		assertEquals(convergence1 * -1, divergence1, 0.000001);
 		assertEquals(convergence2 * -1, divergence2, 0.000001);
 	}
+	
+	/**
+	 * Checks that the graph passes that run in parallel give the same graph as running them on one thread.
+	 */
+	@Test
+	public void parallelGraphCreationMatchesSerial() throws Exception
+	{
+		WorkerPool pool = WorkerPool.getInstance();
+		int numThreads = pool.getNumThreads();
+		pool.setNumThreads(4);
+		try
+		{
+			GraphImpl parallel = GraphCreator.createGraph(1000, 800, 6000, 0.25, 0.5, new Random(3), 1.0);
+			GraphImpl serial = WorkerPool.callWithMaxParallelism(1,
+					() -> GraphCreator.createGraph(1000, 800, 6000, 0.25, 0.5, new Random(3), 1.0));
+			
+			assertEquals(serial.centers.size(), parallel.centers.size());
+			for (int i = 0; i < serial.centers.size(); i++)
+			{
+				Center s = serial.centers.get(i);
+				Center p = parallel.centers.get(i);
+				assertEquals(s.getElevation(), p.getElevation(), 0.0);
+				assertEquals(s.getMoisture(), p.getMoisture(), 0.0);
+				assertEquals(s.isWater(), p.isWater());
+				assertEquals(s.isCoast(), p.isCoast());
+				assertEquals(s.isBorder(), p.isBorder());
+				assertEquals(s.biome, p.biome);
+			}
+			assertEquals(serial.corners.size(), parallel.corners.size());
+			for (int i = 0; i < serial.corners.size(); i++)
+			{
+				Corner s = serial.corners.get(i);
+				Corner p = parallel.corners.get(i);
+				assertEquals(s.loc, p.loc);
+				assertEquals(s.getElevation(), p.getElevation(), 0.0);
+				assertEquals(s.getMoisture(), p.getMoisture(), 0.0);
+				assertEquals(s.isOcean(), p.isOcean());
+				assertEquals(s.isCoast(), p.isCoast());
+				assertEquals(s.river, p.river);
+			}
+		}
+		finally
+		{
+			pool.setNumThreads(numThreads);
+		}
+	}
+	
+	/**
+	 * Checks that changing centers from land to water updates the coast flags around them, and that only changes made
+	 * through the graph are updated.
+	 */
+	@Test
+	public void updateChangedNeighborhoods()
+	{
+		GraphImpl graph = GraphCreator.createGraph(1000, 800, 2000, 0.25, 0.5, new Random(4), 1.0);
+		List<Center> inland = graph.centers.stream().filter(c -> !c.isWater() && !c.isCoast() && c.region != null).collect(Collectors.toList());
+		Center land = inland.get(0);
+		Region oldRegion = land.region;
+		graph.setWater(land, true);
+		graph.setRegion(land, null);
+		assertFalse(oldRegion.contains(land));
+
+		// Changed without telling the graph, so its neighbors' coast flags are left alone.
+		Center unrecorded = inland.stream().filter(c -> c.neighbors.stream().noneMatch(n -> n.isCoast() || n == land || n.neighbors.contains(land)))
+				.findFirst().get();
+		unrecorded.setWater(true);
+		graph.updateChangedNeighborhoods(true);
+		assertTrue(unrecorded.neighbors.stream().noneMatch(n -> n.isCoast()));
+		unrecorded.setWater(false);
+
+		for (Center c : graph.centers)
+		{
+			boolean hasWater = c.neighbors.stream().anyMatch(n -> n.isWater());
+			boolean hasLand = c.neighbors.stream().anyMatch(n -> !n.isWater());
+			assertEquals(hasWater && hasLand, c.isCoast());
+		}
+		for (Corner corner : graph.corners)
+		{
+			long numWater = corner.touches.stream().filter(c -> c.isWater()).count();
+			assertEquals(numWater == corner.touches.size(), corner.isOcean());
+			assertEquals(numWater > 0 && numWater < corner.touches.size(), corner.isCoast());
+		}
+	}
+
+	/**
+	 * Checks that coast flags are left as they were after edits unless asked to update them, as earlier versions did.
+	 */
+	@Test
+	public void updateChangedNeighborhoodsKeepsCoasts()
+	{
+		GraphImpl graph = GraphCreator.createGraph(1000, 800, 2000, 0.25, 0.5, new Random(4), 1.0);
+		Center land = graph.centers.stream().filter(c -> !c.isWater() && !c.isCoast() && c.region != null).findFirst().get();
+		boolean[] wereCoast = new boolean[graph.centers.size()];
+		for (Center c : graph.centers)
+		{
+			wereCoast[c.index] = c.isCoast();
+		}
+		graph.setWater(land, true);
+		graph.updateChangedNeighborhoods(false);
+		assertTrue(land.neighbors.stream().anyMatch(n -> !wereCoast[n.index]));
+		for (Center c : graph.centers)
+		{
+			assertEquals(wereCoast[c.index], c.isCoast());
+		}
+	}
+
+	/**
+	 * Checks findClosestCenter's lookup table against brute force searches: each pixel must be in the polygon drawn for
+	 * the center found there, the middle of each edge must be in one of the edge's two centers, points off the map must
+	 * find the nearest border center, and the 16 bit table must give the same centers as the 32 bit one.
+	 */
+	@Test
+	public void findClosestCenter()
+	{
+		// More than 2^11 centers, so that indexes use all 3 channels of the 16 bit table.
+		GraphImpl graph = GraphCreator.createGraph(1000, 800, 6000, 0.25, 0.5, new Random(3), 1.0);
+		int width = (int) graph.getWidth();
+		int height = (int) graph.getHeight();
+		assertTrue(graph.centers.size() > 1 << 11);
+
+		for (int y = 0; y < height; y += 2)
+		{
+			for (int x = 0; x < width; x += 2)
+			{
+				Center center = graph.findClosestCenter(x, y);
+				// Border centers are also drawn out to the edges of the map, so only check the others.
+				if (!center.isBorder())
+				{
+					assertTrue("Pixel " + x + ", " + y, isInDrawnPolygon(center, x + 0.5, y + 0.5));
+				}
+			}
+		}
+
+		for (Edge edge : graph.edges)
+		{
+			// Very short edges between centers that are very close together can be covered by a neighbor's polygon 
+			// because polygons are drawn at whole pixels.
+			if (edge.d0 == null || edge.d1 == null || edge.v0 == null || edge.v1 == null || edge.d0.isBorder() || edge.d1.isBorder()
+					|| edge.v0.loc.distanceTo(edge.v1.loc) < 8)
+			{
+				continue;
+			}
+			Center center = graph.findClosestCenter(new Point((edge.v0.loc.x + edge.v1.loc.x) / 2, (edge.v0.loc.y + edge.v1.loc.y) / 2));
+			assertTrue(center == edge.d0 || center == edge.d1);
+		}
+
+		Random rand = new Random(4);
+		for (int i = 0; i < 200; i++)
+		{
+			Point point = new Point(-100 + rand.nextDouble() * (width + 200), rand.nextBoolean() ? -1 - rand.nextDouble() * 100 : height + rand.nextDouble() * 100);
+			Center expected = null;
+			for (Center c : graph.centers)
+			{
+				if (c.isBorder() && (expected == null || c.loc.distanceTo(point) < expected.loc.distanceTo(point)))
+				{
+					expected = c;
+				}
+			}
+			assertEquals(expected.loc.distanceTo(point), graph.findClosestCenter(point).loc.distanceTo(point), 0.0);
+		}
+
+		graph.buildCenterLookupTable(true);
+		int[] indexes16 = new int[width * height];
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				indexes16[y * width + x] = graph.findClosestCenter(x, y).index;
+			}
+		}
+		graph.buildCenterLookupTable(false);
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				assertEquals(indexes16[y * width + x], graph.findClosestCenter(x, y).index);
+			}
+		}
+	}
+
+	/**
+	 * @return Whether the point is within a pixel of one of the triangles, from the center to each of its edges, that 
+	 *         the center's polygon is drawn as without noisy edges.
+	 */
+	private static boolean isInDrawnPolygon(Center center, double x, double y)
+	{
+		for (Edge edge : center.borders)
+		{
+			Path2D triangle = new Path2D.Double();
+			triangle.moveTo((int) center.loc.x, (int) center.loc.y);
+			triangle.lineTo((int) edge.v0.loc.x, (int) edge.v0.loc.y);
+			triangle.lineTo((int) edge.v1.loc.x, (int) edge.v1.loc.y);
+			triangle.closePath();
+			if (triangle.intersects(x - 1, y - 1, 2, 2))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks that region indexes are drawn exactly for maps with more regions than fit in 8 bits.
+	 */
+	@Test
+	public void createRegionIndexesWithManyRegions()
+	{
+		GraphImpl graph = GraphCreator.createGraph(1000, 800, 2000, 0.25, 0.5, new Random(7), 1.0);
+		for (Region region : graph.regions)
+		{
+			region.clear();
+		}
+		graph.regions.clear();
+		for (Center center : graph.centers)
+		{
+			if (!center.isWater())
+			{
+				Region region = new Region();
+				region.id = graph.regions.size();
+				region.addAndSetRegion(center);
+				graph.regions.add(region);
+			}
+		}
+		assertTrue(graph.regions.size() > 256);
+
+		BufferedImage regionIndexes = graph.createRegionIndexes(graph.getWidth(), graph.getHeight());
+		assertEquals(BufferedImage.TYPE_USHORT_GRAY, regionIndexes.getType());
+		for (Center center : graph.centers)
+		{
+			// Skip centers so close to a neighbor that the neighbor's noisy edges could cover the center's pixel.
+			if (center.region != null && center.neighbors.stream().allMatch(n -> n.loc.distanceTo(center.loc) > 20))
+			{
+				assertEquals(center.region.id, regionIndexes.getRaster().getSample((int) center.loc.x, (int) center.loc.y, 0));
+			}
+		}
+	}
+
+	/**
+	 * Checks that findShortestPath finds paths as short as Dijkstra's algorithm does, that findPath finds paths, and
+	 * that findPaths gives the same paths as finding them one at a time.
+	 */
+	@Test
+	public void findPaths()
+	{
+		GraphImpl graph = GraphCreator.createGraph(1000, 800, 2000, 0.25, 0.5, new Random(5), 1.0);
+		Random rand = new Random(6);
+		List<Corner> starts = new ArrayList<>();
+		List<Corner> ends = new ArrayList<>();
+		for (int i = 0; i < 20; i++)
+		{
+			starts.add(graph.corners.get(rand.nextInt(graph.corners.size())));
+			ends.add(graph.corners.get(rand.nextInt(graph.corners.size())));
+		}
+		starts.add(ends.get(0));
+		ends.add(ends.get(0));
+
+		List<Set<Edge>> shortestPaths = graph.findPaths(starts, ends, true);
+		List<Set<Edge>> greedyPaths = graph.findPaths(starts, ends, false);
+		for (int i = 0; i < starts.size(); i++)
+		{
+			Set<Edge> shortestPath = graph.findShortestPath(starts.get(i), ends.get(i));
+			assertEquals(shortestPath, shortestPaths.get(i));
+			double shortestLength = findShortestPathLength(graph, starts.get(i), ends.get(i));
+			assertEquals(shortestLength, getPathLength(shortestPath, starts.get(i), ends.get(i)), 1e-9);
+			
+			Set<Edge> greedyPath = graph.findPath(starts.get(i), ends.get(i));
+			assertEquals(greedyPath, greedyPaths.get(i));
+			assertTrue(getPathLength(greedyPath, starts.get(i), ends.get(i)) >= shortestLength - 1e-9);
+		}
+	}
+
+	private static double findShortestPathLength(GraphImpl graph, Corner start, Corner end)
+	{
+		double[] distances = new double[graph.corners.size()];
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+		boolean[] done = new boolean[graph.corners.size()];
+		distances[start.index] = 0;
+		while (true)
+		{
+			int closest = -1;
+			for (int i = 0; i < distances.length; i++)
+			{
+				if (!done[i] && distances[i] != Double.POSITIVE_INFINITY && (closest == -1 || distances[i] < distances[closest]))
+				{
+					closest = i;
+				}
+			}
+			if (closest == -1 || closest == end.index)
+			{
+				return distances[end.index];
+			}
+			done[closest] = true;
+			Corner corner = graph.corners.get(closest);
+			for (Corner adjacent : corner.adjacent)
+			{
+				distances[adjacent.index] = Math.min(distances[adjacent.index], distances[closest] + corner.loc.distanceTo(adjacent.loc));
+			}
+		}
+	}
+
+	/**
+	 * Walks the path from start and returns its length, failing if the edges aren't a path from start to end.
+	 */
+	private static double getPathLength(Set<Edge> path, Corner start, Corner end)
+	{
+		Set<Edge> remaining = new HashSet<>(path);
+		Corner current = start;
+		double length = 0;
+		while (!remaining.isEmpty())
+		{
+			final Corner from = current;
+			Edge next = remaining.stream().filter(e -> e.v0 == from || e.v1 == from).findFirst().get();
+			remaining.remove(next);
+			current = next.v0 == from ? next.v1 : next.v0;
+			length += from.loc.distanceTo(current.loc);
+		}
+		assertEquals(end, current);
+		return length;
+	}
 
 }
@@ -0,0 +1,112 @@
+package nortantis.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import nortantis.IconAtlas;
+import nortantis.util.ImageHelper;
+import nortantis.util.Tuple2;
+
+public class IconAtlasTest
+{
+	/**
+	 * Checks that scaled icons are the same size as ImageHelper.scaleByWidth gives, and that scaling to full size gives
+	 * back the original icon and mask, apart from the colors of fully transparent pixels.
+	 */
+	@Test
+	public void getScaled()
+	{
+		checkGetScaled(61, 37);
+		checkGetScaled(37, 61);
+	}
+
+	/**
+	 * Checks that the atlas evicts the least recently used mipmaps to stay within its byte budget, and doesn't keep
+	 * mipmaps larger than the whole budget.
+	 */
+	@Test
+	public void staysWithinBudget()
+	{
+		List<BufferedImage> icons = new ArrayList<>();
+		for (int i = 0; i < 3; i++)
+		{
+			icons.add(new BufferedImage(32, 32, BufferedImage.TYPE_INT_ARGB));
+		}
+		BufferedImage mask = new BufferedImage(32, 32, BufferedImage.TYPE_BYTE_BINARY);
+		IconAtlas atlas = new IconAtlas(Long.MAX_VALUE);
+		atlas.getScaled(icons.get(0), mask, 10);
+		long mipmapBytes = atlas.getSizeInBytes();
+
+		atlas.setMaxBytes(mipmapBytes * 2);
+		atlas.getScaled(icons.get(1), mask, 10);
+		assertEquals(mipmapBytes * 2, atlas.getSizeInBytes());
+		atlas.getScaled(icons.get(2), mask, 10);
+		assertEquals(mipmapBytes * 2, atlas.getSizeInBytes());
+		atlas.setMaxBytes(mipmapBytes);
+		assertEquals(mipmapBytes, atlas.getSizeInBytes());
+
+		BufferedImage large = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+		BufferedImage largeMask = new BufferedImage(64, 64, BufferedImage.TYPE_BYTE_BINARY);
+		assertEquals(10, atlas.getScaled(large, largeMask, 10).getFirst().getWidth());
+		assertEquals(mipmapBytes, atlas.getSizeInBytes());
+	}
+
+	private void checkGetScaled(int width, int height)
+	{
+		BufferedImage icon = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		BufferedImage mask = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				// Opaque in the middle, transparent around the edges.
+				boolean inside = x > 5 && x < width - 5 && y > 5 && y < height - 5;
+				icon.setRGB(x, y, inside ? 0xff000000 | (x * 4 << 16) | (y * 4 << 8) | 0x40 : 0x00ffffff);
+				mask.getRaster().setSample(x, y, 0, inside ? 1 : 0);
+			}
+		}
+
+		IconAtlas atlas = new IconAtlas(Long.MAX_VALUE);
+		assertEquals(0, atlas.getSizeInBytes());
+		Tuple2<BufferedImage, BufferedImage> fullSize = atlas.getScaled(icon, mask, width);
+		assertTrue(atlas.getSizeInBytes() >= width * height * 5L);
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				int expected = icon.getRGB(x, y);
+				assertEquals(expected >>> 24 == 0 ? 0 : expected, fullSize.getFirst().getRGB(x, y));
+				assertEquals(mask.getRaster().getSample(x, y, 0), fullSize.getSecond().getRaster().getSample(x, y, 0));
+			}
+		}
+
+		for (int scaledWidth : new int[] { 1, 7, 20, 30, 45, 100 })
+		{
+			BufferedImage expected = ImageHelper.scaleByWidth(icon, scaledWidth);
+			Tuple2<BufferedImage, BufferedImage> scaled = atlas.getScaled(icon, mask, scaledWidth);
+			assertEquals(expected.getWidth(), scaled.getFirst().getWidth());
+			assertEquals(expected.getHeight(), scaled.getFirst().getHeight());
+			assertEquals(expected.getWidth(), scaled.getSecond().getWidth());
+			assertEquals(expected.getHeight(), scaled.getSecond().getHeight());
+			assertEquals(BufferedImage.TYPE_BYTE_BINARY, scaled.getSecond().getType());
+
+			// The transparent border is never colored by the opaque middle, since colors are averaged premultiplied.
+			int center = scaled.getFirst().getRGB(expected.getWidth() / 2, expected.getHeight() / 2);
+			if (scaledWidth >= 20)
+			{
+				assertEquals(0xff, center >>> 24);
+				Raster maskRaster = scaled.getSecond().getRaster();
+				assertEquals(1, maskRaster.getSample(expected.getWidth() / 2, expected.getHeight() / 2, 0));
+				assertEquals(0, maskRaster.getSample(0, 0, 0));
+			}
+			assertTrue((center & 0xff) <= 0x41);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package nortantis.test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import nortantis.IconCompositor;
+import nortantis.util.WorkerPool;
+
+public class IconCompositorTest
+{
+	/**
+	 * Checks that drawing icons in tiles in parallel gives the same map as drawing them one at a time, pixel by pixel.
+	 */
+	@Test
+	public void drawAllMatchesDrawingIconsInOrder()
+	{
+		Random rand = new Random(8);
+		int width = 700;
+		int height = 530;
+		BufferedImage map = createRandomImage(width, height, BufferedImage.TYPE_INT_RGB, rand);
+		BufferedImage background = createRandomImage(width, height, BufferedImage.TYPE_INT_RGB, rand);
+		BufferedImage expected = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		expected.setData(map.getData());
+
+		List<BufferedImage> iconImages = new ArrayList<>();
+		List<BufferedImage> masks = new ArrayList<>();
+		for (int i = 0; i < 5; i++)
+		{
+			int iconWidth = 10 + rand.nextInt(120);
+			int iconHeight = 10 + rand.nextInt(120);
+			iconImages.add(createRandomImage(iconWidth, iconHeight, BufferedImage.TYPE_INT_ARGB, rand));
+			masks.add(createRandomImage(iconWidth, iconHeight, BufferedImage.TYPE_BYTE_BINARY, rand));
+		}
+
+		IconCompositor compositor = new IconCompositor(map, background);
+		for (int i = 0; i < 400; i++)
+		{
+			int iconIndex = rand.nextInt(iconImages.size());
+			// Some icons hang off the edges of the map.
+			int x = rand.nextInt(width + 100) - 50;
+			int y = rand.nextInt(height + 100) - 50;
+			compositor.add(iconImages.get(iconIndex), masks.get(iconIndex), x, y);
+			drawIconPixelByPixel(expected, iconImages.get(iconIndex), masks.get(iconIndex), background, x, y);
+		}
+
+		WorkerPool pool = WorkerPool.getInstance();
+		int numThreads = pool.getNumThreads();
+		pool.setNumThreads(4);
+		try
+		{
+			compositor.drawAll();
+		}
+		finally
+		{
+			pool.setNumThreads(numThreads);
+		}
+
+		assertArrayEquals(expected.getRGB(0, 0, width, height, null, 0, width), map.getRGB(0, 0, width, height, null, 0, width));
+	}
+
+	private static BufferedImage createRandomImage(int width, int height, int type, Random rand)
+	{
+		BufferedImage image = new BufferedImage(width, height, type);
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				image.setRGB(x, y, rand.nextInt());
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * How IconDrawer drew each icon before icons were drawn in tiles.
+	 */
+	private static void drawIconPixelByPixel(BufferedImage map, BufferedImage icon, BufferedImage mask, BufferedImage background,
+			int xCenter, int yCenter)
+	{
+		int xLeft = xCenter - icon.getWidth() / 2;
+		int yBottom = yCenter - icon.getHeight() / 2;
+
+		Raster maskRaster = mask.getRaster();
+		for (int x = 0; x < icon.getWidth(); x++)
+			for (int y = 0; y < icon.getHeight(); y++)
+			{
+				Color iconColor = new Color(icon.getRGB(x, y), true);
+				double alpha = iconColor.getAlpha() / 255.0;
+				double maskLevel = maskRaster.getSampleDouble(x, y, 0);
+				Color bgColor;
+				Color mapColor;
+				int xLoc = xLeft + x;
+				int yLoc = yBottom + y;
+				try
+				{
+					bgColor = new Color(background.getRGB(xLoc, yLoc));
+					mapColor = new Color(map.getRGB(xLoc, yLoc));
+				}
+				catch (IndexOutOfBoundsException e)
+				{
+					continue;
+				}
+
+				int red = (int) (alpha * (iconColor.getRed()) + (1 - alpha) * (maskLevel * bgColor.getRed() + (1 - maskLevel) * mapColor.getRed()));
+				int green = (int) (alpha * (iconColor.getGreen())
+						+ (1 - alpha) * (maskLevel * bgColor.getGreen() + (1 - maskLevel) * mapColor.getGreen()));
+				int blue = (int) (alpha * (iconColor.getBlue()) + (1 - alpha) * (maskLevel * bgColor.getBlue() + (1 - maskLevel) * mapColor.getBlue()));
+
+				map.setRGB(xLoc, yLoc, new Color(red, green, blue).getRGB());
+			}
+	}
+}
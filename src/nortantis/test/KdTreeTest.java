@@ -0,0 +1,61 @@
+package nortantis.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import hoten.voronoi.KdTree;
+
+public class KdTreeTest
+{
+	@Test
+	public void findNearestMatchesLinearSearch()
+	{
+		Random rand = new Random(11);
+		for (int numPoints : new int[] { 1, 2, 7, 1000 })
+		{
+			double[] xs = new double[numPoints];
+			double[] ys = new double[numPoints];
+			int[] ids = new int[numPoints];
+			for (int i = 0; i < numPoints; i++)
+			{
+				// Round the coordinates so that some points share coordinates and some queries are equally close to two points.
+				xs[i] = Math.floor(rand.nextDouble() * 50);
+				ys[i] = Math.floor(rand.nextDouble() * 30);
+				ids[i] = i;
+			}
+			double[] xsCopy = xs.clone();
+			double[] ysCopy = ys.clone();
+			KdTree tree = new KdTree(xsCopy, ysCopy, ids.clone());
+			assertEquals(numPoints, tree.size());
+
+			for (int q = 0; q < 2000; q++)
+			{
+				// Include queries outside of the points' bounds.
+				double x = Math.floor(rand.nextDouble() * 70 - 10);
+				double y = Math.floor(rand.nextDouble() * 50 - 10);
+				int expected = -1;
+				double expectedDistance = Double.POSITIVE_INFINITY;
+				for (int i = 0; i < numPoints; i++)
+				{
+					double distance = (xs[i] - x) * (xs[i] - x) + (ys[i] - y) * (ys[i] - y);
+					if (distance < expectedDistance)
+					{
+						expected = i;
+						expectedDistance = distance;
+					}
+				}
+				assertEquals("Closest to " + x + ", " + y + " of " + numPoints + " points", expected, tree.findNearest(x, y));
+			}
+		}
+	}
+
+	@Test
+	public void emptyTree()
+	{
+		KdTree tree = new KdTree(new double[0], new double[0], new int[0]);
+		assertEquals(-1, tree.findNearest(3, 4));
+	}
+}
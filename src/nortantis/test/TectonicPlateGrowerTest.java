@@ -0,0 +1,209 @@
+package nortantis.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import hoten.voronoi.Center;
+import hoten.voronoi.GraphCore;
+import nortantis.GraphCreator;
+import nortantis.GraphImpl;
+import nortantis.TectonicPlateGrower;
+
+public class TectonicPlateGrowerTest
+{
+	private static final int smoothness = 20;
+
+	@Test
+	public void growBySamplingMatchesOriginalAlgorithm()
+	{
+		GraphImpl graph = GraphCreator.createSimpleGraph(800, 600, 2000, new Random(3), 1.0);
+		double[] growthProbabilities = createGrowthProbabilities(graph.core.numCenters, new Random(4));
+
+		TectonicPlateGrower grower = new TectonicPlateGrower(graph.core, growthProbabilities);
+		grower.growBySampling(20000, smoothness, new Random(5));
+
+		int[] expected = growTheOriginalWay(graph.centers, growthProbabilities, 20000, new Random(5));
+		assertArrayEquals(expected, grower.getPlateIndexes());
+	}
+
+	@Test
+	public void growFromFrontierIsDeterministic()
+	{
+		GraphImpl graph = GraphCreator.createSimpleGraph(800, 600, 2000, new Random(3), 1.0);
+		double[] growthProbabilities = createGrowthProbabilities(graph.core.numCenters, new Random(4));
+
+		TectonicPlateGrower grower1 = new TectonicPlateGrower(graph.core, growthProbabilities);
+		grower1.growFromFrontier(20000, smoothness, new Random(6));
+		TectonicPlateGrower grower2 = new TectonicPlateGrower(graph.core, growthProbabilities);
+		grower2.growFromFrontier(20000, smoothness, new Random(6));
+		assertArrayEquals(grower1.getPlateIndexes(), grower2.getPlateIndexes());
+	}
+
+	/**
+	 * Checks the counts of neighbors on other plates and the frontier, which are updated each time a center changes
+	 * plates, against counting them from scratch.
+	 */
+	@Test
+	public void incrementalCountsMatchRecount()
+	{
+		GraphImpl graph = GraphCreator.createSimpleGraph(800, 600, 2000, new Random(3), 1.0);
+		GraphCore core = graph.core;
+		double[] growthProbabilities = createGrowthProbabilities(core.numCenters, new Random(4));
+		TectonicPlateGrower sampled = new TectonicPlateGrower(core, growthProbabilities);
+		TectonicPlateGrower frontier = new TectonicPlateGrower(core, growthProbabilities);
+		checkCounts(core, sampled);
+		Random rand = new Random(7);
+		for (int round = 0; round < 10; round++)
+		{
+			sampled.growBySampling(2000, smoothness, rand);
+			checkCounts(core, sampled);
+			frontier.growFromFrontier(2000, smoothness, rand);
+			checkCounts(core, frontier);
+		}
+	}
+
+	@Test
+	public void sampleBinomial()
+	{
+		assertEquals(0, TectonicPlateGrower.sampleBinomial(20, 0.0, 0.0));
+		assertEquals(0, TectonicPlateGrower.sampleBinomial(20, 0.0, 0.999999));
+		assertEquals(20, TectonicPlateGrower.sampleBinomial(20, 1.0, 0.0));
+		assertEquals(20, TectonicPlateGrower.sampleBinomial(20, 1.0, 0.999999));
+
+		// The tails. With 20 trials and p = 0.5, P(0) = 2^-20 and P(20) = 2^-20.
+		assertEquals(0, TectonicPlateGrower.sampleBinomial(20, 0.5, 0.0));
+		assertEquals(0, TectonicPlateGrower.sampleBinomial(20, 0.5, 0.5 / (1 << 20)));
+		assertEquals(1, TectonicPlateGrower.sampleBinomial(20, 0.5, 1.5 / (1 << 20)));
+		assertEquals(20, TectonicPlateGrower.sampleBinomial(20, 0.5, 1.0 - 0.5 / (1 << 20)));
+		// Rounding error in the cumulative probability must not push the result past the number of trials.
+		assertEquals(20, TectonicPlateGrower.sampleBinomial(20, 0.999, Math.nextDown(1.0)));
+		assertEquals(0, TectonicPlateGrower.sampleBinomial(20, 1e-6, 0.5));
+
+		// The mean over evenly spaced values of u is close to trials * p.
+		int trials = 20;
+		double p = 0.3;
+		int steps = 100000;
+		double sum = 0;
+		for (int i = 0; i < steps; i++)
+		{
+			sum += TectonicPlateGrower.sampleBinomial(trials, p, (i + 0.5) / steps);
+		}
+		assertEquals(trials * p, sum / steps, 0.001);
+	}
+
+	private static double[] createGrowthProbabilities(int numCenters, Random rand)
+	{
+		double[] result = new double[numCenters];
+		for (int i = 0; i < numCenters; i++)
+		{
+			// Cubed to favor low probabilities, roughly like the beta distribution GraphImpl uses.
+			double value = rand.nextDouble();
+			result[i] = value * value * value;
+		}
+		return result;
+	}
+
+	private static void checkCounts(GraphCore core, TectonicPlateGrower grower)
+	{
+		int[] plateIndexes = grower.getPlateIndexes();
+		int frontierSize = 0;
+		for (int i = 0; i < core.numCenters; i++)
+		{
+			int count = 0;
+			for (int j = core.centerNeighborStarts[i]; j < core.centerNeighborStarts[i + 1]; j++)
+			{
+				if (plateIndexes[core.centerNeighbors[j]] != plateIndexes[i])
+				{
+					count++;
+				}
+			}
+			assertEquals(count, grower.getNeighborsNotInSamePlateCount(i));
+			assertEquals(count > 0, grower.isOnFrontier(i));
+			if (count > 0)
+			{
+				frontierSize++;
+			}
+		}
+		assertEquals(frontierSize, grower.getFrontierSize());
+		assertTrue(frontierSize > 0);
+	}
+
+	/**
+	 * Plate growth as GraphImpl did it before TectonicPlateGrower, recounting neighbors on other plates after each
+	 * move and filtering each center's neighbors into a list.
+	 */
+	private static int[] growTheOriginalWay(List<Center> centers, double[] growthProbabilities, int numIterations, Random rand)
+	{
+		int[] plates = new int[centers.size()];
+		int[] counts = new int[centers.size()];
+		for (Center c : centers)
+		{
+			plates[c.index] = c.index;
+		}
+		for (Center c : centers)
+		{
+			counts[c.index] = countNeighborsNotInSamePlate(c, plates);
+		}
+
+		for (int iteration = 0; iteration < numIterations; iteration++)
+		{
+			Center least = null;
+			for (int i = 0; i < smoothness; i++)
+			{
+				Center sample = centers.get(rand.nextInt(centers.size()));
+				if (counts[sample.index] == 0)
+					continue;
+				if (least == null || counts[sample.index] < counts[least.index])
+				{
+					least = sample;
+				}
+			}
+			if (least == null)
+			{
+				continue;
+			}
+
+			if (rand.nextDouble() < growthProbabilities[plates[least.index]])
+			{
+				List<Center> neighborsNotInSamePlate = new ArrayList<>();
+				for (Center neighbor : least.neighbors)
+				{
+					if (plates[neighbor.index] != plates[least.index])
+					{
+						neighborsNotInSamePlate.add(neighbor);
+					}
+				}
+				Center neighbor = neighborsNotInSamePlate.get(rand.nextInt(neighborsNotInSamePlate.size()));
+				plates[neighbor.index] = plates[least.index];
+
+				counts[least.index] = countNeighborsNotInSamePlate(least, plates);
+				for (Center n : least.neighbors)
+					counts[n.index] = countNeighborsNotInSamePlate(n, plates);
+				counts[neighbor.index] = countNeighborsNotInSamePlate(neighbor, plates);
+				for (Center n : neighbor.neighbors)
+					counts[n.index] = countNeighborsNotInSamePlate(n, plates);
+			}
+		}
+		return plates;
+	}
+
+	private static int countNeighborsNotInSamePlate(Center c, int[] plates)
+	{
+		int count = 0;
+		for (Center neighbor : c.neighbors)
+		{
+			if (plates[neighbor.index] != plates[c.index])
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+}
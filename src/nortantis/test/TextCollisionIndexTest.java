@@ -0,0 +1,210 @@
+package nortantis.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import nortantis.MapText;
+import nortantis.TextCollisionIndex;
+
+public class TextCollisionIndexTest
+{
+	private static final int width = 2000;
+	private static final int height = 1500;
+
+	/**
+	 * Checks that the index gives the same answers as copying and intersecting every area, for rectangles, rotated
+	 * rectangles, and ellipses, including ones partly or entirely off the map.
+	 */
+	@Test
+	public void overlapsMatchesIntersectingEveryArea()
+	{
+		Random rand = new Random(3);
+		for (int trial = 0; trial < 5; trial++)
+		{
+			TextCollisionIndex index = new TextCollisionIndex(width, height, 60);
+			List<Area> added = new ArrayList<>();
+			for (int i = 0; i < 600; i++)
+			{
+				Area area = createRandomArea(rand);
+				boolean expected = overlapsAny(area, added);
+				assertEquals(expected, index.overlaps(area));
+				if (!expected || rand.nextInt(4) == 0)
+				{
+					if (rand.nextInt(4) == 0)
+					{
+						index.addCity(area);
+					}
+					else
+					{
+						index.addOrUpdateText(createText("text", area));
+					}
+					added.add(area);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Areas that touch along a side don't overlap, and areas that overlap by less than the index's rounding tolerance
+	 * must be left for Area.intersect to decide, so the separating axis tests can't rule them out.
+	 */
+	@Test
+	public void nearlyTouchingAreas()
+	{
+		for (double angle : new double[] { 0.0, 0.3, -1.1 })
+		{
+			AffineTransform rotation = AffineTransform.getRotateInstance(angle, 500, 500);
+			Area existing = new Area(new Rectangle2D.Double(400, 480, 100, 20)).createTransformedArea(rotation);
+			TextCollisionIndex index = new TextCollisionIndex(width, height, 60);
+			index.addOrUpdateText(createText("text", existing));
+
+			for (double offset : new double[] { -1.0, -1e-3, -1e-7, 0.0, 1e-7, 1e-3, 1.0 })
+			{
+				// Beside the right side, and below the bottom side, moved by offset.
+				Area right = new Area(new Rectangle2D.Double(500 + offset, 480, 50, 20)).createTransformedArea(rotation);
+				Area below = new Area(new Rectangle2D.Double(400, 500 + offset, 100, 10)).createTransformedArea(rotation);
+				for (Area query : Arrays.asList(right, below))
+				{
+					assertEquals("angle " + angle + " offset " + offset, overlapsAny(query, Collections.singletonList(existing)),
+							index.overlaps(query));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Areas past the edges of the map are stored in the cells on the edges, so they must still be found by queries
+	 * that are also past the edges, or that reach back onto the map.
+	 */
+	@Test
+	public void areasOffTheMap()
+	{
+		TextCollisionIndex index = new TextCollisionIndex(width, height, 60);
+		Area farLeft = new Area(new Rectangle(-500, 100, 50, 20));
+		Area farBottomRight = new Area(new Rectangle(width + 300, height + 300, 50, 20));
+		index.addCity(farLeft);
+		index.addOrUpdateText(createText("text", farBottomRight));
+
+		assertTrue(index.overlaps(new Area(new Rectangle(-480, 110, 10, 5))));
+		assertTrue(index.overlaps(new Area(new Rectangle(-600, 105, 1000, 5))));
+		assertFalse(index.overlaps(new Area(new Rectangle(-420, 110, 10, 5))));
+		assertFalse(index.overlaps(new Area(new Rectangle(10, 110, 10, 5))));
+
+		assertTrue(index.overlaps(new Area(new Rectangle(width + 320, height + 305, 10, 5))));
+		assertTrue(index.overlaps(new Area(new Rectangle(width - 10, height - 10, 400, 400))));
+		assertFalse(index.overlaps(new Area(new Rectangle(width + 320, height + 330, 10, 5))));
+		assertFalse(index.overlaps(new Area(new Rectangle(width - 10, height - 10, 5, 5))));
+	}
+
+	@Test
+	public void addOrUpdateAndRemoveText()
+	{
+		TextCollisionIndex index = new TextCollisionIndex(width, height, 60);
+		Area first = new Area(new Rectangle(100, 100, 50, 20));
+		Area second = new Area(new Rectangle(800, 600, 50, 20));
+		Area third = new Area(new Rectangle(1200, 900, 50, 20));
+		MapText text = createText("text", first);
+		index.addOrUpdateText(text);
+		assertTrue(index.containsText(text));
+		assertTrue(index.overlaps(first));
+
+		// Updating replaces the text's old areas.
+		text.areas = Arrays.asList(second, third);
+		index.addOrUpdateText(text);
+		assertFalse(index.overlaps(first));
+		assertTrue(index.overlaps(second));
+		assertTrue(index.overlaps(third));
+
+		index.removeText(text);
+		assertFalse(index.containsText(text));
+		assertFalse(index.overlaps(second));
+		assertFalse(index.overlaps(third));
+		// Removing text that isn't in the index does nothing.
+		index.removeText(text);
+
+		// Text without areas yet is tracked, but doesn't overlap anything.
+		MapText noAreas = createText("text", first);
+		noAreas.areas = null;
+		index.addOrUpdateText(noAreas);
+		assertTrue(index.containsText(noAreas));
+		assertFalse(index.overlaps(first));
+	}
+
+	/**
+	 * Text whose value is empty is ignored, even if its value becomes empty after it's added.
+	 */
+	@Test
+	public void emptyTextIsSkipped()
+	{
+		TextCollisionIndex index = new TextCollisionIndex(width, height, 60);
+		Area area = new Area(new Rectangle(100, 100, 50, 20));
+		MapText empty = createText("", area);
+		index.addOrUpdateText(empty);
+		assertFalse(index.overlaps(area));
+
+		MapText text = createText("text", area);
+		index.addOrUpdateText(text);
+		assertTrue(index.overlaps(area));
+		text.value = "";
+		assertFalse(index.overlaps(area));
+		text.value = "text";
+		assertTrue(index.overlaps(area));
+
+		// Cities have no text, so they're never skipped.
+		text.value = "";
+		index.addCity(area);
+		assertTrue(index.overlaps(area));
+	}
+
+	private static MapText createText(String value, Area area)
+	{
+		return new MapText(value, null, 0, null, new ArrayList<>(Collections.singletonList(area)));
+	}
+
+	private static boolean overlapsAny(Area area, List<Area> others)
+	{
+		for (Area other : others)
+		{
+			Area copy = new Area(other);
+			copy.intersect(area);
+			if (!copy.isEmpty())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Area createRandomArea(Random rand)
+	{
+		int x = rand.nextInt(width + 200) - 100;
+		int y = rand.nextInt(height + 200) - 100;
+		int w = 10 + rand.nextInt(200);
+		int h = 10 + rand.nextInt(40);
+		int shape = rand.nextInt(3);
+		if (shape == 0)
+		{
+			return new Area(new Rectangle(x, y, w, h));
+		}
+		if (shape == 1)
+		{
+			return new Area(new Rectangle(x, y, w, h))
+					.createTransformedArea(AffineTransform.getRotateInstance(rand.nextDouble() - 0.5, x, y));
+		}
+		return new Area(new Ellipse2D.Double(x, y, w, h));
+	}
+}
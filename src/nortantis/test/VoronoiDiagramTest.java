@@ -0,0 +1,135 @@
+package nortantis.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import hoten.geom.Point;
+import hoten.geom.Rectangle;
+import hoten.voronoi.SweepHullVoronoi;
+import hoten.voronoi.VoronoiDiagram;
+import hoten.voronoi.nodename.as3delaunay.Voronoi;
+
+public class VoronoiDiagramTest
+{
+	private static final double tolerance = 1e-7;
+
+	@Test
+	public void sweepHullMatchesFortune()
+	{
+		for (int numSites : new int[] { 3, 10, 500, 5000 })
+		{
+			double width = 800;
+			double height = 500;
+			VoronoiDiagram fortune = new Voronoi(numSites, width, height, new Random(numSites), null);
+			VoronoiDiagram sweepHull = new SweepHullVoronoi(numSites, width, height, new Random(numSites));
+			assertDiagramsMatch(fortune, sweepHull);
+		}
+	}
+
+	@Test
+	public void relaxationMovesSitesToRegionAverages()
+	{
+		Random rand = new Random(7);
+		// Enough sites that the regions are averaged in parallel.
+		int numSites = 5000;
+		double[] coords = new double[numSites * 2];
+		ArrayList<Point> points = new ArrayList<>();
+		for (int i = 0; i < numSites; i++)
+		{
+			coords[2 * i] = rand.nextDouble() * 300;
+			coords[2 * i + 1] = rand.nextDouble() * 400;
+			points.add(new Point(coords[2 * i], coords[2 * i + 1]));
+		}
+		Rectangle bounds = new Rectangle(0, 0, 300, 400);
+		Voronoi fortune = new Voronoi(points, null, bounds);
+		ArrayList<Point> relaxed = new SweepHullVoronoi(coords, bounds).relax().siteCoords();
+		for (int i = 0; i < numSites; i++)
+		{
+			// Fortune's regions sometimes list a vertex twice, so remove duplicates before averaging.
+			Set<Point> region = new LinkedHashSet<>(fortune.region(points.get(i)));
+			double x = 0;
+			double y = 0;
+			for (Point p : region)
+			{
+				x += p.x;
+				y += p.y;
+			}
+			assertEquals(x / region.size(), relaxed.get(i).x, tolerance);
+			assertEquals(y / region.size(), relaxed.get(i).y, tolerance);
+		}
+	}
+
+	@Test
+	public void collinearSites()
+	{
+		double[] coords = { 10, 5, 30, 5, 20, 5 };
+		VoronoiDiagram diagram = new SweepHullVoronoi(coords, new Rectangle(0, 0, 40, 10));
+		assertEquals(2, diagram.getNumEdges());
+		for (int i = 0; i < diagram.getNumEdges(); i++)
+		{
+			assertEquals(0, diagram.getEdgeVertex0(i).y, 0.0);
+			assertEquals(10, diagram.getEdgeVertex1(i).y, 0.0);
+		}
+	}
+
+	/**
+	 * Checks that both diagrams have the same sites, the same pairs of neighboring sites, and the same clipped Voronoi
+	 * edge between each pair, ignoring the order of the edges and of their ends.
+	 */
+	private static void assertDiagramsMatch(VoronoiDiagram expected, VoronoiDiagram actual)
+	{
+		Map<String, double[]> expectedEdges = getEdgesBySites(expected);
+		Map<String, double[]> actualEdges = getEdgesBySites(actual);
+		assertEquals(expected.siteCoords().size(), actual.siteCoords().size());
+		assertEquals(expectedEdges.keySet(), actualEdges.keySet());
+
+		for (Map.Entry<String, double[]> entry : expectedEdges.entrySet())
+		{
+			double[] e = entry.getValue();
+			double[] a = actualEdges.get(entry.getKey());
+			if (e == null)
+			{
+				assertNull("Edge between " + entry.getKey() + " should not be visible.", a);
+				continue;
+			}
+			assertNotNull("Edge between " + entry.getKey() + " should be visible.", a);
+			boolean sameOrder = Math.abs(e[0] - a[0]) <= tolerance && Math.abs(e[1] - a[1]) <= tolerance;
+			for (int i = 0; i < 4; i++)
+			{
+				int j = sameOrder ? i : (i + 2) % 4;
+				assertEquals("Edge between " + entry.getKey(), e[i], a[j], tolerance);
+			}
+		}
+	}
+
+	private static Map<String, double[]> getEdgesBySites(VoronoiDiagram diagram)
+	{
+		ArrayList<Point> sites = diagram.siteCoords();
+		Map<String, double[]> result = new HashMap<>();
+		for (int i = 0; i < diagram.getNumEdges(); i++)
+		{
+			String site0 = toKey(sites.get(diagram.getEdgeSite0(i)));
+			String site1 = toKey(sites.get(diagram.getEdgeSite1(i)));
+			String key = site0.compareTo(site1) < 0 ? site0 + " and " + site1 : site1 + " and " + site0;
+			Point v0 = diagram.getEdgeVertex0(i);
+			Point v1 = diagram.getEdgeVertex1(i);
+			result.put(key, v0 == null ? null : new double[] { v0.x, v0.y, v1.x, v1.y });
+		}
+		return result;
+	}
+
+	private static String toKey(Point p)
+	{
+		return "(" + p.x + ", " + p.y + ")";
+	}
+}
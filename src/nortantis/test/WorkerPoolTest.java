@@ -0,0 +1,106 @@
+package nortantis.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import nortantis.util.Range;
+import nortantis.util.WorkerPool;
+
+public class WorkerPoolTest
+{
+	@Test
+	public void resultsAreInJobOrder()
+	{
+		List<Callable<Integer>> jobs = new ArrayList<>();
+		for (int i : new Range(1000))
+		{
+			jobs.add(() -> i * i);
+		}
+		List<Integer> results = WorkerPool.getInstance().runAllAndGetResults(jobs);
+		for (int i : new Range(1000))
+		{
+			assertEquals(i * i, (int) results.get(i));
+		}
+		assertEquals(0, WorkerPool.getInstance().getQueueDepth());
+	}
+
+	@Test
+	public void nestedJobsFinish()
+	{
+		AtomicInteger count = new AtomicInteger();
+		List<Runnable> outer = new ArrayList<>();
+		for (@SuppressWarnings("unused") int i : new Range(16))
+		{
+			outer.add(() ->
+			{
+				List<Runnable> inner = new ArrayList<>();
+				for (@SuppressWarnings("unused") int j : new Range(16))
+				{
+					inner.add(() -> count.incrementAndGet());
+				}
+				WorkerPool.getInstance().runAll(inner);
+			});
+		}
+		WorkerPool.getInstance().runAll(outer);
+		assertEquals(16 * 16, count.get());
+	}
+
+	@Test
+	public void exceptionIsRethrown()
+	{
+		List<Runnable> jobs = new ArrayList<>();
+		jobs.add(() -> {});
+		jobs.add(() ->
+		{
+			throw new IllegalStateException("test");
+		});
+		try
+		{
+			WorkerPool.getInstance().runAll(jobs);
+			fail("Expected an exception.");
+		}
+		catch (IllegalStateException e)
+		{
+			assertEquals("test", e.getMessage());
+		}
+		assertEquals(0, WorkerPool.getInstance().getQueueDepth());
+	}
+
+	@Test
+	public void maxParallelismIsRespected() throws Exception
+	{
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		WorkerPool.callWithMaxParallelism(2, () ->
+		{
+			List<Runnable> jobs = new ArrayList<>();
+			for (@SuppressWarnings("unused") int i : new Range(50))
+			{
+				jobs.add(() ->
+				{
+					int now = running.incrementAndGet();
+					maxRunning.accumulateAndGet(now, Math::max);
+					try
+					{
+						Thread.sleep(1);
+					}
+					catch (InterruptedException e)
+					{
+					}
+					running.decrementAndGet();
+				});
+			}
+			WorkerPool.getInstance().runAll(jobs);
+			return null;
+		});
+		assertTrue("At most 2 jobs should run at once, but " + maxRunning.get() + " did.", maxRunning.get() <= 2);
+	}
+}
@@ -0,0 +1,251 @@
+package nortantis.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A thread-safe cache of images which holds at most a given number of bytes of pixel data. When adding an image would
+ * go over that, the least recently used images are evicted until it fits.
+ *
+ * Evicted images can optionally be kept through soft references, so that they can still be found until the garbage
+ * collector needs the memory they use.
+ *
+ * @param <K>
+ *            The key type. Keys must implement equals and hashCode.
+ */
+public class BoundedImageCache<K>
+{
+	private long maxBytes;
+	private boolean softReferenceSpillover;
+	// Kept in access order, so that iteration starts at the least recently used image.
+	private final LinkedHashMap<K, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<K, KeyedSoftReference<K>> evictedImages = new HashMap<>();
+	private final ReferenceQueue<BufferedImage> clearedImages = new ReferenceQueue<>();
+	private long residentBytes;
+	private long hits;
+	private long softHits;
+	private long misses;
+	private long evictions;
+
+	private static final class KeyedSoftReference<K> extends SoftReference<BufferedImage>
+	{
+		final K key;
+
+		KeyedSoftReference(K key, BufferedImage image, ReferenceQueue<BufferedImage> queue)
+		{
+			super(image, queue);
+			this.key = key;
+		}
+	}
+
+	/**
+	 * @param maxBytes
+	 *            The most bytes of pixel data to hold, not counting images only held through soft references.
+	 * @param softReferenceSpillover
+	 *            Whether to keep evicted images through soft references.
+	 */
+	public BoundedImageCache(long maxBytes, boolean softReferenceSpillover)
+	{
+		setMaxBytes(maxBytes);
+		this.softReferenceSpillover = softReferenceSpillover;
+	}
+
+	/**
+	 * Get an image from the cache, or create it using createFun and add it to the cache. If two threads ask for the same
+	 * missing image at once, both create it, which only duplicates work.
+	 */
+	public BufferedImage getOrCreate(K key, Supplier<BufferedImage> createFun)
+	{
+		BufferedImage image = get(key);
+		if (image == null)
+		{
+			image = createFun.get();
+			put(key, image);
+		}
+		return image;
+	}
+
+	/**
+	 * @return The image mapped to the given key, or null if there isn't one. An image found through a soft reference is
+	 *         added back to the cache.
+	 */
+	public synchronized BufferedImage get(K key)
+	{
+		BufferedImage image = images.get(key);
+		if (image != null)
+		{
+			hits++;
+			return image;
+		}
+
+		removeClearedReferences();
+		KeyedSoftReference<K> reference = evictedImages.remove(key);
+		image = reference == null ? null : reference.get();
+		if (image != null)
+		{
+			softHits++;
+			put(key, image);
+			return image;
+		}
+
+		misses++;
+		return null;
+	}
+
+	public synchronized boolean containsKey(K key)
+	{
+		if (images.containsKey(key))
+		{
+			return true;
+		}
+		removeClearedReferences();
+		KeyedSoftReference<K> reference = evictedImages.get(key);
+		return reference != null && reference.get() != null;
+	}
+
+	/**
+	 * Adds an image, replacing any image with the same key, and evicts the least recently used images if needed to stay
+	 * within the byte budget. An image larger than the whole budget is only kept through a soft reference, if those are
+	 * on, and doesn't evict any other images.
+	 */
+	public synchronized void put(K key, BufferedImage image)
+	{
+		evictedImages.remove(key);
+		BufferedImage old = images.remove(key);
+		if (old != null)
+		{
+			residentBytes -= getSizeInBytes(old);
+		}
+
+		long size = getSizeInBytes(image);
+		if (size > maxBytes)
+		{
+			if (softReferenceSpillover)
+			{
+				evictedImages.put(key, new KeyedSoftReference<>(key, image, clearedImages));
+			}
+			return;
+		}
+		images.put(key, image);
+		residentBytes += size;
+		evictToBudget();
+	}
+
+	public synchronized void clear()
+	{
+		images.clear();
+		evictedImages.clear();
+		residentBytes = 0;
+	}
+
+	/**
+	 * Sets the most bytes of pixel data to hold, evicting images if the cache already holds more than that.
+	 */
+	public synchronized void setMaxBytes(long maxBytes)
+	{
+		if (maxBytes < 0)
+			throw new IllegalArgumentException("The maximum number of bytes must not be negative, but was " + maxBytes + ".");
+		this.maxBytes = maxBytes;
+		evictToBudget();
+	}
+
+	public synchronized long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	public synchronized void setSoftReferenceSpillover(boolean softReferenceSpillover)
+	{
+		this.softReferenceSpillover = softReferenceSpillover;
+		if (!softReferenceSpillover)
+		{
+			evictedImages.clear();
+		}
+	}
+
+	/**
+	 * @return The bytes of pixel data of the images held, not counting images only held through soft references.
+	 */
+	public synchronized long getResidentBytes()
+	{
+		return residentBytes;
+	}
+
+	public synchronized int size()
+	{
+		return images.size();
+	}
+
+	/**
+	 * @return The number of times get found an image without needing a soft reference.
+	 */
+	public synchronized long getHitCount()
+	{
+		return hits;
+	}
+
+	/**
+	 * @return The number of times get found an evicted image through a soft reference.
+	 */
+	public synchronized long getSoftHitCount()
+	{
+		return softHits;
+	}
+
+	public synchronized long getMissCount()
+	{
+		return misses;
+	}
+
+	public synchronized long getEvictionCount()
+	{
+		return evictions;
+	}
+
+	private void evictToBudget()
+	{
+		Iterator<Map.Entry<K, BufferedImage>> iterator = images.entrySet().iterator();
+		while (residentBytes > maxBytes && iterator.hasNext())
+		{
+			Map.Entry<K, BufferedImage> entry = iterator.next();
+			iterator.remove();
+			residentBytes -= getSizeInBytes(entry.getValue());
+			evictions++;
+			if (softReferenceSpillover)
+			{
+				evictedImages.put(entry.getKey(), new KeyedSoftReference<>(entry.getKey(), entry.getValue(), clearedImages));
+			}
+		}
+	}
+
+	private void removeClearedReferences()
+	{
+		Object reference;
+		while ((reference = clearedImages.poll()) != null)
+		{
+			@SuppressWarnings("unchecked")
+			KeyedSoftReference<K> cleared = (KeyedSoftReference<K>) reference;
+			// The key may have been mapped to a newer reference since this one was made.
+			if (evictedImages.get(cleared.key) == cleared)
+			{
+				evictedImages.remove(cleared.key);
+			}
+		}
+	}
+
+	/**
+	 * @return The size of the image's pixel data.
+	 */
+	public static long getSizeInBytes(BufferedImage image)
+	{
+		DataBuffer buffer = image.getRaster().getDataBuffer();
+		return ((long) buffer.getSize()) * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+	}
+}
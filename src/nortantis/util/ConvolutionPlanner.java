@@ -0,0 +1,629 @@
+package nortantis.util;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import nortantis.ComplexArray;
+
+/**
+ * Chooses how ImageHelper.convolveGrayscale convolves an image with a kernel, and implements the methods that don't use FFTs.
+ *
+ * The FFT method pads the image to a size JTransforms is fast for in each dimension, so its cost depends on the padded
+ * size and not on the kernel. Separable kernels, such as the ones from ImageHelper.createGaussianKernel, can instead be
+ * done as a horizontal pass followed by a vertical pass, and small kernels can be done directly. Those don't need the
+ * padded complex buffers, so they also use much less memory.
+ *
+ * The spatial methods give the same results as the FFT method, apart from floating point error, including where the kernel
+ * wraps around the padded image when the padding is smaller than the kernel.
+ *
+ * The spatial methods work on one tile of the output at a time, reading the part of the image the tile needs (the tile plus
+ * a halo the size of the kernel) straight from the image. convolveInTiles exposes that so that callers can use each tile
+ * of the result as it's done without ever holding the whole result.
+ */
+public class ConvolutionPlanner
+{
+	public enum Method
+	{
+		FFT, Separable, Direct
+	}
+
+	/**
+	 * Receives one tile of a convolution from convolveInTiles.
+	 */
+	public interface TileConsumer
+	{
+		/**
+		 * @param bounds The part of the image the tile covers.
+		 * @param values The convolution in the tile, indexed [y - bounds.y][x - bounds.x].
+		 */
+		public void accept(Rectangle bounds, float[][] values);
+	}
+
+	/**
+	 * Relative error allowed when deciding whether a kernel is separable.
+	 */
+	private static final float separableTolerance = 1e-4f;
+
+	/*
+	 * Rough times in nanoseconds, measured with 1024x1024 to 4096x4096 images. The FFT cost covers the whole convolution
+	 * (forward FFTs of the image and the kernel, the multiply, and the inverse FFT) per padded element per log2 of the
+	 * number of padded elements. The others are per output pixel per kernel element used.
+	 */
+	private static final double fftCostPerElementLog = 5.5;
+	private static final double separableCostPerTap = 0.8;
+	private static final double directCostPerTap = 0.8;
+
+	/**
+	 * When convolving a whole image with a spatial method, it's split into bands of rows at least this many times taller
+	 * than the kernel, so that the halo rows read by more than one band are a small part of the work.
+	 */
+	private static final int minBandHeightInKernels = 4;
+
+	/**
+	 * Chooses the fastest method to convolve an image of the given size with the given kernel.
+	 */
+	public static Method chooseMethod(int imageWidth, int imageHeight, float[][] kernel)
+	{
+		int rows = getPaddedSize(Math.max(imageHeight, kernel.length));
+		int cols = getPaddedSize(Math.max(imageWidth, kernel[0].length));
+		return chooseMethod(imageWidth, imageHeight, kernel, separate(kernel) != null, rows, cols);
+	}
+
+	private static Method chooseMethod(int outputWidth, int outputHeight, float[][] kernel, boolean isSeparable, int fftRows, int fftCols)
+	{
+		int kernelHeight = kernel.length;
+		int kernelWidth = kernel[0].length;
+
+		double paddedArea = (double) fftRows * fftCols;
+		double fftCost = fftCostPerElementLog * paddedArea * (Math.log(paddedArea) / Math.log(2.0));
+		double outputArea = (double) outputWidth * outputHeight;
+		double directCost = directCostPerTap * outputArea * kernelWidth * kernelHeight;
+		double separableCost = isSeparable ? separableCostPerTap * outputArea * (kernelWidth + kernelHeight) : Double.POSITIVE_INFINITY;
+
+		if (separableCost <= directCost && separableCost <= fftCost)
+		{
+			return Method.Separable;
+		}
+		if (directCost <= fftCost)
+		{
+			return Method.Direct;
+		}
+		return Method.FFT;
+	}
+
+	/**
+	 * Chooses the method convolveInTiles uses for tiles of the given size. Unlike for a whole image, an FFT of a tile
+	 * must be big enough to hold the halo the kernel reads around the tile.
+	 */
+	public static Method chooseTileMethod(int tileWidth, int tileHeight, float[][] kernel)
+	{
+		int fftRows = getPaddedSize(tileHeight + kernel.length - 1);
+		int fftCols = getPaddedSize(tileWidth + kernel[0].length - 1);
+		return chooseMethod(tileWidth, tileHeight, kernel, separate(kernel) != null, fftRows, fftCols);
+	}
+
+	/**
+	 * The size the FFT method pads a dimension to.
+	 */
+	static int getPaddedSize(int size)
+	{
+		return ImageHelper.getFFTSizeEqualOrLargerThan(size);
+	}
+
+	/**
+	 * If the kernel is, within a tolerance, the outer product of a column vector and a row vector, returns them.
+	 * Otherwise returns null.
+	 * @return {column, row}, where kernel[y][x] is approximately column[y] * row[x].
+	 */
+	static float[][] separate(float[][] kernel)
+	{
+		int kernelHeight = kernel.length;
+		int kernelWidth = kernel[0].length;
+
+		// Use the largest element as the pivot to keep the division accurate.
+		int pivotY = 0;
+		int pivotX = 0;
+		for (int y = 0; y < kernelHeight; y++)
+		{
+			for (int x = 0; x < kernelWidth; x++)
+			{
+				if (Math.abs(kernel[y][x]) > Math.abs(kernel[pivotY][pivotX]))
+				{
+					pivotY = y;
+					pivotX = x;
+				}
+			}
+		}
+		float pivot = kernel[pivotY][pivotX];
+		if (pivot == 0f)
+		{
+			return null;
+		}
+
+		float[] column = new float[kernelHeight];
+		float[] row = new float[kernelWidth];
+		for (int x = 0; x < kernelWidth; x++)
+		{
+			row[x] = kernel[pivotY][x];
+		}
+		for (int y = 0; y < kernelHeight; y++)
+		{
+			column[y] = kernel[y][pivotX] / pivot;
+		}
+
+		float tolerance = separableTolerance * Math.abs(pivot);
+		for (int y = 0; y < kernelHeight; y++)
+		{
+			for (int x = 0; x < kernelWidth; x++)
+			{
+				if (Math.abs(kernel[y][x] - column[y] * row[x]) > tolerance)
+				{
+					return null;
+				}
+			}
+		}
+		return new float[][] { column, row };
+	}
+
+	/**
+	 * Convolves an image with a kernel using the given spatial method. The result is in the same units and alignment
+	 * as the FFT method: an array the size of the image whose values are the convolution of the image's pixel levels,
+	 * scaled to the range 0 to 1, with the kernel.
+	 */
+	public static float[][] convolveSpatial(BufferedImage img, float[][] kernel, Method method)
+	{
+		if (method == Method.FFT)
+			throw new IllegalArgumentException("Unsupported spatial convolution method: " + method);
+
+		int width = img.getWidth();
+		int height = img.getHeight();
+		TileConvolver convolver = new TileConvolver(img, kernel, method, width, height);
+		int threads = WorkerPool.getInstance().getMaxParallelism();
+		int bandHeight = Math.max(minBandHeightInKernels * kernel.length, (height + threads * 4 - 1) / (threads * 4));
+		float[][] result = new float[height][];
+		List<Runnable> jobs = new ArrayList<>();
+		for (int bandStart = 0; bandStart < height; bandStart += bandHeight)
+		{
+			Rectangle bounds = new Rectangle(0, bandStart, width, Math.min(bandHeight, height - bandStart));
+			jobs.add(() ->
+			{
+				float[][] values = convolver.convolveTile(bounds);
+				System.arraycopy(values, 0, result, bounds.y, bounds.height);
+			});
+		}
+		WorkerPool.getInstance().runAll(jobs);
+		return result;
+	}
+
+	/**
+	 * Convolves an image with a kernel one tile at a time, and gives each tile to the consumer as it's done, so the whole
+	 * result is never in memory at once. Tiles are done in parallel, so the consumer must be safe to call from several threads
+	 * at once for different tiles.
+	 *
+	 * The values are in the same units as ImageHelper.convolveGrayscale's before it converts them to an image. When
+	 * convolveGrayscale would use a spatial method for the whole image, the values are exactly the same as its. When it
+	 * would use an FFT, they match apart from floating point error, since the tiles are either done spatially or with FFTs
+	 * of a different size, which round differently.
+	 *
+	 * @param maximizeContrast If true, the values are scaled to range from 0 to 1 over the whole image, the same as
+	 *        convolveGrayscale does. This needs the minimum and maximum of the whole result, so each tile is convolved twice.
+	 * @param tileSize The width and height of the tiles, not counting the halo around each that the kernel reads from.
+	 */
+	public static void convolveInTiles(BufferedImage img, float[][] kernel, boolean maximizeContrast, int tileSize, TileConsumer consumer)
+	{
+		if (tileSize < 1)
+			throw new IllegalArgumentException("The tile size must be at least 1, but was " + tileSize + ".");
+
+		int width = img.getWidth();
+		int height = img.getHeight();
+		int tileWidth = Math.min(tileSize, width);
+		int tileHeight = Math.min(tileSize, height);
+		// Use the spatial method convolveGrayscale would use for the whole image when it would use one, since spatial tiles
+		// sum in the same order as it does and so give exactly the same values.
+		Method method = chooseMethod(width, height, kernel);
+		if (method == Method.FFT)
+		{
+			method = chooseTileMethod(tileWidth, tileHeight, kernel);
+		}
+		TileConvolver convolver = new TileConvolver(img, kernel, method, tileWidth, tileHeight);
+
+		List<Rectangle> tiles = new ArrayList<>();
+		for (int y = 0; y < height; y += tileHeight)
+		{
+			for (int x = 0; x < width; x += tileWidth)
+			{
+				tiles.add(new Rectangle(x, y, Math.min(tileWidth, width - x), Math.min(tileHeight, height - y)));
+			}
+		}
+
+		try
+		{
+			float min = 0f;
+			float max = 0f;
+			if (maximizeContrast)
+			{
+				List<Callable<float[]>> jobs = new ArrayList<>();
+				for (Rectangle bounds : tiles)
+				{
+					jobs.add(() -> findMinAndMax(convolver.convolveTile(bounds)));
+				}
+				min = Float.POSITIVE_INFINITY;
+				max = Float.NEGATIVE_INFINITY;
+				for (float[] minAndMax : WorkerPool.getInstance().runAllAndGetResults(jobs))
+				{
+					min = Math.min(min, minAndMax[0]);
+					max = Math.max(max, minAndMax[1]);
+				}
+			}
+
+			final float minFinal = min;
+			final float maxFinal = max;
+			List<Runnable> jobs = new ArrayList<>();
+			for (Rectangle bounds : tiles)
+			{
+				jobs.add(() ->
+				{
+					float[][] values = convolver.convolveTile(bounds);
+					if (maximizeContrast)
+					{
+						ImageHelper.setContrast(values, 0f, 1f, minFinal, maxFinal);
+					}
+					consumer.accept(bounds, values);
+				});
+			}
+			WorkerPool.getInstance().runAll(jobs);
+		}
+		finally
+		{
+			convolver.releaseBuffers();
+		}
+	}
+
+	private static float[] findMinAndMax(float[][] values)
+	{
+		float min = Float.POSITIVE_INFINITY;
+		float max = Float.NEGATIVE_INFINITY;
+		for (float[] row : values)
+		{
+			for (float value : row)
+			{
+				if (value < min)
+					min = value;
+				if (value > max)
+					max = value;
+			}
+		}
+		return new float[] { min, max };
+	}
+
+	/**
+	 * The FFT method centers the kernel in a padded array, flips it, and swaps quadrants of the result. This finds the
+	 * equivalent offset for a spatial convolution along one axis: output[i] = sum over j of kernel[j] * input[i + j - offset].
+	 */
+	private static int getKernelOffset(int kernelSize, int paddedSize)
+	{
+		int kernelPadding = (paddedSize - kernelSize) / 2;
+		return kernelSize - 1 - paddedSize / 2 + kernelPadding;
+	}
+
+	/**
+	 * For one axis, maps each position in the input as extended by the kernel to the index in the input it reads from,
+	 * or -1 if it reads from the padding. This makes the kernel wrap around the padded array the same way the FFT
+	 * method's circular convolution does.
+	 * @return An array of size + kernelSize - 1 indexes. Output position i with kernel index j reads from entry i + j.
+	 */
+	private static int[] createSourceIndexes(int size, int kernelSize)
+	{
+		int paddedSize = getPaddedSize(Math.max(size, kernelSize));
+		int padding = (paddedSize - size) / 2;
+		int offset = getKernelOffset(kernelSize, paddedSize);
+		int[] result = new int[size + kernelSize - 1];
+		for (int t = 0; t < result.length; t++)
+		{
+			int sourceIndex = Math.floorMod(padding + t - offset, paddedSize) - padding;
+			result[t] = sourceIndex >= 0 && sourceIndex < size ? sourceIndex : -1;
+		}
+		return result;
+	}
+
+	/**
+	 * Convolves rectangular parts of an image with a kernel. Each tile reads the rows and columns of the image it needs
+	 * through the source indexes for the whole image, so tiles put together give the same result as convolving the whole
+	 * image, including where the kernel wraps around.
+	 */
+	private static class TileConvolver
+	{
+		private final Raster raster;
+		private final boolean isGrayscale;
+		private final float maxPixelValue;
+		private final float[][] kernel;
+		private final int kernelWidth;
+		private final int kernelHeight;
+		private final Method method;
+		private final int[] xSources;
+		private final int[] ySources;
+		/**
+		 * For Method.Separable, the kernel's column and row vectors.
+		 */
+		private final float[] column;
+		private final float[] row;
+		/**
+		 * For Method.FFT, the FFT of the flipped kernel, at a size that fits the largest tile and its halo.
+		 */
+		private final ComplexArray kernelFFT;
+
+		/**
+		 * @param maxTileWidth The width of the widest tile that will be convolved. Only used for Method.FFT.
+		 * @param maxTileHeight The height of the tallest tile that will be convolved. Only used for Method.FFT.
+		 */
+		public TileConvolver(BufferedImage img, float[][] kernel, Method method, int maxTileWidth, int maxTileHeight)
+		{
+			this.raster = img.getRaster();
+			this.isGrayscale = ImageHelper.isSupportedGrayscaleType(img);
+			this.maxPixelValue = ImageHelper.getMaxPixelValue(img);
+			this.kernel = kernel;
+			this.kernelWidth = kernel[0].length;
+			this.kernelHeight = kernel.length;
+			this.method = method;
+			this.xSources = createSourceIndexes(img.getWidth(), kernelWidth);
+			this.ySources = createSourceIndexes(img.getHeight(), kernelHeight);
+
+			if (method == Method.Separable)
+			{
+				float[][] parts = separate(kernel);
+				if (parts == null)
+					throw new IllegalArgumentException("The kernel is not separable.");
+				column = parts[0];
+				row = parts[1];
+			}
+			else
+			{
+				column = null;
+				row = null;
+			}
+
+			if (method == Method.FFT)
+			{
+				int fftRows = getPaddedSize(maxTileHeight + kernelHeight - 1);
+				int fftCols = getPaddedSize(maxTileWidth + kernelWidth - 1);
+				float[][] data = FFTCache.borrowBuffer(fftRows, fftCols);
+				for (int i = 0; i < kernelHeight; i++)
+				{
+					for (int j = 0; j < kernelWidth; j++)
+					{
+						data[i][j] = kernel[kernelHeight - 1 - i][kernelWidth - 1 - j];
+					}
+				}
+				FFTCache.realForwardFull(data);
+				kernelFFT = new ComplexArray(data);
+			}
+			else
+			{
+				kernelFFT = null;
+			}
+		}
+
+		public void releaseBuffers()
+		{
+			if (kernelFFT != null)
+			{
+				FFTCache.releaseBuffer(kernelFFT.getArrayJTransformsFormat());
+			}
+		}
+
+		/**
+		 * @return The convolution inside bounds, indexed [y - bounds.y][x - bounds.x].
+		 */
+		public float[][] convolveTile(Rectangle bounds)
+		{
+			if (method == Method.Separable)
+			{
+				return convolveTileSeparable(bounds);
+			}
+			else if (method == Method.Direct)
+			{
+				return convolveTileDirect(bounds);
+			}
+			return convolveTileFFT(bounds);
+		}
+
+		/**
+		 * Reads the image rows a tile needs. Each row is extended by the kernel width: entry u is the image at column
+		 * xSources[bounds.x + u], or 0 where that's padding.
+		 */
+		private class ExtendedRowReader
+		{
+			private final int startX;
+			private final int extendedWidth;
+			private final int minSourceX;
+			private final float[] span;
+
+			public ExtendedRowReader(Rectangle bounds)
+			{
+				startX = bounds.x;
+				extendedWidth = bounds.width + kernelWidth - 1;
+				// Only read the columns the tile uses. That's usually the tile plus its halo, but can be more where the
+				// kernel wraps around.
+				int min = Integer.MAX_VALUE;
+				int max = -1;
+				for (int u = 0; u < extendedWidth; u++)
+				{
+					int sourceX = xSources[startX + u];
+					if (sourceX >= 0)
+					{
+						min = Math.min(min, sourceX);
+						max = Math.max(max, sourceX);
+					}
+				}
+				minSourceX = min;
+				span = max < min ? null : new float[max - min + 1];
+			}
+
+			public void read(int sourceY, float[] extendedRow)
+			{
+				if (span == null)
+				{
+					return;
+				}
+				raster.getSamples(minSourceX, sourceY, span.length, 1, 0, span);
+				if (isGrayscale)
+				{
+					for (int i = 0; i < span.length; i++)
+					{
+						span[i] /= maxPixelValue;
+					}
+				}
+				for (int u = 0; u < extendedWidth; u++)
+				{
+					int sourceX = xSources[startX + u];
+					extendedRow[u] = sourceX < 0 ? 0f : span[sourceX - minSourceX];
+				}
+			}
+		}
+
+		private float[][] convolveTileSeparable(Rectangle bounds)
+		{
+			int width = bounds.width;
+			ExtendedRowReader reader = new ExtendedRowReader(bounds);
+
+			// Horizontal pass over each row of the tile extended by the kernel height. Rows that read from the padding stay null.
+			float[][] horizontal = new float[bounds.height + kernelHeight - 1][];
+			float[] extended = new float[width + kernelWidth - 1];
+			for (int t = 0; t < horizontal.length; t++)
+			{
+				int sourceY = ySources[bounds.y + t];
+				if (sourceY < 0)
+				{
+					continue;
+				}
+				reader.read(sourceY, extended);
+				// Loop over the kernel on the outside so the inner loop can be vectorized.
+				float[] out = new float[width];
+				for (int j = 0; j < kernelWidth; j++)
+				{
+					float weight = row[j];
+					for (int x = 0; x < width; x++)
+					{
+						out[x] += weight * extended[x + j];
+					}
+				}
+				horizontal[t] = out;
+			}
+
+			// Vertical pass.
+			float[][] result = new float[bounds.height][width];
+			for (int y = 0; y < bounds.height; y++)
+			{
+				float[] out = result[y];
+				for (int i = 0; i < kernelHeight; i++)
+				{
+					float[] in = horizontal[y + i];
+					if (in == null)
+					{
+						continue;
+					}
+					float weight = column[i];
+					for (int x = 0; x < width; x++)
+					{
+						out[x] += weight * in[x];
+					}
+				}
+				// Later rows don't read this one.
+				horizontal[y] = null;
+			}
+			return result;
+		}
+
+		private float[][] convolveTileDirect(Rectangle bounds)
+		{
+			int width = bounds.width;
+			ExtendedRowReader reader = new ExtendedRowReader(bounds);
+
+			// The tile extended by the kernel size on the right and bottom. Rows that read from the padding stay null.
+			float[][] extended = new float[bounds.height + kernelHeight - 1][];
+			for (int t = 0; t < extended.length; t++)
+			{
+				int sourceY = ySources[bounds.y + t];
+				if (sourceY >= 0)
+				{
+					extended[t] = new float[width + kernelWidth - 1];
+					reader.read(sourceY, extended[t]);
+				}
+			}
+
+			float[][] result = new float[bounds.height][width];
+			for (int y = 0; y < bounds.height; y++)
+			{
+				float[] out = result[y];
+				for (int i = 0; i < kernelHeight; i++)
+				{
+					float[] in = extended[y + i];
+					if (in == null)
+					{
+						continue;
+					}
+					// Loop over the kernel on the outside so the inner loop can be vectorized.
+					float[] kernelRow = kernel[i];
+					for (int j = 0; j < kernelWidth; j++)
+					{
+						float weight = kernelRow[j];
+						for (int x = 0; x < width; x++)
+						{
+							out[x] += weight * in[x + j];
+						}
+					}
+				}
+				// Later rows don't read this one.
+				extended[y] = null;
+			}
+			return result;
+		}
+
+		/**
+		 * Convolves a tile with an FFT big enough that the tile and its halo don't wrap around, so the result only
+		 * depends on the halo, and tiles put together match the other methods.
+		 */
+		private float[][] convolveTileFFT(Rectangle bounds)
+		{
+			float[][] kernelData = kernelFFT.getArrayJTransformsFormat();
+			float[][] data = FFTCache.borrowBuffer(kernelData.length, kernelData[0].length / 2);
+			try
+			{
+				ExtendedRowReader reader = new ExtendedRowReader(bounds);
+				float[] extended = new float[bounds.width + kernelWidth - 1];
+				for (int t = 0; t < bounds.height + kernelHeight - 1; t++)
+				{
+					int sourceY = ySources[bounds.y + t];
+					if (sourceY >= 0)
+					{
+						reader.read(sourceY, extended);
+						System.arraycopy(extended, 0, data[t], 0, extended.length);
+					}
+				}
+				FFTCache.realForwardFull(data);
+				new ComplexArray(data).multiplyInPlace(kernelFFT);
+				FFTCache.complexInverse(data, true);
+
+				// With the flipped kernel at the origin, output (x, y) lands at (x + kernelWidth - 1, y + kernelHeight - 1).
+				float[][] result = new float[bounds.height][bounds.width];
+				for (int y = 0; y < bounds.height; y++)
+				{
+					float[] in = data[y + kernelHeight - 1];
+					for (int x = 0; x < bounds.width; x++)
+					{
+						result[y][x] = in[(x + kernelWidth - 1) * 2];
+					}
+				}
+				return result;
+			}
+			finally
+			{
+				FFTCache.releaseBuffer(data);
+			}
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package nortantis.util;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.jtransforms.fft.FloatFFT_2D;
+
+/**
+ * Caches FFT plans and reuses the buffers that FFTs are done in, since creating a map does many FFTs of the same size.
+ *
+ * A FloatFFT_2D has scratch space inside it, so one can't be used by two threads at once. Instead, each size has a
+ * queue of plans, and each FFT takes a plan from the queue and puts it back when done.
+ *
+ * Plans are kept for the life of the program because they are small. Buffers are big, so only up to a limited
+ * number of bytes of them are kept for reuse.
+ */
+public class FFTCache
+{
+	private static final ConcurrentHashMapF<Long, ConcurrentLinkedQueue<FloatFFT_2D>> plans = new ConcurrentHashMapF<>();
+
+	private static final Map<Long, ArrayDeque<float[][]>> freeBuffers = new HashMap<>();
+	private static long retainedBytes = 0;
+	private static long maxRetainedBytes = Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8);
+
+	private static long toKey(int rows, int cols)
+	{
+		return ((long) rows << 32) | (cols & 0xffffffffL);
+	}
+
+	/**
+	 * Does an in-place forward FFT of real data using a cached plan. 
+	 * @param data In jTransforms' format for FloatFFT_2D.realForwardFull, that is, rows by 2 * cols with the input in the left half.
+	 */
+	public static void realForwardFull(float[][] data)
+	{
+		int rows = data.length;
+		int cols = data[0].length / 2;
+		FloatFFT_2D fft = borrowFFT(rows, cols);
+		try
+		{
+			fft.realForwardFull(data);
+		}
+		finally
+		{
+			releaseFFT(rows, cols, fft);
+		}
+	}
+
+	/**
+	 * Does an in-place inverse FFT of complex data using a cached plan. 
+	 * @param data In jTransforms' format, that is, rows by 2 * cols.
+	 */
+	public static void complexInverse(float[][] data, boolean scale)
+	{
+		int rows = data.length;
+		int cols = data[0].length / 2;
+		FloatFFT_2D fft = borrowFFT(rows, cols);
+		try
+		{
+			fft.complexInverse(data, scale);
+		}
+		finally
+		{
+			releaseFFT(rows, cols, fft);
+		}
+	}
+
+	private static FloatFFT_2D borrowFFT(int rows, int cols)
+	{
+		// Make sure jTransforms runs on the shared pool before the FFT is used.
+		WorkerPool.getInstance().getPool();
+		
+		FloatFFT_2D fft = plans.getOrCreate(toKey(rows, cols), () -> new ConcurrentLinkedQueue<>()).poll();
+		if (fft == null)
+		{
+			fft = new FloatFFT_2D(rows, cols);
+		}
+		return fft;
+	}
+
+	private static void releaseFFT(int rows, int cols, FloatFFT_2D fft)
+	{
+		plans.getOrCreate(toKey(rows, cols), () -> new ConcurrentLinkedQueue<>()).offer(fft);
+	}
+
+	/**
+	 * Gets an array of zeros in the format jTransforms uses for a complex FFT of the given size, that is, rows by 2 * cols.
+	 * Pass it to releaseBuffer when done with it so it can be reused.
+	 */
+	public static float[][] borrowBuffer(int rows, int cols)
+	{
+		float[][] buffer = null;
+		synchronized (freeBuffers)
+		{
+			ArrayDeque<float[][]> free = freeBuffers.get(toKey(rows, cols));
+			if (free != null && !free.isEmpty())
+			{
+				buffer = free.pop();
+				retainedBytes -= getBufferBytes(rows, cols);
+			}
+		}
+
+		if (buffer == null)
+		{
+			return new float[rows][2 * cols];
+		}
+		for (float[] row : buffer)
+		{
+			Arrays.fill(row, 0f);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Makes a buffer from borrowBuffer available for reuse. The caller must not use it after this.
+	 */
+	public static void releaseBuffer(float[][] buffer)
+	{
+		if (buffer.length == 0)
+		{
+			return;
+		}
+		int rows = buffer.length;
+		int cols = buffer[0].length / 2;
+		long bytes = getBufferBytes(rows, cols);
+		synchronized (freeBuffers)
+		{
+			if (retainedBytes + bytes > maxRetainedBytes)
+			{
+				// Let the garbage collector have it.
+				return;
+			}
+			ArrayDeque<float[][]> free = freeBuffers.get(toKey(rows, cols));
+			if (free == null)
+			{
+				free = new ArrayDeque<>();
+				freeBuffers.put(toKey(rows, cols), free);
+			}
+			free.push(buffer);
+			retainedBytes += bytes;
+		}
+	}
+
+	private static long getBufferBytes(int rows, int cols)
+	{
+		return (long) rows * 2 * cols * 4;
+	}
+
+	/**
+	 * Sets the most bytes of unused buffers to keep for reuse. 0 turns off reusing buffers.
+	 */
+	public static void setMaxRetainedBytes(long maxBytes)
+	{
+		synchronized (freeBuffers)
+		{
+			maxRetainedBytes = maxBytes;
+			if (retainedBytes > maxRetainedBytes)
+			{
+				freeBuffers.clear();
+				retainedBytes = 0;
+			}
+		}
+	}
+
+	/**
+	 * Frees all unused buffers and cached FFT plans.
+	 */
+	public static void clear()
+	{
+		synchronized (freeBuffers)
+		{
+			freeBuffers.clear();
+			retainedBytes = 0;
+		}
+		plans.clear();
+	}
+}
@@ -26,10 +26,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 public class Helper 
 {	
@@ -190,76 +186,21 @@ public class Helper
 		return b.toString();
 	}
 	
+	/**
+	 * Runs the given jobs on the shared WorkerPool and returns once they have all finished.
+	 */
 	public static void processInParallel(List<Runnable> jobs)
 	{
-		List<Future<?>> futures = new ArrayList<Future<?>>();
-		int numThreads = Runtime.getRuntime().availableProcessors();
-		ExecutorService exService = Executors.newFixedThreadPool(numThreads);
-		try
-		{
-			for (Runnable job : jobs)
-			{
-				futures.add(exService.submit(job));
-			}
-	
-			for (int i : new Range(jobs.size()))
-			{
-				try
-				{
-					futures.get(i).get();
-				}
-				catch(ExecutionException e)
-				{
-					throw new RuntimeException(e);
-				}
-				catch(InterruptedException e)
-				{
-					throw new RuntimeException(e);
-				}
-			}
-		}
-		finally
-		{
-			exService.shutdown();
-		}
+		WorkerPool.getInstance().runAll(jobs);
 	}
 	
+	/**
+	 * Runs the given jobs on the shared WorkerPool.
+	 * @return The result of each job, in the same order as jobs.
+	 */
 	public static <T> List<T> processInParallelAndGetResult(List<Callable<T>> jobs)
 	{
-		List<Future<T>> futures = new ArrayList<>();
-		List<T> results = new ArrayList<>();
-		int numThreads = Runtime.getRuntime().availableProcessors();
-		ExecutorService exService = Executors.newFixedThreadPool(numThreads);
-		try
-		{
-			for (Callable<T> job : jobs)
-			{
-				futures.add(exService.submit(job));
-			}
-	
-			for (int i : new Range(jobs.size()))
-			{
-				try
-				{
-					T result = futures.get(i).get();
-					results.add(result);
-				}
-				catch(ExecutionException e)
-				{
-					throw new RuntimeException(e);
-				}
-				catch(InterruptedException e)
-				{
-					throw new RuntimeException(e);
-				}
-			}
-		}
-		finally
-		{
-			exService.shutdown();
-		}
-		
-		return results;
+		return WorkerPool.getInstance().runAllAndGetResults(jobs);
 	}
 
 	
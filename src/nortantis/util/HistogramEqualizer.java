@@ -196,36 +196,39 @@ public class HistogramEqualizer
 		WritableRaster in = inImage.getRaster();
 		WritableRaster out = outImage.getRaster();
 
-		for (int y = 0; y < height; y++)
+		ParallelRows.forEachBand(height, width, (startRow, endRow) ->
 		{
-			for (int x = 0; x < width; x++)
+			for (int y = startRow; y < endRow; y++)
 			{
-				if (lookupTables.size() == 1)
+				for (int x = 0; x < width; x++)
 				{
-					int grayLevel = in.getSample(x, y, 0);			
-					out.setSample(x, y, 0, lookupTables.get(0)[grayLevel]);
-				}
-				else
-				{
-					Color inColor;
-					if (ImageHelper.isSupportedGrayscaleType(inImage))
+					if (lookupTables.size() == 1)
 					{
-						int grayLevel = in.getSample(x, y, 0);	
-						inColor = new Color(grayLevel, grayLevel, grayLevel, 255);
+						int grayLevel = in.getSample(x, y, 0);			
+						out.setSample(x, y, 0, lookupTables.get(0)[grayLevel]);
 					}
 					else
 					{
-						inColor = new Color(inImage.getRGB(x, y));
-					}
-					int r = lookupTables.get(0)[inColor.getRed()];
-					int g = lookupTables.get(1)[inColor.getGreen()];
-					int b = lookupTables.get(2)[inColor.getBlue()];
-					Color outColor = new Color(r, g, b, 255);
-					outImage.setRGB(x, y, outColor.getRGB());
+						Color inColor;
+						if (ImageHelper.isSupportedGrayscaleType(inImage))
+						{
+							int grayLevel = in.getSample(x, y, 0);	
+							inColor = new Color(grayLevel, grayLevel, grayLevel, 255);
+						}
+						else
+						{
+							inColor = new Color(inImage.getRGB(x, y));
+						}
+						int r = lookupTables.get(0)[inColor.getRed()];
+						int g = lookupTables.get(1)[inColor.getGreen()];
+						int b = lookupTables.get(2)[inColor.getBlue()];
+						Color outColor = new Color(r, g, b, 255);
+						outImage.setRGB(x, y, outColor.getRGB());
 
+					}
 				}
 			}
-		}
+		});
 
 		return outImage;
 
@@ -8,10 +8,21 @@ import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.MultiPixelPackedSampleModel;
 import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import javax.imageio.ImageIO;
@@ -21,25 +32,21 @@ import org.apache.commons.math3.analysis.function.Sinc;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.imgscalr.Scalr;
 import org.imgscalr.Scalr.Method;
-import org.jtransforms.fft.FloatFFT_2D;
 
 import hoten.geom.Point;
 import nortantis.ComplexArray;
 import nortantis.DimensionDouble;
 import nortantis.IconDrawer;
-import pl.edu.icm.jlargearrays.ConcurrencyUtils;
 
 public class ImageHelper
 {
 	/**
-	 * This should be called before closing the program if methods have been
-	 *  called which use jTransforms or other thread pools.
-	 *  
-	 *  For some reason this doesn't need to be called when running a GUI, and will throw an errror if you do.
+	 * Shuts down the threads of the shared WorkerPool, which is also used by jTransforms. The pool's threads are daemon threads,
+	 * so this is optional when closing the program.
 	 */
 	public static void shutdownThreadPool()
 	{
-		ConcurrencyUtils.shutdownThreadPoolAndAwaitTermination(); 
+		WorkerPool.getInstance().shutdown();
 	}
 		
 	public static DimensionDouble fitDimensionsWithinBoundingBox(Dimension maxDimensions, double originalWidth, double originalHeight)
@@ -367,6 +374,21 @@ public class ImageHelper
 	}
 	
 
+	/**
+	 * Like setContrast, but with the minimum and maximum of the values already known, such as when the array is
+	 * one tile of a larger result.
+	 */
+	public static void setContrast(float[][] array, float targetMin, float targetMax, float min, float max)
+	{
+		for (float[] row : array)
+		{
+			for (int c = 0; c < row.length; c++)
+			{
+				row[c] = (((row[c] - min)/(max - min))) * (targetMax - targetMin) + targetMin;
+			}
+		}
+	}
+
 	/** 
 	 * Multiplies each pixel by the given scale. The image must be a supported grayscale type
 	 */
@@ -408,6 +430,152 @@ public class ImageHelper
 		}
 	}
 	
+	/**
+	 * The result of getRGB for each level of a TYPE_BYTE_GRAY image.
+	 */
+	private static final int[] grayLevelToRGB = createGrayLevelToRGBTable();
+	
+	private static int[] createGrayLevelToRGBTable()
+	{
+		BufferedImage image = new BufferedImage(256, 1, BufferedImage.TYPE_BYTE_GRAY);
+		WritableRaster raster = image.getRaster();
+		for (int level = 0; level < 256; level++)
+		{
+			raster.setSample(level, 0, 0, level);
+		}
+		return image.getRGB(0, 0, 256, 1, null, 0, 256);
+	}
+	
+	/**
+	 * Returns the pixel array of the given image if it is TYPE_INT_RGB or TYPE_INT_ARGB and its pixels are laid out
+	 * one row after another with no padding, which is the case for images created with new BufferedImage(...).
+	 * Otherwise returns null.
+	 */
+	public static int[] getIntPixels(BufferedImage image)
+	{
+		if (image.getType() != BufferedImage.TYPE_INT_RGB && image.getType() != BufferedImage.TYPE_INT_ARGB)
+		{
+			return null;
+		}
+		WritableRaster raster = image.getRaster();
+		if (!(raster.getDataBuffer() instanceof DataBufferInt) || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel))
+		{
+			return null;
+		}
+		DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+		SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+		if (buffer.getNumBanks() != 1 || buffer.getOffset() != 0 || sampleModel.getScanlineStride() != image.getWidth()
+				|| raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0)
+		{
+			return null;
+		}
+		return buffer.getData();
+	}
+	
+	/**
+	 * Reads one row of an image in the default RGB color model. The result is the same as calling
+	 * image.getRGB(x, y) for each x in the row, but doesn't allocate anything for each pixel.
+	 */
+	private static void getRGBRow(BufferedImage image, int y, int[] row)
+	{
+		int width = image.getWidth();
+		int[] pixels = getIntPixels(image);
+		if (pixels == null)
+		{
+			if (image.getType() == BufferedImage.TYPE_BYTE_GRAY)
+			{
+				// Converting gray levels to RGB is expensive, so look them up instead.
+				getSampleRow(image.getRaster(), y, row);
+				for (int x = 0; x < width; x++)
+				{
+					row[x] = grayLevelToRGB[row[x]];
+				}
+			}
+			else
+			{
+				image.getRGB(0, y, width, 1, row, 0, width);
+			}
+		}
+		else if (image.getType() == BufferedImage.TYPE_INT_RGB)
+		{
+			int offset = y * width;
+			for (int x = 0; x < width; x++)
+			{
+				row[x] = 0xff000000 | pixels[offset + x];
+			}
+		}
+		else
+		{
+			System.arraycopy(pixels, y * width, row, 0, width);
+		}
+	}
+	
+	/**
+	 * Writes part of one row of an image from pixels in the default RGB color model. The result is the same as calling
+	 * image.setRGB(x, y, row[x]) for each x from startX to startX + count - 1.
+	 */
+	private static void setRGBRow(BufferedImage image, int y, int startX, int count, int[] row)
+	{
+		int[] pixels = getIntPixels(image);
+		if (pixels == null)
+		{
+			image.setRGB(startX, y, count, 1, row, startX, image.getWidth());
+		}
+		else if (image.getType() == BufferedImage.TYPE_INT_RGB)
+		{
+			int offset = y * image.getWidth();
+			for (int x = startX; x < startX + count; x++)
+			{
+				pixels[offset + x] = row[x] & 0x00ffffff;
+			}
+		}
+		else
+		{
+			System.arraycopy(row, startX, pixels, y * image.getWidth() + startX, count);
+		}
+	}
+	
+	/**
+	 * Reads band 0 of one row of a raster. The result is the same as calling raster.getSample(x, y, 0) for each x in the row.
+	 * 8 bit gray and 1 bit rasters are read directly from their data buffers.
+	 */
+	private static void getSampleRow(Raster raster, int y, int[] row)
+	{
+		int width = raster.getWidth();
+		SampleModel sampleModel = raster.getSampleModel();
+		if (raster.getDataBuffer() instanceof DataBufferByte && raster.getDataBuffer().getNumBanks() == 1 
+				&& raster.getMinX() == 0 && raster.getMinY() == 0
+				&& raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0)
+		{
+			DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+			byte[] data = buffer.getData();
+			if (sampleModel instanceof ComponentSampleModel && sampleModel.getNumBands() == 1
+					&& ((ComponentSampleModel) sampleModel).getPixelStride() == 1)
+			{
+				ComponentSampleModel componentModel = (ComponentSampleModel) sampleModel;
+				int offset = buffer.getOffset() + componentModel.getBandOffsets()[0] + y * componentModel.getScanlineStride();
+				for (int x = 0; x < width; x++)
+				{
+					row[x] = data[offset + x] & 0xff;
+				}
+				return;
+			}
+			if (sampleModel instanceof MultiPixelPackedSampleModel && ((MultiPixelPackedSampleModel) sampleModel).getPixelBitStride() == 1)
+			{
+				MultiPixelPackedSampleModel packedModel = (MultiPixelPackedSampleModel) sampleModel;
+				int offset = buffer.getOffset() + y * packedModel.getScanlineStride();
+				int bitOffset = packedModel.getDataBitOffset();
+				for (int x = 0; x < width; x++)
+				{
+					int bit = bitOffset + x;
+					row[x] = (data[offset + (bit >> 3)] >> (7 - (bit & 7))) & 1;
+				}
+				return;
+			}
+		}
+		raster.getSamples(raster.getMinX(), raster.getMinY() + y, width, 1, 0, row);
+	}
+	
 	public static BufferedImage maskWithImage(BufferedImage image1,
 			BufferedImage image2, BufferedImage mask)
 	{
@@ -451,25 +619,42 @@ public class ImageHelper
 
 		BufferedImage result = new BufferedImage((int)region.width,
 				(int)region.height, image1.getType());
+		IntRectangle bounds = region;
 		Raster mRaster = mask.getRaster();
-		for (int y = region.y; y < region.height; y++)
-			for (int x = region.x; x < region.width; x++)
+		boolean isGrayMask = mask.getType() == BufferedImage.TYPE_BYTE_GRAY;
+		ParallelRows.forEachBand(region.y, region.height, region.width, (startRow, endRow) ->
+		{
+			int[] row1 = new int[image1.getWidth()];
+			int[] row2 = new int[image2.getWidth()];
+			int[] maskRow = new int[mask.getWidth()];
+			int[] resultRow = new int[result.getWidth()];
+			for (int y = startRow; y < endRow; y++)
 			{
-				Color color1 = new Color(image1.getRGB(x, y));
-				Color color2 = new Color(image2.getRGB(x, y));
-				double maskLevel = ((double) mRaster.getSampleDouble(x + (int)region.x, y + (int)region.y, 0));
-				if (mask.getType() == BufferedImage.TYPE_BYTE_GRAY)
-					maskLevel /= 255.0;
-
-				int r = (int) (maskLevel * color1.getRed() + (1.0 - maskLevel)
-						* color2.getRed());
-				int g = (int) (maskLevel * color1.getGreen() + (1.0 - maskLevel)
-						* color2.getGreen());
-				int b = (int) (maskLevel * color1.getBlue() + (1.0 - maskLevel)
-						* color2.getBlue());
-				int combined = (r << 16) | (g << 8) | b;
-				result.setRGB(x, y, combined);
+				getRGBRow(image1, y, row1);
+				getRGBRow(image2, y, row2);
+				getSampleRow(mRaster, y + (int)bounds.y, maskRow);
+				for (int x = bounds.x; x < bounds.width; x++)
+				{
+					int rgb1 = row1[x];
+					int rgb2 = row2[x];
+					double maskLevel = (double) maskRow[x + (int)bounds.x];
+					if (isGrayMask)
+						maskLevel /= 255.0;
+
+					int r = (int) (maskLevel * ((rgb1 >> 16) & 0xff) + (1.0 - maskLevel)
+							* ((rgb2 >> 16) & 0xff));
+					int g = (int) (maskLevel * ((rgb1 >> 8) & 0xff) + (1.0 - maskLevel)
+							* ((rgb2 >> 8) & 0xff));
+					int b = (int) (maskLevel * (rgb1 & 0xff) + (1.0 - maskLevel)
+							* (rgb2 & 0xff));
+					resultRow[x] = (r << 16) | (g << 8) | b;
+				}
+				if (bounds.x < bounds.width)
+				{
+					setRGBRow(result, y, bounds.x, bounds.width - bounds.x, resultRow);
+				}
 			}
+		});
 		return result;
 	}
 	
@@ -496,44 +681,70 @@ public class ImageHelper
 				image.getHeight(), image.getType());
 		Raster mRaster = mask.getRaster();
 		Raster alphaRaster = image.getAlphaRaster();
-		for (int y = 0; y < image.getHeight(); y++)
-			for (int x = 0; x < image.getWidth(); x++)
+		// For TYPE_INT_ARGB the alpha level is already in the pixels from getRGBRow.
+		boolean alphaIsInRGB = image.getType() == BufferedImage.TYPE_INT_ARGB;
+		boolean isGrayMask = mask.getType() == BufferedImage.TYPE_BYTE_GRAY;
+		int colorR = color.getRed();
+		int colorG = color.getGreen();
+		int colorB = color.getBlue();
+		int width = image.getWidth();
+		ParallelRows.forEachBand(0, image.getHeight(), width, (startRow, endRow) ->
+		{
+			int[] row = new int[width];
+			int[] maskRow = new int[width];
+			int[] alphaRow = alphaRaster == null || alphaIsInRGB ? null : new int[width];
+			for (int y = startRow; y < endRow; y++)
 			{
-				Color col = new Color(image.getRGB(x, y));
-				
-				int maskLevel = mRaster.getSample(x, y, 0);
-				if (mask.getType() == BufferedImage.TYPE_BYTE_GRAY)
+				getRGBRow(image, y, row);
+				getSampleRow(mRaster, y, maskRow);
+				if (alphaRow != null)
 				{
-					if (invertMask)
-						maskLevel = 255 - maskLevel;
-
-					int r = ((maskLevel * col.getRed()) + (255 - maskLevel) * color.getRed())/255;
-					int g = ((maskLevel * col.getGreen()) + (255 - maskLevel) * color.getGreen())/255;
-					int b = ((maskLevel * col.getBlue()) + (255 - maskLevel) * color.getBlue())/255;
-					Color combined = new Color(r,g,b,alphaRaster == null ? 0 : alphaRaster.getSample(x, y, 0));
-					result.setRGB(x, y, combined.getRGB());				
+					getSampleRow(alphaRaster, y, alphaRow);
 				}
-				else
+				for (int x = 0; x < width; x++)
 				{
-					// TYPE_BYTE_BINARY
+					int rgb = row[x];
+					int colR = (rgb >> 16) & 0xff;
+					int colG = (rgb >> 8) & 0xff;
+					int colB = rgb & 0xff;
+					int alpha = alphaIsInRGB ? rgb >>> 24 : (alphaRow == null ? 0 : alphaRow[x]);
+				
+					int maskLevel = maskRow[x];
+					int r;
+					int g;
+					int b;
+					if (isGrayMask)
+					{
+						if (invertMask)
+							maskLevel = 255 - maskLevel;
+
+						r = ((maskLevel * colR) + (255 - maskLevel) * colorR)/255;
+						g = ((maskLevel * colG) + (255 - maskLevel) * colorG)/255;
+						b = ((maskLevel * colB) + (255 - maskLevel) * colorB)/255;
+					}
+					else
+					{
+						// TYPE_BYTE_BINARY
 	
-					if (invertMask)
-						maskLevel = 1 - maskLevel;
+						if (invertMask)
+							maskLevel = 1 - maskLevel;
 
-					int r = ((maskLevel * col.getRed()) + (1 - maskLevel) * color.getRed());
-					int g = ((maskLevel * col.getGreen()) + (1 - maskLevel) * color.getGreen());
-					int b = ((maskLevel * col.getBlue()) + (1 - maskLevel) * color.getBlue());
-					Color combined = new Color(r,g,b,alphaRaster == null ? 0 : alphaRaster.getSample(x, y, 0));
-					result.setRGB(x, y, combined.getRGB());					
+						r = ((maskLevel * colR) + (1 - maskLevel) * colorR);
+						g = ((maskLevel * colG) + (1 - maskLevel) * colorG);
+						b = ((maskLevel * colB) + (1 - maskLevel) * colorB);
+					}
+					row[x] = (alpha << 24) | (r << 16) | (g << 8) | b;
 				}
-				
+				setRGBRow(result, y, 0, width, row);
 			}
+		});
 		return result;
 	}
 	
 	/**
 	 * Like maskWithColor except multiple colors can be specified.
-	 * @param colorIndexes Each pixel stores a gray level which (converted to an int) is an index into colors.
+	 * @param colorIndexes Each pixel stores a gray level which (converted to an int) is an index into colors. It may be
+	 * 8 or 16 bit.
 	 */
 	public static BufferedImage maskWithMultipleColors(BufferedImage image,
 			Color[] colors, BufferedImage colorIndexes, BufferedImage mask, boolean invertMask)
@@ -541,8 +752,8 @@ public class ImageHelper
 		if (mask.getType() != BufferedImage.TYPE_BYTE_GRAY 
 				&& mask.getType() != BufferedImage.TYPE_BYTE_BINARY)
 			throw new IllegalArgumentException("mask type must be BufferedImage.TYPE_BYTE_GRAY or BufferedImage.TYPE_BYTE_BINARY.");
-		if (colorIndexes.getType() != BufferedImage.TYPE_BYTE_GRAY)
-			throw new IllegalArgumentException("colorIndexes type must be BufferedImage.TYPE_BYTE_GRAY.");
+		if (colorIndexes.getType() != BufferedImage.TYPE_BYTE_GRAY && colorIndexes.getType() != BufferedImage.TYPE_USHORT_GRAY)
+			throw new IllegalArgumentException("colorIndexes type must be BufferedImage.TYPE_BYTE_GRAY or BufferedImage.TYPE_USHORT_GRAY.");
 
 		if (image.getWidth() != mask.getWidth())
 			throw new IllegalArgumentException("Mask width is "
@@ -555,39 +766,63 @@ public class ImageHelper
 				image.getHeight(), image.getType());
 		Raster mRaster = mask.getRaster();
 		Raster colorIndexesRaster = colorIndexes.getRaster();
-		for (int y = 0; y < image.getHeight(); y++)
-			for (int x = 0; x < image.getWidth(); x++)
+		boolean isGrayMask = mask.getType() == BufferedImage.TYPE_BYTE_GRAY;
+		int[] colorsRGB = new int[colors.length];
+		for (int i : new Range(colors.length))
+		{
+			colorsRGB[i] = colors[i].getRGB();
+		}
+		int width = image.getWidth();
+		ParallelRows.forEachBand(0, image.getHeight(), width, (startRow, endRow) ->
+		{
+			int[] row = new int[width];
+			int[] maskRow = new int[width];
+			int[] colorIndexRow = new int[width];
+			for (int y = startRow; y < endRow; y++)
 			{
-				Color col = new Color(image.getRGB(x, y));
-				Color color = colors[colorIndexesRaster.getSample(x, y, 0)];
-				
-				int maskLevel = mRaster.getSample(x, y, 0);
-				if (mask.getType() == BufferedImage.TYPE_BYTE_GRAY)
+				getRGBRow(image, y, row);
+				getSampleRow(mRaster, y, maskRow);
+				getSampleRow(colorIndexesRaster, y, colorIndexRow);
+				for (int x = 0; x < width; x++)
 				{
-					if (invertMask)
-						maskLevel = 255 - maskLevel;
+					int rgb = row[x];
+					int colR = (rgb >> 16) & 0xff;
+					int colG = (rgb >> 8) & 0xff;
+					int colB = rgb & 0xff;
+					int color = colorsRGB[colorIndexRow[x]];
+					int colorR = (color >> 16) & 0xff;
+					int colorG = (color >> 8) & 0xff;
+					int colorB = color & 0xff;
+				
+					int maskLevel = maskRow[x];
+					int r;
+					int g;
+					int b;
+					if (isGrayMask)
+					{
+						if (invertMask)
+							maskLevel = 255 - maskLevel;
 
-					int r = ((maskLevel * col.getRed()) + (255 - maskLevel) * color.getRed())/255;
-					int g = ((maskLevel * col.getGreen()) + (255 - maskLevel) * color.getGreen())/255;
-					int b = ((maskLevel * col.getBlue()) + (255 - maskLevel) * color.getBlue())/255;
-					int combined = (r << 16) | (g << 8) | b;
-					result.setRGB(x, y, combined);					
-				}
-				else
-				{
-					// TYPE_BYTE_BINARY
+						r = ((maskLevel * colR) + (255 - maskLevel) * colorR)/255;
+						g = ((maskLevel * colG) + (255 - maskLevel) * colorG)/255;
+						b = ((maskLevel * colB) + (255 - maskLevel) * colorB)/255;
+					}
+					else
+					{
+						// TYPE_BYTE_BINARY
 	
-					if (invertMask)
-						maskLevel = 255 - maskLevel;
+						if (invertMask)
+							maskLevel = 255 - maskLevel;
 
-					int r = ((maskLevel * col.getRed()) + (1 - maskLevel) * color.getRed());
-					int g = ((maskLevel * col.getGreen()) + (1 - maskLevel) * color.getGreen());
-					int b = ((maskLevel * col.getBlue()) + (1 - maskLevel) * color.getBlue());
-					int combined = (r << 16) | (g << 8) | b;
-					result.setRGB(x, y, combined);					
+						r = ((maskLevel * colR) + (1 - maskLevel) * colorR);
+						g = ((maskLevel * colG) + (1 - maskLevel) * colorG);
+						b = ((maskLevel * colB) + (1 - maskLevel) * colorB);
+					}
+					row[x] = (r << 16) | (g << 8) | b;
 				}
-				
+				setRGBRow(result, y, 0, width, row);
 			}
+		});
 		return result;
 	}
 		
@@ -616,24 +851,34 @@ public class ImageHelper
 		BufferedImage result = new BufferedImage(image.getWidth(),
 				image.getHeight(), BufferedImage.TYPE_INT_ARGB);
 		Raster mRaster = alphaMask.getRaster();
-		for (int y = 0; y < image.getHeight(); y++)
-			for (int x = 0; x < image.getWidth(); x++)
+		boolean isBinaryMask = alphaMask.getType() == BufferedImage.TYPE_BYTE_BINARY;
+		int width = image.getWidth();
+		ParallelRows.forEachBand(0, image.getHeight(), width, (startRow, endRow) ->
+		{
+			int[] row = new int[width];
+			int[] maskRow = new int[width];
+			for (int y = startRow; y < endRow; y++)
 			{
-				Color col = new Color(image.getRGB(x, y));
-				int maskLevel = mRaster.getSample(x, y, 0);
-				if (alphaMask.getType() == BufferedImage.TYPE_BYTE_BINARY)
+				getRGBRow(image, y, row);
+				getSampleRow(mRaster, y, maskRow);
+				for (int x = 0; x < width; x++)
 				{
-					if (maskLevel == 1)
-						maskLevel = 255;
-				}
-				if (invertMask)
-					maskLevel = 255 - maskLevel;
-				
-				int mc = (maskLevel << 24) | 0x00ffffff;
-	            int newColor = col.getRGB() & mc;
+					int maskLevel = maskRow[x];
+					if (isBinaryMask)
+					{
+						if (maskLevel == 1)
+							maskLevel = 255;
+					}
+					if (invertMask)
+						maskLevel = 255 - maskLevel;
 				
-				result.setRGB(x, y, newColor);
+					int mc = (maskLevel << 24) | 0x00ffffff;
+					// The alpha level of the original pixel is ignored, the same as new Color(int).
+		            row[x] = (0xff000000 | row[x]) & mc;
+				}
+				setRGBRow(result, y, 0, width, row);
 			}
+		});
 		return result;
 	}
 	
@@ -725,16 +970,22 @@ public class ImageHelper
        	BufferedImage region = extractRotatedRegion(image2, xLoc, yLoc, mask.getWidth(), mask.getHeight(),
        			angle);
        	      	       	
+		// The region is a new TYPE_INT_ARGB image, so its pixels can be changed in its array.
+		int[] regionPixels = getIntPixels(region);
 		Raster maskRaster = mask.getRaster();
+		int[] grayLevels = new int[region.getWidth()];
 		for (int y = 0; y < region.getHeight(); y++)
+		{
+			maskRaster.getSamples(maskRaster.getMinX(), maskRaster.getMinY() + y, region.getWidth(), 1, 0, grayLevels);
+			int offset = y * region.getWidth();
 			for (int x = 0; x < region.getWidth(); x++)
 			{
-				int grayLevel = maskRaster.getSample(x, y, 0);
-				Color r = new Color(region.getRGB(x, y), true);
-				int alphaLevel = Math.min(r.getAlpha(), grayLevel); // Don't clobber the alpha level from the region.
+				int argb = regionPixels[offset + x];
+				int alphaLevel = Math.min(argb >>> 24, grayLevels[x]); // Don't clobber the alpha level from the region.
 				// Only change the alpha channel of the region.
-				region.setRGB(x, y, new Color(r.getRed(), r.getGreen(), r.getBlue(), alphaLevel).getRGB());
+				regionPixels[offset + x] = (alphaLevel << 24) | (argb & 0x00ffffff);
 			}
+		}
 		
 		// This pivot must exactly match the one used in extractRotatedRegion above.
 		Point pivot = new Point(xLoc + mask.getWidth()/2, yLoc + mask.getHeight()/2);
@@ -873,28 +1124,120 @@ public class ImageHelper
 	 */
 	public static BufferedImage convolveGrayscale(BufferedImage img, float[][] kernel, boolean maximizeContrast)
 	{			
-		int cols = getPowerOf2EqualOrLargerThan(Math.max(img.getWidth(), kernel[0].length));
-		int rows = getPowerOf2EqualOrLargerThan(Math.max(img.getHeight(), kernel.length));
-		// Make sure rows and cols are greater than 1 for JTransforms.
-		if (cols < 2)
-			cols = 2;
-		if (rows < 2)
-			rows = 2;
-		
-		ComplexArray data = forwardFFT(img, rows, cols);
-		
-		ComplexArray kernelData = forwardFFT(kernel, rows, cols, true);
-						
-		data.multiplyInPlace(kernelData);
-		kernelData = null;
-		
-		// Do the inverse DFT on the product.
-		inverseFFT(data);
-		
+		return convolveGrayscale(img, Collections.singletonList(kernel), maximizeContrast).get(0);
+	}
+	
+	/**
+	 * Like convolveGrayscale, but uses the given method rather than letting ConvolutionPlanner choose one.
+	 * Separable can only be used with kernels that are separable.
+	 */
+	public static BufferedImage convolveGrayscale(BufferedImage img, float[][] kernel, boolean maximizeContrast, ConvolutionPlanner.Method method)
+	{
+		return convolveGrayscale(img, Collections.singletonList(kernel), maximizeContrast, Collections.singletonList(method)).get(0);
+	}
+	
+	/**
+	 * Convolves a gray-scale image with each of several kernels. This is faster than calling convolveGrayscale
+	 * once per kernel because the FFT of the image is only done once for each padded size the kernels need.
+	 * The results are the same as calling convolveGrayscale once per kernel.
+	 * @return One convolved image per kernel, in the same order as kernels.
+	 */
+	public static List<BufferedImage> convolveGrayscale(BufferedImage img, List<float[][]> kernels, boolean maximizeContrast)
+	{
+		List<ConvolutionPlanner.Method> methods = new ArrayList<>(kernels.size());
+		for (float[][] kernel : kernels)
+		{
+			methods.add(ConvolutionPlanner.chooseMethod(img.getWidth(), img.getHeight(), kernel));
+		}
+		return convolveGrayscale(img, kernels, maximizeContrast, methods);
+	}
+	
+	private static List<BufferedImage> convolveGrayscale(BufferedImage img, List<float[][]> kernels, boolean maximizeContrast,
+			List<ConvolutionPlanner.Method> methods)
+	{
 		// Only use 16 bit pixels if the input image used them, to save memory.
 		int resultType = img.getType() == BufferedImage.TYPE_USHORT_GRAY ? BufferedImage.TYPE_USHORT_GRAY : BufferedImage.TYPE_BYTE_GRAY;
+
+		// Count how many kernels need each padded size, so the image's FFT can be reused for the last one without copying it.
+		List<Dimension> sizes = new ArrayList<>(kernels.size());
+		Map<Dimension, Integer> remainingUses = new HashMap<>();
+		for (int i : new Range(kernels.size()))
+		{
+			if (methods.get(i) != ConvolutionPlanner.Method.FFT)
+			{
+				sizes.add(null);
+				continue;
+			}
+			Dimension size = getConvolutionSize(img, kernels.get(i));
+			sizes.add(size);
+			remainingUses.merge(size, 1, Integer::sum);
+		}
+
+		Map<Dimension, ComplexArray> imageFFTs = new HashMap<>();
+		List<BufferedImage> results = new ArrayList<>(kernels.size());
+		for (int i : new Range(kernels.size()))
+		{
+			if (methods.get(i) != ConvolutionPlanner.Method.FFT)
+			{
+				float[][] convolved = ConvolutionPlanner.convolveSpatial(img, kernels.get(i), methods.get(i));
+				if (maximizeContrast)
+				{
+					setContrast(convolved, 0f, 1f);
+				}
+				results.add(arrayToImage(convolved, resultType));
+				continue;
+			}
+			
+			Dimension size = sizes.get(i);
+			int rows = size.height;
+			int cols = size.width;
+			ComplexArray imageFFT = imageFFTs.get(size);
+			if (imageFFT == null)
+			{
+				imageFFT = forwardFFT(img, rows, cols);
+				imageFFTs.put(size, imageFFT);
+			}
+			
+			ComplexArray data;
+			int uses = remainingUses.merge(size, -1, Integer::sum);
+			if (uses == 0)
+			{
+				data = imageFFT;
+				imageFFTs.remove(size);
+			}
+			else
+			{
+				data = new ComplexArray(FFTCache.borrowBuffer(rows, cols));
+				float[][] source = imageFFT.getArrayJTransformsFormat();
+				float[][] target = data.getArrayJTransformsFormat();
+				for (int r = 0; r < rows; r++)
+				{
+					System.arraycopy(source[r], 0, target[r], 0, target[r].length);
+				}
+			}
+		
+			ComplexArray kernelData = forwardFFT(kernels.get(i), rows, cols, true);
+			data.multiplyInPlace(kernelData);
+			FFTCache.releaseBuffer(kernelData.getArrayJTransformsFormat());
+			kernelData = null;
+		
+			// Do the inverse DFT on the product.
+			inverseFFT(data);
 		
-		return realToImage(data, img.getWidth(), img.getHeight(), maximizeContrast, resultType);
+			results.add(realToImage(data, img.getWidth(), img.getHeight(), maximizeContrast, resultType));
+			FFTCache.releaseBuffer(data.getArrayJTransformsFormat());
+		}
+		return results;
+	}
+	
+	/**
+	 * The size convolveGrayscale pads images to when convolving the given image with the given kernel.
+	 */
+	private static Dimension getConvolutionSize(BufferedImage img, float[][] kernel)
+	{
+		int cols = getFFTSizeEqualOrLargerThan(Math.max(img.getWidth(), kernel[0].length));
+		int rows = getFFTSizeEqualOrLargerThan(Math.max(img.getHeight(), kernel.length));
+		return new Dimension(cols, rows);
 	}
 		
 	public static BufferedImage realToImage(ComplexArray data, int imageWidth, int imageHeight, boolean maximizeContrast, int bufferedImageType)
@@ -916,20 +1259,21 @@ public class ImageHelper
 		
 	public static void inverseFFT(ComplexArray data)
 	{
-		FloatFFT_2D fft = new FloatFFT_2D(data.getHeight(), data.getWidth());
-		fft.complexInverse(data.getArrayJTransformsFormat(), true);		
+		FFTCache.complexInverse(data.getArrayJTransformsFormat(), true);
 	}
 	
+	/**
+	 * Does a 2D forward FFT of an image, padded to the given size. The result's buffer comes from FFTCache, so it can
+	 * be given back with FFTCache.releaseBuffer when done.
+	 */
 	public static ComplexArray forwardFFT(BufferedImage img, int rows, int cols)
 	{
-		ComplexArray data = new ComplexArray(cols, rows);
+		ComplexArray data = new ComplexArray(FFTCache.borrowBuffer(rows, cols));
 		
 		int imgRowPadding = rows - img.getHeight();
 		int imgColPadding = cols - img.getWidth();
 		int imgRowPaddingOver2 = imgRowPadding/2;
 		int imgColPaddingOver2 = imgColPadding/2;
-		FloatFFT_2D fft = new FloatFFT_2D(rows, cols);
-		
 		boolean isGrayscale = isSupportedGrayscaleType(img);
 		float maxPixelValue = getMaxPixelValue(img);
 
@@ -944,7 +1288,7 @@ public class ImageHelper
 			}
 
 		// Do the forward FFT.
-		fft.realForwardFull(data.getArrayJTransformsFormat());
+		FFTCache.realForwardFull(data.getArrayJTransformsFormat());
 
 		return data;
 	}
@@ -955,12 +1299,12 @@ public class ImageHelper
 	 * @param rows Number of rows in the output
 	 * @param cols Number of columns in the output
 	 * @param flipXAndYAxis For kernels. Flip the kernel along the x and y axis as I get the values from it. This is needed to do convolution instead of cross-correlation.
-	 * @return
+	 * @return The FFT. Its buffer comes from FFTCache, so it can be given back with FFTCache.releaseBuffer when done.
 	 */
 	public static ComplexArray forwardFFT(float[][] input, int rows, int cols, boolean flipXAndYAxis)
 	{
 		// Convert the kernel to the format required by JTransforms.
-		ComplexArray data = new ComplexArray(cols, rows);
+		ComplexArray data = new ComplexArray(FFTCache.borrowBuffer(rows, cols));
 		{
 			int rowPadding = rows - input.length;
 			int rowPaddingOver2 = rowPadding/2;
@@ -980,8 +1324,7 @@ public class ImageHelper
 				}	
 
 			// Do the forward FFT.
-			FloatFFT_2D fft = new FloatFFT_2D(rows, cols);
-			fft.realForwardFull(data.getArrayJTransformsFormat());
+			FFTCache.realForwardFull(data.getArrayJTransformsFormat());
 		}
 		return data;
 	}
@@ -1047,14 +1390,18 @@ public class ImageHelper
 		BufferedImage image = new BufferedImage(cols, rows, bufferedImageType);
 		WritableRaster raster = image.getRaster();
 		int maxPixelValue = getMaxPixelValue(bufferedImageType);
-		for (int r = rowStart; r < rowStart + rows; r++)
+		ParallelRows.forEachBand(rowStart, rowStart + rows, cols, (startRow, endRow) ->
 		{
-			for (int c = colStart; c < colStart + cols; c++)
-			{			
-				float value = array[r][c] * maxPixelValue;
-				raster.setSample(c - colStart, r - rowStart, 0, value);
+			float[] values = new float[cols];
+			for (int r = startRow; r < endRow; r++)
+			{
+				for (int c = colStart; c < colStart + cols; c++)
+				{			
+					values[c - colStart] = array[r][c] * maxPixelValue;
+				}
+				raster.setSamples(0, r - rowStart, cols, 1, 0, values);
 			}
-		}
+		});
 		return image;
 	}
 
@@ -1063,13 +1410,19 @@ public class ImageHelper
 		BufferedImage image = new BufferedImage(array[0].length, array.length, bufferedImageType);
 		WritableRaster raster = image.getRaster();
 		int maxPixelValue = getMaxPixelValue(bufferedImageType);
-		for (int y = 0; y < image.getHeight(); y++)
+		int width = image.getWidth();
+		ParallelRows.forEachBand(image.getHeight(), width, (startRow, endRow) ->
 		{
-			for (int x = 0; x < image.getWidth(); x++)
-			{				
-				raster.setSample(x, y, 0, array[y][x] * maxPixelValue);
+			float[] values = new float[width];
+			for (int y = startRow; y < endRow; y++)
+			{
+				for (int x = 0; x < width; x++)
+				{				
+					values[x] = array[y][x] * maxPixelValue;
+				}
+				raster.setSamples(0, y, width, 1, 0, values);
 			}
-		}
+		});
 		return image;
 	}
 
@@ -1077,13 +1430,14 @@ public class ImageHelper
 	{
 		float[][] result = new float[img.getWidth()][img.getHeight()];
 		Raster raster = img.getRaster();
-		for (int r = 0; r < img.getWidth(); r++)
+		// The result is transposed, so each band is a range of columns in the image.
+		ParallelRows.forEachBand(img.getWidth(), img.getHeight(), (startColumn, endColumn) ->
 		{
-			for (int c = 0; c < img.getHeight(); c++)
-			{				
-				result[r][c] = raster.getSample(r, c, 0);
+			for (int r = startColumn; r < endColumn; r++)
+			{
+				raster.getSamples(r, 0, 1, img.getHeight(), 0, result[r]);
 			}
-		}
+		});
 		return result;
 	}
 
@@ -1111,6 +1465,47 @@ public class ImageHelper
 		return result;		
 	}
 	
+	/**
+	 * How much slower JTransforms is per element, roughly, for FFT sizes that aren't powers of 2.
+	 */
+	private static final double nonPowerOf2FFTCostFactor = 1.5;
+
+	/**
+	 * Returns a size at least as large as the given value which JTransforms can do FFTs of quickly, for padding images to before doing FFTs.
+	 * Besides powers of 2, JTransforms is fast for sizes whose prime factors are 2, 3, and 5, with at most one 7 (more 7s are much slower).
+	 * Using those sizes keeps the padding, and so the memory and time used, close to the size of the image. A power of 2 is still used if
+	 * it's not enough bigger to make up for it being faster per element.
+	 * The result is even because swapQuadrantsOfLeftSideInPlace needs it to be.
+	 */
+	public static int getFFTSizeEqualOrLargerThan(int value)
+	{
+		int powerOf2 = Math.max(2, getPowerOf2EqualOrLargerThan(value));
+		for (int size = Math.max(2, value); size < powerOf2; size++)
+		{
+			if (isFastFFTSize(size))
+			{
+				return size * nonPowerOf2FFTCostFactor < powerOf2 ? size : powerOf2;
+			}
+		}
+		return powerOf2;
+	}
+
+	private static boolean isFastFFTSize(int size)
+	{
+		if (size % 2 != 0)
+		{
+			return false;
+		}
+		for (int factor : new int[] { 2, 3, 5 })
+		{
+			while (size % factor == 0)
+			{
+				size /= factor;
+			}
+		}
+		return size == 1 || size == 7;
+	}
+
 	public static int getPowerOf2EqualOrLargerThan(int value)
 	{
 		return getPowerOf2EqualOrLargerThan((double) value);
@@ -1233,17 +1628,38 @@ public class ImageHelper
 		
 		float[] hsb = new float[3];
 		Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), hsb);
+		
+		// The image is 8 bit, so there are only 256 possible results.
+		int[] lookupTable = createColorifyLookupTable(hsb, how);
 
-		for (int y = 0; y < result.getHeight(); y++)
-			for (int x = 0; x < result.getWidth(); x++)
+		int width = image.getWidth();
+		ParallelRows.forEachBand(0, result.getHeight(), width, (startRow, endRow) ->
+		{
+			int[] row = new int[width];
+			for (int y = startRow; y < endRow; y++)
 			{
-				float level = raster.getSampleFloat(x, y, 0);
-				result.setRGB(x, y, colorifyPixel(level, hsb, how));
+				getSampleRow(raster, y, row);
+				for (int x = 0; x < width; x++)
+				{
+					row[x] = lookupTable[row[x]];
+				}
+				setRGBRow(result, y, 0, width, row);
 			}
+		});
 		
 		return result;
 	}
 	
+	private static int[] createColorifyLookupTable(float[] hsb, ColorifyAlgorithm how)
+	{
+		int[] lookupTable = new int[256];
+		for (int level = 0; level < lookupTable.length; level++)
+		{
+			lookupTable[level] = colorifyPixel(level, hsb, how);
+		}
+		return lookupTable;
+	}
+	
 	private static int colorifyPixel(float pixelLevel, float[] hsb, ColorifyAlgorithm how)
 	{	
 		if (how == ColorifyAlgorithm.algorithm2)
@@ -1292,7 +1708,8 @@ public class ImageHelper
 	 * @param image The image to colorify
 	 * @param colors Used as a map from region index (in politicalRegions) to region color. The 
 	 * index of each color corresponds to a pixel level in pixelColors.
-	 * @param colorIndexes Each pixel stores a gray level which (converted to an int) is an index into colors.
+	 * @param colorIndexes Each pixel stores a gray level which (converted to an int) is an index into colors. It may be
+	 * 8 or 16 bit.
 	 */
 	public static BufferedImage colorifyMulti(BufferedImage image, Color[] colors,
 			BufferedImage colorIndexes, ColorifyAlgorithm how)
@@ -1300,28 +1717,38 @@ public class ImageHelper
 		if (image.getType() != BufferedImage.TYPE_BYTE_GRAY)
 			throw new IllegalArgumentException("The image must by type BufferedImage.TYPE_BYTE_GRAY, but was type "  
 					+ bufferedImageTypeToString(image.getType()));
-		if (colorIndexes.getType() != BufferedImage.TYPE_BYTE_GRAY)
-			throw new IllegalArgumentException("colorIndexes type must be BufferedImage.TYPE_BYTE_GRAY.");
+		if (colorIndexes.getType() != BufferedImage.TYPE_BYTE_GRAY && colorIndexes.getType() != BufferedImage.TYPE_USHORT_GRAY)
+			throw new IllegalArgumentException("colorIndexes type must be BufferedImage.TYPE_BYTE_GRAY or BufferedImage.TYPE_USHORT_GRAY.");
 
 		BufferedImage result = new BufferedImage(image.getWidth(),
 				image.getHeight(), BufferedImage.TYPE_INT_RGB);
 		Raster raster = image.getRaster();
 		Raster colorIndexesRaster = colorIndexes.getRaster();
 		
-		float[][] hsb = new float[colors.length][3];
+		int[][] lookupTables = new int[colors.length][];
 		for (int i : new Range(colors.length))
 		{
-			Color.RGBtoHSB(colors[i].getRed(), colors[i].getGreen(), colors[i].getBlue(), hsb[i]);
+			float[] hsb = new float[3];
+			Color.RGBtoHSB(colors[i].getRed(), colors[i].getGreen(), colors[i].getBlue(), hsb);
+			lookupTables[i] = createColorifyLookupTable(hsb, how);
 		}
 		
-		for (int y = 0; y < result.getHeight(); y++)
-			for (int x = 0; x < result.getWidth(); x++)
+		int width = image.getWidth();
+		ParallelRows.forEachBand(0, result.getHeight(), width, (startRow, endRow) ->
+		{
+			int[] row = new int[width];
+			int[] colorIndexRow = new int[width];
+			for (int y = startRow; y < endRow; y++)
 			{
-				float level = raster.getSampleFloat(x, y, 0);
-				int colorIndex = colorIndexesRaster.getSample(x, y, 0);
-				
-				result.setRGB(x, y, colorifyPixel(level, hsb[colorIndex], how));
+				getSampleRow(raster, y, row);
+				getSampleRow(colorIndexesRaster, y, colorIndexRow);
+				for (int x = 0; x < width; x++)
+				{
+					row[x] = lookupTables[colorIndexRow[x]][row[x]];
+				}
+				setRGBRow(result, y, 0, width, row);
 			}
+		});
 		
 		return result;
 	}
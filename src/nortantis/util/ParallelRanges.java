@@ -0,0 +1,63 @@
+package nortantis.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs per-element work on a graph's centers, corners, or edges in parallel by splitting the range of element indexes
+ * into chunks and processing the chunks on the shared WorkerPool.
+ *
+ * Each chunk must only write to its own elements, so that the result is the same as processing the elements in order
+ * on one thread. That rules out setting bits in a shared BitSet, since BitSet isn't thread safe even when threads set
+ * different bits. Instead, write the flags to an array and copy them into the BitSet after forEachChunk returns.
+ */
+public class ParallelRanges
+{
+	/**
+	 * Ranges with fewer elements than this are processed on the calling thread because splitting them isn't worth the
+	 * overhead.
+	 */
+	private static final int minElementsToParallelize = 4096;
+	/**
+	 * The minimum number of elements in a chunk.
+	 */
+	private static final int minElementsPerChunk = 1024;
+
+	public interface RangeJob
+	{
+		/**
+		 * Processes elements start (inclusive) to end (exclusive).
+		 */
+		public void processRange(int start, int end);
+	}
+
+	/**
+	 * Runs the given job over the elements 0 (inclusive) to numElements (exclusive), split into chunks which may run in
+	 * parallel. Returns once all elements are done. If a chunk throws an exception, it is re-thrown from this method.
+	 */
+	public static void forEachChunk(int numElements, RangeJob job)
+	{
+		if (numElements <= 0)
+		{
+			return;
+		}
+
+		int threads = WorkerPool.getInstance().getMaxParallelism();
+		if (threads == 1 || numElements < minElementsToParallelize)
+		{
+			job.processRange(0, numElements);
+			return;
+		}
+
+		// Use a few chunks per thread so that threads which finish early can take work from slower ones.
+		int elementsPerChunk = Math.max(minElementsPerChunk, (numElements + threads * 4 - 1) / (threads * 4));
+		List<Runnable> chunks = new ArrayList<>();
+		for (int chunkStart = 0; chunkStart < numElements; chunkStart += elementsPerChunk)
+		{
+			final int chunkStartFinal = chunkStart;
+			final int chunkEnd = Math.min(numElements, chunkStart + elementsPerChunk);
+			chunks.add(() -> job.processRange(chunkStartFinal, chunkEnd));
+		}
+		WorkerPool.getInstance().runAll(chunks);
+	}
+}
@@ -0,0 +1,74 @@
+package nortantis.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs per-pixel image operations in parallel by splitting the rows of an image into bands and processing
+ * the bands on the shared WorkerPool.
+ *
+ * Each band must only write to its own rows, so that the result is the same as processing the rows in order
+ * on one thread.
+ */
+public class ParallelRows
+{
+	/**
+	 * Images with fewer pixels than this are processed on the calling thread because splitting them isn't worth the overhead.
+	 */
+	private static final int minPixelsToParallelize = 128 * 128;
+	/**
+	 * The minimum number of pixels in a band.
+	 */
+	private static final int minPixelsPerBand = 16 * 1024;
+
+	public interface RowBandJob
+	{
+		/**
+		 * Processes rows startRow (inclusive) to endRow (exclusive).
+		 */
+		public void processRows(int startRow, int endRow);
+	}
+
+	/**
+	 * Runs the given job over the rows 0 (inclusive) to numRows (exclusive).
+	 * @param rowWidth The number of pixels in each row. Used to decide how many bands to use.
+	 */
+	public static void forEachBand(int numRows, int rowWidth, RowBandJob job)
+	{
+		forEachBand(0, numRows, rowWidth, job);
+	}
+
+	/**
+	 * Runs the given job over the rows startRow (inclusive) to endRow (exclusive), split into bands which may run in parallel.
+	 * Returns once all rows are done. If a band throws an exception, it is re-thrown from this method.
+	 * @param rowWidth The number of pixels in each row. Used to decide how many bands to use.
+	 */
+	public static void forEachBand(int startRow, int endRow, int rowWidth, RowBandJob job)
+	{
+		int numRows = endRow - startRow;
+		if (numRows <= 0)
+		{
+			return;
+		}
+
+		long numPixels = (long) numRows * Math.max(1, rowWidth);
+		int threads = WorkerPool.getInstance().getMaxParallelism();
+		if (threads == 1 || numRows == 1 || numPixels < minPixelsToParallelize)
+		{
+			job.processRows(startRow, endRow);
+			return;
+		}
+
+		// Use a few bands per thread so that threads which finish early can take work from slower ones.
+		int minRowsPerBand = Math.max(1, minPixelsPerBand / Math.max(1, rowWidth));
+		int rowsPerBand = Math.max(minRowsPerBand, (numRows + threads * 4 - 1) / (threads * 4));
+		List<Runnable> bands = new ArrayList<>();
+		for (int bandStart = startRow; bandStart < endRow; bandStart += rowsPerBand)
+		{
+			final int bandStartFinal = bandStart;
+			final int bandEnd = Math.min(endRow, bandStart + rowsPerBand);
+			bands.add(() -> job.processRows(bandStartFinal, bandEnd));
+		}
+		WorkerPool.getInstance().runAll(bands);
+	}
+}
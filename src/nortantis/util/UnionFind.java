@@ -0,0 +1,60 @@
+package nortantis.util;
+
+/**
+ * A union-find (disjoint set) structure over the integers 0 to size - 1, for labelling connected components in
+ * near-linear time. Sets are merged by size, and finding a set's root halves the path to it.
+ */
+public class UnionFind
+{
+	private final int[] parents;
+	private final int[] sizes;
+
+	/**
+	 * Creates a structure in which every element is in its own set.
+	 */
+	public UnionFind(int size)
+	{
+		parents = new int[size];
+		sizes = new int[size];
+		for (int i = 0; i < size; i++)
+		{
+			parents[i] = i;
+			sizes[i] = 1;
+		}
+	}
+
+	/**
+	 * @return The root of the set containing the given element. Two elements are in the same set if and only if they
+	 *         have the same root.
+	 */
+	public int find(int element)
+	{
+		while (parents[element] != element)
+		{
+			parents[element] = parents[parents[element]];
+			element = parents[element];
+		}
+		return element;
+	}
+
+	/**
+	 * Merges the sets containing the two given elements.
+	 */
+	public void union(int element1, int element2)
+	{
+		int root1 = find(element1);
+		int root2 = find(element2);
+		if (root1 == root2)
+		{
+			return;
+		}
+		if (sizes[root1] < sizes[root2])
+		{
+			int temp = root1;
+			root1 = root2;
+			root2 = temp;
+		}
+		parents[root2] = root1;
+		sizes[root1] += sizes[root2];
+	}
+}
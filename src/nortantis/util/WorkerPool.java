@@ -0,0 +1,355 @@
+package nortantis.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import pl.edu.icm.jlargearrays.ConcurrencyUtils;
+
+/**
+ * The thread pool that all parallel work in Nortantis runs on, including Helper.processInParallel, ParallelRows,
+ * and the FFTs done by JTransforms.
+ *
+ * The thread calling runAll always runs jobs itself rather than waiting, and jobs may call runAll again, so nested
+ * parallel work never deadlocks.
+ *
+ * To keep several maps being created at the same time from oversubscribing the processors, wrap each map in
+ * callWithMaxParallelism. All parallel work started by that map (except the FFTs, which JTransforms submits directly)
+ * then shares the given number of threads, counting the map's own thread.
+ */
+public class WorkerPool
+{
+	private static WorkerPool instance;
+
+	private ForkJoinPool pool;
+	private int numThreads;
+
+	private final AtomicInteger queuedJobs = new AtomicInteger();
+	private final AtomicInteger activeJobs = new AtomicInteger();
+	private final AtomicLong completedJobs = new AtomicLong();
+
+	/**
+	 * The limit that applies to parallel work started by the current thread, or null if there is none.
+	 */
+	private static final ThreadLocal<ParallelismLimit> currentLimit = new ThreadLocal<>();
+
+	private WorkerPool(int numThreads)
+	{
+		this.numThreads = numThreads;
+	}
+
+	public synchronized static WorkerPool getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new WorkerPool(getDefaultNumThreads());
+		}
+		return instance;
+	}
+
+	/**
+	 * The default number of threads comes from the system property nortantis.workerThreads if it's set, otherwise
+	 * it's the number of processors.
+	 */
+	private static int getDefaultNumThreads()
+	{
+		String property = System.getProperty("nortantis.workerThreads");
+		if (property != null)
+		{
+			try
+			{
+				return Math.max(1, Integer.parseInt(property.trim()));
+			}
+			catch (NumberFormatException e)
+			{
+				Logger.println("Ignoring invalid value for nortantis.workerThreads: " + property);
+			}
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Sets the number of threads in the pool. Work already running on the old pool still finishes.
+	 */
+	public synchronized void setNumThreads(int numThreads)
+	{
+		if (numThreads < 1)
+			throw new IllegalArgumentException("The number of threads must be at least 1, but was " + numThreads + ".");
+		if (numThreads == this.numThreads)
+		{
+			return;
+		}
+		this.numThreads = numThreads;
+		if (pool != null)
+		{
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	public synchronized int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	/**
+	 * Creates the pool if needed. Package private so that ImageHelper can make sure jTransforms uses the pool before it creates an FFT.
+	 */
+	synchronized ForkJoinPool getPool()
+	{
+		if (pool == null)
+		{
+			pool = new ForkJoinPool(numThreads);
+			// Have JTransforms run its FFTs on this pool rather than creating its own threads.
+			ConcurrencyUtils.setThreadPool(pool);
+			ConcurrencyUtils.setNumberOfThreads(numThreads);
+		}
+		return pool;
+	}
+
+	/**
+	 * Shuts down the pool's threads. The pool is re-created if it's used again.
+	 */
+	public synchronized void shutdown()
+	{
+		if (pool != null)
+		{
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	/**
+	 * The maximum number of threads that parallel work started by the current thread may use, counting the current thread.
+	 */
+	public int getMaxParallelism()
+	{
+		ParallelismLimit limit = currentLimit.get();
+		if (limit == null)
+		{
+			return getNumThreads();
+		}
+		return Math.min(getNumThreads(), limit.maxThreads);
+	}
+
+	/**
+	 * Runs the given code on the current thread such that all parallel work it starts through this pool uses at most
+	 * maxThreads threads at a time, counting the current thread.
+	 */
+	public static <T> T callWithMaxParallelism(int maxThreads, Callable<T> callable) throws Exception
+	{
+		ParallelismLimit previous = currentLimit.get();
+		currentLimit.set(new ParallelismLimit(maxThreads));
+		try
+		{
+			return callable.call();
+		}
+		finally
+		{
+			currentLimit.set(previous);
+		}
+	}
+
+	/**
+	 * Runs the given jobs in parallel and returns once they have all finished. If a job throws an exception, jobs that
+	 * haven't started yet are skipped and the exception is re-thrown from this method.
+	 */
+	public void runAll(List<Runnable> jobs)
+	{
+		List<Callable<Object>> callables = new ArrayList<>(jobs.size());
+		for (Runnable job : jobs)
+		{
+			callables.add(() ->
+			{
+				job.run();
+				return null;
+			});
+		}
+		runAllAndGetResults(callables);
+	}
+
+	/**
+	 * Like runAll, but returns the result of each job, in the same order as jobs.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> List<T> runAllAndGetResults(List<Callable<T>> jobs)
+	{
+		if (jobs.isEmpty())
+		{
+			return new ArrayList<>();
+		}
+
+		ParallelismLimit limit = currentLimit.get();
+		int numHelpers = Math.min(jobs.size(), getNumThreads()) - 1;
+		if (limit != null)
+		{
+			numHelpers = limit.acquireHelpers(numHelpers);
+		}
+
+		Object[] results = new Object[jobs.size()];
+		AtomicInteger nextJob = new AtomicInteger();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		queuedJobs.addAndGet(jobs.size());
+		Runnable runner = () ->
+		{
+			// Jobs run on other threads are still subject to the limit of the thread that started them.
+			ParallelismLimit previous = currentLimit.get();
+			currentLimit.set(limit);
+			try
+			{
+				while (failure.get() == null)
+				{
+					int i = nextJob.getAndIncrement();
+					if (i >= results.length)
+					{
+						break;
+					}
+					queuedJobs.decrementAndGet();
+					activeJobs.incrementAndGet();
+					try
+					{
+						results[i] = jobs.get(i).call();
+					}
+					catch (Throwable e)
+					{
+						failure.compareAndSet(null, e);
+					}
+					finally
+					{
+						activeJobs.decrementAndGet();
+						completedJobs.incrementAndGet();
+					}
+				}
+			}
+			finally
+			{
+				currentLimit.set(previous);
+			}
+		};
+
+		try
+		{
+			List<ForkJoinTask<?>> helpers = new ArrayList<>(numHelpers);
+			if (numHelpers > 0)
+			{
+				ForkJoinPool pool = getPool();
+				for (int i = 0; i < numHelpers; i++)
+				{
+					helpers.add(pool.submit(runner));
+				}
+			}
+			runner.run();
+			for (ForkJoinTask<?> helper : helpers)
+			{
+				helper.join();
+			}
+		}
+		finally
+		{
+			if (limit != null)
+			{
+				limit.releaseHelpers(numHelpers);
+			}
+			int notStarted = results.length - Math.min(nextJob.get(), results.length);
+			queuedJobs.addAndGet(-notStarted);
+		}
+
+		Throwable e = failure.get();
+		if (e != null)
+		{
+			if (e instanceof RuntimeException)
+				throw (RuntimeException) e;
+			if (e instanceof Error)
+				throw (Error) e;
+			throw new RuntimeException(e);
+		}
+		return new ArrayList<>((List<T>) Arrays.asList(results));
+	}
+
+	/**
+	 * The number of jobs passed to runAll that haven't started yet.
+	 */
+	public int getQueueDepth()
+	{
+		return queuedJobs.get();
+	}
+
+	/**
+	 * The number of jobs passed to runAll that are running now.
+	 */
+	public int getActiveTaskCount()
+	{
+		return activeJobs.get();
+	}
+
+	public long getCompletedTaskCount()
+	{
+		return completedJobs.get();
+	}
+
+	/**
+	 * Includes tasks submitted directly to the pool, such as FFTs.
+	 */
+	public synchronized long getPoolQueuedTaskCount()
+	{
+		if (pool == null)
+		{
+			return 0;
+		}
+		return pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Worker pool: " + getNumThreads() + " threads, " + getActiveTaskCount() + " active jobs, " + getQueueDepth()
+				+ " queued jobs, " + getPoolQueuedTaskCount() + " queued pool tasks, " + getCompletedTaskCount() + " completed jobs";
+	}
+
+	/**
+	 * Limits the number of threads that parallel work started by one caller, such as one map, uses at a time. The caller's
+	 * own thread always counts as one of them, so it holds maxThreads - 1 permits for helper threads.
+	 */
+	private static class ParallelismLimit
+	{
+		private final int maxThreads;
+		private final Semaphore helperPermits;
+
+		public ParallelismLimit(int maxThreads)
+		{
+			if (maxThreads < 1)
+				throw new IllegalArgumentException("The maximum number of threads must be at least 1, but was " + maxThreads + ".");
+			this.maxThreads = maxThreads;
+			this.helperPermits = new Semaphore(maxThreads - 1);
+		}
+
+		/**
+		 * Takes up to the requested number of helper permits without waiting.
+		 * @return The number of permits taken.
+		 */
+		public int acquireHelpers(int requested)
+		{
+			int acquired = 0;
+			while (acquired < requested && helperPermits.tryAcquire())
+			{
+				acquired++;
+			}
+			return acquired;
+		}
+
+		public void releaseHelpers(int count)
+		{
+			if (count > 0)
+			{
+				helperPermits.release(count);
+			}
+		}
+	}
+}